@@ -0,0 +1,53 @@
+#!/bin/sh
+########################################################################
+# Usage: allele-footprint-shards.sh SHARD_COUNT FOOTPRINT_FILE PROP_FILE1 [PROP_FILE2 ...]
+#
+# Runs SHARD_COUNT driver processes on the local host, one per shard,
+# and merges their partial footprint files into FOOTPRINT_FILE (which
+# must match the AlleleFootprintDriver.footprintFile property).
+########################################################################
+
+if [ $# -lt 3 ]
+then
+    echo "Usage:" `basename $0` "SHARD_COUNT FOOTPRINT_FILE PROP_FILE1 [PROP_FILE2 ...]"
+    exit 1
+fi
+
+if [ -z "${NFI_HOME}" ]
+then
+    echo "Environment variable NFI_HOME is not set; exiting."
+    exit 1
+fi
+
+SHARD_COUNT=$1
+FOOTPRINT_FILE=$2
+shift 2
+
+PIDS=""
+SHARD_INDEX=0
+
+while [ ${SHARD_INDEX} -lt ${SHARD_COUNT} ]
+do
+    ${NFI_HOME}/bin/allele-footprint-driver.sh \
+        -DAlleleFootprintDriver.shardIndex=${SHARD_INDEX} \
+        -DAlleleFootprintDriver.shardCount=${SHARD_COUNT} \
+        "$@" > ${FOOTPRINT_FILE}.shard${SHARD_INDEX}-of-${SHARD_COUNT}.log 2>&1 &
+
+    PIDS="${PIDS} $!"
+    SHARD_INDEX=`expr ${SHARD_INDEX} + 1`
+done
+
+STATUS=0
+
+for PID in ${PIDS}
+do
+    wait ${PID} || STATUS=1
+done
+
+if [ ${STATUS} -ne 0 ]
+then
+    echo "One or more shards failed; see ${FOOTPRINT_FILE}.shard*.log."
+    exit 1
+fi
+
+${NFI_HOME}/bin/nfi-run.sh nfi.model.FootprintShards ${FOOTPRINT_FILE} ${SHARD_COUNT}
@@ -0,0 +1,99 @@
+package nfi.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.bind.PeptideBindingMap;
+import nfi.model.AlleleFootprintIndex;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.model.FootprintTable;
+
+/**
+ * Measures the footprint calculation for the peptide pairs of one
+ * tumor barcode, from predicted binding quantities to records (or
+ * table rows), for one allele and for a full patient genotype.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FootprintIndexBenchmark {
+    @Param({ "LOG_AFFINITY", "LOG_STABILITY" })
+    public AlleleFootprintType footprintType;
+
+    @Param({ "1000", "10000" })
+    public int pairCount;
+
+    @Param({ "0.0", "0.25" })
+    public double duplicateFraction;
+
+    private AlleleFootprintIndex footprintIndex;
+    private List<Allele> alleles;
+    private List<PeptidePairRecord> pairs;
+    private Map<Allele, PeptideBindingMap> bindingMaps;
+
+    private double[] neoQty;
+    private double[] selfQty;
+    private double[] footprintIndexes;
+
+    @Setup public void setup() {
+        Random random = new Random(20201015L);
+
+        footprintIndex = footprintType.getAlleleFootprintIndex();
+        alleles = SyntheticCohort.alleles(6);
+        pairs = SyntheticCohort.pairs(TumorBarcode.instance("Tumor"), pairCount, duplicateFraction, random);
+        bindingMaps = SyntheticCohort.predict(alleles, pairs);
+
+        neoQty = new double[pairCount];
+        selfQty = new double[pairCount];
+        footprintIndexes = new double[pairCount];
+
+        PeptideBindingMap bindingMap = bindingMaps.get(alleles.get(0));
+
+        for (int index = 0; index < pairCount; ++index) {
+            neoQty[index] = footprintIndex.quantity(bindingMap.require(pairs.get(index).getNeoPeptide()));
+            selfQty[index] = footprintIndex.quantity(bindingMap.require(pairs.get(index).getSelfPeptide()));
+        }
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> computeOneAllele() {
+        Allele allele = alleles.get(0);
+        return footprintIndex.compute(allele, pairs, bindingMaps.get(allele));
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> computeGenotype() {
+        return footprintIndex.compute(alleles, pairs, bindingMaps);
+    }
+
+    @Benchmark public FootprintTable computeGenotypeTable() {
+        FootprintTable table = FootprintTable.create(alleles.size() * pairCount);
+        footprintIndex.compute(alleles, pairs, bindingMaps, table);
+        return table;
+    }
+
+    @Benchmark public double[] bulkKernel() {
+        footprintIndex.compute(neoQty, selfQty, footprintIndexes);
+        return footprintIndexes;
+    }
+}
@@ -0,0 +1,151 @@
+package nfi.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintWriter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.model.FootprintSort;
+import nfi.model.FootprintTable;
+
+/**
+ * Measures the final phases of a driver run on a synthetic cohort:
+ * concatenating the per-barcode results, ordering them (by a single
+ * comparator sort, by per-barcode key sorts and a merge, or by key
+ * sorts of per-barcode column tables and a merge), and writing the
+ * footprint file in each output format.
+ *
+ * <p>The cohort size is controlled by the {@code recordCount} and
+ * {@code barcodeCount} parameters (for example, {@code -p
+ * recordCount=4000000}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class FootprintPipelineBenchmark {
+    @Param({ "1000000" })
+    public int recordCount;
+
+    @Param({ "500" })
+    public int barcodeCount;
+
+    private List<List<AlleleFootprintRecord>> unsorted;
+    private List<List<AlleleFootprintRecord>> sorted;
+    private List<AlleleFootprintRecord> merged;
+
+    private File outputFile;
+
+    @Setup public void setup() throws IOException {
+        List<AlleleFootprintType> footprintTypes = List.of(AlleleFootprintType.values());
+
+        int alleleCount = 6;
+        int pairsPerBarcode = Math.max(1, recordCount / (barcodeCount * alleleCount * footprintTypes.size()));
+
+        unsorted = SyntheticCohort.footprints(SyntheticCohort.cohort(barcodeCount, pairsPerBarcode, 20201015L),
+                                              SyntheticCohort.alleles(alleleCount),
+                                              footprintTypes);
+
+        sorted = copy(unsorted);
+        FootprintSort.sortPartitions(sorted);
+        merged = FootprintSort.merge(sorted);
+
+        outputFile = File.createTempFile("footprint-bench", ".out");
+        outputFile.deleteOnExit();
+    }
+
+    @TearDown public void tearDown() {
+        outputFile.delete();
+    }
+
+    private static List<List<AlleleFootprintRecord>> copy(List<List<AlleleFootprintRecord>> partitions) {
+        List<List<AlleleFootprintRecord>> copy = new ArrayList<List<AlleleFootprintRecord>>(partitions.size());
+
+        for (List<AlleleFootprintRecord> partition : partitions)
+            copy.add(new ArrayList<AlleleFootprintRecord>(partition));
+
+        return copy;
+    }
+
+    /**
+     * Fresh copies of the unsorted partitions for each invocation of
+     * the benchmarks that sort in place.
+     */
+    @State(Scope.Thread)
+    public static class Partitions {
+        private List<List<AlleleFootprintRecord>> partitions;
+
+        @Setup(Level.Invocation) public void setup(FootprintPipelineBenchmark benchmark) {
+            partitions = copy(benchmark.unsorted);
+        }
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> concatenate() {
+        return FootprintSort.merge(sorted);
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> sortComparator(Partitions state) {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (List<AlleleFootprintRecord> partition : state.partitions)
+            records.addAll(partition);
+
+        records.sort(AlleleFootprintRecord.COMPARATOR);
+        return records;
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> sortPartitions(Partitions state) {
+        FootprintSort.sortPartitions(state.partitions);
+        return FootprintSort.merge(state.partitions);
+    }
+
+    @Benchmark public FootprintTable sortTables(Partitions state) {
+        //
+        // Includes the time to build the tables from the records...
+        //
+        List<FootprintTable> tables = new ArrayList<FootprintTable>(state.partitions.size());
+
+        for (List<AlleleFootprintRecord> partition : state.partitions)
+            tables.add(FootprintTable.of(partition));
+
+        tables.parallelStream().forEach(FootprintTable::sort);
+        return FootprintTable.merge(tables);
+    }
+
+    @Benchmark public long writeText() {
+        return write(FootprintFormat.TSV);
+    }
+
+    @Benchmark public long writeBinary() {
+        return write(FootprintFormat.BINARY);
+    }
+
+    private long write(FootprintFormat format) {
+        try (FootprintWriter writer = FootprintWriter.open(outputFile.getPath(), format)) {
+            writer.write(merged);
+        }
+
+        return outputFile.length();
+    }
+}
@@ -0,0 +1,114 @@
+package nfi.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jene.hla.Allele;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintQueryStore;
+import nfi.io.FootprintQueryStore.Filter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+/**
+ * Measures warm queries against a footprint query store built from a
+ * synthetic cohort: the records for one barcode and allele, top-N
+ * queries with broad and narrow filters, a bounded range query, and
+ * the barcodes above a threshold.
+ *
+ * <p>The store size is controlled by the {@code recordCount} and
+ * {@code barcodeCount} parameters (for example, {@code -p
+ * recordCount=4000000}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class FootprintQueryBenchmark {
+    @Param({ "1000000" })
+    public int recordCount;
+
+    @Param({ "500" })
+    public int barcodeCount;
+
+    @Param({ "10", "100" })
+    public int resultCount;
+
+    private File storeFile;
+    private FootprintQueryStore store;
+
+    private Filter barcodeAllele;
+    private Filter alleleType;
+    private double threshold;
+
+    @Setup public void setup() throws IOException {
+        List<Allele> alleles = SyntheticCohort.alleles(6);
+        List<AlleleFootprintType> footprintTypes = List.of(AlleleFootprintType.values());
+
+        int pairsPerBarcode = Math.max(1, recordCount / (barcodeCount * alleles.size() * footprintTypes.size()));
+
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (List<AlleleFootprintRecord> barcodeRecords :
+                 SyntheticCohort.footprints(SyntheticCohort.cohort(barcodeCount, pairsPerBarcode, 20201015L), alleles, footprintTypes))
+            records.addAll(barcodeRecords);
+
+        storeFile = File.createTempFile("footprint-bench", ".nqs");
+        storeFile.deleteOnExit();
+
+        FootprintQueryStore.build(records, storeFile.getPath());
+        store = FootprintQueryStore.open(storeFile.getPath());
+
+        barcodeAllele = Filter.ALL.barcode(TumorBarcode.instance(String.format("Tumor%06d", barcodeCount / 2))).allele(alleles.get(0));
+        alleleType = Filter.ALL.allele(alleles.get(0)).type(AlleleFootprintType.LOG_STABILITY);
+
+        //
+        // The threshold admits the top one percent of all records...
+        //
+        List<AlleleFootprintRecord> top = store.top(Math.max(1, records.size() / 100), Filter.ALL);
+        threshold = top.get(top.size() - 1).getFootprintIndex();
+    }
+
+    @TearDown public void tearDown() {
+        storeFile.delete();
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> selectBarcodeAllele() {
+        return store.select(barcodeAllele, resultCount);
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> topAll() {
+        return store.top(resultCount, Filter.ALL);
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> topAlleleType() {
+        return store.top(resultCount, alleleType);
+    }
+
+    @Benchmark public List<AlleleFootprintRecord> rangeAbove() {
+        return store.range(threshold, Double.POSITIVE_INFINITY, Filter.ALL, resultCount);
+    }
+
+    @Benchmark public List<TumorBarcode> barcodesAbove() {
+        return store.barcodesAbove(threshold, Filter.ALL);
+    }
+}
@@ -0,0 +1,67 @@
+package nfi.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+/**
+ * Measures the text formatting and parsing of footprint records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FootprintRecordBenchmark {
+    @Param({ "10000" })
+    public int recordCount;
+
+    private List<AlleleFootprintRecord> records;
+    private List<String> lines;
+
+    @Setup public void setup() {
+        int barcodeCount = 10;
+        int alleleCount = 6;
+        int pairsPerBarcode = Math.max(1, recordCount / (barcodeCount * alleleCount));
+
+        records = new ArrayList<AlleleFootprintRecord>(recordCount);
+
+        for (List<AlleleFootprintRecord> partition :
+                 SyntheticCohort.footprints(SyntheticCohort.cohort(barcodeCount, pairsPerBarcode, 20201015L),
+                                            SyntheticCohort.alleles(alleleCount),
+                                            List.of(AlleleFootprintType.LOG_AFFINITY)))
+            records.addAll(partition);
+
+        lines = new ArrayList<String>(records.size());
+
+        for (AlleleFootprintRecord record : records)
+            lines.add(record.format());
+    }
+
+    @Benchmark public void format(Blackhole blackhole) {
+        for (AlleleFootprintRecord record : records)
+            blackhole.consume(record.format());
+    }
+
+    @Benchmark public void parse(Blackhole blackhole) {
+        for (String line : lines)
+            blackhole.consume(AlleleFootprintRecord.parse(line));
+    }
+}
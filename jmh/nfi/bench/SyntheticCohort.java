@@ -0,0 +1,218 @@
+package nfi.bench;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import jam.math.IntRange;
+
+import jene.hla.Allele;
+import jene.hugo.HugoSymbol;
+import jene.neo.NeoPeptide;
+import jene.neo.PeptidePairRecord;
+import jene.neo.SelfPeptide;
+import jene.peptide.Peptide;
+import jene.tcga.TumorBarcode;
+
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
+import nfi.model.AlleleFootprintIndex;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+/**
+ * Generates reproducible synthetic inputs for the benchmarks: peptide
+ * pairs, patient alleles, and binding quantities from a deterministic
+ * in-process stand-in for the external binding predictors.
+ *
+ * <p>The binding quantities for an allele and peptide are a pure
+ * function of their text, so every benchmark run (and every release)
+ * measures the same workload without NetMHCpan or NetStab installed.
+ */
+final class SyntheticCohort {
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    private static final List<String> ALLELE_KEYS =
+        List.of("A0101", "A0201", "A0301", "A1101", "A2402", "B0702",
+                "B0801", "B1501", "B3501", "B4001", "C0401", "C0701");
+
+    private static final IntRange RANGE = IntRange.instance(1, 9);
+    private static final HugoSymbol SYMBOL = HugoSymbol.instance("GENE");
+
+    private SyntheticCohort() {}
+
+    /**
+     * Returns a fixed list of distinct HLA alleles.
+     *
+     * @param alleleCount the number of alleles (at most twelve).
+     *
+     * @return the first {@code alleleCount} alleles of a fixed list.
+     */
+    static List<Allele> alleles(int alleleCount) {
+        List<Allele> alleles = new ArrayList<Allele>(alleleCount);
+
+        for (String key : ALLELE_KEYS.subList(0, alleleCount))
+            alleles.add(Allele.instance(key));
+
+        return alleles;
+    }
+
+    /**
+     * Generates the peptide pairs for one tumor barcode.
+     *
+     * @param barcode the tumor barcode.
+     *
+     * @param pairCount the number of pairs.
+     *
+     * @param duplicateFraction the fraction of pairs that repeat the
+     * peptides of an earlier pair.
+     *
+     * @param random the source of randomness.
+     *
+     * @return the peptide pairs for the barcode.
+     */
+    static List<PeptidePairRecord> pairs(TumorBarcode barcode, int pairCount, double duplicateFraction, Random random) {
+        List<PeptidePairRecord> pairs = new ArrayList<PeptidePairRecord>(pairCount);
+
+        for (int index = 0; index < pairCount; ++index) {
+            if (index > 0 && random.nextDouble() < duplicateFraction) {
+                PeptidePairRecord source = pairs.get(random.nextInt(index));
+                pairs.add(PeptidePairRecord.instance(barcode, SYMBOL, RANGE, source.getSelfPeptide(), source.getNeoPeptide()));
+            }
+            else {
+                pairs.add(PeptidePairRecord.instance(barcode,
+                                                     SYMBOL,
+                                                     RANGE,
+                                                     SelfPeptide.instance(peptide(random)),
+                                                     NeoPeptide.instance(peptide(random))));
+            }
+        }
+
+        return pairs;
+    }
+
+    /**
+     * Generates the peptide pairs for a cohort of tumor barcodes.
+     *
+     * @param barcodeCount the number of barcodes.
+     *
+     * @param pairsPerBarcode the number of pairs for each barcode.
+     *
+     * @param seed the random seed.
+     *
+     * @return the peptide pairs for each barcode, in barcode order.
+     */
+    static List<List<PeptidePairRecord>> cohort(int barcodeCount, int pairsPerBarcode, long seed) {
+        Random random = new Random(seed);
+        List<List<PeptidePairRecord>> cohort = new ArrayList<List<PeptidePairRecord>>(barcodeCount);
+
+        for (int index = 0; index < barcodeCount; ++index)
+            cohort.add(pairs(TumorBarcode.instance(String.format("Tumor%06d", index)), pairsPerBarcode, 0.0, random));
+
+        return cohort;
+    }
+
+    private static String peptide(Random random) {
+        StringBuilder builder = new StringBuilder(9);
+
+        for (int index = 0; index < 9; ++index)
+            builder.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+
+        return builder.toString();
+    }
+
+    /**
+     * Predicts the binding of peptides to an allele with the
+     * deterministic stand-in predictor.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @param peptides the peptides of interest.
+     *
+     * @return the binding quantities for every peptide.
+     */
+    static PeptideBindingMap predict(Allele allele, Collection<? extends Peptide> peptides) {
+        PeptideBindingMap bindingMap = PeptideBindingMap.create(peptides.size());
+
+        for (Peptide peptide : peptides)
+            bindingMap.put(peptide, predict(allele, peptide));
+
+        return bindingMap;
+    }
+
+    /**
+     * Predicts the binding of one peptide to an allele with the
+     * deterministic stand-in predictor: the affinity is log-uniform
+     * between 1 nM and 50 uM, the half-life is log-normal, and the
+     * percentile is uniform.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @param peptide the peptide of interest.
+     *
+     * @return the binding quantities for the peptide.
+     */
+    static PeptideBinding predict(Allele allele, Peptide peptide) {
+        Random random = new Random(31L * allele.toString().hashCode() + peptide.toString().hashCode());
+
+        double affinity = Math.exp(random.nextDouble() * Math.log(50000.0));
+        double halfLife = Math.exp(random.nextGaussian());
+        double percentile = 100.0 * random.nextDouble();
+
+        return PeptideBinding.create(affinity, halfLife, affinity, percentile);
+    }
+
+    /**
+     * Predicts the binding for every allele and peptide in a list of
+     * peptide pairs.
+     *
+     * @param alleles the HLA alleles of interest.
+     *
+     * @param pairs the peptide pairs of interest.
+     *
+     * @return the binding quantities indexed by allele.
+     */
+    static Map<Allele, PeptideBindingMap> predict(Collection<Allele> alleles, Collection<PeptidePairRecord> pairs) {
+        Map<Allele, PeptideBindingMap> bindingMaps = new HashMap<Allele, PeptideBindingMap>();
+
+        for (Allele allele : alleles)
+            bindingMaps.put(allele, predict(allele, PeptidePairRecord.peptides(pairs)));
+
+        return bindingMaps;
+    }
+
+    /**
+     * Computes the footprint records for a cohort, in the unsorted
+     * (allele-major) order produced by the scheduler.
+     *
+     * @param cohort the peptide pairs for each barcode.
+     *
+     * @param alleles the alleles of every patient.
+     *
+     * @param footprintTypes the footprint types to compute.
+     *
+     * @return the unsorted footprint records for each barcode.
+     */
+    static List<List<AlleleFootprintRecord>> footprints(List<List<PeptidePairRecord>> cohort,
+                                                        List<Allele> alleles,
+                                                        List<AlleleFootprintType> footprintTypes) {
+        List<List<AlleleFootprintRecord>> footprints = new ArrayList<List<AlleleFootprintRecord>>(cohort.size());
+
+        for (List<PeptidePairRecord> pairs : cohort) {
+            Map<Allele, PeptideBindingMap> bindingMaps = predict(alleles, pairs);
+            List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+            for (AlleleFootprintType footprintType : footprintTypes) {
+                AlleleFootprintIndex footprintIndex = footprintType.getAlleleFootprintIndex();
+                records.addAll(footprintIndex.compute(alleles, pairs, bindingMaps));
+            }
+
+            footprints.add(records);
+        }
+
+        return footprints;
+    }
+}
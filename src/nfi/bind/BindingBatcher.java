@@ -0,0 +1,272 @@
+package nfi.bind;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import jam.app.JamProperties;
+
+import jene.hla.Allele;
+import jene.peptide.Peptide;
+
+/**
+ * Coalesces binding prediction requests from concurrent callers into
+ * larger batches, so that small requests do not each pay the startup
+ * cost of an external prediction process.
+ *
+ * <p>Requests for the same allele are collected into a pending batch,
+ * which is dispatched when it contains at least {@code batchSize}
+ * distinct peptides or when {@code maxWait} milliseconds have passed
+ * since its first request, whichever comes first.  Batches execute on
+ * background threads, so callers may continue assembling records from
+ * earlier results while the next batch is predicted; each caller's
+ * future is completed with the bindings for the peptides it requested.
+ */
+public final class BindingBatcher {
+    private final int batchSize;
+    private final long maxWait;
+    private final BiFunction<Allele, Collection<Peptide>, PeptideBindingMap> predictor;
+
+    private final Map<Allele, Batch> pending = new HashMap<Allele, Batch>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(DAEMON_FACTORY);
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(DAEMON_FACTORY);
+
+    private static final ThreadFactory DAEMON_FACTORY = runnable -> {
+        Thread thread = new Thread(runnable, "BindingBatcher");
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    /**
+     * Name of the system property that specifies the target number of
+     * peptides in each batched prediction; batching is disabled unless
+     * this property is set to a positive value.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "nfi.bind.batchSize";
+
+    /**
+     * Name of the system property that specifies the maximum time (in
+     * milliseconds) that a request may wait for its batch to fill.
+     */
+    public static final String MAX_WAIT_PROPERTY = "nfi.bind.batchMaxWait";
+
+    /**
+     * Default value for the maximum wait property.
+     */
+    public static final long DEFAULT_MAX_WAIT = 50L;
+
+    private BindingBatcher(int batchSize,
+                           long maxWait,
+                           BiFunction<Allele, Collection<Peptide>, PeptideBindingMap> predictor) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive.");
+
+        if (maxWait < 0)
+            throw new IllegalArgumentException("Maximum wait must be non-negative.");
+
+        this.batchSize = batchSize;
+        this.maxWait = maxWait;
+        this.predictor = predictor;
+    }
+
+    /**
+     * Creates a new batcher with fixed parameters.
+     *
+     * @param batchSize the target number of peptides in each batch.
+     *
+     * @param maxWait the maximum time (in milliseconds) that a request
+     * may wait for its batch to fill.
+     *
+     * @param predictor the function that predicts binding for a batch.
+     *
+     * @return a new batcher with the specified parameters.
+     */
+    public static BindingBatcher create(int batchSize,
+                                        long maxWait,
+                                        BiFunction<Allele, Collection<Peptide>, PeptideBindingMap> predictor) {
+        return new BindingBatcher(batchSize, maxWait, predictor);
+    }
+
+    /**
+     * Creates a new batcher with the parameters specified by system
+     * properties.
+     *
+     * @param predictor the function that predicts binding for a batch.
+     *
+     * @return a new batcher, or {@code null} if batching is disabled.
+     */
+    public static BindingBatcher resolve(BiFunction<Allele, Collection<Peptide>, PeptideBindingMap> predictor) {
+        int batchSize = JamProperties.getOptionalInt(BATCH_SIZE_PROPERTY, 0);
+        long maxWait = JamProperties.getOptionalLong(MAX_WAIT_PROPERTY, DEFAULT_MAX_WAIT);
+
+        if (batchSize > 0)
+            return create(batchSize, maxWait, predictor);
+        else
+            return null;
+    }
+
+    /**
+     * Submits a prediction request.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @param peptides the peptides of interest.
+     *
+     * @return a future that will be completed with the bindings for
+     * the requested peptides (or exceptionally, if the prediction for
+     * the batch fails).
+     */
+    public CompletableFuture<PeptideBindingMap> submit(Allele allele, Collection<? extends Peptide> peptides) {
+        Request request = new Request(peptides);
+        Batch ready = null;
+
+        synchronized (this) {
+            Batch batch = pending.get(allele);
+
+            if (batch == null) {
+                batch = new Batch(allele);
+                pending.put(allele, batch);
+
+                Batch timed = batch;
+                batch.timeout = timer.schedule(() -> expire(timed), maxWait, TimeUnit.MILLISECONDS);
+            }
+
+            batch.add(request);
+
+            if (batch.peptides.size() >= batchSize) {
+                pending.remove(allele);
+                ready = batch;
+            }
+        }
+
+        if (ready != null)
+            dispatch(ready);
+
+        return request.future;
+    }
+
+    /**
+     * Submits a prediction request and waits for the result.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @param peptides the peptides of interest.
+     *
+     * @return the bindings for the requested peptides.
+     *
+     * @throws RuntimeException if the prediction fails.
+     *
+     * @throws Error if the prediction fails with an error.
+     */
+    public PeptideBindingMap predict(Allele allele, Collection<? extends Peptide> peptides) {
+        try {
+            return submit(allele, peptides).join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            else if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            else
+                throw ex;
+        }
+    }
+
+    private void expire(Batch batch) {
+        synchronized (this) {
+            if (pending.get(batch.allele) != batch)
+                return;
+
+            pending.remove(batch.allele);
+        }
+
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch batch) {
+        ScheduledFuture<?> timeout = batch.timeout;
+
+        if (timeout != null)
+            timeout.cancel(false);
+
+        executor.execute(() -> batch.execute());
+    }
+
+    private final class Batch {
+        private final Allele allele;
+        private final Set<Peptide> peptides = new LinkedHashSet<Peptide>();
+        private final List<Request> requests = new ArrayList<Request>();
+
+        private ScheduledFuture<?> timeout;
+
+        private Batch(Allele allele) {
+            this.allele = allele;
+        }
+
+        private void add(Request request) {
+            peptides.addAll(request.peptides);
+            requests.add(request);
+        }
+
+        private void execute() {
+            try {
+                PeptideBindingMap bindingMap = predictor.apply(allele, peptides);
+
+                for (Request request : requests)
+                    request.complete(bindingMap);
+            }
+            catch (Throwable ex) {
+                //
+                // No caller may be left waiting, whatever the failure;
+                // errors are also rethrown to the executing thread...
+                //
+                for (Request request : requests)
+                    request.future.completeExceptionally(ex);
+
+                if (!(ex instanceof RuntimeException))
+                    throw ex;
+            }
+        }
+    }
+
+    private static final class Request {
+        private final Collection<? extends Peptide> peptides;
+        private final CompletableFuture<PeptideBindingMap> future = new CompletableFuture<PeptideBindingMap>();
+
+        private Request(Collection<? extends Peptide> peptides) {
+            this.peptides = peptides;
+        }
+
+        private void complete(PeptideBindingMap batchMap) {
+            try {
+                PeptideBindingMap requestMap = PeptideBindingMap.create(peptides.size());
+
+                for (Peptide peptide : peptides)
+                    requestMap.put(peptide, batchMap.require(peptide));
+
+                future.complete(requestMap);
+            }
+            catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+            catch (Throwable ex) {
+                future.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package nfi.bind;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jam.app.JamLogger;
+import jam.app.JamProperties;
+
+import jene.hla.Allele;
+
+import pepmhc.bind.BindPredictor;
+
+/**
+ * Maintains a persistent directory of binding stores keyed by
+ * prediction engine and HLA allele.
+ *
+ * <p>Each store resides in the file
+ * {@code DIR/PREDICTOR/NAMESPACE/ALLELE.bin}, where {@code DIR} is the
+ * cache directory, {@code PREDICTOR} is the simple class name of the
+ * binding predictor, {@code NAMESPACE} identifies the predictor
+ * version (or any other release of the predictions) and {@code ALLELE}
+ * is the short key of the allele.  Characters that are not valid in
+ * file names are replaced by underscores.
+ *
+ * <p>The class name alone does not change when the predictor is
+ * upgraded or retrained, so predictions from different versions are
+ * kept apart by the namespace: a new namespace starts an empty cache.
+ */
+public final class BindingCache {
+    private final Path directory;
+    private final String namespace;
+    private final Map<Path, BindingStore> stores;
+
+    private static BindingCache global;
+    private static boolean globalResolved = false;
+
+    /**
+     * Name of the system property that specifies the directory of
+     * the global binding cache; if the property is not set, binding
+     * predictions are not cached.
+     */
+    public static final String DIRECTORY_PROPERTY = "nfi.bind.cacheDirectory";
+
+    /**
+     * Name of the system property that specifies the namespace of the
+     * global binding cache; if the property is not set, the declared
+     * predictor version ({@code AlleleFootprintDriver.predictorVersion})
+     * is used.
+     */
+    public static final String NAMESPACE_PROPERTY = "nfi.bind.cacheNamespace";
+
+    /**
+     * Namespace used when neither the namespace nor the predictor
+     * version is specified.
+     */
+    public static final String DEFAULT_NAMESPACE = "unversioned";
+
+    //
+    // Declared in AlleleFootprintDriver, which depends on this package...
+    //
+    private static final String PREDICTOR_VERSION_PROPERTY = "AlleleFootprintDriver.predictorVersion";
+
+    private BindingCache(Path directory, String namespace) {
+        this.directory = directory;
+        this.namespace = namespace;
+        this.stores = new ConcurrentHashMap<Path, BindingStore>();
+    }
+
+    /**
+     * Returns a binding cache rooted at a fixed directory.
+     *
+     * @param directory the root directory of the cache.
+     *
+     * @param namespace the namespace (predictor version) of the cache;
+     * an empty namespace is replaced by the default namespace.
+     *
+     * @return a binding cache rooted at the specified directory.
+     */
+    public static BindingCache open(Path directory, String namespace) {
+        if (namespace.isEmpty())
+            namespace = DEFAULT_NAMESPACE;
+
+        return new BindingCache(directory, fileName(namespace));
+    }
+
+    /**
+     * Returns the global binding cache rooted at the directory
+     * specified by the {@code nfi.bind.cacheDirectory} system
+     * property, in the namespace specified by the
+     * {@code nfi.bind.cacheNamespace} system property (or by the
+     * declared predictor version).
+     *
+     * @return the global binding cache, or {@code null} if the system
+     * property is not set.
+     */
+    public static synchronized BindingCache global() {
+        if (!globalResolved) {
+            global = resolveGlobal();
+            globalResolved = true;
+        }
+
+        return global;
+    }
+
+    private static BindingCache resolveGlobal() {
+        String directory = JamProperties.getOptional(DIRECTORY_PROPERTY, null);
+
+        if (directory == null)
+            return null;
+
+        String namespace =
+            JamProperties.getOptional(NAMESPACE_PROPERTY,
+                                      JamProperties.getOptional(PREDICTOR_VERSION_PROPERTY, DEFAULT_NAMESPACE));
+
+        JamLogger.info("Caching binding predictions in [%s], namespace [%s]...", directory, namespace);
+        return open(Paths.get(directory), namespace);
+    }
+
+    /**
+     * Returns the binding store for a predictor and HLA allele.
+     *
+     * @param predictor the binding prediction engine.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @return the binding store for the specified predictor and
+     * allele.
+     */
+    public BindingStore store(BindPredictor predictor, Allele allele) {
+        return stores.computeIfAbsent(storePath(predictor, allele), path -> BindingStore.open(path));
+    }
+
+    private Path storePath(BindPredictor predictor, Allele allele) {
+        String predictorName = predictor.getClass().getSimpleName();
+        String alleleName = fileName(allele.shortKey());
+
+        return directory.resolve(predictorName).resolve(namespace).resolve(alleleName + ".bin");
+    }
+
+    private static String fileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9]", "_");
+    }
+
+    /**
+     * Returns the root directory of this cache.
+     *
+     * @return the root directory of this cache.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the namespace of this cache (with any characters that
+     * are not valid in file names replaced by underscores).
+     *
+     * @return the namespace of this cache.
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+}
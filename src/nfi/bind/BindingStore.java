@@ -0,0 +1,222 @@
+package nfi.bind;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jene.peptide.Peptide;
+
+/**
+ * Persists the predicted binding quantities for a single predictor
+ * and HLA allele in an append-only file.
+ *
+ * <p>The file contains an eight-byte magic header followed by one
+ * entry per peptide: the length of the peptide string (one byte),
+ * the peptide string (ASCII), and the affinity, half-life, strength
+ * and percentile (four big-endian doubles).
+ *
+ * <p>Existing entries are memory-mapped and decoded when the store
+ * is opened.  Lookups never block; appends are serialized within
+ * this JVM and guarded by an exclusive file lock across processes.
+ * Before appending, entries written by other processes are merged
+ * and any partial entry left by an interrupted writer is truncated.
+ */
+public final class BindingStore {
+    private final Path path;
+    private final Map<String, PeptideBinding> bindings;
+
+    // The byte offset of the end of the last complete entry...
+    private long validSize;
+
+    private static final byte[] MAGIC = "NFIBIND1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VALUE_BYTES = 4 * Double.BYTES;
+    private static final int MAX_PEPTIDE_LENGTH = 255;
+
+    private BindingStore(Path path) {
+        this.path = path;
+        this.bindings = new ConcurrentHashMap<String, PeptideBinding>();
+        this.validSize = 0;
+    }
+
+    /**
+     * Opens a binding store and loads all existing entries.
+     *
+     * @param path the path to the store file (created on the first
+     * append if it does not exist).
+     *
+     * @return the binding store at the specified path.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static BindingStore open(Path path) {
+        BindingStore store = new BindingStore(path);
+
+        if (Files.exists(path))
+            store.refresh();
+
+        return store;
+    }
+
+    /**
+     * Returns the cached binding quantities for a peptide.
+     *
+     * @param peptide the peptide of interest.
+     *
+     * @return the cached binding quantities for the specified peptide,
+     * or {@code null} if the peptide is not present in this store.
+     */
+    public PeptideBinding lookup(Peptide peptide) {
+        return bindings.get(peptide.formatString());
+    }
+
+    /**
+     * Returns the number of peptides in this store.
+     *
+     * @return the number of peptides in this store.
+     */
+    public int size() {
+        return bindings.size();
+    }
+
+    /**
+     * Appends new binding quantities to this store.
+     *
+     * @param bindingMap the binding quantities to append.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public synchronized void append(PeptideBindingMap bindingMap) {
+        if (bindingMap.size() < 1)
+            return;
+
+        try {
+            Files.createDirectories(path.getParent());
+            appendLocked(bindingMap);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void appendLocked(PeptideBindingMap bindingMap) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            //
+            // Merge any entries appended by other processes since the
+            // last refresh and drop a partial trailing entry...
+            //
+            decode(channel);
+
+            if (channel.size() > validSize)
+                channel.truncate(validSize);
+
+            ByteBuffer buffer = encode(bindingMap, validSize == 0);
+            channel.position(validSize);
+
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+
+            validSize = channel.position();
+
+            for (Map.Entry<Peptide, PeptideBinding> entry : bindingMap.view().entrySet())
+                bindings.put(entry.getKey().formatString(), entry.getValue());
+        }
+    }
+
+    private synchronized void refresh() {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            decode(channel);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void decode(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+
+        if (fileSize <= validSize)
+            return;
+
+        MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, validSize, fileSize - validSize);
+
+        if (validSize == 0) {
+            if (buffer.remaining() < MAGIC.length)
+                return;
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IllegalStateException(String.format("Invalid binding store [%s].", path));
+        }
+
+        byte[] peptideBytes = new byte[MAX_PEPTIDE_LENGTH];
+
+        while (buffer.remaining() > 0) {
+            int start = buffer.position();
+            int length = Byte.toUnsignedInt(buffer.get(start));
+
+            if (buffer.remaining() < 1 + length + VALUE_BYTES)
+                break;
+
+            buffer.position(start + 1);
+            buffer.get(peptideBytes, 0, length);
+
+            double affinity = buffer.getDouble();
+            double halfLife = buffer.getDouble();
+            double strength = buffer.getDouble();
+            double percentile = buffer.getDouble();
+
+            String peptide = new String(peptideBytes, 0, length, StandardCharsets.US_ASCII);
+            bindings.put(peptide, PeptideBinding.create(affinity, halfLife, strength, percentile));
+        }
+
+        validSize += buffer.position();
+    }
+
+    private static ByteBuffer encode(PeptideBindingMap bindingMap, boolean header) {
+        int capacity = header ? MAGIC.length : 0;
+        Map<Peptide, PeptideBinding> view = bindingMap.view();
+
+        for (Peptide peptide : view.keySet())
+            capacity += 1 + peptide.formatString().length() + VALUE_BYTES;
+
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+
+        if (header)
+            buffer.put(MAGIC);
+
+        for (Map.Entry<Peptide, PeptideBinding> entry : view.entrySet()) {
+            byte[] peptideBytes = entry.getKey().formatString().getBytes(StandardCharsets.US_ASCII);
+            PeptideBinding binding = entry.getValue();
+
+            if (peptideBytes.length > MAX_PEPTIDE_LENGTH)
+                throw new IllegalArgumentException(String.format("Peptide [%s] is too long to cache.", entry.getKey()));
+
+            buffer.put((byte) peptideBytes.length);
+            buffer.put(peptideBytes);
+            buffer.putDouble(binding.getAffinity());
+            buffer.putDouble(binding.getHalfLife());
+            buffer.putDouble(binding.getStrength());
+            buffer.putDouble(binding.getPercentile());
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+}
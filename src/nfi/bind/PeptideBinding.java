@@ -0,0 +1,92 @@
+package nfi.bind;
+
+import pepmhc.bind.BindRecord;
+
+/**
+ * Holds the predicted binding quantities for a single peptide and HLA
+ * allele in a compact form that may be cached and persisted outside
+ * of the prediction engine.
+ */
+public final class PeptideBinding {
+    private final double affinity;
+    private final double halfLife;
+    private final double strength;
+    private final double percentile;
+
+    private PeptideBinding(double affinity, double halfLife, double strength, double percentile) {
+        this.affinity = affinity;
+        this.halfLife = halfLife;
+        this.strength = strength;
+        this.percentile = percentile;
+    }
+
+    /**
+     * Creates a new peptide binding with fixed attributes.
+     *
+     * @param affinity the binding affinity expressed as an IC50
+     * concentration.
+     *
+     * @param halfLife the half-life of the peptide-MHC complex.
+     *
+     * @param strength the binding strength reported by the predictor
+     * (affinity or stability).
+     *
+     * @param percentile the percentile rank of the binding strength.
+     *
+     * @return a new peptide binding with the specified attributes.
+     */
+    public static PeptideBinding create(double affinity, double halfLife, double strength, double percentile) {
+        return new PeptideBinding(affinity, halfLife, strength, percentile);
+    }
+
+    /**
+     * Extracts the binding quantities from a predicted binding record.
+     *
+     * @param record the binding record produced by a predictor.
+     *
+     * @return the binding quantities in the specified record.
+     */
+    public static PeptideBinding of(BindRecord record) {
+        return create(record.getAffinity(),
+                      record.getHalfLife(),
+                      record.getStrength(),
+                      record.getPercentile());
+    }
+
+    /**
+     * Returns the binding affinity expressed as an IC50 concentration.
+     *
+     * @return the binding affinity expressed as an IC50 concentration.
+     */
+    public double getAffinity() {
+        return affinity;
+    }
+
+    /**
+     * Returns the half-life of the peptide-MHC complex.
+     *
+     * @return the half-life of the peptide-MHC complex.
+     */
+    public double getHalfLife() {
+        return halfLife;
+    }
+
+    /**
+     * Returns the binding strength reported by the predictor
+     * (affinity or stability).
+     *
+     * @return the binding strength reported by the predictor.
+     */
+    public double getStrength() {
+        return strength;
+    }
+
+    /**
+     * Returns the percentile rank of the binding strength.
+     *
+     * @return the percentile rank of the binding strength.
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+}
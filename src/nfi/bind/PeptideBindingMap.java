@@ -0,0 +1,123 @@
+package nfi.bind;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import jene.peptide.Peptide;
+
+import pepmhc.bind.BindRecordMap;
+
+/**
+ * Maps peptides to their predicted binding quantities for a single
+ * HLA allele.
+ */
+public final class PeptideBindingMap {
+    private final Map<Peptide, PeptideBinding> map;
+
+    private PeptideBindingMap(Map<Peptide, PeptideBinding> map) {
+        this.map = map;
+    }
+
+    /**
+     * Creates a new empty binding map.
+     *
+     * @param capacity the expected number of peptides.
+     *
+     * @return a new empty binding map.
+     */
+    public static PeptideBindingMap create(int capacity) {
+        return new PeptideBindingMap(new HashMap<Peptide, PeptideBinding>(capacity));
+    }
+
+    /**
+     * Extracts the binding quantities for a collection of peptides
+     * from a map of predicted binding records.
+     *
+     * @param recordMap the binding records produced by a predictor.
+     *
+     * @param peptides the peptides to extract.
+     *
+     * @return a new binding map for the specified peptides.
+     *
+     * @throws RuntimeException unless the record map contains every
+     * peptide.
+     */
+    public static PeptideBindingMap of(BindRecordMap recordMap, Collection<? extends Peptide> peptides) {
+        PeptideBindingMap bindingMap = create(peptides.size());
+
+        for (Peptide peptide : peptides)
+            bindingMap.put(peptide, PeptideBinding.of(recordMap.require(peptide)));
+
+        return bindingMap;
+    }
+
+    /**
+     * Returns the binding quantities for a peptide.
+     *
+     * @param peptide the peptide of interest.
+     *
+     * @return the binding quantities for the specified peptide, or
+     * {@code null} if this map does not contain the peptide.
+     */
+    public PeptideBinding get(Peptide peptide) {
+        return map.get(peptide);
+    }
+
+    /**
+     * Adds binding quantities to this map.
+     *
+     * @param peptide the bound peptide.
+     *
+     * @param binding the binding quantities for the peptide.
+     */
+    public void put(Peptide peptide, PeptideBinding binding) {
+        map.put(peptide, binding);
+    }
+
+    /**
+     * Adds all binding quantities from another map to this map.
+     *
+     * @param that the map to add.
+     */
+    public void putAll(PeptideBindingMap that) {
+        map.putAll(that.map);
+    }
+
+    /**
+     * Returns the binding quantities for a required peptide.
+     *
+     * @param peptide the peptide of interest.
+     *
+     * @return the binding quantities for the specified peptide.
+     *
+     * @throws RuntimeException unless this map contains the peptide.
+     */
+    public PeptideBinding require(Peptide peptide) {
+        PeptideBinding binding = map.get(peptide);
+
+        if (binding != null)
+            return binding;
+        else
+            throw new IllegalStateException(String.format("No binding for peptide [%s].", peptide));
+    }
+
+    /**
+     * Returns the number of peptides in this map.
+     *
+     * @return the number of peptides in this map.
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns a read-only view of the peptide bindings in this map.
+     *
+     * @return a read-only view of the peptide bindings in this map.
+     */
+    public Map<Peptide, PeptideBinding> view() {
+        return Collections.unmodifiableMap(map);
+    }
+}
@@ -0,0 +1,90 @@
+package nfi.bind;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import jam.app.JamProperties;
+
+/**
+ * Limits the number of binding predictions (external prediction
+ * processes) that may execute concurrently, independent of the number
+ * of threads assembling footprint records.
+ */
+public final class PredictorThrottle {
+    private final int permits;
+    private final Semaphore semaphore;
+
+    private static PredictorThrottle global = null;
+
+    /**
+     * Name of the system property that specifies the maximum number
+     * of concurrent binding predictions; the default is the number of
+     * available processors.
+     */
+    public static final String CONCURRENCY_PROPERTY = "nfi.bind.predictorConcurrency";
+
+    private PredictorThrottle(int permits) {
+        if (permits < 1)
+            throw new IllegalArgumentException("Predictor concurrency must be positive.");
+
+        this.permits = permits;
+        this.semaphore = new Semaphore(permits, true);
+    }
+
+    /**
+     * Creates a new throttle with a fixed concurrency limit.
+     *
+     * @param permits the maximum number of concurrent predictions.
+     *
+     * @return a new throttle with the specified limit.
+     */
+    public static PredictorThrottle create(int permits) {
+        return new PredictorThrottle(permits);
+    }
+
+    /**
+     * Returns the global throttle with the concurrency limit specified
+     * by the {@code nfi.bind.predictorConcurrency} system property.
+     *
+     * @return the global predictor throttle.
+     */
+    public static synchronized PredictorThrottle global() {
+        if (global == null)
+            global = create(resolvePermits());
+
+        return global;
+    }
+
+    private static int resolvePermits() {
+        return JamProperties.getOptionalInt(CONCURRENCY_PROPERTY, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Executes a prediction once a permit is available.
+     *
+     * @param <V> the runtime type of the prediction result.
+     *
+     * @param prediction the prediction to execute.
+     *
+     * @return the result of the prediction.
+     */
+    public <V> V execute(Supplier<V> prediction) {
+        semaphore.acquireUninterruptibly();
+
+        try {
+            return prediction.get();
+        }
+        finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Returns the maximum number of concurrent predictions.
+     *
+     * @return the maximum number of concurrent predictions.
+     */
+    public int getPermits() {
+        return permits;
+    }
+}
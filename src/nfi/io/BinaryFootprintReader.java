@@ -0,0 +1,298 @@
+package nfi.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+/**
+ * Reads allele footprint records from the block-compressed columnar
+ * binary files written by {@link BinaryFootprintWriter}.
+ *
+ * <p>Blocks may be scanned column-by-column without creating any
+ * {@code AlleleFootprintRecord} objects: the {@link #next(int...)}
+ * method decodes only the selected columns and skips the compressed
+ * segments for all others.
+ */
+public final class BinaryFootprintReader implements Closeable {
+    private final DataInputStream input;
+    private final String[] columnNames;
+    private final byte[] columnTypes;
+
+    private boolean finished = false;
+
+    private BinaryFootprintReader(DataInputStream input, String[] columnNames, byte[] columnTypes) {
+        this.input = input;
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+    }
+
+    /**
+     * Opens a binary footprint file and reads the file header.
+     *
+     * @param fileName the name of the file to read.
+     *
+     * @return a reader for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file is
+     * not a binary footprint file.
+     */
+    public static BinaryFootprintReader open(String fileName) {
+        try {
+            DataInputStream input =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName))));
+
+            byte[] magic = new byte[BinaryFootprintWriter.MAGIC.length];
+            input.readFully(magic);
+
+            if (!Arrays.equals(magic, BinaryFootprintWriter.MAGIC)) {
+                input.close();
+                throw new IllegalStateException(String.format("[%s] is not a binary footprint file.", fileName));
+            }
+
+            int columnCount = input.readInt();
+            String[] columnNames = new String[columnCount];
+            byte[] columnTypes = new byte[columnCount];
+
+            for (int index = 0; index < columnCount; ++index) {
+                columnNames[index] = input.readUTF();
+                columnTypes[index] = input.readByte();
+            }
+
+            return new BinaryFootprintReader(input, columnNames, columnTypes);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Identifies binary footprint files.
+     *
+     * @param fileName the name of the file to examine.
+     *
+     * @return {@code true} iff the specified file begins with the
+     * binary footprint header.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static boolean isBinary(String fileName) {
+        byte[] magic = new byte[BinaryFootprintWriter.MAGIC.length];
+
+        try (InputStream input = Files.newInputStream(Paths.get(fileName))) {
+            return input.readNBytes(magic, 0, magic.length) == magic.length
+                && Arrays.equals(magic, BinaryFootprintWriter.MAGIC);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reads all records from a binary footprint file.
+     *
+     * @param fileName the name of the file to read.
+     *
+     * @return a list containing all records in the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static List<AlleleFootprintRecord> load(String fileName) {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        try (BinaryFootprintReader reader = open(fileName)) {
+            FootprintBlock block = reader.next();
+
+            while (block != null) {
+                records.addAll(toRecords(block));
+                block = reader.next();
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Creates footprint records from a fully decoded block.
+     *
+     * @param block a block with all columns decoded.
+     *
+     * @return the footprint records in the specified block.
+     */
+    public static List<AlleleFootprintRecord> toRecords(FootprintBlock block) {
+        int pairColumns = AlleleFootprintRecord.PAIR_COLUMN_COUNT;
+        int alleleColumn = pairColumns;
+        int typeColumn = pairColumns + 1;
+
+        String[] pairFields = new String[pairColumns];
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(block.rowCount());
+
+        for (int row = 0; row < block.rowCount(); ++row) {
+            for (int column = 0; column < pairColumns; ++column)
+                pairFields[column] = block.getString(column, row);
+
+            records.add(AlleleFootprintRecord.create(PeptidePairRecord.parse(pairFields, 0),
+                                                     Allele.instance(block.getString(alleleColumn, row)),
+                                                     AlleleFootprintType.valueOf(block.getString(typeColumn, row)),
+                                                     block.getDouble(typeColumn + 1, row),
+                                                     block.getDouble(typeColumn + 2, row),
+                                                     block.getDouble(typeColumn + 3, row),
+                                                     block.getDouble(typeColumn + 4, row),
+                                                     block.getDouble(typeColumn + 5, row)));
+        }
+
+        return records;
+    }
+
+    /**
+     * Returns the names of the columns in the file, which match the
+     * header of the delimited flat file layout.
+     *
+     * @return the names of the columns in the file.
+     */
+    public List<String> getColumnNames() {
+        return List.of(columnNames);
+    }
+
+    /**
+     * Returns the index of a named column.
+     *
+     * @param columnName the name of the column.
+     *
+     * @return the index of the named column.
+     *
+     * @throws RuntimeException unless the file contains the column.
+     */
+    public int columnIndex(String columnName) {
+        for (int index = 0; index < columnNames.length; ++index)
+            if (columnNames[index].equals(columnName))
+                return index;
+
+        throw new IllegalArgumentException(String.format("Unknown column [%s].", columnName));
+    }
+
+    /**
+     * Reads the next block from the file.
+     *
+     * @param columns the indexes of the columns to decode; if no
+     * columns are specified, all columns are decoded.
+     *
+     * @return the next block in the file, or {@code null} if all
+     * blocks have been read.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public FootprintBlock next(int... columns) {
+        if (finished)
+            return null;
+
+        try {
+            int rowCount = input.readInt();
+
+            if (rowCount == 0) {
+                finished = true;
+                return null;
+            }
+
+            boolean[] selected = select(columns);
+
+            int[][] codes = new int[columnNames.length][];
+            String[][] dictionaries = new String[columnNames.length][];
+            double[][] doubles = new double[columnNames.length][];
+
+            for (int column = 0; column < columnNames.length; ++column) {
+                int segmentLength = input.readInt();
+
+                if (!selected[column]) {
+                    input.skipNBytes(segmentLength);
+                    continue;
+                }
+
+                byte[] segment = new byte[segmentLength];
+                input.readFully(segment);
+
+                try (DataInputStream data = inflate(segment)) {
+                    if (columnTypes[column] == BinaryFootprintWriter.STRING_COLUMN) {
+                        dictionaries[column] = readDictionary(data);
+                        codes[column] = readCodes(data, rowCount);
+                    }
+                    else {
+                        doubles[column] = readDoubles(data, rowCount);
+                    }
+                }
+            }
+
+            return new FootprintBlock(rowCount, codes, dictionaries, doubles);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private boolean[] select(int[] columns) {
+        boolean[] selected = new boolean[columnNames.length];
+
+        if (columns.length == 0)
+            Arrays.fill(selected, true);
+
+        for (int column : columns)
+            selected[column] = true;
+
+        return selected;
+    }
+
+    private static DataInputStream inflate(byte[] segment) {
+        return new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(segment))));
+    }
+
+    private static String[] readDictionary(DataInputStream data) throws IOException {
+        String[] dictionary = new String[data.readInt()];
+
+        for (int code = 0; code < dictionary.length; ++code)
+            dictionary[code] = data.readUTF();
+
+        return dictionary;
+    }
+
+    private static int[] readCodes(DataInputStream data, int rowCount) throws IOException {
+        int[] codes = new int[rowCount];
+
+        for (int row = 0; row < rowCount; ++row)
+            codes[row] = data.readInt();
+
+        return codes;
+    }
+
+    private static double[] readDoubles(DataInputStream data, int rowCount) throws IOException {
+        double[] doubles = new double[rowCount];
+
+        for (int row = 0; row < rowCount; ++row)
+            doubles[row] = data.readDouble();
+
+        return doubles;
+    }
+
+    @Override public void close() {
+        try {
+            input.close();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
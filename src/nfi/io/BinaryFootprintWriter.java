@@ -0,0 +1,227 @@
+package nfi.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Writes allele footprint records to a block-compressed columnar
+ * binary file.
+ *
+ * <p>The file begins with an eight-byte magic header and a column
+ * directory (the number of columns followed by the name and type of
+ * each column).  The columns and their names match the delimited flat
+ * file layout: the peptide pair columns, the patient allele and the
+ * footprint type are string columns; the binding quantities,
+ * percentiles and footprint index are double columns.
+ *
+ * <p>Records are then written in blocks of up to {@code BLOCK_ROWS}
+ * rows.  Each block starts with its row count and contains one
+ * independently deflated segment per column (preceded by its
+ * compressed length), so that readers may skip columns they do not
+ * need.  A string segment contains a block-local dictionary followed
+ * by one integer code per row; a double segment contains one double
+ * per row.  A zero row count terminates the file.
+ */
+public final class BinaryFootprintWriter implements FootprintWriter {
+    private final DataOutputStream output;
+
+    private int rowCount = 0;
+    private final StringColumn[] stringColumns;
+    private final double[][] doubleColumns;
+
+    /**
+     * The maximum number of rows in each block.
+     */
+    public static final int BLOCK_ROWS = 65536;
+
+    static final byte[] MAGIC = "NFIFTBL1".getBytes(StandardCharsets.US_ASCII);
+
+    static final byte STRING_COLUMN = 0;
+    static final byte DOUBLE_COLUMN = 1;
+
+    static final int STRING_COLUMN_COUNT = AlleleFootprintRecord.PAIR_COLUMN_COUNT + 2;
+    static final int DOUBLE_COLUMN_COUNT = AlleleFootprintRecord.COLUMN_COUNT - STRING_COLUMN_COUNT;
+
+    private BinaryFootprintWriter(DataOutputStream output) {
+        this.output = output;
+        this.stringColumns = new StringColumn[STRING_COLUMN_COUNT];
+        this.doubleColumns = new double[DOUBLE_COLUMN_COUNT][BLOCK_ROWS];
+
+        for (int index = 0; index < STRING_COLUMN_COUNT; ++index)
+            stringColumns[index] = new StringColumn();
+    }
+
+    /**
+     * Opens a writer for a binary footprint file and writes the file
+     * header.
+     *
+     * @param fileName the name of the file to write.
+     *
+     * @return a writer for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static BinaryFootprintWriter open(String fileName) {
+        try {
+            DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(fileName))));
+
+            BinaryFootprintWriter writer = new BinaryFootprintWriter(output);
+            writer.writeHeader();
+
+            return writer;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        String[] columnNames =
+            AlleleFootprintRecord.DELIM.split(AlleleFootprintRecord.header(), AlleleFootprintRecord.COLUMN_COUNT);
+
+        output.write(MAGIC);
+        output.writeInt(columnNames.length);
+
+        for (int index = 0; index < columnNames.length; ++index) {
+            output.writeUTF(columnNames[index]);
+            output.writeByte(index < STRING_COLUMN_COUNT ? STRING_COLUMN : DOUBLE_COLUMN);
+        }
+    }
+
+    @Override public void write(Collection<AlleleFootprintRecord> records) {
+        try {
+            for (AlleleFootprintRecord record : records)
+                writeRow(record);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void writeRow(AlleleFootprintRecord record) throws IOException {
+        String[] pairFields =
+            AlleleFootprintRecord.DELIM.split(record.getPeptidePairRecord().format(AlleleFootprintRecord.DELIM),
+                                              AlleleFootprintRecord.PAIR_COLUMN_COUNT);
+
+        for (int index = 0; index < pairFields.length; ++index)
+            stringColumns[index].add(pairFields[index]);
+
+        stringColumns[STRING_COLUMN_COUNT - 2].add(record.getPatientAllele().shortKey());
+        stringColumns[STRING_COLUMN_COUNT - 1].add(record.getFootprintType().name());
+
+        doubleColumns[0][rowCount] = record.getNeoBindingQty();
+        doubleColumns[1][rowCount] = record.getNeoBindingPct();
+        doubleColumns[2][rowCount] = record.getSelfBindingQty();
+        doubleColumns[3][rowCount] = record.getSelfBindingPct();
+        doubleColumns[4][rowCount] = record.getFootprintIndex();
+
+        ++rowCount;
+
+        if (rowCount == BLOCK_ROWS)
+            writeBlock();
+    }
+
+    private void writeBlock() throws IOException {
+        if (rowCount == 0)
+            return;
+
+        output.writeInt(rowCount);
+
+        for (StringColumn column : stringColumns)
+            writeSegment(column.encode(rowCount));
+
+        for (double[] column : doubleColumns)
+            writeSegment(encode(column, rowCount));
+
+        for (StringColumn column : stringColumns)
+            column.clear();
+
+        rowCount = 0;
+    }
+
+    private void writeSegment(byte[] segment) throws IOException {
+        output.writeInt(segment.length);
+        output.write(segment);
+    }
+
+    private static byte[] encode(double[] column, int rowCount) throws IOException {
+        SegmentBuilder builder = new SegmentBuilder();
+
+        for (int row = 0; row < rowCount; ++row)
+            builder.data.writeDouble(column[row]);
+
+        return builder.finish();
+    }
+
+    @Override public void close() {
+        try {
+            writeBlock();
+            output.writeInt(0);
+            output.close();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static final class SegmentBuilder {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+
+        private byte[] finish() throws IOException {
+            data.close();
+            deflater.end();
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class StringColumn {
+        private final int[] codes = new int[BLOCK_ROWS];
+        private final Map<String, Integer> dictionary = new LinkedHashMap<String, Integer>();
+        private int rowCount = 0;
+
+        private void add(String value) {
+            Integer code = dictionary.get(value);
+
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(value, code);
+            }
+
+            codes[rowCount++] = code;
+        }
+
+        private byte[] encode(int blockRows) throws IOException {
+            SegmentBuilder builder = new SegmentBuilder();
+            builder.data.writeInt(dictionary.size());
+
+            for (String value : dictionary.keySet())
+                builder.data.writeUTF(value);
+
+            for (int row = 0; row < blockRows; ++row)
+                builder.data.writeInt(codes[row]);
+
+            return builder.finish();
+        }
+
+        private void clear() {
+            dictionary.clear();
+            rowCount = 0;
+        }
+    }
+}
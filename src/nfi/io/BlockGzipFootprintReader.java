@@ -0,0 +1,332 @@
+package nfi.io;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Reads allele footprint records from the block-compressed flat files
+ * written by {@link BlockGzipFootprintWriter}.
+ *
+ * <p>The block index written next to the file locates each compressed
+ * block, so blocks are read, decompressed and parsed in parallel on
+ * the common fork-join pool: sequential reads prefetch a bounded
+ * window of blocks ahead of the caller, and {@link #select} decodes
+ * only the blocks that may contain a given tumor barcode.
+ */
+public final class BlockGzipFootprintReader implements Closeable {
+    private final String fileName;
+    private final FileChannel channel;
+    private final List<BlockGzipIndex.Entry> entries;
+
+    private final int windowSize;
+    private final Deque<CompletableFuture<List<AlleleFootprintRecord>>> window =
+        new ArrayDeque<CompletableFuture<List<AlleleFootprintRecord>>>();
+
+    private int nextBlock = 0;
+
+    private static final byte[] GZIP_MAGIC = { (byte) 0x1f, (byte) 0x8b };
+
+    private BlockGzipFootprintReader(String fileName, FileChannel channel, List<BlockGzipIndex.Entry> entries) {
+        this.fileName = fileName;
+        this.channel = channel;
+        this.entries = entries;
+        this.windowSize = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Opens a block-compressed footprint file for parallel reading.
+     *
+     * @param fileName the name of the file to read.
+     *
+     * @return a reader for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file
+     * has no current block index (see {@link #isIndexed(String)}).
+     */
+    public static BlockGzipFootprintReader open(String fileName) {
+        BlockGzipIndex index = BlockGzipIndex.read(fileName);
+
+        if (index == null)
+            throw new IllegalStateException(String.format("Missing or stale block index for [%s].", fileName));
+
+        try {
+            return new BlockGzipFootprintReader(fileName,
+                                                FileChannel.open(Paths.get(fileName), StandardOpenOption.READ),
+                                                index.entries());
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Identifies gzip-compressed files.
+     *
+     * @param fileName the name of the file to examine.
+     *
+     * @return {@code true} iff the specified file begins with the
+     * gzip header.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static boolean isGzip(String fileName) {
+        byte[] magic = new byte[GZIP_MAGIC.length];
+
+        try (InputStream input = Files.newInputStream(Paths.get(fileName))) {
+            return input.readNBytes(magic, 0, magic.length) == magic.length
+                && magic[0] == GZIP_MAGIC[0]
+                && magic[1] == GZIP_MAGIC[1];
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Identifies block-compressed files with a current block index.
+     *
+     * @param fileName the name of the file to examine.
+     *
+     * @return {@code true} iff the specified file has a block index
+     * that matches its current size.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static boolean isIndexed(String fileName) {
+        return BlockGzipIndex.read(fileName) != null;
+    }
+
+    /**
+     * Reads all records from a gzip-compressed flat footprint file.
+     * Indexed files are decompressed in parallel; other files (for
+     * example, files compressed by {@code gzip}) are read serially.
+     *
+     * @param fileName the name of the file to read.
+     *
+     * @return a list containing all records in the specified file,
+     * in file order.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file
+     * contains improperly formatted records.
+     */
+    public static List<AlleleFootprintRecord> load(String fileName) {
+        if (!isIndexed(fileName))
+            return loadSerial(fileName);
+
+        try (BlockGzipFootprintReader reader = open(fileName)) {
+            List<List<AlleleFootprintRecord>> blocks =
+                reader.entries.parallelStream().map(reader::decode).collect(Collectors.toList());
+
+            List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(reader.recordCount());
+
+            for (List<AlleleFootprintRecord> block : blocks)
+                records.addAll(block);
+
+            return records;
+        }
+    }
+
+    private static List<AlleleFootprintRecord> loadSerial(String fileName) {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        try (BufferedReader reader = openSerial(fileName)) {
+            // Skip the header line...
+            String line = reader.readLine();
+
+            while ((line = reader.readLine()) != null)
+                if (!line.isEmpty())
+                    records.add(AlleleFootprintRecord.parse(line));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return records;
+    }
+
+    /**
+     * Opens a gzip-compressed file (of one or more gzip members) for
+     * serial reading.
+     *
+     * @param fileName the name of the file to read.
+     *
+     * @return a reader for the decompressed contents of the file.
+     *
+     * @throws IOException if any I/O errors occur.
+     */
+    public static BufferedReader openSerial(String fileName) throws IOException {
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(Paths.get(fileName)), 65536),
+                                                        StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the number of compressed blocks in the file.
+     *
+     * @return the number of compressed blocks in the file.
+     */
+    public int blockCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of records in the file.
+     *
+     * @return the number of records in the file.
+     */
+    public int recordCount() {
+        int recordCount = 0;
+
+        for (BlockGzipIndex.Entry entry : entries)
+            recordCount += entry.recordCount;
+
+        return recordCount;
+    }
+
+    /**
+     * Reads the records in the next block, prefetching the blocks
+     * that follow it in parallel.
+     *
+     * @return the records in the next block, in file order, or
+     * {@code null} if all blocks have been read.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file
+     * contains improperly formatted records.
+     */
+    public List<AlleleFootprintRecord> next() {
+        while (window.size() < windowSize && nextBlock < entries.size()) {
+            BlockGzipIndex.Entry entry = entries.get(nextBlock++);
+            window.addLast(CompletableFuture.supplyAsync(() -> decode(entry)));
+        }
+
+        if (window.isEmpty())
+            return null;
+
+        try {
+            return window.removeFirst().join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            else
+                throw ex;
+        }
+    }
+
+    /**
+     * Reads the records for a single tumor barcode, decompressing
+     * only the blocks whose barcode range contains it.  The position
+     * of the sequential reader is unaffected.
+     *
+     * @param barcode the tumor barcode of interest.
+     *
+     * @return the records for the specified barcode, in file order.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file
+     * contains improperly formatted records.
+     */
+    public List<AlleleFootprintRecord> select(TumorBarcode barcode) {
+        List<BlockGzipIndex.Entry> candidates = new ArrayList<BlockGzipIndex.Entry>();
+
+        for (BlockGzipIndex.Entry entry : entries)
+            if (entry.contains(barcode))
+                candidates.add(entry);
+
+        List<List<AlleleFootprintRecord>> blocks =
+            candidates.parallelStream().map(this::decode).collect(Collectors.toList());
+
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (List<AlleleFootprintRecord> block : blocks)
+            for (AlleleFootprintRecord record : block)
+                if (record.getPeptidePairRecord().getTumorBarcode().equals(barcode))
+                    records.add(record);
+
+        return records;
+    }
+
+    private List<AlleleFootprintRecord> decode(BlockGzipIndex.Entry entry) {
+        byte[] text = inflate(readBlock(entry));
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(entry.recordCount);
+
+        int start = 0;
+
+        while (start < text.length) {
+            int end = start;
+
+            while (end < text.length && text[end] != '\n')
+                ++end;
+
+            if (end > start)
+                records.add(AlleleFootprintRecord.parse(new String(text, start, end - start, StandardCharsets.US_ASCII)));
+
+            start = end + 1;
+        }
+
+        if (records.size() != entry.recordCount)
+            throw new IllegalStateException(String.format("Block at offset [%d] of [%s] has [%d] records; expected [%d].",
+                                                          entry.offset, fileName, records.size(), entry.recordCount));
+
+        return records;
+    }
+
+    private byte[] readBlock(BlockGzipIndex.Entry entry) {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+
+        try {
+            while (buffer.hasRemaining())
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0)
+                    throw new IllegalStateException(String.format("[%s] is truncated.", fileName));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return buffer.array();
+    }
+
+    private static byte[] inflate(byte[] block) {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(block), 65536)) {
+            return input.readAllBytes();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override public void close() {
+        for (CompletableFuture<List<AlleleFootprintRecord>> future : window)
+            future.cancel(false);
+
+        window.clear();
+
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
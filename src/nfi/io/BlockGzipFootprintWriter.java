@@ -0,0 +1,215 @@
+package nfi.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.util.OrderedStream;
+
+/**
+ * Writes allele footprint records to a block-compressed delimited flat
+ * file.
+ *
+ * <p>The file is a sequence of independently compressed gzip members:
+ * the first contains the header line and each of the others contains
+ * up to {@code BLOCK_RECORDS} formatted records.  A concatenation of
+ * gzip members is itself a valid gzip file, so the output may be read
+ * by {@code gunzip}, {@code zcat} or {@code GZIPInputStream} as an
+ * ordinary flat file.  Blocks are formatted and compressed in parallel
+ * and written in their original order.
+ *
+ * <p>When the writer is closed it writes a block index next to the
+ * file (see {@link BlockGzipFootprintReader}), which allows readers
+ * to decompress blocks in parallel and to seek to the records for a
+ * single tumor barcode.
+ */
+public final class BlockGzipFootprintWriter implements FootprintWriter {
+    private final String fileName;
+    private final FileChannel channel;
+    private final int threadCount;
+
+    private final List<AlleleFootprintRecord> pending = new ArrayList<AlleleFootprintRecord>();
+    private final List<BlockGzipIndex.Entry> entries = new ArrayList<BlockGzipIndex.Entry>();
+
+    private long offset = 0L;
+
+    /**
+     * The maximum number of records in each compressed block.
+     */
+    public static final int BLOCK_RECORDS = 16384;
+
+    private static final int BYTES_PER_RECORD = 128;
+
+    private BlockGzipFootprintWriter(String fileName, FileChannel channel) {
+        this.fileName = fileName;
+        this.channel = channel;
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Opens a writer for a block-compressed flat footprint file and
+     * writes the header line.  Any existing index for the file is
+     * removed until the writer is closed.
+     *
+     * @param fileName the name of the file to write.
+     *
+     * @return a writer for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static BlockGzipFootprintWriter open(String fileName) {
+        try {
+            BlockGzipIndex.delete(fileName);
+
+            FileChannel channel =
+                FileChannel.open(Paths.get(fileName),
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+
+            BlockGzipFootprintWriter writer = new BlockGzipFootprintWriter(fileName, channel);
+            writer.writeBytes(compress((AlleleFootprintRecord.header() + "\n").getBytes(StandardCharsets.US_ASCII)));
+
+            return writer;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override public void write(Collection<AlleleFootprintRecord> records) {
+        pending.addAll(records);
+
+        // Compress only once there is a full block for every thread,
+        // so that callers writing one small collection at a time still
+        // keep all threads busy...
+        if (pending.size() >= threadCount * BLOCK_RECORDS)
+            flush(false);
+    }
+
+    private void flush(boolean partial) {
+        List<List<AlleleFootprintRecord>> blocks = new ArrayList<List<AlleleFootprintRecord>>();
+
+        int start = 0;
+
+        while (pending.size() - start >= BLOCK_RECORDS || (partial && start < pending.size())) {
+            int end = Math.min(start + BLOCK_RECORDS, pending.size());
+            blocks.add(new ArrayList<AlleleFootprintRecord>(pending.subList(start, end)));
+            start = end;
+        }
+
+        pending.subList(0, start).clear();
+
+        if (blocks.size() == 1)
+            writeBlock(compressBlock(blocks.get(0)));
+        else if (!blocks.isEmpty())
+            OrderedStream.apply(blocks,
+                                block -> compressBlock(block),
+                                block -> writeBlock(block),
+                                threadCount,
+                                2 * threadCount);
+    }
+
+    private static CompressedBlock compressBlock(List<AlleleFootprintRecord> records) {
+        FootprintFormatter formatter = new FootprintFormatter(records.size() * BYTES_PER_RECORD);
+        formatter.appendLines(records);
+
+        ByteBuffer text = formatter.view();
+        byte[] bytes = new byte[text.remaining()];
+        text.get(bytes);
+
+        TumorBarcode minBarcode = barcode(records.get(0));
+        TumorBarcode maxBarcode = minBarcode;
+
+        for (AlleleFootprintRecord record : records) {
+            TumorBarcode barcode = barcode(record);
+
+            if (barcode.compareTo(minBarcode) < 0)
+                minBarcode = barcode;
+
+            if (barcode.compareTo(maxBarcode) > 0)
+                maxBarcode = barcode;
+        }
+
+        return new CompressedBlock(compress(bytes), records.size(), minBarcode, maxBarcode);
+    }
+
+    private static TumorBarcode barcode(AlleleFootprintRecord record) {
+        return record.getPeptidePairRecord().getTumorBarcode();
+    }
+
+    private static byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed, 65536)) {
+            output.write(bytes);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return compressed.toByteArray();
+    }
+
+    private void writeBlock(CompressedBlock block) {
+        entries.add(new BlockGzipIndex.Entry(offset,
+                                             block.bytes.length,
+                                             block.recordCount,
+                                             block.minBarcode,
+                                             block.maxBarcode));
+        writeBytes(block.bytes);
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        offset += bytes.length;
+    }
+
+    @Override public void close() {
+        flush(true);
+
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        new BlockGzipIndex(offset, entries).write(fileName);
+    }
+
+    private static final class CompressedBlock {
+        private final byte[] bytes;
+        private final int recordCount;
+        private final TumorBarcode minBarcode;
+        private final TumorBarcode maxBarcode;
+
+        private CompressedBlock(byte[] bytes, int recordCount, TumorBarcode minBarcode, TumorBarcode maxBarcode) {
+            this.bytes = bytes;
+            this.recordCount = recordCount;
+            this.minBarcode = minBarcode;
+            this.maxBarcode = maxBarcode;
+        }
+    }
+}
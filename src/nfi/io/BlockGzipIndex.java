@@ -0,0 +1,151 @@
+package nfi.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jene.tcga.TumorBarcode;
+
+/**
+ * Locates the blocks (independent gzip members) in a block-compressed
+ * flat footprint file.
+ *
+ * <p>The index is stored next to the data file, with the suffix
+ * {@code .bgzi}, and records the size of the data file that it
+ * describes: an index whose recorded size does not match the data
+ * file is stale and is ignored.  Each entry gives the offset and
+ * compressed length of one block, its record count and the least and
+ * greatest tumor barcodes in the block.
+ */
+final class BlockGzipIndex {
+    private final long dataSize;
+    private final List<Entry> entries;
+
+    private static final byte[] MAGIC = "NFIBGZI1".getBytes(StandardCharsets.US_ASCII);
+    private static final String SUFFIX = ".bgzi";
+
+    BlockGzipIndex(long dataSize, List<Entry> entries) {
+        this.dataSize = dataSize;
+        this.entries = entries;
+    }
+
+    static final class Entry {
+        final long offset;
+        final int length;
+        final int recordCount;
+        final TumorBarcode minBarcode;
+        final TumorBarcode maxBarcode;
+
+        Entry(long offset, int length, int recordCount, TumorBarcode minBarcode, TumorBarcode maxBarcode) {
+            this.offset = offset;
+            this.length = length;
+            this.recordCount = recordCount;
+            this.minBarcode = minBarcode;
+            this.maxBarcode = maxBarcode;
+        }
+
+        boolean contains(TumorBarcode barcode) {
+            return minBarcode.compareTo(barcode) <= 0 && maxBarcode.compareTo(barcode) >= 0;
+        }
+    }
+
+    static Path indexPath(String fileName) {
+        return Paths.get(fileName + SUFFIX);
+    }
+
+    /**
+     * Reads the index for a data file.
+     *
+     * @return the index for the data file, or {@code null} if the
+     * file has no index or the index is stale.
+     */
+    static BlockGzipIndex read(String fileName) {
+        Path indexPath = indexPath(fileName);
+
+        if (!Files.isRegularFile(indexPath))
+            return null;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IllegalStateException(String.format("[%s] is not a block gzip index.", indexPath));
+
+            long dataSize = input.readLong();
+
+            if (dataSize != Files.size(Paths.get(fileName)))
+                return null;
+
+            int entryCount = input.readInt();
+            List<Entry> entries = new ArrayList<Entry>(entryCount);
+
+            for (int index = 0; index < entryCount; ++index)
+                entries.add(new Entry(input.readLong(),
+                                      input.readInt(),
+                                      input.readInt(),
+                                      TumorBarcode.instance(input.readUTF()),
+                                      TumorBarcode.instance(input.readUTF())));
+
+            return new BlockGzipIndex(dataSize, entries);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes this index for a data file (replacing any existing
+     * index atomically).
+     */
+    void write(String fileName) {
+        Path indexPath = indexPath(fileName);
+        Path tempPath = Paths.get(indexPath + ".tmp");
+
+        try {
+            try (DataOutputStream output =
+                 new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                output.write(MAGIC);
+                output.writeLong(dataSize);
+                output.writeInt(entries.size());
+
+                for (Entry entry : entries) {
+                    output.writeLong(entry.offset);
+                    output.writeInt(entry.length);
+                    output.writeInt(entry.recordCount);
+                    output.writeUTF(entry.minBarcode.getKey());
+                    output.writeUTF(entry.maxBarcode.getKey());
+                }
+            }
+
+            Files.move(tempPath, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static void delete(String fileName) {
+        try {
+            Files.deleteIfExists(indexPath(fileName));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+}
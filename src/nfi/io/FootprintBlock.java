@@ -0,0 +1,111 @@
+package nfi.io;
+
+/**
+ * Holds the decoded columns for one block of a binary footprint file.
+ *
+ * <p>String columns are exposed as block-local dictionaries and
+ * integer codes, double columns as primitive arrays; columns that
+ * were not selected when the block was read are {@code null}.
+ */
+public final class FootprintBlock {
+    private final int rowCount;
+    private final int[][] codes;
+    private final String[][] dictionaries;
+    private final double[][] doubles;
+
+    FootprintBlock(int rowCount, int[][] codes, String[][] dictionaries, double[][] doubles) {
+        this.rowCount = rowCount;
+        this.codes = codes;
+        this.dictionaries = dictionaries;
+        this.doubles = doubles;
+    }
+
+    /**
+     * Returns the number of rows in this block.
+     *
+     * @return the number of rows in this block.
+     */
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Identifies columns that were decoded when this block was read.
+     *
+     * @param column the index of the column.
+     *
+     * @return {@code true} iff the specified column was decoded.
+     */
+    public boolean isDecoded(int column) {
+        return codes[column] != null || doubles[column] != null;
+    }
+
+    /**
+     * Returns the dictionary codes for a string column.
+     *
+     * @param column the index of a decoded string column.
+     *
+     * @return the dictionary code for each row in the column (not a
+     * copy, so it must not be modified).
+     */
+    public int[] codes(int column) {
+        return require(codes[column], column);
+    }
+
+    /**
+     * Returns the block-local dictionary for a string column.
+     *
+     * @param column the index of a decoded string column.
+     *
+     * @return the distinct values in the column, indexed by code
+     * (not a copy, so it must not be modified).
+     */
+    public String[] dictionary(int column) {
+        return require(dictionaries[column], column);
+    }
+
+    /**
+     * Returns the values in a double column.
+     *
+     * @param column the index of a decoded double column.
+     *
+     * @return the value for each row in the column (not a copy, so it
+     * must not be modified).
+     */
+    public double[] doubles(int column) {
+        return require(doubles[column], column);
+    }
+
+    /**
+     * Returns a single value from a string column.
+     *
+     * @param column the index of a decoded string column.
+     *
+     * @param row the index of the row.
+     *
+     * @return the value in the specified column and row.
+     */
+    public String getString(int column, int row) {
+        return dictionary(column)[codes(column)[row]];
+    }
+
+    /**
+     * Returns a single value from a double column.
+     *
+     * @param column the index of a decoded double column.
+     *
+     * @param row the index of the row.
+     *
+     * @return the value in the specified column and row.
+     */
+    public double getDouble(int column, int row) {
+        return doubles(column)[row];
+    }
+
+    private static <V> V require(V values, int column) {
+        if (values != null)
+            return values;
+        else
+            throw new IllegalStateException(String.format("Column [%d] was not decoded.", column));
+    }
+}
@@ -0,0 +1,115 @@
+package nfi.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import jam.app.JamLogger;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Converts allele footprint files between the supported formats.
+ */
+public final class FootprintConverter {
+    private FootprintConverter() {}
+
+    private static final int CHUNK_SIZE = BinaryFootprintWriter.BLOCK_ROWS;
+
+    /**
+     * Converts a footprint file to another format.  The format of the
+     * input file is detected from its contents.
+     *
+     * @param inputFile the name of the file to convert.
+     *
+     * @param outputFile the name of the converted file.
+     *
+     * @param outputFormat the format of the converted file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static void convert(String inputFile, String outputFile, FootprintFormat outputFormat) {
+        FootprintFormat inputFormat = FootprintFormat.detect(inputFile);
+        JamLogger.info("Converting [%s] (%s) to [%s] (%s)...", inputFile, inputFormat, outputFile, outputFormat);
+
+        try (FootprintWriter writer = outputFormat.openWriter(outputFile)) {
+            switch (inputFormat) {
+            case TSV:
+                convertText(inputFile, writer);
+                break;
+
+            case BINARY:
+                convertBinary(inputFile, writer);
+                break;
+
+            case TSV_GZIP:
+                convertGzip(inputFile, writer);
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown input format.");
+            }
+        }
+    }
+
+    private static void convertText(String inputFile, FootprintWriter writer) {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(inputFile), StandardCharsets.US_ASCII)) {
+            // Skip the header line...
+            String line = reader.readLine();
+            List<AlleleFootprintRecord> chunk = new ArrayList<AlleleFootprintRecord>(CHUNK_SIZE);
+
+            while ((line = reader.readLine()) != null) {
+                chunk.add(AlleleFootprintRecord.parse(line));
+
+                if (chunk.size() == CHUNK_SIZE) {
+                    writer.write(chunk);
+                    chunk.clear();
+                }
+            }
+
+            writer.write(chunk);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void convertBinary(String inputFile, FootprintWriter writer) {
+        try (BinaryFootprintReader reader = BinaryFootprintReader.open(inputFile)) {
+            FootprintBlock block = reader.next();
+
+            while (block != null) {
+                writer.write(BinaryFootprintReader.toRecords(block));
+                block = reader.next();
+            }
+        }
+    }
+
+    private static void convertGzip(String inputFile, FootprintWriter writer) {
+        try (FootprintRecordReader reader = FootprintRecordReader.open(inputFile)) {
+            List<AlleleFootprintRecord> chunk = reader.next();
+
+            while (chunk != null) {
+                writer.write(chunk);
+                chunk = reader.next();
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: nfi.io.FootprintConverter TSV|TSV_GZIP|BINARY INPUT_FILE OUTPUT_FILE");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3)
+            usage();
+
+        convert(args[1], args[2], FootprintFormat.valueOf(args[0]));
+    }
+}
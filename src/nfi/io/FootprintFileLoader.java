@@ -0,0 +1,565 @@
+package nfi.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import jene.hla.Allele;
+import jene.hugo.HugoSymbol;
+import jene.neo.NeoPeptide;
+import jene.neo.PeptidePairRecord;
+import jene.neo.SelfPeptide;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+/**
+ * Loads delimited flat footprint files in parallel.
+ *
+ * <p>The file is split into line-aligned chunks that are memory-mapped
+ * and parsed on the common fork-join pool.  Fields are parsed in place
+ * from the mapped bytes: decimal values are converted without creating
+ * strings, alleles and footprint types are interned by their bytes,
+ * and consecutive records for the same peptide pair (the common case
+ * in sorted files) share a single {@code PeptidePairRecord}.  The gene
+ * symbols and peptides in those pairs are interned across the whole
+ * file, so that pairs repeated across tumors share their components.
+ *
+ * <p>In projection mode only the selected columns are decoded, into
+ * {@link FootprintBlock} objects (one per chunk) with chunk-local
+ * string dictionaries.
+ */
+public final class FootprintFileLoader {
+    private final Path path;
+    private final Map<FieldKey, Allele> alleles = new ConcurrentHashMap<FieldKey, Allele>();
+    private final Map<FieldKey, AlleleFootprintType> types = new ConcurrentHashMap<FieldKey, AlleleFootprintType>();
+
+    private final Map<HugoSymbol, HugoSymbol> genes = new ConcurrentHashMap<HugoSymbol, HugoSymbol>();
+    private final Map<NeoPeptide, NeoPeptide> neoPeptides = new ConcurrentHashMap<NeoPeptide, NeoPeptide>();
+    private final Map<SelfPeptide, SelfPeptide> selfPeptides = new ConcurrentHashMap<SelfPeptide, SelfPeptide>();
+
+    private static final int COLUMN_COUNT = AlleleFootprintRecord.COLUMN_COUNT;
+    private static final int PAIR_COLUMN_COUNT = AlleleFootprintRecord.PAIR_COLUMN_COUNT;
+    private static final int ALLELE_COLUMN = PAIR_COLUMN_COUNT;
+    private static final int TYPE_COLUMN = PAIR_COLUMN_COUNT + 1;
+    private static final int STRING_COLUMN_COUNT = PAIR_COLUMN_COUNT + 2;
+
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 1L << 28;
+    private static final int BYTES_PER_RECORD = 96;
+
+    private static final double[] POWERS_OF_TEN = {
+        1.0E0,  1.0E1,  1.0E2,  1.0E3,  1.0E4,  1.0E5,  1.0E6,  1.0E7,
+        1.0E8,  1.0E9,  1.0E10, 1.0E11, 1.0E12, 1.0E13, 1.0E14, 1.0E15,
+        1.0E16, 1.0E17, 1.0E18, 1.0E19, 1.0E20, 1.0E21, 1.0E22
+    };
+
+    // Decimal values with at most this many digits are converted by a
+    // single exactly-rounded division, which yields the same result
+    // as Double.parseDouble...
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private FootprintFileLoader(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Loads all records from a flat footprint file.
+     *
+     * @param fileName the name of the (uncompressed) file to load.
+     *
+     * @return a list containing all records in the specified file,
+     * in file order.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file
+     * contains improperly formatted records.
+     */
+    public static List<AlleleFootprintRecord> load(String fileName) {
+        FootprintFileLoader loader = new FootprintFileLoader(Paths.get(fileName));
+        List<List<AlleleFootprintRecord>> chunkRecords = loader.parseChunks(chunk -> loader.parseRecords(chunk));
+
+        int recordCount = 0;
+
+        for (List<AlleleFootprintRecord> records : chunkRecords)
+            recordCount += records.size();
+
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(recordCount);
+
+        for (List<AlleleFootprintRecord> chunk : chunkRecords)
+            records.addAll(chunk);
+
+        return records;
+    }
+
+    /**
+     * Loads selected columns from a flat footprint file.
+     *
+     * @param fileName the name of the (uncompressed) file to load.
+     *
+     * @param columns the indexes of the columns to decode (see
+     * {@link #columnIndex(String)}).
+     *
+     * @return blocks containing the selected columns for all records
+     * in the specified file, in file order.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file
+     * contains improperly formatted records.
+     */
+    public static List<FootprintBlock> project(String fileName, int... columns) {
+        boolean[] selected = new boolean[COLUMN_COUNT];
+
+        for (int column : columns)
+            selected[column] = true;
+
+        FootprintFileLoader loader = new FootprintFileLoader(Paths.get(fileName));
+        return loader.parseChunks(chunk -> loader.parseColumns(chunk, selected));
+    }
+
+    /**
+     * Returns the index of a named column in flat footprint files.
+     *
+     * @param columnName the name of the column (as it appears in the
+     * header line).
+     *
+     * @return the index of the named column.
+     *
+     * @throws RuntimeException unless the column exists.
+     */
+    public static int columnIndex(String columnName) {
+        String[] columnNames =
+            AlleleFootprintRecord.DELIM.split(AlleleFootprintRecord.header(), COLUMN_COUNT);
+
+        for (int index = 0; index < columnNames.length; ++index)
+            if (columnNames[index].equals(columnName))
+                return index;
+
+        throw new IllegalArgumentException(String.format("Unknown column [%s].", columnName));
+    }
+
+    private <V> List<V> parseChunks(Function<ByteBuffer, V> parser) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<ByteBuffer> chunks = mapChunks(channel);
+            return chunks.parallelStream().map(parser).collect(Collectors.toList());
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static List<ByteBuffer> mapChunks(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        long chunkSize = fileSize / (4 * Runtime.getRuntime().availableProcessors());
+
+        chunkSize = Math.max(chunkSize, MIN_CHUNK_SIZE);
+        chunkSize = Math.min(chunkSize, MAX_CHUNK_SIZE);
+
+        List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+        // Skip the header line...
+        long start = nextLine(channel, 0, fileSize);
+
+        while (start < fileSize) {
+            long end = nextLine(channel, Math.min(start + chunkSize, fileSize), fileSize);
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    private static long nextLine(FileChannel channel, long position, long fileSize) throws IOException {
+        //
+        // Returns the position following the first newline at or after
+        // the given position (or the end of the file)...
+        //
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        while (position < fileSize) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+
+            if (count < 0)
+                break;
+
+            for (int index = 0; index < count; ++index)
+                if (buffer.get(index) == '\n')
+                    return position + index + 1;
+
+            position += count;
+        }
+
+        return fileSize;
+    }
+
+    private List<AlleleFootprintRecord> parseRecords(ByteBuffer chunk) {
+        int[] bounds = new int[COLUMN_COUNT + 1];
+        FieldKey probe = new FieldKey();
+
+        byte[] lastPairBytes = null;
+        PeptidePairRecord lastPair = null;
+
+        List<AlleleFootprintRecord> records =
+            new ArrayList<AlleleFootprintRecord>(chunk.limit() / BYTES_PER_RECORD);
+
+        int position = 0;
+
+        while (position < chunk.limit()) {
+            int lineEnd = scanLine(chunk, position, bounds);
+
+            if (lineEnd > position) {
+                int pairEnd = end(bounds, PAIR_COLUMN_COUNT - 1);
+
+                if (lastPairBytes == null || !matches(chunk, position, pairEnd, lastPairBytes)) {
+                    lastPairBytes = copy(chunk, position, pairEnd);
+                    lastPair = parsePair(lastPairBytes);
+                }
+
+                records.add(AlleleFootprintRecord.create(lastPair,
+                                                         internAllele(chunk, bounds, probe),
+                                                         internType(chunk, bounds, probe),
+                                                         parseDouble(chunk, bounds, TYPE_COLUMN + 1),
+                                                         parseDouble(chunk, bounds, TYPE_COLUMN + 2),
+                                                         parseDouble(chunk, bounds, TYPE_COLUMN + 3),
+                                                         parseDouble(chunk, bounds, TYPE_COLUMN + 4),
+                                                         parseDouble(chunk, bounds, TYPE_COLUMN + 5)));
+            }
+
+            position = lineEnd + 1;
+        }
+
+        return records;
+    }
+
+    private FootprintBlock parseColumns(ByteBuffer chunk, boolean[] selected) {
+        int capacity = Math.max(16, chunk.limit() / BYTES_PER_RECORD);
+
+        int[][] codes = new int[COLUMN_COUNT][];
+        double[][] doubles = new double[COLUMN_COUNT][];
+        List<Map<FieldKey, Integer>> dictionaries = new ArrayList<Map<FieldKey, Integer>>(COLUMN_COUNT);
+
+        for (int column = 0; column < COLUMN_COUNT; ++column) {
+            dictionaries.add(null);
+
+            if (!selected[column])
+                continue;
+
+            if (column < STRING_COLUMN_COUNT) {
+                codes[column] = new int[capacity];
+                dictionaries.set(column, new HashMap<FieldKey, Integer>());
+            }
+            else {
+                doubles[column] = new double[capacity];
+            }
+        }
+
+        int[] bounds = new int[COLUMN_COUNT + 1];
+        FieldKey probe = new FieldKey();
+
+        int rowCount = 0;
+        int position = 0;
+
+        while (position < chunk.limit()) {
+            int lineEnd = scanLine(chunk, position, bounds);
+
+            if (lineEnd > position) {
+                if (rowCount == capacity) {
+                    capacity *= 2;
+
+                    for (int column = 0; column < COLUMN_COUNT; ++column) {
+                        if (codes[column] != null)
+                            codes[column] = Arrays.copyOf(codes[column], capacity);
+
+                        if (doubles[column] != null)
+                            doubles[column] = Arrays.copyOf(doubles[column], capacity);
+                    }
+                }
+
+                for (int column = 0; column < COLUMN_COUNT; ++column) {
+                    if (codes[column] != null)
+                        codes[column][rowCount] = encode(chunk, bounds, column, probe, dictionaries.get(column));
+                    else if (doubles[column] != null)
+                        doubles[column][rowCount] = parseDouble(chunk, bounds, column);
+                }
+
+                ++rowCount;
+            }
+
+            position = lineEnd + 1;
+        }
+
+        String[][] dictionaryArrays = new String[COLUMN_COUNT][];
+
+        for (int column = 0; column < COLUMN_COUNT; ++column) {
+            if (codes[column] == null)
+                continue;
+
+            codes[column] = Arrays.copyOf(codes[column], rowCount);
+            dictionaryArrays[column] = new String[dictionaries.get(column).size()];
+
+            for (Map.Entry<FieldKey, Integer> entry : dictionaries.get(column).entrySet())
+                dictionaryArrays[column][entry.getValue()] = entry.getKey().toString();
+        }
+
+        for (int column = 0; column < COLUMN_COUNT; ++column)
+            if (doubles[column] != null)
+                doubles[column] = Arrays.copyOf(doubles[column], rowCount);
+
+        return new FootprintBlock(rowCount, codes, dictionaryArrays, doubles);
+    }
+
+    private static int encode(ByteBuffer chunk, int[] bounds, int column, FieldKey probe, Map<FieldKey, Integer> dictionary) {
+        probe.wrap(chunk, bounds[column], end(bounds, column));
+        Integer code = dictionary.get(probe);
+
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.put(probe.copy(), code);
+        }
+
+        return code;
+    }
+
+    private static int scanLine(ByteBuffer chunk, int position, int[] bounds) {
+        //
+        // Records the starting position of each field in the line
+        // beginning at the given position (plus the position one past
+        // the end of the last field) and returns the position of the
+        // terminating newline (or the end of the chunk)...
+        //
+        int limit = chunk.limit();
+        int field = 1;
+        int index = position;
+
+        bounds[0] = position;
+
+        while (index < limit) {
+            byte b = chunk.get(index);
+
+            if (b == '\n')
+                break;
+
+            if (b == '\t' && field < COLUMN_COUNT)
+                bounds[field++] = index + 1;
+
+            ++index;
+        }
+
+        int lineEnd = index;
+
+        if (lineEnd == position)
+            return lineEnd;
+
+        if (field != COLUMN_COUNT)
+            throw new IllegalStateException(String.format("Invalid footprint record: [%s].",
+                                                          new String(copy(chunk, position, lineEnd), StandardCharsets.US_ASCII)));
+
+        int fieldEnd = lineEnd;
+
+        if (chunk.get(fieldEnd - 1) == '\r')
+            --fieldEnd;
+
+        bounds[COLUMN_COUNT] = fieldEnd + 1;
+        return lineEnd;
+    }
+
+    private static int end(int[] bounds, int column) {
+        return bounds[column + 1] - 1;
+    }
+
+    private static boolean matches(ByteBuffer chunk, int start, int end, byte[] bytes) {
+        if (end - start != bytes.length)
+            return false;
+
+        for (int index = 0; index < bytes.length; ++index)
+            if (chunk.get(start + index) != bytes[index])
+                return false;
+
+        return true;
+    }
+
+    private static byte[] copy(ByteBuffer chunk, int start, int end) {
+        byte[] bytes = new byte[end - start];
+
+        for (int index = 0; index < bytes.length; ++index)
+            bytes[index] = chunk.get(start + index);
+
+        return bytes;
+    }
+
+    private PeptidePairRecord parsePair(byte[] pairBytes) {
+        String pairText = new String(pairBytes, StandardCharsets.US_ASCII);
+        String[] pairFields = AlleleFootprintRecord.DELIM.split(pairText, PAIR_COLUMN_COUNT);
+
+        PeptidePairRecord pair = PeptidePairRecord.parse(pairFields, 0);
+
+        return PeptidePairRecord.instance(pair.getTumorBarcode(),
+                                          intern(genes, pair.getHugoSymbol()),
+                                          pair.getPeptideRange(),
+                                          intern(selfPeptides, pair.getSelfPeptide()),
+                                          intern(neoPeptides, pair.getNeoPeptide()));
+    }
+
+    private static <V> V intern(Map<V, V> canonical, V value) {
+        V existing = canonical.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    private Allele internAllele(ByteBuffer chunk, int[] bounds, FieldKey probe) {
+        probe.wrap(chunk, bounds[ALLELE_COLUMN], end(bounds, ALLELE_COLUMN));
+        Allele allele = alleles.get(probe);
+
+        if (allele == null)
+            allele = alleles.computeIfAbsent(probe.copy(), key -> Allele.instance(key.toString()));
+
+        return allele;
+    }
+
+    private AlleleFootprintType internType(ByteBuffer chunk, int[] bounds, FieldKey probe) {
+        probe.wrap(chunk, bounds[TYPE_COLUMN], end(bounds, TYPE_COLUMN));
+        AlleleFootprintType type = types.get(probe);
+
+        if (type == null)
+            type = types.computeIfAbsent(probe.copy(), key -> AlleleFootprintType.valueOf(key.toString()));
+
+        return type;
+    }
+
+    private static double parseDouble(ByteBuffer chunk, int[] bounds, int column) {
+        return parseDouble(chunk, bounds[column], end(bounds, column));
+    }
+
+    /**
+     * Parses a decimal value from a range of bytes, returning the same
+     * result as {@code Double.parseDouble}.
+     *
+     * @param buffer the buffer containing the text.
+     *
+     * @param start the index of the first character.
+     *
+     * @param end the index one past the last character.
+     *
+     * @return the parsed value.
+     *
+     * @throws NumberFormatException unless the bytes contain a valid
+     * floating-point value.
+     */
+    static double parseDouble(ByteBuffer buffer, int start, int end) {
+        int index = start;
+        boolean negative = false;
+
+        if (index < end && (buffer.get(index) == '-' || buffer.get(index) == '+')) {
+            negative = buffer.get(index) == '-';
+            ++index;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+
+        for (; index < end; ++index) {
+            byte b = buffer.get(index);
+
+            if (b >= '0' && b <= '9') {
+                if (++digits > MAX_FAST_DIGITS)
+                    return parseSlow(buffer, start, end);
+
+                mantissa = 10 * mantissa + (b - '0');
+
+                if (point)
+                    ++fractionDigits;
+            }
+            else if (b == '.' && !point) {
+                point = true;
+            }
+            else {
+                // Exponents, NaN, Infinity...
+                return parseSlow(buffer, start, end);
+            }
+        }
+
+        if (digits == 0)
+            return parseSlow(buffer, start, end);
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(ByteBuffer buffer, int start, int end) {
+        return Double.parseDouble(new String(copy(buffer, start, end), StandardCharsets.US_ASCII));
+    }
+
+    // -----------------------------------------------------------------
+
+    /**
+     * A hash key for a field value that either views a range of bytes
+     * in a mapped buffer (a reusable probe) or owns a copy of them.
+     */
+    private static final class FieldKey {
+        private ByteBuffer buffer;
+        private int start;
+        private int length;
+        private int hash;
+
+        private void wrap(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = end - start;
+
+            int h = 1;
+
+            for (int index = 0; index < length; ++index)
+                h = 31 * h + buffer.get(start + index);
+
+            this.hash = h;
+        }
+
+        private FieldKey copy() {
+            FieldKey key = new FieldKey();
+
+            key.buffer = ByteBuffer.wrap(FootprintFileLoader.copy(buffer, start, start + length));
+            key.start = 0;
+            key.length = length;
+            key.hash = hash;
+
+            return key;
+        }
+
+        @Override public boolean equals(Object obj) {
+            if (!(obj instanceof FieldKey))
+                return false;
+
+            FieldKey that = (FieldKey) obj;
+
+            if (this.hash != that.hash || this.length != that.length)
+                return false;
+
+            for (int index = 0; index < length; ++index)
+                if (this.buffer.get(this.start + index) != that.buffer.get(that.start + index))
+                    return false;
+
+            return true;
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+
+        @Override public String toString() {
+            return new String(FootprintFileLoader.copy(buffer, start, start + length), StandardCharsets.US_ASCII);
+        }
+    }
+}
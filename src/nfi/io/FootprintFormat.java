@@ -0,0 +1,108 @@
+package nfi.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Enumerates the supported file formats for allele footprint records.
+ */
+public enum FootprintFormat {
+    /**
+     * Delimited flat files with the layout defined by the methods
+     * {@code header()}, {@code format()} and {@code parse()} in
+     * {@link nfi.model.AlleleFootprintRecord}.
+     */
+    TSV {
+        @Override public FootprintWriter openWriter(String fileName) {
+            return TextFootprintWriter.open(fileName);
+        }
+    },
+
+    /**
+     * Block-compressed columnar binary files read and written by
+     * {@link BinaryFootprintReader} and {@link BinaryFootprintWriter}.
+     */
+    BINARY {
+        @Override public FootprintWriter openWriter(String fileName) {
+            return BinaryFootprintWriter.open(fileName);
+        }
+    },
+
+    /**
+     * Delimited flat files compressed as a sequence of independent
+     * gzip members (readable by any gzip tool), with a block index,
+     * written by {@link BlockGzipFootprintWriter} and read by
+     * {@link BlockGzipFootprintReader}.
+     */
+    TSV_GZIP {
+        @Override public FootprintWriter openWriter(String fileName) {
+            return BlockGzipFootprintWriter.open(fileName);
+        }
+
+        @Override public void move(String source, String target) {
+            BlockGzipIndex.delete(target);
+            super.move(source, target);
+
+            if (Files.exists(BlockGzipIndex.indexPath(source)))
+                moveFile(BlockGzipIndex.indexPath(source), BlockGzipIndex.indexPath(target));
+        }
+    };
+
+    /**
+     * Opens a writer for a footprint file in this format (overwriting
+     * any existing file).
+     *
+     * @param fileName the name of the file to write.
+     *
+     * @return a writer for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public abstract FootprintWriter openWriter(String fileName);
+
+    /**
+     * Renames a footprint file in this format, together with any
+     * index that accompanies it, replacing any existing file.
+     *
+     * @param source the name of the file to rename.
+     *
+     * @param target the new name of the file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void move(String source, String target) {
+        moveFile(Paths.get(source), Paths.get(target));
+    }
+
+    private static void moveFile(Path source, Path target) {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Identifies the format of an existing footprint file from its
+     * leading bytes.
+     *
+     * @param fileName the name of the file to examine.
+     *
+     * @return the format of the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static FootprintFormat detect(String fileName) {
+        if (BinaryFootprintReader.isBinary(fileName))
+            return BINARY;
+        else if (BlockGzipFootprintReader.isGzip(fileName))
+            return TSV_GZIP;
+        else
+            return TSV;
+    }
+}
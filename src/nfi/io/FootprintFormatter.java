@@ -0,0 +1,241 @@
+package nfi.io;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+import jene.neo.PeptidePairRecord;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Formats allele footprint records into a reusable ASCII byte buffer.
+ *
+ * <p>The output is byte-for-byte identical to the text produced by
+ * {@link AlleleFootprintRecord#format()}, but the binding quantities
+ * are written by a fixed-precision decimal writer instead of
+ * {@code java.util.Formatter}, and the formatted peptide pair record
+ * is reused across consecutive records for the same pair (which is
+ * the common case, since records are sorted by peptide pair first).
+ *
+ * <p>Instances are not thread-safe; each thread must use its own.
+ */
+public final class FootprintFormatter {
+    private byte[] buffer;
+    private int length;
+
+    private PeptidePairRecord lastPair;
+    private String lastPairText;
+
+    private static final byte DELIM = (byte) '\t';
+    private static final byte NEWLINE = (byte) '\n';
+
+    private static final int QTY_PRECISION = 2;
+    private static final int INDEX_PRECISION = 4;
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+    };
+
+    // Scaled values at or above this limit (or within the tolerance
+    // of a rounding tie) are formatted by the exact, slower method.
+    // Below the limit the error in the scaled product (about 1e-16
+    // relative) stays well inside the tie tolerance...
+    private static final double FAST_LIMIT = 1.0E9;
+    private static final double TIE_TOLERANCE = 1.0E-6;
+
+    /**
+     * Creates a new formatter with an initial buffer capacity.
+     *
+     * @param capacity the initial buffer capacity in bytes.
+     */
+    public FootprintFormatter(int capacity) {
+        this.buffer = new byte[Math.max(capacity, 256)];
+        this.length = 0;
+    }
+
+    /**
+     * Discards the formatted contents of the buffer (but retains its
+     * capacity).
+     */
+    public void reset() {
+        length = 0;
+    }
+
+    /**
+     * Returns the number of formatted bytes in the buffer.
+     *
+     * @return the number of formatted bytes in the buffer.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the formatted contents of the buffer as a byte buffer
+     * view (not a copy, so it is only valid until the next call to
+     * any other method).
+     *
+     * @return the formatted contents of the buffer.
+     */
+    public ByteBuffer view() {
+        return ByteBuffer.wrap(buffer, 0, length);
+    }
+
+    /**
+     * Returns the formatted contents of the buffer as a string.
+     *
+     * @return the formatted contents of the buffer.
+     */
+    @Override public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Appends formatted records to the buffer, each followed by a
+     * newline character.
+     *
+     * @param records the records to format.
+     */
+    public void appendLines(Collection<AlleleFootprintRecord> records) {
+        for (AlleleFootprintRecord record : records)
+            appendLine(record);
+    }
+
+    /**
+     * Appends a formatted record to the buffer, followed by a newline
+     * character.
+     *
+     * @param record the record to format.
+     */
+    public void appendLine(AlleleFootprintRecord record) {
+        append(record);
+        append(NEWLINE);
+    }
+
+    /**
+     * Appends a formatted record to the buffer.
+     *
+     * @param record the record to format.
+     */
+    public void append(AlleleFootprintRecord record) {
+        append(formatPair(record.getPeptidePairRecord()));
+        append(DELIM);
+        append(record.getPatientAllele().shortKey());
+        append(DELIM);
+        append(record.getFootprintType().name());
+        append(DELIM);
+        appendFixed(record.getNeoBindingQty(), QTY_PRECISION);
+        append(DELIM);
+        appendFixed(record.getNeoBindingPct(), QTY_PRECISION);
+        append(DELIM);
+        appendFixed(record.getSelfBindingQty(), QTY_PRECISION);
+        append(DELIM);
+        appendFixed(record.getSelfBindingPct(), QTY_PRECISION);
+        append(DELIM);
+        appendFixed(record.getFootprintIndex(), INDEX_PRECISION);
+    }
+
+    private String formatPair(PeptidePairRecord pairRecord) {
+        if (pairRecord != lastPair) {
+            lastPair = pairRecord;
+            lastPairText = pairRecord.format(AlleleFootprintRecord.DELIM);
+        }
+
+        return lastPairText;
+    }
+
+    /**
+     * Appends a double value with a fixed number of decimal places,
+     * producing the same text as {@code String.format("%.nf", value)}
+     * (which rounds half-up on the shortest decimal representation).
+     *
+     * @param value the value to format.
+     *
+     * @param precision the number of decimal places (at most eight).
+     */
+    public void appendFixed(double value, int precision) {
+        if (Double.isNaN(value)) {
+            append("NaN");
+            return;
+        }
+
+        // Negative zero is formatted with a minus sign...
+        boolean negative = Double.doubleToRawLongBits(value) < 0;
+
+        if (Double.isInfinite(value)) {
+            append(negative ? "-Infinity" : "Infinity");
+            return;
+        }
+
+        long scale = POWERS_OF_TEN[precision];
+        double magnitude = Math.abs(value);
+        double scaled = magnitude * scale;
+
+        if (scaled < FAST_LIMIT) {
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+
+            if (Math.abs(fraction - 0.5) > TIE_TOLERANCE) {
+                long units = (long) floor;
+
+                if (fraction > 0.5)
+                    ++units;
+
+                if (negative)
+                    append((byte) '-');
+
+                appendDigits(units / scale, 1);
+                append((byte) '.');
+                appendDigits(units % scale, precision);
+                return;
+            }
+        }
+
+        if (negative)
+            append((byte) '-');
+
+        append(new BigDecimal(Double.toString(magnitude)).setScale(precision, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    private void appendDigits(long value, int minDigits) {
+        int digits = 1;
+        long limit = 10;
+
+        while (digits < 19 && value >= limit) {
+            ++digits;
+            limit *= 10;
+        }
+
+        digits = Math.max(digits, minDigits);
+        ensureCapacity(digits);
+
+        for (int index = length + digits - 1; index >= length; --index) {
+            buffer[index] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+
+        length += digits;
+    }
+
+    private void append(String text) {
+        int textLength = text.length();
+        ensureCapacity(textLength);
+
+        for (int index = 0; index < textLength; ++index)
+            buffer[length++] = (byte) text.charAt(index);
+    }
+
+    private void append(byte value) {
+        ensureCapacity(1);
+        buffer[length++] = value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + extra));
+    }
+}
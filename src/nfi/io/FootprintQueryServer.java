@@ -0,0 +1,280 @@
+package nfi.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jam.app.JamLogger;
+import jam.app.JamProperties;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Serves queries against a {@link FootprintQueryStore} over HTTP on the
+ * loopback interface.
+ *
+ * <p>The endpoints mirror the query methods of the store and return
+ * tab-delimited text: {@code /select}, {@code /top?count=N},
+ * {@code /range?lower=X&upper=Y} and {@code /barcodes?threshold=T}
+ * return footprint records (with the standard header line) or tumor
+ * barcodes (one per line).  Every endpoint accepts the optional
+ * filter parameters {@code barcode}, {@code allele}, {@code gene} and
+ * {@code type}.
+ *
+ * <p>Every endpoint also accepts the optional parameter {@code limit},
+ * the maximum number of records (or barcodes) to return.  Requests
+ * without a limit are given the default limit, and requests for more
+ * than the maximum limit are rejected.  Responses that were cut short
+ * by the limit carry the header {@code X-Truncated: true}.  Responses
+ * are streamed to the client as they are formatted.
+ */
+public final class FootprintQueryServer {
+    private final FootprintQueryStore store;
+    private final int defaultLimit;
+    private final int maxLimit;
+
+    private static final String CONTENT_TYPE = "text/tab-separated-values; charset=utf-8";
+
+    private static final ThreadFactory DAEMON_FACTORY = runnable -> {
+        Thread thread = new Thread(runnable, "FootprintQueryServer");
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    /**
+     * Name of the response header that marks a response truncated by
+     * the record limit.
+     */
+    public static final String TRUNCATED_HEADER = "X-Truncated";
+
+    /**
+     * Name of the system property that specifies the number of records
+     * returned by requests without a {@code limit} parameter.
+     */
+    public static final String RECORD_LIMIT_PROPERTY = "FootprintQueryServer.recordLimit";
+
+    /**
+     * Default value for the record limit property.
+     */
+    public static final int DEFAULT_RECORD_LIMIT = 1000;
+
+    /**
+     * Name of the system property that specifies the largest
+     * {@code limit} parameter accepted.
+     */
+    public static final String MAX_RECORD_LIMIT_PROPERTY = "FootprintQueryServer.maxRecordLimit";
+
+    /**
+     * Default value for the maximum record limit property.
+     */
+    public static final int DEFAULT_MAX_RECORD_LIMIT = 100000;
+
+    private FootprintQueryServer(FootprintQueryStore store) {
+        this.store = store;
+        this.maxLimit = resolveMaxLimit();
+        this.defaultLimit = resolveDefaultLimit(maxLimit);
+    }
+
+    private static int resolveMaxLimit() {
+        int maxLimit = JamProperties.getOptionalInt(MAX_RECORD_LIMIT_PROPERTY, DEFAULT_MAX_RECORD_LIMIT);
+
+        if (maxLimit < 1)
+            throw new IllegalArgumentException(String.format("Invalid maximum limit: [%d].", maxLimit));
+
+        return maxLimit;
+    }
+
+    private static int resolveDefaultLimit(int maxLimit) {
+        int defaultLimit = JamProperties.getOptionalInt(RECORD_LIMIT_PROPERTY, Math.min(DEFAULT_RECORD_LIMIT, maxLimit));
+
+        if (defaultLimit < 1 || defaultLimit > maxLimit)
+            throw new IllegalArgumentException(String.format("Invalid default limit: [%d].", defaultLimit));
+
+        return defaultLimit;
+    }
+
+    /**
+     * Starts serving queries against a store; the server runs until
+     * it is stopped or the process exits.
+     *
+     * @param store the store to query.
+     *
+     * @param port the local port number (or zero to choose any free
+     * port).
+     *
+     * @return the running server.
+     *
+     * @throws RuntimeException if the server cannot be started.
+     */
+    public static HttpServer serve(FootprintQueryStore store, int port) {
+        FootprintQueryServer server = new FootprintQueryServer(store);
+
+        try {
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+            httpServer.createContext("/", server::handle);
+            //
+            // The server's own dispatcher thread keeps the process alive;
+            // the handler threads are daemons so that a stopped server
+            // leaves nothing running...
+            //
+            httpServer.setExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), DAEMON_FACTORY));
+            httpServer.start();
+
+            JamLogger.info("Serving [%d] footprint records on port [%d]...", store.size(), httpServer.getAddress().getPort());
+            return httpServer;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+
+        int limit;
+        List<AlleleFootprintRecord> records = null;
+        List<TumorBarcode> barcodes = null;
+
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            FootprintQueryStore.Filter filter = FootprintQueryStore.Filter.parse(params);
+
+            limit = parseLimit(params);
+
+            //
+            // One record beyond the limit is requested to detect (and
+            // report) truncation...
+            //
+            switch (path) {
+            case "/select":
+                records = store.select(filter, limit + 1);
+                break;
+
+            case "/top":
+                records = store.top(Math.min(Integer.parseInt(require(params, "count")), limit + 1), filter);
+                break;
+
+            case "/range":
+                records = store.range(Double.parseDouble(require(params, "lower")),
+                                      Double.parseDouble(require(params, "upper")),
+                                      filter, limit + 1);
+                break;
+
+            case "/barcodes":
+                barcodes = store.barcodesAbove(Double.parseDouble(require(params, "threshold")), filter);
+                break;
+
+            default:
+                respond(exchange, 404, "Unknown endpoint.\n");
+                return;
+            }
+        }
+        catch (RuntimeException ex) {
+            respond(exchange, 400, ex.getMessage() + "\n");
+            return;
+        }
+
+        if (records != null)
+            stream(exchange, AlleleFootprintRecord.header(), records, AlleleFootprintRecord::format, limit);
+        else
+            stream(exchange, null, barcodes, TumorBarcode::getKey, limit);
+    }
+
+    private int parseLimit(Map<String, String> params) {
+        String value = params.get("limit");
+
+        if (value == null)
+            return defaultLimit;
+
+        int limit = Integer.parseInt(value);
+
+        if (limit < 1 || limit > maxLimit)
+            throw new IllegalArgumentException(String.format("Limit must be between 1 and [%d].", maxLimit));
+
+        return limit;
+    }
+
+    private static String require(Map<String, String> params, String name) {
+        String value = params.get(name);
+
+        if (value == null)
+            throw new IllegalArgumentException(String.format("Missing parameter [%s].", name));
+
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<String, String>();
+
+        if (rawQuery == null || rawQuery.isEmpty())
+            return params;
+
+        for (String term : rawQuery.split("&")) {
+            String[] pair = term.split("=", 2);
+
+            params.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                       pair.length == 2 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+        }
+
+        return params;
+    }
+
+    private static <T> void stream(HttpExchange exchange,
+                                   String header,
+                                   List<T> items,
+                                   Function<T, String> formatter,
+                                   int limit) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+
+        if (items.size() > limit)
+            exchange.getResponseHeaders().set(TRUNCATED_HEADER, "true");
+
+        //
+        // A zero response length selects chunked transfer encoding, so
+        // the body is never held in memory as a whole...
+        //
+        exchange.sendResponseHeaders(200, 0);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            if (header != null) {
+                writer.write(header);
+                writer.write('\n');
+            }
+
+            for (int index = 0; index < Math.min(limit, items.size()); ++index) {
+                writer.write(formatter.apply(items.get(index)));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
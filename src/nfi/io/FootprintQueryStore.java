@@ -0,0 +1,1132 @@
+package nfi.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import jam.app.JamLogger;
+
+import jene.hla.Allele;
+import jene.hugo.HugoSymbol;
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.util.IndexSort;
+
+/**
+ * Answers interactive queries over a scored cohort from an indexed,
+ * memory-mapped store of allele footprint records.
+ *
+ * <p>The store is built once from a footprint file (in either format)
+ * and then opened read-only by any number of processes.  Records are
+ * stored in fixed-width rows grouped by tumor barcode (in their
+ * original order within each barcode), with the barcode, allele, gene
+ * and footprint type of each row encoded against sorted dictionaries.
+ * The store contains:
+ *
+ * <ul>
+ * <li>the row range for each tumor barcode;</li>
+ * <li>a posting list (ascending row numbers) for each allele, gene
+ * and footprint type;</li>
+ * <li>the row numbers and footprint index values of all rows in
+ * descending order of the footprint index (with missing values last),
+ * for top-N and range queries.</li>
+ * </ul>
+ *
+ * <p>Only the small dictionaries are read into memory when the store
+ * is opened; everything else is paged in by the operating system as
+ * it is queried (and the mappings are released when the store is
+ * garbage collected).  Stores are limited to about 268 million
+ * records.
+ */
+public final class FootprintQueryStore {
+    private final int recordCount;
+
+    private final String[][] dictionaries;
+    private final List<Map<String, Integer>> dictionaryCodes;
+
+    private final LongBuffer pairOffsets;
+    private final ByteBuffer pairBytes;
+    private final ByteBuffer[] rowSegments;
+    private final IntBuffer barcodeOffsets;
+    private final IntBuffer[] postingOffsets;
+    private final IntBuffer[] postingRows;
+    private final IntBuffer valueRows;
+    private final DoubleBuffer valueKeys;
+
+    static final byte[] MAGIC = "NFIQSTR1".getBytes(StandardCharsets.US_ASCII);
+
+    //
+    // Dictionary (key) columns...
+    //
+    private static final int BARCODE = 0;
+    private static final int ALLELE = 1;
+    private static final int GENE = 2;
+    private static final int TYPE = 3;
+    private static final int KEY_COUNT = 4;
+
+    //
+    // Row layout: the pair code and the four key codes, followed by
+    // the binding quantities, percentiles and footprint index...
+    //
+    private static final int PAIR_OFFSET = 0;
+    private static final int KEY_OFFSET = 4;
+    private static final int DOUBLE_OFFSET = KEY_OFFSET + 4 * KEY_COUNT;
+    private static final int FOOTPRINT_INDEX_OFFSET = DOUBLE_OFFSET + 8 * 4;
+    private static final int ROW_BYTES = FOOTPRINT_INDEX_OFFSET + 8;
+
+    private static final int SEGMENT_BITS = 24;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+    //
+    // File sections (in file order)...
+    //
+    private static final int DICTIONARY_SECTION = 0;
+    private static final int PAIR_OFFSET_SECTION = 1;
+    private static final int PAIR_BYTE_SECTION = 2;
+    private static final int ROW_SECTION = 3;
+    private static final int BARCODE_OFFSET_SECTION = 4;
+    private static final int POSTING_SECTION = 5; // Offsets and rows for ALLELE, GENE, TYPE
+    private static final int VALUE_ROW_SECTION = POSTING_SECTION + 2 * (KEY_COUNT - 1);
+    private static final int VALUE_KEY_SECTION = VALUE_ROW_SECTION + 1;
+    private static final int SECTION_COUNT = VALUE_KEY_SECTION + 1;
+
+    private static final int HEADER_BYTES = MAGIC.length + 4 + 8 * (SECTION_COUNT + 1);
+
+    //
+    // When a filtered top-N query has more candidate rows than this
+    // fraction of the store, the value index is scanned instead...
+    //
+    private static final int SCAN_FRACTION = 16;
+
+    private FootprintQueryStore(Path path, FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_BYTES)
+            throw new IllegalStateException(String.format("File [%s] is not a footprint query store.", path));
+
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        byte[] magic = new byte[MAGIC.length];
+
+        header.get(magic);
+
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IllegalStateException(String.format("File [%s] is not a footprint query store.", path));
+
+        this.recordCount = header.getInt();
+
+        long[] sections = new long[SECTION_COUNT + 1];
+
+        for (int section = 0; section <= SECTION_COUNT; ++section)
+            sections[section] = header.getLong();
+
+        if (sections[SECTION_COUNT] != channel.size())
+            throw new IllegalStateException(String.format("Footprint query store [%s] is truncated.", path));
+
+        this.dictionaries = readDictionaries(map(channel, sections, DICTIONARY_SECTION));
+        this.dictionaryCodes = new ArrayList<Map<String, Integer>>(KEY_COUNT);
+
+        for (String[] dictionary : dictionaries)
+            dictionaryCodes.add(codeMap(dictionary));
+
+        this.pairOffsets = map(channel, sections, PAIR_OFFSET_SECTION).asLongBuffer();
+        this.pairBytes = map(channel, sections, PAIR_BYTE_SECTION);
+        this.rowSegments = mapRows(channel, sections[ROW_SECTION]);
+        this.barcodeOffsets = map(channel, sections, BARCODE_OFFSET_SECTION).asIntBuffer();
+
+        this.postingOffsets = new IntBuffer[KEY_COUNT];
+        this.postingRows = new IntBuffer[KEY_COUNT];
+
+        for (int key = ALLELE; key < KEY_COUNT; ++key) {
+            postingOffsets[key] = map(channel, sections, postingSection(key)).asIntBuffer();
+            postingRows[key] = map(channel, sections, postingSection(key) + 1).asIntBuffer();
+        }
+
+        this.valueRows = map(channel, sections, VALUE_ROW_SECTION).asIntBuffer();
+        this.valueKeys = map(channel, sections, VALUE_KEY_SECTION).asDoubleBuffer();
+    }
+
+    private static int postingSection(int key) {
+        return POSTING_SECTION + 2 * (key - ALLELE);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long[] sections, int section) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, sections[section], sections[section + 1] - sections[section]);
+    }
+
+    private ByteBuffer[] mapRows(FileChannel channel, long start) throws IOException {
+        //
+        // The row section may exceed the two-gigabyte limit on a
+        // single mapping, so it is mapped in fixed-size segments...
+        //
+        int segmentCount = (recordCount + SEGMENT_MASK) >>> SEGMENT_BITS;
+        ByteBuffer[] segments = new ByteBuffer[segmentCount];
+
+        for (int segment = 0; segment < segmentCount; ++segment) {
+            long firstRow = (long) segment << SEGMENT_BITS;
+            long rowCount = Math.min(recordCount - firstRow, 1L << SEGMENT_BITS);
+
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, start + firstRow * ROW_BYTES, rowCount * ROW_BYTES);
+        }
+
+        return segments;
+    }
+
+    private static String[][] readDictionaries(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        String[][] dictionaries = new String[KEY_COUNT][];
+
+        for (int key = 0; key < KEY_COUNT; ++key) {
+            dictionaries[key] = new String[input.readInt()];
+
+            for (int code = 0; code < dictionaries[key].length; ++code)
+                dictionaries[key][code] = input.readUTF();
+        }
+
+        return dictionaries;
+    }
+
+    private static Map<String, Integer> codeMap(String[] dictionary) {
+        Map<String, Integer> codes = new HashMap<String, Integer>(2 * dictionary.length);
+
+        for (int code = 0; code < dictionary.length; ++code)
+            codes.put(dictionary[code], code);
+
+        return codes;
+    }
+
+    /**
+     * Builds a query store from a footprint file.  The format of the
+     * footprint file is detected from its contents.
+     *
+     * @param footprintFile the name of the footprint file.
+     *
+     * @param storeFile the name of the store file to write.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static void build(String footprintFile, String storeFile) {
+        JamLogger.info("Loading [%s]...", footprintFile);
+        List<AlleleFootprintRecord> records;
+
+        switch (FootprintFormat.detect(footprintFile)) {
+        case BINARY:
+            records = BinaryFootprintReader.load(footprintFile);
+            break;
+
+        case TSV_GZIP:
+            records = BlockGzipFootprintReader.load(footprintFile);
+            break;
+
+        default:
+            records = FootprintFileLoader.load(footprintFile);
+        }
+
+        build(records, storeFile);
+    }
+
+    /**
+     * Builds a query store from a collection of footprint records.
+     *
+     * @param records the records to store.
+     *
+     * @param storeFile the name of the store file to write.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static void build(Collection<AlleleFootprintRecord> records, String storeFile) {
+        JamLogger.info("Building query store [%s] for [%d] records...", storeFile, records.size());
+        Builder builder = new Builder(new ArrayList<AlleleFootprintRecord>(records));
+
+        Path path = Paths.get(storeFile);
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            builder.write(tempPath);
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Opens an existing query store.
+     *
+     * @param storeFile the name of the store file.
+     *
+     * @return the opened store.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file is
+     * not a valid query store.
+     */
+    public static FootprintQueryStore open(String storeFile) {
+        Path path = Paths.get(storeFile);
+
+        //
+        // The mappings remain valid after the channel is closed...
+        //
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new FootprintQueryStore(path, channel);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns the number of records in this store.
+     *
+     * @return the number of records in this store.
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the tumor barcodes in this store.
+     *
+     * @return the tumor barcodes in this store, in sorted order.
+     */
+    public List<TumorBarcode> listBarcodes() {
+        List<TumorBarcode> barcodes = new ArrayList<TumorBarcode>(dictionaries[BARCODE].length);
+
+        for (String barcode : dictionaries[BARCODE])
+            barcodes.add(TumorBarcode.instance(barcode));
+
+        return barcodes;
+    }
+
+    /**
+     * Finds all records that match a filter.
+     *
+     * @param filter the record filter.
+     *
+     * @return all matching records, grouped by tumor barcode (in
+     * sorted order) and in their original order within each barcode.
+     */
+    public List<AlleleFootprintRecord> select(Filter filter) {
+        return select(filter, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the first records that match a filter.
+     *
+     * @param filter the record filter.
+     *
+     * @param limit the maximum number of records to return.
+     *
+     * @return the first {@code limit} matching records, in the order
+     * of {@link #select(Filter)}.
+     */
+    public List<AlleleFootprintRecord> select(Filter filter, int limit) {
+        int[] codes = resolve(filter);
+
+        if (codes == null || limit <= 0)
+            return List.of();
+
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+        Candidates candidates = candidates(codes);
+        Decoder decoder = new Decoder();
+
+        for (int index = 0; index < candidates.size() && records.size() < limit; ++index) {
+            int row = candidates.row(index);
+
+            if (matches(row, codes))
+                records.add(decoder.record(row));
+        }
+
+        return records;
+    }
+
+    /**
+     * Finds the records with the highest footprint index values among
+     * those that match a filter.  Records with missing (NaN) values
+     * are never returned.
+     *
+     * @param count the maximum number of records to return.
+     *
+     * @param filter the record filter.
+     *
+     * @return the matching records with the highest footprint index
+     * values, in descending order of the footprint index.
+     */
+    public List<AlleleFootprintRecord> top(int count, Filter filter) {
+        int[] codes = resolve(filter);
+
+        if (codes == null || count <= 0)
+            return List.of();
+
+        Candidates candidates = candidates(codes);
+
+        if (candidates.size() > recordCount / SCAN_FRACTION)
+            return scanTop(count, codes);
+
+        //
+        // A min-heap holds the best rows seen so far...
+        //
+        PriorityQueue<Integer> heap =
+            new PriorityQueue<Integer>(Math.min(count, candidates.size()) + 1, (row1, row2) -> Double.compare(footprintIndex(row1), footprintIndex(row2)));
+
+        for (int index = 0; index < candidates.size(); ++index) {
+            int row = candidates.row(index);
+
+            if (!matches(row, codes) || Double.isNaN(footprintIndex(row)))
+                continue;
+
+            heap.add(row);
+
+            if (heap.size() > count)
+                heap.poll();
+        }
+
+        Decoder decoder = new Decoder();
+        AlleleFootprintRecord[] records = new AlleleFootprintRecord[heap.size()];
+
+        for (int index = records.length - 1; index >= 0; --index)
+            records[index] = decoder.record(heap.poll());
+
+        return Arrays.asList(records);
+    }
+
+    private List<AlleleFootprintRecord> scanTop(int count, int[] codes) {
+        Decoder decoder = new Decoder();
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (int index = 0; index < recordCount && records.size() < count; ++index) {
+            if (Double.isNaN(valueKeys.get(index)))
+                break;
+
+            int row = valueRows.get(index);
+
+            if (matches(row, codes))
+                records.add(decoder.record(row));
+        }
+
+        return records;
+    }
+
+    /**
+     * Finds all records that match a filter and have a footprint
+     * index within a closed range.
+     *
+     * @param lower the lower bound of the range (inclusive).
+     *
+     * @param upper the upper bound of the range (inclusive).
+     *
+     * @param filter the record filter.
+     *
+     * @return the matching records, in descending order of the
+     * footprint index.
+     */
+    public List<AlleleFootprintRecord> range(double lower, double upper, Filter filter) {
+        return range(lower, upper, filter, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the records with the highest footprint index values among
+     * those that match a filter and have a footprint index within a
+     * closed range.
+     *
+     * @param lower the lower bound of the range (inclusive).
+     *
+     * @param upper the upper bound of the range (inclusive).
+     *
+     * @param filter the record filter.
+     *
+     * @param limit the maximum number of records to return.
+     *
+     * @return the first {@code limit} matching records, in descending
+     * order of the footprint index.
+     */
+    public List<AlleleFootprintRecord> range(double lower, double upper, Filter filter, int limit) {
+        int[] codes = resolve(filter);
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        if (codes == null || limit <= 0)
+            return records;
+
+        int start = upper < Double.POSITIVE_INFINITY ? searchBelow(Math.nextUp(upper)) : 0;
+        int end = searchBelow(lower);
+
+        Decoder decoder = new Decoder();
+
+        for (int index = start; index < end && records.size() < limit; ++index) {
+            int row = valueRows.get(index);
+
+            if (matches(row, codes))
+                records.add(decoder.record(row));
+        }
+
+        return records;
+    }
+
+    /**
+     * Finds the tumor barcodes with at least one record that matches a
+     * filter and has a footprint index above a threshold.
+     *
+     * @param threshold the footprint index threshold (exclusive).
+     *
+     * @param filter the record filter.
+     *
+     * @return the matching tumor barcodes, in sorted order.
+     */
+    public List<TumorBarcode> barcodesAbove(double threshold, Filter filter) {
+        int[] codes = resolve(filter);
+        List<TumorBarcode> barcodes = new ArrayList<TumorBarcode>();
+
+        if (codes == null)
+            return barcodes;
+
+        boolean[] found = new boolean[dictionaries[BARCODE].length];
+        int end = searchBelow(Math.nextUp(threshold));
+
+        for (int index = 0; index < end; ++index) {
+            int row = valueRows.get(index);
+
+            if (matches(row, codes))
+                found[key(row, BARCODE)] = true;
+        }
+
+        for (int code = 0; code < found.length; ++code)
+            if (found[code])
+                barcodes.add(TumorBarcode.instance(dictionaries[BARCODE][code]));
+
+        return barcodes;
+    }
+
+    private int searchBelow(double value) {
+        //
+        // Returns the first position in the value index whose key is
+        // less than the given value (NaN keys are at the end and are
+        // never less than anything)...
+        //
+        int lo = 0;
+        int hi = recordCount;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double key = valueKeys.get(mid);
+
+            if (key < value || Double.isNaN(key))
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+
+        return lo;
+    }
+
+    private int[] resolve(Filter filter) {
+        //
+        // Returns the dictionary code for each key (or -1 for keys
+        // that are not constrained), or null if a constrained key
+        // does not occur in this store...
+        //
+        String[] values = filter.values();
+        int[] codes = new int[KEY_COUNT];
+
+        for (int key = 0; key < KEY_COUNT; ++key) {
+            if (values[key] == null) {
+                codes[key] = -1;
+                continue;
+            }
+
+            Integer code = dictionaryCodes.get(key).get(values[key]);
+
+            if (code == null)
+                return null;
+
+            codes[key] = code;
+        }
+
+        return codes;
+    }
+
+    private Candidates candidates(int[] codes) {
+        //
+        // The barcode range is the narrowest index when a barcode is
+        // given; otherwise the shortest posting list is used...
+        //
+        if (codes[BARCODE] >= 0)
+            return new Candidates(null, barcodeOffsets.get(codes[BARCODE]), barcodeOffsets.get(codes[BARCODE] + 1));
+
+        Candidates best = new Candidates(null, 0, recordCount);
+
+        for (int key = ALLELE; key < KEY_COUNT; ++key) {
+            if (codes[key] < 0)
+                continue;
+
+            Candidates postings =
+                new Candidates(postingRows[key], postingOffsets[key].get(codes[key]), postingOffsets[key].get(codes[key] + 1));
+
+            if (postings.size() < best.size())
+                best = postings;
+        }
+
+        return best;
+    }
+
+    private boolean matches(int row, int[] codes) {
+        for (int key = 0; key < KEY_COUNT; ++key)
+            if (codes[key] >= 0 && key(row, key) != codes[key])
+                return false;
+
+        return true;
+    }
+
+    private ByteBuffer segment(int row) {
+        return rowSegments[row >>> SEGMENT_BITS];
+    }
+
+    private static int position(int row) {
+        return (row & SEGMENT_MASK) * ROW_BYTES;
+    }
+
+    private int key(int row, int key) {
+        return segment(row).getInt(position(row) + KEY_OFFSET + 4 * key);
+    }
+
+    private double footprintIndex(int row) {
+        return segment(row).getDouble(position(row) + FOOTPRINT_INDEX_OFFSET);
+    }
+
+    private AlleleFootprintRecord record(int row, PeptidePairRecord pair) {
+        ByteBuffer segment = segment(row);
+        int position = position(row);
+
+        return AlleleFootprintRecord.create(pair,
+                                            Allele.instance(dictionaries[ALLELE][segment.getInt(position + KEY_OFFSET + 4 * ALLELE)]),
+                                            AlleleFootprintType.valueOf(dictionaries[TYPE][segment.getInt(position + KEY_OFFSET + 4 * TYPE)]),
+                                            segment.getDouble(position + DOUBLE_OFFSET),
+                                            segment.getDouble(position + DOUBLE_OFFSET + 8),
+                                            segment.getDouble(position + DOUBLE_OFFSET + 16),
+                                            segment.getDouble(position + DOUBLE_OFFSET + 24),
+                                            segment.getDouble(position + FOOTPRINT_INDEX_OFFSET));
+    }
+
+    private PeptidePairRecord pair(int code) {
+        int start = (int) pairOffsets.get(code);
+        int end = (int) pairOffsets.get(code + 1);
+
+        byte[] bytes = new byte[end - start];
+
+        for (int index = 0; index < bytes.length; ++index)
+            bytes[index] = pairBytes.get(start + index);
+
+        String[] fields =
+            AlleleFootprintRecord.DELIM.split(new String(bytes, StandardCharsets.UTF_8), AlleleFootprintRecord.PAIR_COLUMN_COUNT);
+
+        return PeptidePairRecord.parse(fields, 0);
+    }
+
+    // -----------------------------------------------------------------
+
+    /**
+     * Decodes the records for one query, reusing the peptide pair
+     * shared by consecutive rows (all alleles and footprint types for
+     * the same pair are stored together).
+     */
+    private final class Decoder {
+        private int lastCode = -1;
+        private PeptidePairRecord lastPair = null;
+
+        private AlleleFootprintRecord record(int row) {
+            int code = segment(row).getInt(position(row) + PAIR_OFFSET);
+
+            if (code != lastCode) {
+                lastCode = code;
+                lastPair = pair(code);
+            }
+
+            return FootprintQueryStore.this.record(row, lastPair);
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    /**
+     * A contiguous range of rows, or of entries in a posting list.
+     */
+    private static final class Candidates {
+        private final IntBuffer postings;
+        private final int start;
+        private final int end;
+
+        private Candidates(IntBuffer postings, int start, int end) {
+            this.postings = postings;
+            this.start = start;
+            this.end = end;
+        }
+
+        private int size() {
+            return end - start;
+        }
+
+        private int row(int index) {
+            return postings != null ? postings.get(start + index) : start + index;
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    /**
+     * Selects records by tumor barcode, allele, gene and footprint
+     * type; keys that are not specified match all records.  Filters
+     * are immutable.
+     */
+    public static final class Filter {
+        private final String[] values;
+
+        /**
+         * The filter that matches all records.
+         */
+        public static final Filter ALL = new Filter(new String[KEY_COUNT]);
+
+        private Filter(String[] values) {
+            this.values = values;
+        }
+
+        private Filter with(int key, String value) {
+            String[] copy = values.clone();
+            copy[key] = value;
+            return new Filter(copy);
+        }
+
+        private String[] values() {
+            return values;
+        }
+
+        /**
+         * Restricts this filter to one tumor barcode.
+         *
+         * @param barcode the tumor barcode to match.
+         *
+         * @return a new filter with the additional restriction.
+         */
+        public Filter barcode(TumorBarcode barcode) {
+            return with(BARCODE, barcode.getKey());
+        }
+
+        /**
+         * Restricts this filter to one HLA allele.
+         *
+         * @param allele the HLA allele to match.
+         *
+         * @return a new filter with the additional restriction.
+         */
+        public Filter allele(Allele allele) {
+            return with(ALLELE, allele.shortKey());
+        }
+
+        /**
+         * Restricts this filter to one gene.
+         *
+         * @param gene the gene to match.
+         *
+         * @return a new filter with the additional restriction.
+         */
+        public Filter gene(HugoSymbol gene) {
+            return with(GENE, gene.getKey());
+        }
+
+        /**
+         * Restricts this filter to one footprint type.
+         *
+         * @param type the footprint type to match.
+         *
+         * @return a new filter with the additional restriction.
+         */
+        public Filter type(AlleleFootprintType type) {
+            return with(TYPE, type.name());
+        }
+
+        /**
+         * Creates a filter from named parameters ({@code barcode},
+         * {@code allele}, {@code gene} and {@code type}); all other
+         * parameters are ignored.
+         *
+         * @param params the named parameters.
+         *
+         * @return the corresponding filter.
+         */
+        static Filter parse(Map<String, String> params) {
+            Filter filter = ALL;
+
+            if (params.containsKey("barcode"))
+                filter = filter.barcode(TumorBarcode.instance(params.get("barcode")));
+
+            if (params.containsKey("allele"))
+                filter = filter.allele(Allele.instance(params.get("allele")));
+
+            if (params.containsKey("gene"))
+                filter = filter.gene(HugoSymbol.instance(params.get("gene")));
+
+            if (params.containsKey("type"))
+                filter = filter.type(AlleleFootprintType.valueOf(params.get("type")));
+
+            return filter;
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    private static final class Builder {
+        private final List<AlleleFootprintRecord> records;
+        private final int recordCount;
+
+        private final String[][] dictionaries = new String[KEY_COUNT][];
+        private final int[][] keyCodes = new int[KEY_COUNT][];
+
+        private final int[] rowOrder;
+        private final int[] pairCodes;
+        private final List<byte[]> pairTexts = new ArrayList<byte[]>();
+
+        private Builder(List<AlleleFootprintRecord> records) {
+            this.records = records;
+            this.recordCount = records.size();
+
+            encodeKey(BARCODE, record -> record.getPeptidePairRecord().getTumorBarcode().getKey());
+            encodeKey(ALLELE, record -> record.getPatientAllele().shortKey());
+            encodeKey(GENE, record -> record.getPeptidePairRecord().getHugoSymbol().getKey());
+            encodeKey(TYPE, record -> record.getFootprintType().name());
+
+            this.rowOrder = order(keyCodes[BARCODE]);
+            this.pairCodes = encodePairs();
+        }
+
+        private void encodeKey(int key, Function<AlleleFootprintRecord, String> mapper) {
+            String[] values = new String[recordCount];
+
+            for (int index = 0; index < recordCount; ++index)
+                values[index] = mapper.apply(records.get(index));
+
+            dictionaries[key] = new TreeSet<String>(Arrays.asList(values)).toArray(new String[0]);
+            keyCodes[key] = new int[recordCount];
+
+            Map<String, Integer> codes = codeMap(dictionaries[key]);
+
+            for (int index = 0; index < recordCount; ++index)
+                keyCodes[key][index] = codes.get(values[index]);
+        }
+
+        private static int[] order(int[] codes) {
+            long[] keys = new long[codes.length];
+
+            for (int index = 0; index < codes.length; ++index)
+                keys[index] = codes[index];
+
+            return IndexSort.order(keys);
+        }
+
+        private int[] encodePairs() {
+            //
+            // Consecutive records usually share the same pair object,
+            // so the formatted text is only built for new objects...
+            //
+            int[] codes = new int[recordCount];
+
+            Map<PeptidePairRecord, Integer> objectCodes = new IdentityHashMap<PeptidePairRecord, Integer>();
+            Map<String, Integer> textCodes = new HashMap<String, Integer>();
+
+            for (int index = 0; index < recordCount; ++index) {
+                PeptidePairRecord pair = records.get(index).getPeptidePairRecord();
+                Integer code = objectCodes.get(pair);
+
+                if (code == null) {
+                    String text = pair.format(AlleleFootprintRecord.DELIM);
+                    code = textCodes.get(text);
+
+                    if (code == null) {
+                        code = pairTexts.size();
+                        textCodes.put(text, code);
+                        pairTexts.add(text.getBytes(StandardCharsets.UTF_8));
+                    }
+
+                    objectCodes.put(pair, code);
+                }
+
+                codes[index] = code;
+            }
+
+            return codes;
+        }
+
+        private void write(Path path) throws IOException {
+            byte[] dictionaryBytes = dictionaryBytes();
+
+            long pairByteCount = 0L;
+
+            for (byte[] text : pairTexts)
+                pairByteCount += text.length;
+
+            if (pairByteCount > Integer.MAX_VALUE || 8L * recordCount > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many records for a footprint query store.");
+
+            long[] sizes = new long[SECTION_COUNT];
+
+            sizes[DICTIONARY_SECTION] = dictionaryBytes.length;
+            sizes[PAIR_OFFSET_SECTION] = 8L * (pairTexts.size() + 1);
+            sizes[PAIR_BYTE_SECTION] = pairByteCount;
+            sizes[ROW_SECTION] = (long) ROW_BYTES * recordCount;
+            sizes[BARCODE_OFFSET_SECTION] = 4L * (dictionaries[BARCODE].length + 1);
+
+            for (int key = ALLELE; key < KEY_COUNT; ++key) {
+                sizes[postingSection(key)] = 4L * (dictionaries[key].length + 1);
+                sizes[postingSection(key) + 1] = 4L * recordCount;
+            }
+
+            sizes[VALUE_ROW_SECTION] = 4L * recordCount;
+            sizes[VALUE_KEY_SECTION] = 8L * recordCount;
+
+            try (DataOutputStream output =
+                 new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+                output.write(MAGIC);
+                output.writeInt(recordCount);
+
+                long offset = HEADER_BYTES;
+
+                for (long size : sizes) {
+                    output.writeLong(offset);
+                    offset += size;
+                }
+
+                output.writeLong(offset);
+                output.write(dictionaryBytes);
+
+                writePairs(output);
+                writeRows(output);
+                writeBarcodeOffsets(output);
+
+                for (int key = ALLELE; key < KEY_COUNT; ++key)
+                    writePostings(output, key);
+
+                writeValueIndex(output);
+            }
+        }
+
+        private byte[] dictionaryBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+
+            for (String[] dictionary : dictionaries) {
+                output.writeInt(dictionary.length);
+
+                for (String value : dictionary)
+                    output.writeUTF(value);
+            }
+
+            output.flush();
+            return bytes.toByteArray();
+        }
+
+        private void writePairs(DataOutputStream output) throws IOException {
+            long offset = 0L;
+
+            for (byte[] text : pairTexts) {
+                output.writeLong(offset);
+                offset += text.length;
+            }
+
+            output.writeLong(offset);
+
+            for (byte[] text : pairTexts)
+                output.write(text);
+        }
+
+        private void writeRows(DataOutputStream output) throws IOException {
+            for (int index : rowOrder) {
+                AlleleFootprintRecord record = records.get(index);
+
+                output.writeInt(pairCodes[index]);
+
+                for (int key = 0; key < KEY_COUNT; ++key)
+                    output.writeInt(keyCodes[key][index]);
+
+                output.writeDouble(record.getNeoBindingQty());
+                output.writeDouble(record.getNeoBindingPct());
+                output.writeDouble(record.getSelfBindingQty());
+                output.writeDouble(record.getSelfBindingPct());
+                output.writeDouble(record.getFootprintIndex());
+            }
+        }
+
+        private void writeBarcodeOffsets(DataOutputStream output) throws IOException {
+            writeOffsets(output, BARCODE);
+        }
+
+        private void writeOffsets(DataOutputStream output, int key) throws IOException {
+            int[] counts = new int[dictionaries[key].length];
+
+            for (int code : keyCodes[key])
+                ++counts[code];
+
+            int offset = 0;
+
+            for (int count : counts) {
+                output.writeInt(offset);
+                offset += count;
+            }
+
+            output.writeInt(offset);
+        }
+
+        private void writePostings(DataOutputStream output, int key) throws IOException {
+            writeOffsets(output, key);
+
+            //
+            // Stored row numbers refer to the barcode-ordered rows, so
+            // the records are visited in stored order...
+            //
+            long[] codes = new long[recordCount];
+
+            for (int row = 0; row < recordCount; ++row)
+                codes[row] = keyCodes[key][rowOrder[row]];
+
+            for (int row : IndexSort.order(codes))
+                output.writeInt(row);
+        }
+
+        private void writeValueIndex(DataOutputStream output) throws IOException {
+            //
+            // Order-preserving integer keys for the negated values put
+            // the largest values first and NaN values last...
+            //
+            double[] values = new double[recordCount];
+            long[] keys = new long[recordCount];
+
+            for (int row = 0; row < recordCount; ++row) {
+                values[row] = records.get(rowOrder[row]).getFootprintIndex();
+
+                long bits = Double.doubleToLongBits(-values[row]);
+                keys[row] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+            }
+
+            int[] order = IndexSort.order(keys);
+
+            for (int row : order)
+                output.writeInt(row);
+
+            for (int row : order)
+                output.writeDouble(values[row]);
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    private static void usage() {
+        System.err.println("Usage: nfi.io.FootprintQueryStore build FOOTPRINT_FILE STORE_FILE");
+        System.err.println("       nfi.io.FootprintQueryStore select STORE_FILE [KEY=VALUE ...]");
+        System.err.println("       nfi.io.FootprintQueryStore top STORE_FILE COUNT [KEY=VALUE ...]");
+        System.err.println("       nfi.io.FootprintQueryStore range STORE_FILE LOWER UPPER [KEY=VALUE ...]");
+        System.err.println("       nfi.io.FootprintQueryStore barcodes STORE_FILE THRESHOLD [KEY=VALUE ...]");
+        System.err.println("       nfi.io.FootprintQueryStore serve STORE_FILE PORT");
+        System.err.println("Keys: barcode, allele, gene, type");
+        System.exit(1);
+    }
+
+    private static Map<String, String> parseParams(String[] args, int start) {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+
+        for (int index = start; index < args.length; ++index) {
+            String[] pair = args[index].split("=", 2);
+
+            if (pair.length != 2)
+                usage();
+
+            params.put(pair[0], pair[1]);
+        }
+
+        return params;
+    }
+
+    private static void print(PrintStream out, List<AlleleFootprintRecord> records) {
+        out.println(AlleleFootprintRecord.header());
+
+        for (AlleleFootprintRecord record : records)
+            out.println(record.format());
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2)
+            usage();
+
+        if (args[0].equals("build")) {
+            if (args.length != 3)
+                usage();
+
+            build(args[1], args[2]);
+            return;
+        }
+
+        FootprintQueryStore store = open(args[1]);
+
+        switch (args[0]) {
+        case "select":
+            print(System.out, store.select(Filter.parse(parseParams(args, 2))));
+            break;
+
+        case "top":
+            if (args.length < 3)
+                usage();
+
+            print(System.out, store.top(Integer.parseInt(args[2]), Filter.parse(parseParams(args, 3))));
+            break;
+
+        case "range":
+            if (args.length < 4)
+                usage();
+
+            print(System.out, store.range(Double.parseDouble(args[2]), Double.parseDouble(args[3]), Filter.parse(parseParams(args, 4))));
+            break;
+
+        case "barcodes":
+            if (args.length < 3)
+                usage();
+
+            for (TumorBarcode barcode : store.barcodesAbove(Double.parseDouble(args[2]), Filter.parse(parseParams(args, 3))))
+                System.out.println(barcode.getKey());
+            break;
+
+        case "serve":
+            if (args.length != 3)
+                usage();
+
+            FootprintQueryServer.serve(store, Integer.parseInt(args[2]));
+            break;
+
+        default:
+            usage();
+        }
+    }
+}
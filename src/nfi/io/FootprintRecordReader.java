@@ -0,0 +1,153 @@
+package nfi.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Reads the records in a footprint file of either format sequentially,
+ * one chunk at a time, so that files larger than memory may be
+ * streamed.
+ */
+public abstract class FootprintRecordReader implements Closeable {
+    /**
+     * The maximum number of records returned by one call to
+     * {@link #next()} for delimited flat files.  (Binary files and
+     * indexed block-compressed files are read one block at a time.)
+     */
+    public static final int CHUNK_SIZE = BinaryFootprintWriter.BLOCK_ROWS;
+
+    /**
+     * Opens a footprint file for sequential reading.  The format of
+     * the file is detected from its contents; gzip-compressed flat
+     * files are decompressed in parallel if they have a block index.
+     *
+     * @param fileName the name of the file to read.
+     *
+     * @return a reader for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static FootprintRecordReader open(String fileName) {
+        switch (FootprintFormat.detect(fileName)) {
+        case BINARY:
+            return new Binary(BinaryFootprintReader.open(fileName));
+
+        case TSV_GZIP:
+            if (BlockGzipFootprintReader.isIndexed(fileName))
+                return new Blocks(BlockGzipFootprintReader.open(fileName));
+            else
+                return Text.openText(fileName, true);
+
+        default:
+            return Text.openText(fileName, false);
+        }
+    }
+
+    /**
+     * Reads the next chunk of records.
+     *
+     * @return the next chunk of records in file order, or {@code null}
+     * if all records have been read.
+     *
+     * @throws RuntimeException if any I/O errors occur or the file
+     * contains improperly formatted records.
+     */
+    public abstract List<AlleleFootprintRecord> next();
+
+    @Override public abstract void close();
+
+    private static final class Binary extends FootprintRecordReader {
+        private final BinaryFootprintReader reader;
+
+        private Binary(BinaryFootprintReader reader) {
+            this.reader = reader;
+        }
+
+        @Override public List<AlleleFootprintRecord> next() {
+            FootprintBlock block = reader.next();
+
+            if (block != null)
+                return BinaryFootprintReader.toRecords(block);
+            else
+                return null;
+        }
+
+        @Override public void close() {
+            reader.close();
+        }
+    }
+
+    private static final class Blocks extends FootprintRecordReader {
+        private final BlockGzipFootprintReader reader;
+
+        private Blocks(BlockGzipFootprintReader reader) {
+            this.reader = reader;
+        }
+
+        @Override public List<AlleleFootprintRecord> next() {
+            return reader.next();
+        }
+
+        @Override public void close() {
+            reader.close();
+        }
+    }
+
+    private static final class Text extends FootprintRecordReader {
+        private final BufferedReader reader;
+
+        private Text(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        private static Text openText(String fileName, boolean gzip) {
+            try {
+                BufferedReader reader =
+                    gzip ? BlockGzipFootprintReader.openSerial(fileName)
+                    : Files.newBufferedReader(Paths.get(fileName), StandardCharsets.US_ASCII);
+
+                // Skip the header line...
+                reader.readLine();
+                return new Text(reader);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override public List<AlleleFootprintRecord> next() {
+            List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(CHUNK_SIZE);
+
+            try {
+                String line;
+
+                while (records.size() < CHUNK_SIZE && (line = reader.readLine()) != null)
+                    if (!line.isEmpty())
+                        records.add(AlleleFootprintRecord.parse(line));
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            return records.isEmpty() ? null : records;
+        }
+
+        @Override public void close() {
+            try {
+                reader.close();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
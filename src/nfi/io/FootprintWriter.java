@@ -0,0 +1,61 @@
+package nfi.io;
+
+import java.io.Closeable;
+import java.util.Collection;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Writes allele footprint records to a persistent file.
+ *
+ * <p>Records are written in the order in which they are presented;
+ * callers that require the canonical order must present them sorted
+ * by {@link AlleleFootprintRecord#COMPARATOR}.
+ */
+public interface FootprintWriter extends Closeable {
+    /**
+     * Opens a writer for a delimited flat footprint file (overwriting
+     * any existing file).
+     *
+     * @param fileName the name of the file to write.
+     *
+     * @return a writer for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    static FootprintWriter open(String fileName) {
+        return open(fileName, FootprintFormat.TSV);
+    }
+
+    /**
+     * Opens a writer for a footprint file (overwriting any existing
+     * file).
+     *
+     * @param fileName the name of the file to write.
+     *
+     * @param format the format of the file to write.
+     *
+     * @return a writer for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    static FootprintWriter open(String fileName, FootprintFormat format) {
+        return format.openWriter(fileName);
+    }
+
+    /**
+     * Writes footprint records to the underlying file.
+     *
+     * @param records the records to write.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    void write(Collection<AlleleFootprintRecord> records);
+
+    /**
+     * Flushes any buffered records and closes the underlying file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    @Override void close();
+}
@@ -0,0 +1,239 @@
+package nfi.io;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import jam.app.JamLogger;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Records the number of peptide pair records for each tumor barcode in
+ * a peptide pair file, so that a streaming reader can release the
+ * records for a barcode as soon as its last record has been parsed,
+ * even when the file is not grouped by barcode.
+ *
+ * <p>Compressed files cannot be positioned at arbitrary offsets, so
+ * the index holds record counts rather than byte offsets; it is built
+ * by one lightweight scan that splits only the barcode column.  The
+ * index is stored beside the source file (as {@code FILE.pidx}) and
+ * is rebuilt whenever the size or modification time of the source
+ * file changes.  If the index cannot be written, it is kept in memory
+ * for the current run only.
+ */
+public final class PeptidePairIndex {
+    private final Map<String, Integer> recordCounts;
+
+    private static final String MAGIC = "NFIPIDX1";
+    private static final String INDEX_SUFFIX = ".pidx";
+    private static final String BARCODE_COLUMN = "Tumor_Barcode";
+
+    private PeptidePairIndex(Map<String, Integer> recordCounts) {
+        this.recordCounts = Collections.unmodifiableMap(recordCounts);
+    }
+
+    /**
+     * Loads the index for a peptide pair file, building (and storing)
+     * it if no valid index exists.
+     *
+     * @param fileName the name of the peptide pair file.
+     *
+     * @return the index for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur while reading
+     * the peptide pair file.
+     */
+    public static PeptidePairIndex load(String fileName) {
+        Path sourcePath = Paths.get(fileName);
+        Path indexPath = Paths.get(fileName + INDEX_SUFFIX);
+
+        PeptidePairIndex index = read(sourcePath, indexPath);
+
+        if (index != null)
+            return index;
+
+        JamLogger.info("Indexing [%s]...", fileName);
+        index = build(sourcePath);
+        write(sourcePath, indexPath, index);
+
+        return index;
+    }
+
+    /**
+     * Builds the index for a peptide pair file by scanning it once.
+     *
+     * @param fileName the name of the peptide pair file.
+     *
+     * @return the index for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static PeptidePairIndex build(String fileName) {
+        return build(Paths.get(fileName));
+    }
+
+    private static PeptidePairIndex build(Path sourcePath) {
+        Map<String, Integer> recordCounts = new LinkedHashMap<String, Integer>();
+
+        try (BufferedReader reader = openReader(sourcePath)) {
+            String header = reader.readLine();
+
+            if (header == null)
+                return new PeptidePairIndex(recordCounts);
+
+            int column = barcodeColumn(header);
+            String line = reader.readLine();
+
+            while (line != null) {
+                if (!line.isEmpty())
+                    recordCounts.merge(field(line, column), 1, Integer::sum);
+
+                line = reader.readLine();
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return new PeptidePairIndex(recordCounts);
+    }
+
+    private static PeptidePairIndex read(Path sourcePath, Path indexPath) {
+        if (!Files.isRegularFile(indexPath))
+            return null;
+
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(indexPath))) {
+            if (!input.readUTF().equals(MAGIC))
+                return null;
+
+            if (input.readLong() != Files.size(sourcePath))
+                return null;
+
+            if (input.readLong() != Files.getLastModifiedTime(sourcePath).toMillis())
+                return null;
+
+            int barcodeCount = input.readInt();
+            Map<String, Integer> recordCounts = new LinkedHashMap<String, Integer>(2 * barcodeCount);
+
+            for (int index = 0; index < barcodeCount; ++index)
+                recordCounts.put(input.readUTF(), input.readInt());
+
+            return new PeptidePairIndex(recordCounts);
+        }
+        catch (IOException ex) {
+            JamLogger.warn("Ignoring invalid index [%s]: %s", indexPath, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static void write(Path sourcePath, Path indexPath, PeptidePairIndex index) {
+        Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(tempPath))) {
+                output.writeUTF(MAGIC);
+                output.writeLong(Files.size(sourcePath));
+                output.writeLong(Files.getLastModifiedTime(sourcePath).toMillis());
+                output.writeInt(index.recordCounts.size());
+
+                for (Map.Entry<String, Integer> entry : index.recordCounts.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeInt(entry.getValue());
+                }
+            }
+
+            Files.move(tempPath, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            JamLogger.warn("Unable to store index [%s]: %s", indexPath, ex.getMessage());
+        }
+    }
+
+    static BufferedReader openReader(Path path) throws IOException {
+        if (path.getFileName().toString().endsWith(".gz"))
+            return new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(path), 65536),
+                                                            StandardCharsets.UTF_8));
+        else
+            return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+    }
+
+    static int barcodeColumn(String header) {
+        String[] columns = AlleleFootprintRecord.DELIM.split(header);
+
+        for (int index = 0; index < columns.length; ++index)
+            if (columns[index].equals(BARCODE_COLUMN))
+                return index;
+
+        return 0;
+    }
+
+    static String field(String line, int column) {
+        int start = 0;
+
+        for (int index = 0; index < column; ++index) {
+            start = line.indexOf('\t', start) + 1;
+
+            if (start == 0)
+                throw new IllegalArgumentException(String.format("Missing barcode column in line [%s].", line));
+        }
+
+        int end = line.indexOf('\t', start);
+        return end < 0 ? line.substring(start) : line.substring(start, end);
+    }
+
+    /**
+     * Returns the number of peptide pair records for a tumor barcode.
+     *
+     * @param barcode the tumor barcode of interest.
+     *
+     * @return the number of records for the specified barcode (zero
+     * if the barcode does not appear in the file).
+     */
+    public int count(TumorBarcode barcode) {
+        return count(barcode.getKey());
+    }
+
+    /**
+     * Returns the number of peptide pair records for a tumor barcode.
+     *
+     * @param barcodeKey the key of the tumor barcode of interest.
+     *
+     * @return the number of records for the specified barcode (zero
+     * if the barcode does not appear in the file).
+     */
+    public int count(String barcodeKey) {
+        return recordCounts.getOrDefault(barcodeKey, 0);
+    }
+
+    /**
+     * Returns the tumor barcodes in the indexed file, in sorted order.
+     *
+     * @return the tumor barcodes in the indexed file, in sorted order.
+     */
+    public List<TumorBarcode> listBarcodes() {
+        List<TumorBarcode> barcodes = new ArrayList<TumorBarcode>(recordCounts.size());
+
+        for (String key : recordCounts.keySet())
+            barcodes.add(TumorBarcode.instance(key));
+
+        Collections.sort(barcodes);
+        return barcodes;
+    }
+}
@@ -0,0 +1,369 @@
+package nfi.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import jam.app.JamLogger;
+
+import jene.neo.PeptidePairRecord;
+import jene.neo.PeptidePairTable;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Stores a compact binary image of a parsed peptide pair file, so that
+ * later runs can memory-map the image instead of decompressing and
+ * splitting the text file again.
+ *
+ * <p>The image contains one string dictionary and one array of
+ * integer codes for each column of the peptide pair file.  Its header
+ * records the size, modification time and SHA-256 digest of the source
+ * file: the image is used when the size matches and either the
+ * modification time or the digest matches (so a copied or touched but
+ * unchanged source file does not invalidate it).  A CRC-32 checksum of
+ * the body and a trailing marker guard against partial or corrupted
+ * images.
+ *
+ * <p>Images are written to a uniquely named temporary file and moved
+ * into place atomically, so concurrent runs never observe a partial
+ * image; a run that has already mapped an image keeps reading it even
+ * if another run replaces it.
+ */
+public final class PeptidePairSnapshot {
+    private final Path sourcePath;
+    private final Path snapshotPath;
+
+    private static final String MAGIC = "NFIPSNP1";
+    private static final String TRAILER = "NFIPSEND";
+    private static final String SNAPSHOT_SUFFIX = ".nps";
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final int PARSE_CHUNK = 65536;
+
+    private PeptidePairSnapshot(Path sourcePath, Path snapshotPath) {
+        this.sourcePath = sourcePath;
+        this.snapshotPath = snapshotPath;
+    }
+
+    /**
+     * Loads a peptide pair table from its snapshot, or from the source
+     * file (writing a new snapshot) if no valid snapshot exists.
+     *
+     * @param fileName the name of the peptide pair file.
+     *
+     * @param snapshotDir the directory containing the snapshots.
+     *
+     * @return the peptide pair table for the specified file.
+     *
+     * @throws RuntimeException if the source file cannot be loaded.
+     */
+    public static PeptidePairTable load(String fileName, String snapshotDir) {
+        PeptidePairSnapshot snapshot = locate(fileName, snapshotDir);
+        List<PeptidePairRecord> records = snapshot.read();
+
+        if (records != null) {
+            JamLogger.info("Loaded [%d] peptide pairs from snapshot [%s].", records.size(), snapshot.snapshotPath);
+            return PeptidePairTable.create(records);
+        }
+
+        PeptidePairTable table = PeptidePairTable.load(fileName);
+        snapshot.write(table);
+
+        return table;
+    }
+
+    private static PeptidePairSnapshot locate(String fileName, String snapshotDir) {
+        Path sourcePath = Paths.get(fileName).toAbsolutePath().normalize();
+
+        //
+        // Source files with the same base name in different directories
+        // must not share a snapshot...
+        //
+        String snapshotName =
+            String.format("%s-%08x%s", sourcePath.getFileName(), sourcePath.toString().hashCode(), SNAPSHOT_SUFFIX);
+
+        return new PeptidePairSnapshot(sourcePath, Paths.get(snapshotDir).resolve(snapshotName));
+    }
+
+    private List<PeptidePairRecord> read() {
+        if (!Files.isRegularFile(snapshotPath))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(snapshotPath)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (!isValid(buffer))
+                return null;
+
+            return decode(buffer);
+        }
+        catch (IOException | RuntimeException ex) {
+            JamLogger.warn("Ignoring unreadable snapshot [%s]: %s", snapshotPath, ex.toString());
+            return null;
+        }
+    }
+
+    private boolean isValid(ByteBuffer buffer) throws IOException {
+        int trailerLength = TRAILER.length() + Long.BYTES;
+
+        if (buffer.capacity() < MAGIC.length() + 2 * Long.BYTES + DIGEST_LENGTH + trailerLength)
+            return false;
+
+        if (!readAscii(buffer, 0, MAGIC.length()).equals(MAGIC))
+            return false;
+
+        int trailerStart = buffer.capacity() - trailerLength;
+
+        if (!readAscii(buffer, trailerStart + Long.BYTES, TRAILER.length()).equals(TRAILER))
+            return false;
+
+        ByteBuffer header = buffer.duplicate();
+        header.position(MAGIC.length());
+
+        long sourceSize = header.getLong();
+        long sourceTime = header.getLong();
+
+        byte[] digest = new byte[DIGEST_LENGTH];
+        header.get(digest);
+
+        if (sourceSize != Files.size(sourcePath))
+            return false;
+
+        if (sourceTime != Files.getLastModifiedTime(sourcePath).toMillis() && !Arrays.equals(digest, digest(sourcePath)))
+            return false;
+
+        // The checksum covers the body between the header and trailer...
+        int bodyStart = header.position();
+        ByteBuffer body = buffer.duplicate();
+        body.position(bodyStart);
+        body.limit(trailerStart);
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        return crc.getValue() == buffer.getLong(trailerStart);
+    }
+
+    private static String readAscii(ByteBuffer buffer, int start, int length) {
+        byte[] bytes = new byte[length];
+
+        for (int index = 0; index < length; ++index)
+            bytes[index] = buffer.get(start + index);
+
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private List<PeptidePairRecord> decode(ByteBuffer buffer) {
+        ByteBuffer body = buffer.duplicate();
+        body.position(MAGIC.length() + 2 * Long.BYTES + DIGEST_LENGTH);
+
+        int columnCount = body.getInt();
+        int recordCount = body.getInt();
+
+        String[][] dictionaries = new String[columnCount][];
+
+        for (int column = 0; column < columnCount; ++column) {
+            dictionaries[column] = new String[body.getInt()];
+
+            for (int code = 0; code < dictionaries[column].length; ++code) {
+                byte[] bytes = new byte[body.getInt()];
+                body.get(bytes);
+                dictionaries[column][code] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        int codeStart = body.position();
+        int chunkCount = (recordCount + PARSE_CHUNK - 1) / PARSE_CHUNK;
+
+        //
+        // The code arrays are read directly from the mapped image, and
+        // each chunk of records is parsed on its own thread...
+        //
+        List<List<PeptidePairRecord>> chunks =
+            IntStream.range(0, chunkCount)
+            .parallel()
+            .mapToObj(chunk -> decodeChunk(buffer, codeStart, dictionaries, recordCount,
+                                           chunk * PARSE_CHUNK,
+                                           Math.min(recordCount, (chunk + 1) * PARSE_CHUNK)))
+            .collect(Collectors.toList());
+
+        List<PeptidePairRecord> records = new ArrayList<PeptidePairRecord>(recordCount);
+
+        for (List<PeptidePairRecord> chunk : chunks)
+            records.addAll(chunk);
+
+        return records;
+    }
+
+    private static List<PeptidePairRecord> decodeChunk(ByteBuffer buffer,
+                                                       int codeStart,
+                                                       String[][] dictionaries,
+                                                       int recordCount,
+                                                       int start,
+                                                       int end) {
+        List<PeptidePairRecord> records = new ArrayList<PeptidePairRecord>(end - start);
+        String[] fields = new String[dictionaries.length];
+
+        for (int record = start; record < end; ++record) {
+            for (int column = 0; column < fields.length; ++column) {
+                int offset = codeStart + Integer.BYTES * (column * recordCount + record);
+                fields[column] = dictionaries[column][buffer.getInt(offset)];
+            }
+
+            records.add(PeptidePairRecord.parse(fields, 0));
+        }
+
+        return records;
+    }
+
+    private void write(PeptidePairTable table) {
+        List<PeptidePairRecord> records = new ArrayList<PeptidePairRecord>();
+        List<TumorBarcode> barcodes = new ArrayList<TumorBarcode>(table.viewBarcodes());
+
+        Collections.sort(barcodes);
+
+        for (TumorBarcode barcode : barcodes)
+            records.addAll(table.lookup(barcode));
+
+        Path tempPath = null;
+
+        try {
+            Files.createDirectories(snapshotPath.getParent());
+            tempPath = Files.createTempFile(snapshotPath.getParent(), snapshotPath.getFileName().toString(), ".tmp");
+
+            encode(tempPath, records);
+            Files.move(tempPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            JamLogger.info("Wrote snapshot [%s].", snapshotPath);
+        }
+        catch (IOException | RuntimeException ex) {
+            JamLogger.warn("Unable to write snapshot [%s]: %s", snapshotPath, ex.toString());
+            deleteQuietly(tempPath);
+        }
+    }
+
+    private void encode(Path path, List<PeptidePairRecord> records) throws IOException {
+        int columnCount = AlleleFootprintRecord.DELIM.split(PeptidePairRecord.header(AlleleFootprintRecord.DELIM)).length;
+
+        List<Map<String, Integer>> codeMaps = new ArrayList<Map<String, Integer>>(columnCount);
+        List<List<String>> dictionaries = new ArrayList<List<String>>(columnCount);
+
+        for (int column = 0; column < columnCount; ++column) {
+            codeMaps.add(new HashMap<String, Integer>());
+            dictionaries.add(new ArrayList<String>());
+        }
+
+        int[][] codes = new int[columnCount][records.size()];
+
+        for (int record = 0; record < records.size(); ++record) {
+            String[] fields = AlleleFootprintRecord.DELIM.split(records.get(record).format(AlleleFootprintRecord.DELIM), columnCount);
+
+            if (fields.length != columnCount)
+                throw new IllegalStateException("Unexpected peptide pair column count.");
+
+            for (int column = 0; column < columnCount; ++column) {
+                List<String> dictionary = dictionaries.get(column);
+                codes[column][record] = codeMaps.get(column).computeIfAbsent(fields[column], field -> {
+                        dictionary.add(field);
+                        return dictionary.size() - 1;
+                    });
+            }
+        }
+
+        CRC32 crc = new CRC32();
+
+        try (BufferedOutputStream fileStream = new BufferedOutputStream(Files.newOutputStream(path), 1 << 20)) {
+            DataOutputStream header = new DataOutputStream(fileStream);
+
+            header.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            header.writeLong(Files.size(sourcePath));
+            header.writeLong(Files.getLastModifiedTime(sourcePath).toMillis());
+            header.write(digest(sourcePath));
+            header.flush();
+
+            DataOutputStream body = new DataOutputStream(new CheckedOutputStream(fileStream, crc));
+
+            body.writeInt(columnCount);
+            body.writeInt(records.size());
+
+            for (List<String> dictionary : dictionaries) {
+                body.writeInt(dictionary.size());
+
+                for (String field : dictionary) {
+                    byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                    body.writeInt(bytes.length);
+                    body.write(bytes);
+                }
+            }
+
+            for (int[] columnCodes : codes)
+                for (int code : columnCodes)
+                    body.writeInt(code);
+
+            body.flush();
+
+            DataOutputStream trailer = new DataOutputStream(fileStream);
+            trailer.writeLong(crc.getValue());
+            trailer.write(TRAILER.getBytes(StandardCharsets.US_ASCII));
+            trailer.flush();
+        }
+    }
+
+    private static byte[] digest(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+
+            int count = input.read(buffer);
+
+            while (count >= 0) {
+                digest.update(buffer, 0, count);
+                count = input.read(buffer);
+            }
+
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null)
+            return;
+
+        //
+        // Snapshot writes are best-effort, so a temporary file that
+        // cannot be removed is reported but never fails the caller...
+        //
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException ex) {
+            JamLogger.warn("Unable to delete [%s]: %s", path, ex.toString());
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package nfi.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Reads a peptide pair file one tumor barcode at a time, so that the
+ * records for each barcode may be processed as soon as they have been
+ * parsed and released as soon as they have been processed.
+ *
+ * <p>When the file is known to be grouped by barcode, each group is
+ * released when the next barcode begins.  Otherwise, a {@link
+ * PeptidePairIndex} supplies the number of records for each barcode,
+ * and each group is released when its last record has been parsed;
+ * only the groups whose records are interleaved with the current line
+ * are held in memory.  Groups are delivered in the order in which they
+ * are completed.
+ *
+ * <p>A stream may be iterated only once.
+ */
+public final class PeptidePairStream implements Iterable<PeptidePairStream.Group>, Closeable {
+    private final BufferedReader reader;
+    private final PeptidePairIndex index;
+    private final int barcodeColumn;
+
+    private final Map<String, List<PeptidePairRecord>> pending =
+        new HashMap<String, List<PeptidePairRecord>>();
+
+    // Barcodes already released in grouped mode...
+    private final Set<String> released = new HashSet<String>();
+
+    private String groupKey = null;
+    private List<PeptidePairRecord> group = null;
+
+    private boolean iterated = false;
+
+    /**
+     * The peptide pair records for one tumor barcode.
+     */
+    public static final class Group {
+        private final TumorBarcode barcode;
+        private final List<PeptidePairRecord> records;
+
+        private Group(String barcodeKey, List<PeptidePairRecord> records) {
+            this.barcode = TumorBarcode.instance(barcodeKey);
+            this.records = records;
+        }
+
+        /**
+         * Returns the tumor barcode for this group.
+         *
+         * @return the tumor barcode for this group.
+         */
+        public TumorBarcode getBarcode() {
+            return barcode;
+        }
+
+        /**
+         * Returns the peptide pair records for this group (in file
+         * order).
+         *
+         * @return the peptide pair records for this group.
+         */
+        public List<PeptidePairRecord> getRecords() {
+            return records;
+        }
+    }
+
+    private PeptidePairStream(BufferedReader reader, PeptidePairIndex index, int barcodeColumn) {
+        this.reader = reader;
+        this.index = index;
+        this.barcodeColumn = barcodeColumn;
+    }
+
+    /**
+     * Opens a stream over a file whose records are grouped by tumor
+     * barcode (all records for each barcode on consecutive lines).
+     *
+     * @param fileName the name of the peptide pair file.
+     *
+     * @return a stream over the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static PeptidePairStream grouped(String fileName) {
+        return open(fileName, null);
+    }
+
+    /**
+     * Opens a stream over a file in any order, using an index of the
+     * records for each barcode.
+     *
+     * @param fileName the name of the peptide pair file.
+     *
+     * @param index the index for the file.
+     *
+     * @return a stream over the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static PeptidePairStream indexed(String fileName, PeptidePairIndex index) {
+        return open(fileName, index);
+    }
+
+    private static PeptidePairStream open(String fileName, PeptidePairIndex index) {
+        try {
+            BufferedReader reader = PeptidePairIndex.openReader(Paths.get(fileName));
+            String header = reader.readLine();
+
+            int barcodeColumn = header != null ? PeptidePairIndex.barcodeColumn(header) : 0;
+            return new PeptidePairStream(reader, index, barcodeColumn);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override public Iterator<Group> iterator() {
+        if (iterated)
+            throw new IllegalStateException("A peptide pair stream may be iterated only once.");
+
+        iterated = true;
+        return new GroupIterator();
+    }
+
+    private Group nextGroup() {
+        try {
+            String line = reader.readLine();
+
+            while (line != null) {
+                if (!line.isEmpty()) {
+                    Group completed = addLine(line);
+
+                    if (completed != null)
+                        return completed;
+                }
+
+                line = reader.readLine();
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return finish();
+    }
+
+    private Group addLine(String line) {
+        String key = PeptidePairIndex.field(line, barcodeColumn);
+        PeptidePairRecord record = PeptidePairRecord.parse(AlleleFootprintRecord.DELIM.split(line), 0);
+
+        if (index != null)
+            return addIndexed(key, record);
+        else
+            return addGrouped(key, record);
+    }
+
+    private Group addIndexed(String key, PeptidePairRecord record) {
+        List<PeptidePairRecord> records = pending.computeIfAbsent(key, k -> new ArrayList<PeptidePairRecord>(index.count(k)));
+        records.add(record);
+
+        if (records.size() < index.count(key))
+            return null;
+
+        if (records.size() > index.count(key))
+            throw new IllegalStateException(String.format("Stale index: too many records for barcode [%s].", key));
+
+        pending.remove(key);
+        return new Group(key, records);
+    }
+
+    private Group addGrouped(String key, PeptidePairRecord record) {
+        if (key.equals(groupKey)) {
+            group.add(record);
+            return null;
+        }
+
+        if (!released.add(key))
+            throw new IllegalStateException(String.format("Peptide pair file is not grouped by barcode: [%s] reappears.", key));
+
+        Group completed = release();
+
+        groupKey = key;
+        group = new ArrayList<PeptidePairRecord>();
+        group.add(record);
+
+        return completed;
+    }
+
+    private Group finish() {
+        if (index != null) {
+            if (!pending.isEmpty())
+                throw new IllegalStateException(String.format("Stale index: missing records for barcodes %s.", pending.keySet()));
+
+            return null;
+        }
+
+        Group completed = release();
+
+        groupKey = null;
+        group = null;
+
+        return completed;
+    }
+
+    private Group release() {
+        if (group != null)
+            return new Group(groupKey, group);
+        else
+            return null;
+    }
+
+    private final class GroupIterator implements Iterator<Group> {
+        private Group next = null;
+        private boolean done = false;
+
+        @Override public boolean hasNext() {
+            if (next == null && !done) {
+                next = nextGroup();
+                done = (next == null);
+            }
+
+            return next != null;
+        }
+
+        @Override public Group next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Group result = next;
+            next = null;
+
+            return result;
+        }
+    }
+
+    @Override public void close() {
+        try {
+            reader.close();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
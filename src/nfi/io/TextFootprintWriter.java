@@ -0,0 +1,128 @@
+package nfi.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.util.OrderedStream;
+
+/**
+ * Writes allele footprint records to a delimited flat file with the
+ * layout defined by {@link AlleleFootprintRecord#header()} and
+ * {@link AlleleFootprintRecord#format()}.
+ *
+ * <p>Records are formatted by {@link FootprintFormatter} and written
+ * through a single file channel.  Large collections are split into
+ * chunks that are formatted in parallel and written in their original
+ * order.
+ */
+public final class TextFootprintWriter implements FootprintWriter {
+    private final FileChannel channel;
+    private final FootprintFormatter formatter;
+
+    /**
+     * The number of records formatted as one unit of parallel work.
+     */
+    public static final int CHUNK_SIZE = 16384;
+
+    private static final int BYTES_PER_RECORD = 128;
+
+    private TextFootprintWriter(FileChannel channel) {
+        this.channel = channel;
+        this.formatter = new FootprintFormatter(CHUNK_SIZE * BYTES_PER_RECORD);
+    }
+
+    /**
+     * Opens a writer for a flat footprint file and writes the header
+     * line.
+     *
+     * @param fileName the name of the file to write.
+     *
+     * @return a writer for the specified file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static TextFootprintWriter open(String fileName) {
+        try {
+            FileChannel channel =
+                FileChannel.open(Paths.get(fileName),
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+
+            TextFootprintWriter writer = new TextFootprintWriter(channel);
+            writer.writeBytes(ByteBuffer.wrap((AlleleFootprintRecord.header() + "\n").getBytes(StandardCharsets.US_ASCII)));
+
+            return writer;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override public void write(Collection<AlleleFootprintRecord> records) {
+        if (records.size() <= CHUNK_SIZE)
+            writeSerial(records);
+        else
+            writeParallel(records);
+    }
+
+    private void writeSerial(Collection<AlleleFootprintRecord> records) {
+        formatter.reset();
+        formatter.appendLines(records);
+        writeBytes(formatter.view());
+    }
+
+    private void writeParallel(Collection<AlleleFootprintRecord> records) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+
+        OrderedStream.apply(partition(records),
+                            chunk -> formatChunk(chunk),
+                            bytes -> writeBytes(bytes),
+                            threadCount,
+                            2 * threadCount);
+    }
+
+    private static List<List<AlleleFootprintRecord>> partition(Collection<AlleleFootprintRecord> records) {
+        List<AlleleFootprintRecord> list = new ArrayList<AlleleFootprintRecord>(records);
+        List<List<AlleleFootprintRecord>> chunks = new ArrayList<List<AlleleFootprintRecord>>();
+
+        for (int start = 0; start < list.size(); start += CHUNK_SIZE)
+            chunks.add(list.subList(start, Math.min(start + CHUNK_SIZE, list.size())));
+
+        return chunks;
+    }
+
+    private static ByteBuffer formatChunk(List<AlleleFootprintRecord> chunk) {
+        FootprintFormatter chunkFormatter = new FootprintFormatter(chunk.size() * BYTES_PER_RECORD);
+        chunkFormatter.appendLines(chunk);
+        return chunkFormatter.view();
+    }
+
+    private void writeBytes(ByteBuffer bytes) {
+        try {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override public void close() {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package nfi.junit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jene.hla.Allele;
+import jene.neo.NeoPeptide;
+import jene.neo.PeptidePairRecord;
+import jene.neo.PeptidePairTable;
+import jene.neo.SelfPeptide;
+import jene.peptide.Peptide;
+import jene.tcga.TumorBarcode;
+
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
+import nfi.model.AlleleBindingPlan;
+import nfi.model.AlleleFootprintIndex;
+import nfi.model.AlleleFootprintRecord;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class AlleleBindingPlanTest {
+    private static final TumorBarcode BARCODE1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode BARCODE2 = TumorBarcode.instance("Tumor2");
+    private static final TumorBarcode BARCODE3 = TumorBarcode.instance("Tumor3");
+    private static final TumorBarcode BARCODE4 = TumorBarcode.instance("Tumor4");
+
+    private static final NeoPeptide NEO3 = NeoPeptide.instance("FQDSPMHAL");
+    private static final SelfPeptide SELF3 = SelfPeptide.instance("FTASPMHAV");
+
+    //
+    // Barcodes 1 and 2 share a pair, barcode 4 has no genotype...
+    //
+    private static final List<PeptidePairRecord> PAIRS =
+        List.of(pair1(BARCODE1), pair2(BARCODE1),
+                pair1(BARCODE2), PeptidePairRecord.instance(BARCODE2, GENE, RANGE, SELF3, NEO3),
+                pair2(BARCODE3),
+                pair1(BARCODE4));
+
+    private static final Map<TumorBarcode, Set<Allele>> GENOTYPES =
+        Map.of(BARCODE1, Set.of(A0101, A0201), BARCODE2, Set.of(A0101), BARCODE3, Set.of(A0201));
+
+    //
+    // Records every call (the allele and the peptides presented) and
+    // assigns each allele-peptide pair a distinct binding...
+    //
+    private static final class RecordingPredictor {
+        private final Map<Allele, List<Set<Peptide>>> calls = new ConcurrentHashMap<Allele, List<Set<Peptide>>>();
+
+        private PeptideBindingMap predict(Allele allele, Collection<? extends Peptide> peptides) {
+            calls.computeIfAbsent(allele, key -> new ArrayList<Set<Peptide>>()).add(new HashSet<Peptide>(peptides));
+            PeptideBindingMap bindingMap = PeptideBindingMap.create(peptides.size());
+
+            for (Peptide peptide : peptides) {
+                double affinity = 10.0 + Math.abs((31 * allele.hashCode() + peptide.hashCode()) % 1000);
+                bindingMap.put(peptide, PeptideBinding.create(affinity, 1.0, 2.0, 3.0));
+            }
+
+            return bindingMap;
+        }
+    }
+
+    private static Set<Allele> genotype(TumorBarcode barcode) {
+        Set<Allele> alleles = GENOTYPES.get(barcode);
+
+        if (alleles == null)
+            throw new IllegalStateException("No genotype.");
+
+        return alleles;
+    }
+
+    private static Set<Peptide> peptides(TumorBarcode... barcodes) {
+        Set<Peptide> peptides = new HashSet<Peptide>();
+
+        for (TumorBarcode barcode : barcodes)
+            peptides.addAll(PeptidePairRecord.peptides(PeptidePairTable.create(PAIRS).lookup(barcode)));
+
+        return peptides;
+    }
+
+    @Test public void testExecute() {
+        PeptidePairTable pairTable = PeptidePairTable.create(PAIRS);
+        AlleleBindingPlan plan =
+            AlleleBindingPlan.create(List.of(BARCODE1, BARCODE2, BARCODE3, BARCODE4), pairTable, AlleleBindingPlanTest::genotype);
+
+        assertEquals(Set.of(A0101, A0201), plan.viewAlleles());
+        assertEquals(peptides(BARCODE1, BARCODE2), plan.viewPeptides(A0101));
+        assertEquals(peptides(BARCODE1, BARCODE3), plan.viewPeptides(A0201));
+        assertEquals(10, plan.countAllelePeptides());
+
+        RecordingPredictor predictor = new RecordingPredictor();
+        Map<Allele, PeptideBindingMap> bindingMaps = plan.execute(AlleleFootprintIndex.LOG_AFFINITY, predictor::predict);
+
+        // One call per allele, over the union of peptides...
+        assertEquals(Set.of(A0101, A0201), predictor.calls.keySet());
+        assertEquals(List.of(peptides(BARCODE1, BARCODE2)), predictor.calls.get(A0101));
+        assertEquals(List.of(peptides(BARCODE1, BARCODE3)), predictor.calls.get(A0201));
+
+        // The planned bindings give the same records as the per-barcode
+        // predictions...
+        RecordingPredictor perBarcode = new RecordingPredictor();
+
+        for (TumorBarcode barcode : List.of(BARCODE1, BARCODE2, BARCODE3)) {
+            List<PeptidePairRecord> pairs = pairTable.lookup(barcode);
+
+            for (Allele allele : GENOTYPES.get(barcode)) {
+                List<AlleleFootprintRecord> expected =
+                    AlleleFootprintIndex.LOG_AFFINITY.compute(allele, pairs, perBarcode.predict(allele, PeptidePairRecord.peptides(pairs)));
+
+                List<AlleleFootprintRecord> actual =
+                    AlleleFootprintIndex.LOG_AFFINITY.compute(allele, pairs, bindingMaps.get(allele));
+
+                assertSameRecords(expected, actual);
+            }
+        }
+    }
+
+    @Test public void testEmpty() {
+        RecordingPredictor predictor = new RecordingPredictor();
+        AlleleBindingPlan plan = AlleleBindingPlan.create(List.of(BARCODE4), PeptidePairTable.create(PAIRS), AlleleBindingPlanTest::genotype);
+
+        assertEquals(0, plan.countAlleles());
+        assertTrue(plan.execute(AlleleFootprintIndex.LOG_AFFINITY, predictor::predict).isEmpty());
+        assertTrue(predictor.calls.isEmpty());
+    }
+}
@@ -1,6 +1,8 @@
 
 package nfi.junit;
 
+import java.util.List;
+
 import jam.junit.NumericTestBase;
 import jam.math.IntRange;
 import jam.util.RegexUtil;
@@ -14,7 +16,10 @@ import jene.neo.SelfPeptide;
 import jene.peptide.Peptide;
 import jene.tcga.TumorBarcode;
 
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
 import nfi.model.AlleleFootprintIndex;
+import nfi.model.AlleleFootprintRecord;
 import nfi.model.AlleleFootprintType;
 
 import org.junit.*;
@@ -63,6 +68,67 @@ public class AlleleFootprintIndexTest extends NumericTestBase {
         assertEquals(-1.680, logStability.compute(A0201, pair2).getFootprintIndex(), 0.001);
     }
 
+    @Test public void testDuplicatePairs() {
+        PeptideBindingMap bindingMap = PeptideBindingMap.create(4);
+
+        bindingMap.put(neo1, PeptideBinding.create(100.0, 2.0, 2.0, 0.5));
+        bindingMap.put(self1, PeptideBinding.create(400.0, 1.0, 1.0, 1.5));
+        bindingMap.put(neo2, PeptideBinding.create(800.0, 0.5, 0.5, 4.0));
+        bindingMap.put(self2, PeptideBinding.create(200.0, 4.0, 4.0, 2.0));
+
+        // The same peptides from a different genomic range...
+        PeptidePairRecord pair1Copy =
+            PeptidePairRecord.instance(barcode, symbol, IntRange.instance(11, 19), self1, neo1);
+
+        List<AlleleFootprintRecord> records =
+            logAffinity.compute(A0101, List.of(pair1, pair2, pair1Copy), bindingMap);
+
+        assertEquals(3, records.size());
+        assertSame(pair1Copy, records.get(2).getPeptidePairRecord());
+
+        assertEquals(2.0, records.get(0).getFootprintIndex(), 1.0E-12);
+        assertEquals(-2.0, records.get(1).getFootprintIndex(), 1.0E-12);
+        assertEquals(2.0, records.get(2).getFootprintIndex(), 1.0E-12);
+
+        assertEquals(records.get(0).getNeoBindingQty(), records.get(2).getNeoBindingQty(), 0.0);
+        assertEquals(records.get(0).getSelfBindingPct(), records.get(2).getSelfBindingPct(), 0.0);
+    }
+
+    @Test public void testBulk() {
+        PeptideBinding[] neoBindings = {
+            PeptideBinding.create(100.0, 2.0, 2.0, 0.5),
+            PeptideBinding.create(800.0, 0.5, 0.5, 4.0),
+            PeptideBinding.create(35.0, 7.0, 7.0, 0.1)
+        };
+
+        PeptideBinding[] selfBindings = {
+            PeptideBinding.create(400.0, 1.0, 1.0, 1.5),
+            PeptideBinding.create(200.0, 4.0, 4.0, 2.0),
+            PeptideBinding.create(5000.0, 0.3, 0.3, 12.0)
+        };
+
+        for (AlleleFootprintIndex footprintIndex : List.of(logAffinity, logStability)) {
+            double[] neoQty = new double[neoBindings.length];
+            double[] selfQty = new double[neoBindings.length];
+            double[] footprintIndexes = new double[neoBindings.length];
+
+            for (int index = 0; index < neoBindings.length; ++index) {
+                neoQty[index] = footprintIndex.quantity(neoBindings[index]);
+                selfQty[index] = footprintIndex.quantity(selfBindings[index]);
+            }
+
+            footprintIndex.compute(neoQty, selfQty, footprintIndexes);
+
+            for (int index = 0; index < neoBindings.length; ++index)
+                assertEquals(footprintIndex.compute(neoBindings[index], selfBindings[index]), footprintIndexes[index], 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkLength() {
+        logAffinity.compute(new double[2], new double[2], new double[1]);
+    }
+
     public static void main(String[] args) {
         org.junit.runner.JUnitCore.main("nfi.junit.AlleleFootprintIndexTest");
     }
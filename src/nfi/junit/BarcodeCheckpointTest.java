@@ -0,0 +1,83 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.model.BarcodeCheckpoint;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class BarcodeCheckpointTest {
+    private static final TumorBarcode BARCODE1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode BARCODE2 = TumorBarcode.instance("Tumor2");
+
+    private static List<AlleleFootprintRecord> records(TumorBarcode barcode) {
+        return List.of(AlleleFootprintRecord.create(pair1(barcode), A0101, AlleleFootprintType.LOG_AFFINITY, 10.0, 1.0, 20.0, 2.0, 1.0),
+                       AlleleFootprintRecord.create(pair2(barcode), A0201, AlleleFootprintType.LOG_AFFINITY, 30.0, 3.0, 40.0, 4.0, 0.5));
+    }
+
+    private static BarcodeCheckpoint open() throws IOException {
+        File dir = tempDir("checkpoint");
+
+        for (String name : new String[] { "Tumor1.nfb", "Tumor1.fingerprint", "Tumor1.failed",
+                                          "Tumor2.nfb", "Tumor2.fingerprint", "Tumor2.failed" })
+            tempPath(dir, name);
+
+        return BarcodeCheckpoint.open(dir.getPath());
+    }
+
+    @Test public void testComplete() throws IOException {
+        BarcodeCheckpoint checkpoint = open();
+
+        assertFalse(checkpoint.isComplete(BARCODE1, "abc"));
+        checkpoint.complete(BARCODE1, "abc", records(BARCODE1));
+
+        assertTrue(checkpoint.isComplete(BARCODE1, "abc"));
+        assertFalse(checkpoint.isComplete(BARCODE2, "abc"));
+        assertSameRecords(records(BARCODE1), checkpoint.load(BARCODE1));
+    }
+
+    @Test public void testChangedFingerprint() throws IOException {
+        BarcodeCheckpoint checkpoint = open();
+
+        checkpoint.complete(BARCODE1, "abc", records(BARCODE1));
+        checkpoint.complete(BARCODE2, "def", records(BARCODE2));
+
+        assertFalse(checkpoint.isComplete(BARCODE1, "xyz"));
+        assertEquals(List.of(BARCODE1),
+                     checkpoint.pending(List.of(BARCODE1, BARCODE2), Map.of(BARCODE1, "xyz", BARCODE2, "def")));
+
+        checkpoint.complete(BARCODE1, "xyz", records(BARCODE1));
+        assertTrue(checkpoint.isComplete(BARCODE1, "xyz"));
+        assertFalse(checkpoint.isComplete(BARCODE1, "abc"));
+    }
+
+    @Test public void testFail() throws IOException {
+        BarcodeCheckpoint checkpoint = open();
+
+        checkpoint.complete(BARCODE1, "abc", records(BARCODE1));
+        checkpoint.fail(BARCODE1, new IllegalStateException("failed"));
+
+        assertTrue(checkpoint.isFailed(BARCODE1));
+        assertFalse(checkpoint.isComplete(BARCODE1, "abc"));
+        assertEquals(List.of(BARCODE1), checkpoint.failed(List.of(BARCODE1, BARCODE2)));
+
+        checkpoint.complete(BARCODE1, "abc", records(BARCODE1));
+
+        assertFalse(checkpoint.isFailed(BARCODE1));
+        assertTrue(checkpoint.isComplete(BARCODE1, "abc"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testLoadMissing() throws IOException {
+        open().load(BARCODE1);
+    }
+}
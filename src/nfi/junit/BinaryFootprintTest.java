@@ -0,0 +1,69 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.BinaryFootprintReader;
+import nfi.io.FootprintBlock;
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintWriter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class BinaryFootprintTest {
+    private static final TumorBarcode barcode = TumorBarcode.instance("Tumor");
+
+    private static final PeptidePairRecord pair1 = pair1(barcode);
+    private static final PeptidePairRecord pair2 = pair2(barcode);
+
+    private static final List<AlleleFootprintRecord> records =
+        List.of(AlleleFootprintRecord.create(pair1, A0101, AlleleFootprintType.LOG_AFFINITY, 123.4, 1.25, 456.7, 2.5, -0.622),
+                AlleleFootprintRecord.create(pair1, A0201, AlleleFootprintType.LOG_AFFINITY, 23.4, 0.25, 56.7, 0.5, -1.528),
+                AlleleFootprintRecord.create(pair2, A0101, AlleleFootprintType.LOG_STABILITY, 1.5, 3.0, 2.0, 4.0, -0.396));
+
+    private static File writeBinary() throws IOException {
+        File file = tempFile("footprint", ".nfb");
+
+        try (FootprintWriter writer = FootprintWriter.open(file.getPath(), FootprintFormat.BINARY)) {
+            writer.write(records);
+        }
+
+        return file;
+    }
+
+    @Test public void testRoundTrip() throws IOException {
+        File file = writeBinary();
+        assertEquals(FootprintFormat.BINARY, FootprintFormat.detect(file.getPath()));
+
+        assertSameRecords(records, BinaryFootprintReader.load(file.getPath()));
+    }
+
+    @Test public void testProjection() throws IOException {
+        File file = writeBinary();
+
+        try (BinaryFootprintReader reader = BinaryFootprintReader.open(file.getPath())) {
+            int alleleColumn = reader.columnIndex("Patient_Allele");
+            int indexColumn = reader.columnIndex("Footprint_Index");
+
+            FootprintBlock block = reader.next(alleleColumn, indexColumn);
+
+            assertEquals(3, block.rowCount());
+            assertFalse(block.isDecoded(0));
+            assertEquals(A0201.shortKey(), block.getString(alleleColumn, 1));
+            assertArrayEquals(new double[] { -0.622, -1.528, -0.396 }, block.doubles(indexColumn), 1.0E-12);
+            assertNull(reader.next());
+        }
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("nfi.junit.BinaryFootprintTest");
+    }
+}
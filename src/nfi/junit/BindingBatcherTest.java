@@ -0,0 +1,258 @@
+package nfi.junit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jene.hla.Allele;
+import jene.neo.NeoPeptide;
+import jene.peptide.Peptide;
+
+import nfi.bind.BindingBatcher;
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class BindingBatcherTest {
+    private static final int CALLER_COUNT = 8;
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+
+    //
+    // A stub prediction function that counts its calls and the total
+    // number of peptides predicted, and assigns each peptide a unique
+    // affinity (its index in the peptide list)...
+    //
+    private static final class CountingPredictor {
+        private final Map<Peptide, Integer> indexes = new HashMap<Peptide, Integer>();
+        private final AtomicInteger callCount = new AtomicInteger();
+        private final AtomicInteger peptideCount = new AtomicInteger();
+
+        private CountingPredictor(List<NeoPeptide> peptides) {
+            for (int index = 0; index < peptides.size(); ++index)
+                indexes.put(peptides.get(index), index);
+        }
+
+        private PeptideBindingMap predict(Allele allele, Collection<Peptide> peptides) {
+            callCount.incrementAndGet();
+            peptideCount.addAndGet(peptides.size());
+
+            PeptideBindingMap bindingMap = PeptideBindingMap.create(peptides.size());
+
+            for (Peptide peptide : peptides)
+                bindingMap.put(peptide, binding(allele, indexes.get(peptide)));
+
+            return bindingMap;
+        }
+    }
+
+    private static PeptideBinding binding(Allele allele, int index) {
+        double offset = allele.equals(A0101) ? 0.0 : 0.5;
+        return PeptideBinding.create(index + offset, 1.0, 2.0, 3.0);
+    }
+
+    private static List<NeoPeptide> peptides(int count) {
+        List<NeoPeptide> peptides = new ArrayList<NeoPeptide>(count);
+
+        for (int index = 0; index < count; ++index) {
+            char c1 = RESIDUES.charAt(index % RESIDUES.length());
+            char c2 = RESIDUES.charAt(index / RESIDUES.length());
+
+            peptides.add(NeoPeptide.instance("FQ" + c1 + c2 + "PMHAV"));
+        }
+
+        return peptides;
+    }
+
+    private static List<CompletableFuture<PeptideBindingMap>> submitConcurrently(BindingBatcher batcher,
+                                                                                 Allele allele,
+                                                                                 List<List<NeoPeptide>> requests)
+        throws InterruptedException {
+        List<CompletableFuture<PeptideBindingMap>> futures =
+            new ArrayList<CompletableFuture<PeptideBindingMap>>(Collections.nCopies(requests.size(), null));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int index = 0; index < requests.size(); ++index) {
+            int caller = index;
+
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+
+                CompletableFuture<PeptideBindingMap> future = batcher.submit(allele, requests.get(caller));
+
+                synchronized (futures) {
+                    futures.set(caller, future);
+                }
+            }));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+
+        start.countDown();
+
+        for (Thread thread : threads)
+            thread.join();
+
+        return futures;
+    }
+
+    private static List<List<NeoPeptide>> overlappingRequests(List<NeoPeptide> peptides) {
+        //
+        // Caller k requests peptides k, k + 1 and k + 2, so neighboring
+        // callers share peptides...
+        //
+        List<List<NeoPeptide>> requests = new ArrayList<List<NeoPeptide>>();
+
+        for (int caller = 0; caller < CALLER_COUNT; ++caller)
+            requests.add(peptides.subList(caller, caller + 3));
+
+        return requests;
+    }
+
+    private static void assertOwnBindings(Allele allele, List<NeoPeptide> all, List<NeoPeptide> requested, PeptideBindingMap result) {
+        assertEquals(requested.size(), result.size());
+
+        for (NeoPeptide peptide : requested)
+            assertEquals(binding(allele, all.indexOf(peptide)).getAffinity(), result.require(peptide).getAffinity(), 0.0);
+    }
+
+    @Test public void testCoalesce() throws InterruptedException {
+        List<NeoPeptide> peptides = peptides(CALLER_COUNT + 2);
+        List<List<NeoPeptide>> requests = overlappingRequests(peptides);
+
+        CountingPredictor predictor = new CountingPredictor(peptides);
+        BindingBatcher batcher = BindingBatcher.create(1000, 500L, predictor::predict);
+
+        List<CompletableFuture<PeptideBindingMap>> futures = submitConcurrently(batcher, A0101, requests);
+
+        for (int caller = 0; caller < CALLER_COUNT; ++caller)
+            assertOwnBindings(A0101, peptides, requests.get(caller), futures.get(caller).join());
+
+        // Fewer prediction calls than requests, and each distinct
+        // peptide predicted once per call...
+        assertTrue(predictor.callCount.get() < CALLER_COUNT);
+        assertTrue(predictor.peptideCount.get() < 3 * CALLER_COUNT);
+    }
+
+    @Test public void testBatchSize() {
+        List<NeoPeptide> peptides = peptides(4);
+        CountingPredictor predictor = new CountingPredictor(peptides);
+
+        //
+        // The batch is dispatched as soon as it is full, long before
+        // the maximum wait...
+        //
+        BindingBatcher batcher = BindingBatcher.create(4, 60000L, predictor::predict);
+
+        CompletableFuture<PeptideBindingMap> future1 = batcher.submit(A0101, peptides.subList(0, 2));
+        CompletableFuture<PeptideBindingMap> future2 = batcher.submit(A0101, peptides.subList(2, 4));
+
+        assertOwnBindings(A0101, peptides, peptides.subList(0, 2), future1.join());
+        assertOwnBindings(A0101, peptides, peptides.subList(2, 4), future2.join());
+
+        assertEquals(1, predictor.callCount.get());
+        assertEquals(4, predictor.peptideCount.get());
+    }
+
+    @Test public void testAlleles() {
+        List<NeoPeptide> peptides = peptides(4);
+        CountingPredictor predictor = new CountingPredictor(peptides);
+        BindingBatcher batcher = BindingBatcher.create(1000, 20L, predictor::predict);
+
+        // Requests for different alleles are never merged...
+        CompletableFuture<PeptideBindingMap> future1 = batcher.submit(A0101, peptides);
+        CompletableFuture<PeptideBindingMap> future2 = batcher.submit(A0201, peptides);
+
+        assertOwnBindings(A0101, peptides, peptides, future1.join());
+        assertOwnBindings(A0201, peptides, peptides, future2.join());
+
+        assertEquals(2, predictor.callCount.get());
+        assertOwnBindings(A0101, peptides, peptides.subList(1, 3), batcher.predict(A0101, peptides.subList(1, 3)));
+    }
+
+    @Test public void testFailure() throws InterruptedException {
+        List<NeoPeptide> peptides = peptides(CALLER_COUNT + 2);
+        AtomicInteger callCount = new AtomicInteger();
+
+        BindingBatcher batcher =
+            BindingBatcher.create(1000, 100L, (allele, batch) -> {
+                    callCount.incrementAndGet();
+                    throw new IllegalStateException("Prediction failed.");
+                });
+
+        List<CompletableFuture<PeptideBindingMap>> futures =
+            submitConcurrently(batcher, A0101, overlappingRequests(peptides));
+
+        for (CompletableFuture<PeptideBindingMap> future : futures) {
+            try {
+                future.join();
+                fail("Expected the prediction failure.");
+            }
+            catch (CompletionException ex) {
+                assertTrue(ex.getCause() instanceof IllegalStateException);
+            }
+        }
+
+        assertTrue(callCount.get() < CALLER_COUNT);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPredictFailure() {
+        BindingBatcher batcher =
+            BindingBatcher.create(1, 100L, (allele, batch) -> { throw new IllegalStateException("Prediction failed."); });
+
+        batcher.predict(A0101, peptides(2));
+    }
+
+    @Test public void testError() throws InterruptedException, TimeoutException {
+        List<NeoPeptide> peptides = peptides(CALLER_COUNT + 2);
+
+        //
+        // An error (rather than a runtime exception) from the predictor
+        // must still complete every pending future...
+        //
+        BindingBatcher batcher =
+            BindingBatcher.create(1000, 100L, (allele, batch) -> { throw new AssertionError("Prediction error."); });
+
+        List<CompletableFuture<PeptideBindingMap>> futures =
+            submitConcurrently(batcher, A0101, overlappingRequests(peptides));
+
+        for (CompletableFuture<PeptideBindingMap> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Expected the prediction error.");
+            }
+            catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof AssertionError);
+            }
+        }
+
+        try {
+            batcher.predict(A0101, peptides);
+            fail("Expected the prediction error.");
+        }
+        catch (AssertionError ex) {
+            assertEquals("Prediction error.", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package nfi.junit;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jene.hla.Allele;
+import jene.neo.NeoPeptide;
+import jene.neo.PeptidePairRecord;
+import jene.neo.SelfPeptide;
+import jene.peptide.Peptide;
+import jene.tcga.TumorBarcode;
+
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
+import nfi.model.AlleleFootprintIndex;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.BindingScreen;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class BindingScreenTest {
+    private static final double CUTOFF = 2.0;
+
+    private static final TumorBarcode BARCODE = TumorBarcode.instance("Tumor1");
+
+    private static final NeoPeptide NEO3 = NeoPeptide.instance("FQDSPMHAL");
+    private static final SelfPeptide SELF3 = SelfPeptide.instance("FTASPMHAV");
+
+    //
+    // Pair 1 passes on its neo-peptide, pair 2 passes on its
+    // self-peptide, and pair 3 is pruned...
+    //
+    private static final PeptidePairRecord PAIR1 = pair1(BARCODE);
+    private static final PeptidePairRecord PAIR2 = pair2(BARCODE);
+    private static final PeptidePairRecord PAIR3 = PeptidePairRecord.instance(BARCODE, GENE, RANGE, SELF3, NEO3);
+
+    private static final List<PeptidePairRecord> PAIRS = List.of(PAIR1, PAIR2, PAIR3);
+
+    private static final Map<Peptide, Double> PERCENTILES =
+        Map.of(NEO1, 1.0, SELF1, 50.0, NEO2, 50.0, SELF2, 2.0, NEO3, 2.5, SELF3, 75.0);
+
+    private static final Map<Peptide, Double> HALF_LIVES =
+        Map.of(NEO1, 8.0, SELF1, 2.0, NEO2, 1.0, SELF2, 4.0, NEO3, 3.0, SELF3, 3.0);
+
+    //
+    // Builds the affinity predictions consulted by the screen (for
+    // any allele) and counts the peptides predicted...
+    //
+    private static final class AffinityPredictor {
+        private final AtomicInteger peptideCount = new AtomicInteger();
+
+        private PeptideBindingMap predict(Allele allele, Collection<? extends Peptide> peptides) {
+            peptideCount.addAndGet(peptides.size());
+            PeptideBindingMap bindingMap = PeptideBindingMap.create(peptides.size());
+
+            for (Peptide peptide : peptides)
+                bindingMap.put(peptide, PeptideBinding.create(100.0, 1.0, 100.0, PERCENTILES.get(peptide)));
+
+            return bindingMap;
+        }
+    }
+
+    private static PeptideBindingMap stabilityMap(Collection<? extends Peptide> peptides) {
+        PeptideBindingMap bindingMap = PeptideBindingMap.create(peptides.size());
+
+        for (Peptide peptide : peptides)
+            bindingMap.put(peptide, PeptideBinding.create(100.0, HALF_LIVES.get(peptide), HALF_LIVES.get(peptide), 10.0));
+
+        return bindingMap;
+    }
+
+    private static void assertFootprint(AlleleFootprintRecord record, PeptidePairRecord pair, double expected) {
+        assertEquals(pair.format(AlleleFootprintRecord.DELIM), record.getPeptidePairRecord().format(AlleleFootprintRecord.DELIM));
+        assertEquals(expected, record.getFootprintIndex(), 1.0E-12);
+    }
+
+    private static void assertPruned(AlleleFootprintRecord record, PeptidePairRecord pair) {
+        assertFootprint(record, pair, Double.NaN);
+
+        assertTrue(Double.isNaN(record.getNeoBindingQty()));
+        assertTrue(Double.isNaN(record.getNeoBindingPct()));
+        assertTrue(Double.isNaN(record.getSelfBindingQty()));
+        assertTrue(Double.isNaN(record.getSelfBindingPct()));
+    }
+
+    @Test public void testScreen() {
+        AffinityPredictor predictor = new AffinityPredictor();
+        BindingScreen screen = BindingScreen.create(CUTOFF, true, predictor::predict);
+
+        boolean[] passed = screen.screen(A0101, PAIRS);
+
+        assertTrue(passed[0]);
+        assertTrue(passed[1]);
+        assertFalse(passed[2]);
+
+        assertEquals(3, screen.countScreened());
+        assertEquals(1, screen.countPruned());
+        assertEquals(6, predictor.peptideCount.get());
+
+        assertEquals(Set.of(NEO1, SELF1, NEO2, SELF2), BindingScreen.passedPeptides(PAIRS, passed));
+
+        // Decisions are retained, but every screen is counted...
+        screen.screen(A0101, List.of(PAIR3));
+
+        assertEquals(4, screen.countScreened());
+        assertEquals(2, screen.countPruned());
+        assertEquals(6, predictor.peptideCount.get());
+
+        // Each allele is predicted separately...
+        screen.screen(A0201, List.of(PAIR1));
+        assertEquals(8, predictor.peptideCount.get());
+    }
+
+    @Test public void testRequiredPeptides() {
+        AffinityPredictor predictor = new AffinityPredictor();
+        BindingScreen screen = BindingScreen.create(CUTOFF, false, predictor::predict);
+
+        Set<Peptide> required =
+            screen.requiredPeptides(A0101, PeptidePairRecord.peptides(PAIRS), List.of(List.of(PAIR1), List.of(PAIR2, PAIR3)));
+
+        assertEquals(Set.of(NEO1, SELF1, NEO2, SELF2), required);
+
+        // The pruning counts are not affected...
+        assertEquals(0, screen.countScreened());
+        assertEquals(0, screen.countPruned());
+    }
+
+    @Test public void testEmitPruned() {
+        BindingScreen screen = BindingScreen.create(CUTOFF, true, new AffinityPredictor()::predict);
+
+        List<AlleleFootprintRecord> records =
+            AlleleFootprintIndex.LOG_STABILITY.compute(A0101, PAIRS, stabilityMap(Set.of(NEO1, SELF1, NEO2, SELF2)), screen);
+
+        assertEquals(3, records.size());
+
+        assertFootprint(records.get(0), PAIR1, 2.0);
+        assertFootprint(records.get(1), PAIR2, -2.0);
+        assertPruned(records.get(2), PAIR3);
+
+        assertEquals(3, screen.countScreened());
+        assertEquals(1, screen.countPruned());
+    }
+
+    @Test public void testOmitPruned() {
+        BindingScreen screen = BindingScreen.create(CUTOFF, false, new AffinityPredictor()::predict);
+
+        List<AlleleFootprintRecord> records =
+            AlleleFootprintIndex.LOG_STABILITY.compute(A0101, PAIRS, stabilityMap(Set.of(NEO1, SELF1, NEO2, SELF2)), screen);
+
+        assertEquals(2, records.size());
+
+        assertFootprint(records.get(0), PAIR1, 2.0);
+        assertFootprint(records.get(1), PAIR2, -2.0);
+
+        assertEquals(3, screen.countScreened());
+        assertEquals(1, screen.countPruned());
+    }
+
+    @Test public void testScreeningPredictor() {
+        AffinityPredictor predictor = new AffinityPredictor();
+        BindingScreen screen = BindingScreen.create(CUTOFF, false, predictor::predict);
+
+        // Footprints computed with the screening predictor itself are
+        // never screened...
+        assertFalse(screen.appliesTo(AlleleFootprintIndex.LOG_AFFINITY));
+        assertTrue(screen.appliesTo(AlleleFootprintIndex.LOG_STABILITY));
+
+        PeptideBindingMap bindingMap = predictor.predict(A0101, PeptidePairRecord.peptides(PAIRS));
+        List<AlleleFootprintRecord> records = AlleleFootprintIndex.LOG_AFFINITY.compute(A0101, PAIRS, bindingMap, screen);
+
+        assertEquals(3, records.size());
+        assertEquals(0, screen.countScreened());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMissingBinding() {
+        BindingScreen screen = BindingScreen.create(CUTOFF, true, new AffinityPredictor()::predict);
+
+        // The binding map must cover the peptides in passing pairs...
+        AlleleFootprintIndex.LOG_STABILITY.compute(A0101, PAIRS, stabilityMap(Set.of(NEO1, SELF1)), screen);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCutoff() {
+        BindingScreen.create(0.0, true);
+    }
+}
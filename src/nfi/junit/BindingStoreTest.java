@@ -0,0 +1,184 @@
+package nfi.junit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import jene.peptide.Peptide;
+
+import nfi.bind.BindingCache;
+import nfi.bind.BindingStore;
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class BindingStoreTest {
+    //
+    // The magic header and the size of one entry for a nine-residue
+    // peptide: the length byte, the peptide and four doubles...
+    //
+    private static final int HEADER_BYTES = 8;
+    private static final int ENTRY_BYTES = 1 + 9 + 4 * Double.BYTES;
+
+    private static PeptideBinding binding(double affinity) {
+        return PeptideBinding.create(affinity, affinity + 1.0, affinity + 2.0, affinity + 3.0);
+    }
+
+    private static PeptideBindingMap bindingMap(Peptide peptide, double affinity) {
+        PeptideBindingMap bindingMap = PeptideBindingMap.create(1);
+        bindingMap.put(peptide, binding(affinity));
+        return bindingMap;
+    }
+
+    private static Path storePath() throws IOException {
+        return Paths.get(tempPath(tempDir("binding-store"), "A0101.bin"));
+    }
+
+    private static void assertBinding(BindingStore store, Peptide peptide, double affinity) {
+        PeptideBinding expected = binding(affinity);
+        PeptideBinding actual = store.lookup(peptide);
+
+        assertNotNull(actual);
+        assertEquals(expected.getAffinity(), actual.getAffinity(), 0.0);
+        assertEquals(expected.getHalfLife(), actual.getHalfLife(), 0.0);
+        assertEquals(expected.getStrength(), actual.getStrength(), 0.0);
+        assertEquals(expected.getPercentile(), actual.getPercentile(), 0.0);
+    }
+
+    private static void appendBytes(Path path, byte[] bytes) throws IOException {
+        Files.write(path, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test public void testRoundTrip() throws IOException {
+        Path path = storePath();
+        BindingStore store = BindingStore.open(path);
+
+        assertEquals(0, store.size());
+        assertFalse(Files.exists(path));
+
+        PeptideBindingMap bindingMap = PeptideBindingMap.create(2);
+        bindingMap.put(NEO1, binding(10.0));
+        bindingMap.put(SELF1, binding(20.0));
+
+        store.append(bindingMap);
+        store.append(PeptideBindingMap.create(0));
+
+        assertEquals(2, store.size());
+        assertBinding(store, NEO1, 10.0);
+        assertNull(store.lookup(NEO2));
+
+        store = BindingStore.open(path);
+
+        assertEquals(2, store.size());
+        assertBinding(store, NEO1, 10.0);
+        assertBinding(store, SELF1, 20.0);
+
+        store.append(bindingMap(NEO2, 30.0));
+        store = BindingStore.open(path);
+
+        assertEquals(3, store.size());
+        assertBinding(store, NEO2, 30.0);
+        assertEquals(HEADER_BYTES + 3 * ENTRY_BYTES, Files.size(path));
+    }
+
+    @Test public void testPartialEntry() throws IOException {
+        Path path = storePath();
+        BindingStore.open(path).append(bindingMap(NEO1, 10.0));
+
+        //
+        // An interrupted writer left the length byte, the peptide and
+        // part of the first double...
+        //
+        byte[] partial = new byte[1 + 9 + 3];
+        partial[0] = 9;
+        System.arraycopy(NEO2.formatString().getBytes(StandardCharsets.US_ASCII), 0, partial, 1, 9);
+        appendBytes(path, partial);
+
+        BindingStore store = BindingStore.open(path);
+
+        assertEquals(1, store.size());
+        assertBinding(store, NEO1, 10.0);
+        assertNull(store.lookup(NEO2));
+
+        // The partial entry is dropped before the next append...
+        store.append(bindingMap(SELF2, 40.0));
+        assertEquals(HEADER_BYTES + 2 * ENTRY_BYTES, Files.size(path));
+
+        store = BindingStore.open(path);
+
+        assertEquals(2, store.size());
+        assertBinding(store, NEO1, 10.0);
+        assertBinding(store, SELF2, 40.0);
+    }
+
+    @Test public void testPartialHeader() throws IOException {
+        Path path = storePath();
+        appendBytes(path, "NFIB".getBytes(StandardCharsets.US_ASCII));
+
+        BindingStore store = BindingStore.open(path);
+        assertEquals(0, store.size());
+
+        store.append(bindingMap(NEO1, 10.0));
+        assertEquals(HEADER_BYTES + ENTRY_BYTES, Files.size(path));
+
+        store = BindingStore.open(path);
+
+        assertEquals(1, store.size());
+        assertBinding(store, NEO1, 10.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvalidHeader() throws IOException {
+        Path path = storePath();
+        appendBytes(path, "NOTABINDINGSTORE".getBytes(StandardCharsets.US_ASCII));
+
+        BindingStore.open(path);
+    }
+
+    @Test public void testMerge() throws IOException {
+        Path path = storePath();
+
+        BindingStore store1 = BindingStore.open(path);
+        BindingStore store2 = BindingStore.open(path);
+
+        store1.append(bindingMap(NEO1, 10.0));
+
+        // The second store merges the first entry before appending...
+        store2.append(bindingMap(NEO2, 30.0));
+
+        assertEquals(2, store2.size());
+        assertBinding(store2, NEO1, 10.0);
+        assertBinding(store2, NEO2, 30.0);
+
+        // ...and the first store merges the second entry on its next
+        // append, without writing a second header...
+        assertEquals(1, store1.size());
+        assertNull(store1.lookup(NEO2));
+
+        store1.append(bindingMap(SELF1, 20.0));
+
+        assertEquals(3, store1.size());
+        assertBinding(store1, NEO2, 30.0);
+        assertEquals(HEADER_BYTES + 3 * ENTRY_BYTES, Files.size(path));
+
+        BindingStore store3 = BindingStore.open(path);
+
+        assertEquals(3, store3.size());
+        assertBinding(store3, NEO1, 10.0);
+        assertBinding(store3, NEO2, 30.0);
+        assertBinding(store3, SELF1, 20.0);
+    }
+
+    @Test public void testCacheNamespace() throws IOException {
+        Path directory = tempDir("binding-cache").toPath();
+
+        assertEquals("4_1b", BindingCache.open(directory, "4.1b").getNamespace());
+        assertEquals(BindingCache.DEFAULT_NAMESPACE, BindingCache.open(directory, "").getNamespace());
+    }
+}
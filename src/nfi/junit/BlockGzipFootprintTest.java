@@ -0,0 +1,132 @@
+package nfi.junit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.BlockGzipFootprintReader;
+import nfi.io.BlockGzipFootprintWriter;
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintRecordReader;
+import nfi.io.FootprintWriter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class BlockGzipFootprintTest {
+    private static final int BARCODE_COUNT = 5;
+    private static final int RECORDS_PER_BARCODE = 10000;
+
+    private static TumorBarcode barcode(int index) {
+        return TumorBarcode.instance(String.format("Tumor%d", index));
+    }
+
+    private static List<AlleleFootprintRecord> records() {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (int index = 0; index < BARCODE_COUNT; ++index) {
+            PeptidePairRecord pair = pair1(barcode(index));
+
+            for (int k = 0; k < RECORDS_PER_BARCODE / 2; ++k) {
+                records.add(AlleleFootprintRecord.create(pair, A0101, AlleleFootprintType.LOG_AFFINITY, k, 1.0, 2.0, 3.0, 0.5));
+                records.add(AlleleFootprintRecord.create(pair, A0201, AlleleFootprintType.LOG_AFFINITY, k, 1.0, 2.0, 3.0, 0.25));
+            }
+        }
+
+        return records;
+    }
+
+    private static String writeFile(List<AlleleFootprintRecord> records) throws IOException {
+        File file = tempFile("footprint", ".txt.gz");
+        new File(file.getPath() + ".bgzi").deleteOnExit();
+
+        // Write in small pieces, as the driver does...
+        try (FootprintWriter writer = FootprintWriter.open(file.getPath(), FootprintFormat.TSV_GZIP)) {
+            for (int start = 0; start < records.size(); start += 1000)
+                writer.write(records.subList(start, Math.min(start + 1000, records.size())));
+        }
+
+        return file.getPath();
+    }
+
+    @Test public void testRoundTrip() throws IOException {
+        List<AlleleFootprintRecord> records = records();
+        String fileName = writeFile(records);
+
+        assertEquals(FootprintFormat.TSV_GZIP, FootprintFormat.detect(fileName));
+        assertTrue(BlockGzipFootprintReader.isIndexed(fileName));
+        assertSameRecords(records, BlockGzipFootprintReader.load(fileName));
+
+        List<AlleleFootprintRecord> sequential = new ArrayList<AlleleFootprintRecord>();
+
+        try (FootprintRecordReader reader = FootprintRecordReader.open(fileName)) {
+            List<AlleleFootprintRecord> chunk = reader.next();
+
+            while (chunk != null) {
+                assertTrue(chunk.size() <= BlockGzipFootprintWriter.BLOCK_RECORDS);
+                sequential.addAll(chunk);
+                chunk = reader.next();
+            }
+        }
+
+        assertSameRecords(records, sequential);
+    }
+
+    @Test public void testStandardGzip() throws IOException {
+        List<AlleleFootprintRecord> records = records();
+        String fileName = writeFile(records);
+
+        try (BufferedReader reader = BlockGzipFootprintReader.openSerial(fileName)) {
+            assertEquals(AlleleFootprintRecord.header(), reader.readLine());
+
+            for (AlleleFootprintRecord record : records)
+                assertEquals(record.format(), reader.readLine());
+
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test public void testSelect() throws IOException {
+        List<AlleleFootprintRecord> records = records();
+        String fileName = writeFile(records);
+
+        try (BlockGzipFootprintReader reader = BlockGzipFootprintReader.open(fileName)) {
+            assertEquals(records.size(), reader.recordCount());
+            assertTrue(reader.blockCount() > 1);
+
+            for (int index = 0; index < BARCODE_COUNT; ++index)
+                assertSameRecords(records.subList(index * RECORDS_PER_BARCODE, (index + 1) * RECORDS_PER_BARCODE),
+                              reader.select(barcode(index)));
+
+            assertTrue(reader.select(barcode(BARCODE_COUNT)).isEmpty());
+        }
+    }
+
+    @Test public void testStaleIndex() throws IOException {
+        List<AlleleFootprintRecord> records = records();
+        String fileName = writeFile(records);
+
+        // Appending another gzip member leaves a valid file but a
+        // stale index, which must be ignored...
+        try (GZIPOutputStream output =
+             new GZIPOutputStream(Files.newOutputStream(Paths.get(fileName), StandardOpenOption.APPEND))) {
+            output.write((records.get(0).format() + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        assertFalse(BlockGzipFootprintReader.isIndexed(fileName));
+        assertEquals(records.size() + 1, BlockGzipFootprintReader.load(fileName).size());
+    }
+}
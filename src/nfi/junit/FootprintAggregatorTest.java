@@ -0,0 +1,99 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.score.FootprintAggregator;
+import nfi.score.FootprintSummary;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintAggregatorTest {
+    private static final TumorBarcode barcode = TumorBarcode.instance("Tumor");
+
+    private static final PeptidePairRecord pair = pair1(barcode);
+
+    private static final List<AlleleFootprintRecord> records =
+        List.of(record(-1.0), record(0.5), record(2.0), record(3.0), record(Double.NaN));
+
+    private static AlleleFootprintRecord record(double footprintIndex) {
+        return AlleleFootprintRecord.create(pair, A0101, AlleleFootprintType.LOG_AFFINITY, 1.0, 1.0, 1.0, 1.0, footprintIndex);
+    }
+
+    private static double aggregate(FootprintAggregator aggregator) {
+        return accumulate(aggregator).value();
+    }
+
+    private static FootprintAggregator.Accumulator accumulate(FootprintAggregator aggregator) {
+        FootprintAggregator.Accumulator accumulator = aggregator.newAccumulator();
+
+        for (AlleleFootprintRecord record : records)
+            accumulator.add(record);
+
+        return accumulator;
+    }
+
+    @Test public void testBuiltIn() {
+        assertEquals(2.0, aggregate(FootprintAggregator.countAbove(1.0)), 1.0E-12);
+        assertEquals(1.125, aggregate(FootprintAggregator.mean()), 1.0E-12);
+        assertEquals(3.0, aggregate(FootprintAggregator.max()), 1.0E-12);
+        assertEquals(4.5, aggregate(FootprintAggregator.sum()), 1.0E-12);
+        assertEquals(2.5, aggregate(FootprintAggregator.topK(2)), 1.0E-12);
+        assertEquals(1.125, aggregate(FootprintAggregator.topK(10)), 1.0E-12);
+    }
+
+    @Test public void testEmpty() {
+        assertTrue(Double.isNaN(FootprintAggregator.mean().newAccumulator().value()));
+        assertTrue(Double.isNaN(FootprintAggregator.max().newAccumulator().value()));
+        assertEquals(0.0, FootprintAggregator.countAbove(0.0).newAccumulator().value(), 0.0);
+    }
+
+    @Test public void testParse() {
+        List<FootprintAggregator> aggregators =
+            FootprintAggregator.parseList("COUNT_ABOVE:1.0, MEAN, MAX, TOP_K:5");
+
+        assertEquals(4, aggregators.size());
+        assertEquals("Count_Above_1.0", aggregators.get(0).columnName());
+        assertEquals("Mean", aggregators.get(1).columnName());
+        assertEquals("Max", aggregators.get(2).columnName());
+        assertEquals("Top_5_Mean", aggregators.get(3).columnName());
+    }
+
+    @Test public void testFormat() {
+        assertEquals("2", accumulate(FootprintAggregator.countAbove(1.0)).format());
+        assertEquals("1.1250", accumulate(FootprintAggregator.mean()).format());
+        assertEquals("3.0000", accumulate(FootprintAggregator.max()).format());
+        assertEquals("0", FootprintAggregator.countAbove(0.0).newAccumulator().format());
+    }
+
+    @Test public void testSummary() throws IOException {
+        File file = tempFile("summary", ".tsv");
+        FootprintSummary summary =
+            FootprintSummary.create(FootprintAggregator.parseList("COUNT_ABOVE:1.0, MEAN"), false);
+
+        summary.add(barcode, records);
+        summary.write(file.getPath());
+
+        assertEquals(List.of("Tumor_Barcode\tFootprint_Type\tPatient_Allele\tPair_Count\tCount_Above_1.0\tMean",
+                             "Tumor\tLOG_AFFINITY\tGENOTYPE\t5\t2\t1.1250"),
+                     Files.readAllLines(file.toPath()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingParameter() {
+        FootprintAggregator.parse("TOP_K");
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("nfi.junit.FootprintAggregatorTest");
+    }
+}
@@ -0,0 +1,213 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+
+import nfi.bind.BindingCache;
+import nfi.model.AlleleFootprintDriver;
+import nfi.model.FootprintDaemon;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintDaemonTest {
+    private static final long TIMEOUT = 30000L;
+
+    private static Path spoolDir() throws IOException {
+        File dir = tempDir("spool");
+
+        for (String jobId : List.of("job1", "job2", "job3"))
+            for (String suffix : List.of(".job", ".running", ".done", ".failed", ".status"))
+                tempPath(dir, jobId + suffix);
+
+        tempPath(dir, "STOP");
+        return dir.toPath();
+    }
+
+    private static File propFile(Path spoolDir) throws IOException {
+        File propFile = tempFile("daemon", ".prop");
+
+        Files.write(propFile.toPath(),
+                    List.of(FootprintDaemon.SPOOL_DIR_PROPERTY + " = " + spoolDir,
+                            FootprintDaemon.POLL_INTERVAL_PROPERTY + " = 10",
+                            FootprintDaemon.JOB_COUNT_PROPERTY + " = 2"),
+                    StandardCharsets.UTF_8);
+
+        return propFile;
+    }
+
+    private static Thread start(Path spoolDir) throws IOException {
+        File propFile = propFile(spoolDir);
+
+        // The cache directory is never written, since no job gets as
+        // far as predicting binding; it is cleared when the daemon
+        // stops, so that no other test sees it...
+        System.setProperty(BindingCache.DIRECTORY_PROPERTY, tempDir("cache").getPath());
+
+        Thread thread = new Thread(() -> FootprintDaemon.run(propFile.getPath()));
+        thread.start();
+
+        return thread;
+    }
+
+    private static void stop(Path spoolDir, Thread daemon) throws IOException, InterruptedException {
+        Files.createFile(spoolDir.resolve("STOP"));
+        join(daemon);
+        assertFalse(Files.exists(spoolDir.resolve("STOP")));
+    }
+
+    private static void join(Thread daemon) throws InterruptedException {
+        daemon.join(TIMEOUT);
+        System.clearProperty(BindingCache.DIRECTORY_PROPERTY);
+
+        assertFalse(daemon.isAlive());
+    }
+
+    private static void submit(Path spoolDir, String jobId, String... lines) throws IOException {
+        //
+        // Written under another name and renamed, as submitters must...
+        //
+        Path tempFile = spoolDir.resolve(jobId + ".tmp");
+        tempFile.toFile().deleteOnExit();
+
+        Files.write(tempFile, List.of(lines), StandardCharsets.UTF_8);
+        Files.move(tempFile, spoolDir.resolve(jobId + ".job"), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void await(Path path) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (!Files.exists(path)) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Properties readStatus(Path spoolDir, String jobId) throws IOException {
+        Properties status = new Properties();
+
+        try (Reader reader = Files.newBufferedReader(spoolDir.resolve(jobId + ".status"), StandardCharsets.UTF_8)) {
+            status.load(reader);
+        }
+
+        return status;
+    }
+
+    @Test public void testClaim() throws IOException, InterruptedException {
+        Path spoolDir = spoolDir();
+        Thread daemon = start(spoolDir);
+
+        // The job names a footprint file but none of the required
+        // inputs, so the driver fails as soon as it is created...
+        submit(spoolDir, "job1", AlleleFootprintDriver.FOOTPRINT_FILE_PROPERTY + " = " + spoolDir.resolve("job1.txt"));
+        await(spoolDir.resolve("job1.failed"));
+
+        stop(spoolDir, daemon);
+
+        assertFalse(Files.exists(spoolDir.resolve("job1.job")));
+        assertFalse(Files.exists(spoolDir.resolve("job1.running")));
+
+        Properties status = readStatus(spoolDir, "job1");
+
+        assertEquals("job1", status.getProperty("jobId"));
+        assertEquals(FootprintDaemon.JobState.FAILED.name(), status.getProperty("state"));
+        assertTrue(status.getProperty("started") != null);
+        assertTrue(status.getProperty("finished") != null);
+        assertFalse(status.getProperty("error").contains("fixed for the lifetime"));
+
+        // The job overrides were withdrawn once the driver was created...
+        assertNull(System.getProperty(AlleleFootprintDriver.FOOTPRINT_FILE_PROPERTY));
+    }
+
+    @Test public void testOverrideRejected() throws IOException, InterruptedException {
+        Path spoolDir = spoolDir();
+        Thread daemon = start(spoolDir);
+
+        submit(spoolDir, "job2", FootprintDaemon.JOB_COUNT_PROPERTY + " = 8");
+        await(spoolDir.resolve("job2.failed"));
+
+        stop(spoolDir, daemon);
+
+        Properties status = readStatus(spoolDir, "job2");
+
+        assertEquals(FootprintDaemon.JobState.FAILED.name(), status.getProperty("state"));
+        assertTrue(status.getProperty("error").contains(FootprintDaemon.JOB_COUNT_PROPERTY));
+        assertTrue(status.getProperty("error").contains("fixed for the lifetime of the daemon"));
+    }
+
+    @Test public void testMetricsFileRejected() throws IOException, InterruptedException {
+        Path spoolDir = spoolDir();
+        Thread daemon = start(spoolDir);
+
+        submit(spoolDir, "job2", AlleleFootprintDriver.METRICS_FILE_PROPERTY + " = " + spoolDir.resolve("job2.json"));
+        await(spoolDir.resolve("job2.failed"));
+
+        stop(spoolDir, daemon);
+
+        Properties status = readStatus(spoolDir, "job2");
+
+        assertEquals(FootprintDaemon.JobState.FAILED.name(), status.getProperty("state"));
+        assertTrue(status.getProperty("error").contains(AlleleFootprintDriver.METRICS_FILE_PROPERTY));
+        assertTrue(status.getProperty("error").contains("fixed for the lifetime of the daemon"));
+    }
+
+    @Test public void testBindingCacheRequired() throws IOException {
+        Path spoolDir = spoolDir();
+        System.clearProperty(BindingCache.DIRECTORY_PROPERTY);
+
+        try {
+            FootprintDaemon.run(propFile(spoolDir).getPath());
+            fail("Expected the daemon to refuse to start.");
+        }
+        catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains(BindingCache.DIRECTORY_PROPERTY));
+        }
+
+        // Nothing was written to the spool directory...
+        assertEquals(0, spoolDir.toFile().list().length);
+    }
+
+    @Test public void testRequeue() throws IOException, InterruptedException {
+        Path spoolDir = spoolDir();
+
+        //
+        // A job left running by a daemon that was killed, and a stop
+        // request that is already waiting: the job is queued again,
+        // but not claimed...
+        //
+        Files.write(spoolDir.resolve("job3.running"), List.of(FootprintDaemon.JOB_COUNT_PROPERTY + " = 8"), StandardCharsets.UTF_8);
+        Files.createFile(spoolDir.resolve("STOP"));
+
+        Thread daemon = start(spoolDir);
+        join(daemon);
+
+        assertFalse(Files.exists(spoolDir.resolve("STOP")));
+
+        assertTrue(Files.exists(spoolDir.resolve("job3.job")));
+        assertFalse(Files.exists(spoolDir.resolve("job3.running")));
+        assertFalse(Files.exists(spoolDir.resolve("job3.status")));
+    }
+
+    @Test public void testStop() throws IOException, InterruptedException {
+        Path spoolDir = spoolDir();
+        Thread daemon = start(spoolDir);
+
+        stop(spoolDir, daemon);
+
+        // Jobs submitted after the daemon stopped wait for the next
+        // daemon...
+        submit(spoolDir, "job1", FootprintDaemon.JOB_COUNT_PROPERTY + " = 8");
+        Thread.sleep(50);
+
+        assertTrue(Files.exists(spoolDir.resolve("job1.job")));
+        assertFalse(Files.exists(spoolDir.resolve("job1.running")));
+    }
+}
@@ -0,0 +1,170 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintBlock;
+import nfi.io.FootprintFileLoader;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintFileLoaderTest {
+    //
+    // Enough records to span several memory-mapped chunks (the loader
+    // never maps less than one megabyte at a time)...
+    //
+    private static final int BARCODE_COUNT = 10;
+    private static final int RECORDS_PER_BARCODE = 4000;
+
+    //
+    // Values that take the fast decimal path, values with too many
+    // digits for it, and values that only Double.parseDouble accepts...
+    //
+    private static final String[] VALUES = {
+        "0", "1", "-1", "12.5", "0.001", "+3.25", "123456789.0123",
+        "0.12345678901234567", "98765432109876543210",
+        "1.5E-7", "-2.25e3", "6.02E+23", "NaN", "Infinity", "-Infinity"
+    };
+
+    private static final int QTY_COLUMN = AlleleFootprintRecord.PAIR_COLUMN_COUNT + 2;
+    private static final int INDEX_COLUMN = AlleleFootprintRecord.COLUMN_COUNT - 1;
+
+    private static List<String> lines() {
+        List<String> lines = new ArrayList<String>();
+
+        for (int index = 0; index < BARCODE_COUNT; ++index) {
+            TumorBarcode barcode = TumorBarcode.instance(String.format("Tumor%d", index));
+            PeptidePairRecord[] pairs = { pair1(barcode), pair2(barcode) };
+
+            for (int k = 0; k < RECORDS_PER_BARCODE; ++k) {
+                PeptidePairRecord pair = pairs[(k / 3) % 2];
+                Allele allele = (k % 2 == 0) ? A0101 : A0201;
+
+                StringBuilder builder = new StringBuilder();
+                builder.append(pair.format(AlleleFootprintRecord.DELIM));
+                builder.append('\t').append(allele.shortKey());
+                builder.append('\t').append(AlleleFootprintType.LOG_AFFINITY.name());
+
+                for (int column = 0; column < 5; ++column)
+                    builder.append('\t').append(VALUES[(k + 3 * column) % VALUES.length]);
+
+                lines.add(builder.toString());
+            }
+        }
+
+        return lines;
+    }
+
+    private static String writeFile(List<String> lines, String newline) throws IOException {
+        File file = tempFile("footprint", ".txt");
+        StringBuilder builder = new StringBuilder(AlleleFootprintRecord.header()).append(newline);
+
+        for (String line : lines)
+            builder.append(line).append(newline);
+
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.US_ASCII));
+        assertTrue(file.length() > 2 * (1L << 20));
+
+        return file.getPath();
+    }
+
+    private static void assertSameValues(AlleleFootprintRecord expected, AlleleFootprintRecord actual) {
+        assertEquals(expected.format(), actual.format());
+        assertEquals(expected.getNeoBindingQty(), actual.getNeoBindingQty(), 0.0);
+        assertEquals(expected.getNeoBindingPct(), actual.getNeoBindingPct(), 0.0);
+        assertEquals(expected.getSelfBindingQty(), actual.getSelfBindingQty(), 0.0);
+        assertEquals(expected.getSelfBindingPct(), actual.getSelfBindingPct(), 0.0);
+        assertEquals(expected.getFootprintIndex(), actual.getFootprintIndex(), 0.0);
+    }
+
+    private static void assertLoaded(List<String> lines, String fileName) {
+        List<AlleleFootprintRecord> records = FootprintFileLoader.load(fileName);
+        assertEquals(lines.size(), records.size());
+
+        for (int index = 0; index < lines.size(); ++index)
+            assertSameValues(AlleleFootprintRecord.parse(lines.get(index)), records.get(index));
+    }
+
+    @Test public void testLoad() throws IOException {
+        List<String> lines = lines();
+        assertLoaded(lines, writeFile(lines, "\n"));
+    }
+
+    @Test public void testCarriageReturns() throws IOException {
+        List<String> lines = lines();
+        assertLoaded(lines, writeFile(lines, "\r\n"));
+    }
+
+    @Test public void testInterning() throws IOException {
+        List<AlleleFootprintRecord> records = FootprintFileLoader.load(writeFile(lines(), "\n"));
+
+        // The first records for the first and last tumors...
+        AlleleFootprintRecord first = records.get(0);
+        AlleleFootprintRecord last = records.get(records.size() - RECORDS_PER_BARCODE);
+
+        assertFalse(first.getPeptidePairRecord().getTumorBarcode().equals(last.getPeptidePairRecord().getTumorBarcode()));
+
+        assertSame(first.getPatientAllele(), last.getPatientAllele());
+        assertSame(first.getPeptidePairRecord().getHugoSymbol(), last.getPeptidePairRecord().getHugoSymbol());
+        assertSame(first.getPeptidePairRecord().getNeoPeptide(), last.getPeptidePairRecord().getNeoPeptide());
+        assertSame(first.getPeptidePairRecord().getSelfPeptide(), last.getPeptidePairRecord().getSelfPeptide());
+    }
+
+    @Test public void testProject() throws IOException {
+        List<String> lines = lines();
+        String fileName = writeFile(lines, "\n");
+
+        int alleleColumn = FootprintFileLoader.columnIndex("Patient_Allele");
+        int qtyColumn = FootprintFileLoader.columnIndex("Neo_Binding_Qty");
+
+        assertEquals(AlleleFootprintRecord.PAIR_COLUMN_COUNT, alleleColumn);
+        assertEquals(QTY_COLUMN, qtyColumn);
+
+        List<FootprintBlock> blocks = FootprintFileLoader.project(fileName, alleleColumn, qtyColumn, INDEX_COLUMN);
+        assertTrue(blocks.size() > 1);
+
+        int row = 0;
+
+        for (FootprintBlock block : blocks) {
+            assertTrue(block.isDecoded(alleleColumn));
+            assertTrue(block.isDecoded(qtyColumn));
+            assertTrue(block.isDecoded(INDEX_COLUMN));
+            assertFalse(block.isDecoded(0));
+            assertFalse(block.isDecoded(qtyColumn + 1));
+
+            for (int blockRow = 0; blockRow < block.rowCount(); ++blockRow, ++row) {
+                AlleleFootprintRecord expected = AlleleFootprintRecord.parse(lines.get(row));
+
+                assertEquals(expected.getPatientAllele().shortKey(), block.getString(alleleColumn, blockRow));
+                assertEquals(expected.getNeoBindingQty(), block.getDouble(qtyColumn, blockRow), 0.0);
+                assertEquals(expected.getFootprintIndex(), block.getDouble(INDEX_COLUMN, blockRow), 0.0);
+            }
+        }
+
+        assertEquals(lines.size(), row);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidRecord() throws IOException {
+        List<String> lines = lines();
+        lines.set(lines.size() / 2, "Tumor0\tGENE");
+
+        FootprintFileLoader.load(writeFile(lines, "\n"));
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("nfi.junit.FootprintFileLoaderTest");
+    }
+}
@@ -0,0 +1,101 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import jam.math.IntRange;
+
+import jene.hla.Allele;
+import jene.hugo.HugoSymbol;
+import jene.neo.NeoPeptide;
+import jene.neo.PeptidePairRecord;
+import jene.neo.SelfPeptide;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+
+import static org.junit.Assert.*;
+
+/**
+ * Provides the alleles, peptides and temporary files shared by the
+ * footprint unit tests.
+ */
+public final class FootprintFixture {
+    private FootprintFixture() {}
+
+    public static final Allele A0101 = Allele.instance("A0101");
+    public static final Allele A0201 = Allele.instance("A0201");
+
+    public static final IntRange RANGE = IntRange.instance(1, 9);
+    public static final HugoSymbol GENE = HugoSymbol.instance("GENE");
+
+    public static final NeoPeptide NEO1 = NeoPeptide.instance("FQASPMHAV");
+    public static final SelfPeptide SELF1 = SelfPeptide.instance("FLASPMHAV");
+
+    public static final NeoPeptide NEO2 = NeoPeptide.instance("FADSPMHAL");
+    public static final SelfPeptide SELF2 = SelfPeptide.instance("FTDSPMHAV");
+
+    /**
+     * Returns the first standard peptide pair for a tumor.
+     */
+    public static PeptidePairRecord pair1(TumorBarcode barcode) {
+        return pair1(barcode, GENE);
+    }
+
+    public static PeptidePairRecord pair1(TumorBarcode barcode, HugoSymbol gene) {
+        return PeptidePairRecord.instance(barcode, gene, RANGE, SELF1, NEO1);
+    }
+
+    /**
+     * Returns the second standard peptide pair for a tumor.
+     */
+    public static PeptidePairRecord pair2(TumorBarcode barcode) {
+        return pair2(barcode, GENE);
+    }
+
+    public static PeptidePairRecord pair2(TumorBarcode barcode, HugoSymbol gene) {
+        return PeptidePairRecord.instance(barcode, gene, RANGE, SELF2, NEO2);
+    }
+
+    /**
+     * Creates a temporary file that is deleted when the JVM exits.
+     */
+    public static File tempFile(String prefix, String suffix) throws IOException {
+        File file = File.createTempFile(prefix, suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Creates a temporary directory that is deleted (if empty) when
+     * the JVM exits.
+     */
+    public static File tempDir(String prefix) throws IOException {
+        File dir = Files.createTempDirectory(prefix).toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * Returns a file in a temporary directory that is deleted when the
+     * JVM exits (the file itself is not created).
+     */
+    public static String tempPath(File dir, String name) {
+        File file = new File(dir, name);
+        file.deleteOnExit();
+        return file.getPath();
+    }
+
+    /**
+     * Asserts that two record lists contain the same records (in their
+     * formatted representation) in the same order.
+     */
+    public static void assertSameRecords(List<AlleleFootprintRecord> expected, List<AlleleFootprintRecord> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int index = 0; index < expected.size(); ++index)
+            assertEquals(expected.get(index).format(), actual.get(index).format());
+    }
+}
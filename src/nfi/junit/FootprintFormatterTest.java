@@ -0,0 +1,116 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintFormatter;
+import nfi.io.FootprintWriter;
+import nfi.io.TextFootprintWriter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintFormatterTest {
+    private static final TumorBarcode barcode = TumorBarcode.instance("Tumor");
+
+    private static final PeptidePairRecord pair1 = pair1(barcode);
+
+    private static final PeptidePairRecord pair2 = pair2(barcode);
+
+    private static List<AlleleFootprintRecord> randomRecords(int count) {
+        Random random = new Random(20190517);
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(count);
+
+        for (int index = 0; index < count; ++index)
+            records.add(AlleleFootprintRecord.create(index % 3 == 0 ? pair1 : pair2,
+                                                     index % 2 == 0 ? A0101 : A0201,
+                                                     AlleleFootprintType.values()[index % 2],
+                                                     50000.0 * random.nextDouble(),
+                                                     (random.nextInt(10000) + 0.5) / 100.0,
+                                                     50000.0 * random.nextDouble(),
+                                                     (random.nextInt(10000) + 0.5) / 100.0,
+                                                     5.0 * random.nextGaussian()));
+
+        return records;
+    }
+
+    private static String expected(List<AlleleFootprintRecord> records) {
+        StringBuilder builder = new StringBuilder();
+
+        for (AlleleFootprintRecord record : records) {
+            builder.append(record.format());
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    @Test public void testFixed() {
+        double[] values = { 0.0, -0.0, 0.005, 0.125, 1.005, 2.675, -0.001, 0.99995, 1.0E20, 123456.785 };
+        FootprintFormatter formatter = new FootprintFormatter(64);
+
+        for (double value : values) {
+            for (int precision : new int[] { 2, 4 }) {
+                formatter.reset();
+                formatter.appendFixed(value, precision);
+                assertEquals(String.format("%." + precision + "f", value), formatter.toString());
+            }
+        }
+    }
+
+    @Test public void testNearTies() {
+        Random random = new Random(20190518);
+        FootprintFormatter formatter = new FootprintFormatter(64);
+
+        // Decimal ties whose binary values lie just off the tie, across
+        // magnitudes on both sides of the fast-path limit...
+        for (int trial = 0; trial < 100000; ++trial) {
+            long whole = (long) (Math.pow(10.0, 3 + random.nextInt(8)) * (1.0 + 9.0 * random.nextDouble()));
+            double value = Double.parseDouble(String.format("%d.%02d5", whole, random.nextInt(100)));
+
+            formatter.reset();
+            formatter.appendFixed(value, 2);
+            assertEquals(String.format("%.2f", value), formatter.toString());
+        }
+    }
+
+    @Test public void testRecords() {
+        List<AlleleFootprintRecord> records = randomRecords(10000);
+        FootprintFormatter formatter = new FootprintFormatter(64);
+
+        formatter.appendLines(records);
+        assertEquals(expected(records), formatter.toString());
+    }
+
+    @Test public void testWriter() throws IOException {
+        File file = tempFile("footprint", ".txt");
+
+        // Large enough to exercise the parallel chunked path...
+        List<AlleleFootprintRecord> records = randomRecords(3 * TextFootprintWriter.CHUNK_SIZE + 17);
+
+        try (FootprintWriter writer = FootprintWriter.open(file.getPath())) {
+            writer.write(records.subList(0, 5));
+            writer.write(records.subList(5, records.size()));
+        }
+
+        byte[] actual = Files.readAllBytes(file.toPath());
+        byte[] expected = (AlleleFootprintRecord.header() + "\n" + expected(records)).getBytes(StandardCharsets.US_ASCII);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("nfi.junit.FootprintFormatterTest");
+    }
+}
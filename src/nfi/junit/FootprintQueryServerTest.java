@@ -0,0 +1,139 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpServer;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintQueryServer;
+import nfi.io.FootprintQueryStore;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintQueryServerTest {
+    private static final int RECORD_COUNT = 5;
+
+    private static final List<AlleleFootprintRecord> records = records();
+
+    private static List<AlleleFootprintRecord> records() {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (int index = 0; index < RECORD_COUNT; ++index)
+            records.add(AlleleFootprintRecord.create(pair1(TumorBarcode.instance("Tumor" + index)),
+                                                     A0101, AlleleFootprintType.LOG_AFFINITY,
+                                                     10.0, 1.0, 20.0, 2.0, RECORD_COUNT - index));
+
+        return records;
+    }
+
+    private static HttpServer start() throws IOException {
+        File file = tempFile("footprint", ".nqs");
+        FootprintQueryStore.build(records, file.getPath());
+
+        System.setProperty(FootprintQueryServer.RECORD_LIMIT_PROPERTY, "2");
+        System.setProperty(FootprintQueryServer.MAX_RECORD_LIMIT_PROPERTY, "4");
+
+        try {
+            return FootprintQueryServer.serve(FootprintQueryStore.open(file.getPath()), 0);
+        }
+        finally {
+            System.clearProperty(FootprintQueryServer.RECORD_LIMIT_PROPERTY);
+            System.clearProperty(FootprintQueryServer.MAX_RECORD_LIMIT_PROPERTY);
+        }
+    }
+
+    private static HttpURLConnection get(HttpServer server, String pathAndQuery) throws IOException {
+        URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), pathAndQuery);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static List<String> lines(HttpURLConnection connection) throws IOException {
+        assertEquals(200, connection.getResponseCode());
+
+        try (InputStream input = connection.getInputStream()) {
+            return List.of(new String(input.readAllBytes(), StandardCharsets.UTF_8).split("\n"));
+        }
+    }
+
+    private static void assertRecords(List<String> lines, int... expected) {
+        assertEquals(AlleleFootprintRecord.header(), lines.get(0));
+        assertEquals(expected.length + 1, lines.size());
+
+        for (int index = 0; index < expected.length; ++index)
+            assertEquals(records.get(expected[index]).format(), lines.get(index + 1));
+    }
+
+    @Test public void testDefaultLimit() throws IOException {
+        HttpServer server = start();
+
+        try {
+            HttpURLConnection connection = get(server, "/select");
+
+            assertRecords(lines(connection), 0, 1);
+            assertEquals("true", connection.getHeaderField(FootprintQueryServer.TRUNCATED_HEADER));
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    @Test public void testLimit() throws IOException {
+        HttpServer server = start();
+
+        try {
+            HttpURLConnection connection = get(server, "/range?lower=0&upper=10&limit=4");
+
+            assertRecords(lines(connection), 0, 1, 2, 3);
+            assertEquals("true", connection.getHeaderField(FootprintQueryServer.TRUNCATED_HEADER));
+
+            connection = get(server, "/top?count=3&limit=4");
+
+            assertRecords(lines(connection), 0, 1, 2);
+            assertNull(connection.getHeaderField(FootprintQueryServer.TRUNCATED_HEADER));
+
+            connection = get(server, "/barcodes?threshold=0&limit=3");
+
+            assertEquals(List.of("Tumor0", "Tumor1", "Tumor2"), lines(connection));
+            assertEquals("true", connection.getHeaderField(FootprintQueryServer.TRUNCATED_HEADER));
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    @Test public void testInvalidLimit() throws IOException {
+        HttpServer server = start();
+
+        try {
+            assertEquals(400, get(server, "/select?limit=5").getResponseCode());
+            assertEquals(400, get(server, "/select?limit=0").getResponseCode());
+            assertEquals(400, get(server, "/select?limit=many").getResponseCode());
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    @Test public void testUnknownEndpoint() throws IOException {
+        HttpServer server = start();
+
+        try {
+            assertEquals(404, get(server, "/delete").getResponseCode());
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jene.hugo.HugoSymbol;
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintQueryStore;
+import nfi.io.FootprintQueryStore.Filter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintQueryStoreTest {
+    private static final HugoSymbol gene1 = HugoSymbol.instance("GENE1");
+    private static final HugoSymbol gene2 = HugoSymbol.instance("GENE2");
+
+    private static final TumorBarcode barcode1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode barcode2 = TumorBarcode.instance("Tumor2");
+
+    private static final PeptidePairRecord pair1 = pair1(barcode2, gene1);
+    private static final PeptidePairRecord pair2 = pair2(barcode1, gene2);
+    private static final PeptidePairRecord pair3 = pair1(barcode1, gene1);
+
+    private static final AlleleFootprintType AFF = AlleleFootprintType.LOG_AFFINITY;
+    private static final AlleleFootprintType STAB = AlleleFootprintType.LOG_STABILITY;
+
+    private static final List<AlleleFootprintRecord> records =
+        List.of(AlleleFootprintRecord.create(pair1, A0101, AFF, 123.4, 1.25, 456.7, 2.5, -0.622),
+                AlleleFootprintRecord.create(pair1, A0201, AFF, 23.4, 0.25, 56.7, 0.5, 1.528),
+                AlleleFootprintRecord.create(pair2, A0101, STAB, 1.5, 3.0, 2.0, 4.0, 0.396),
+                AlleleFootprintRecord.create(pair2, A0201, AFF, 1.5, 3.0, 2.0, 4.0, Double.NaN),
+                AlleleFootprintRecord.create(pair3, A0201, AFF, 12.0, 0.5, 24.0, 1.0, 0.693));
+
+    private static FootprintQueryStore buildStore() throws IOException {
+        File file = tempFile("footprint", ".nqs");
+
+        FootprintQueryStore.build(records, file.getPath());
+        return FootprintQueryStore.open(file.getPath());
+    }
+
+    private static void assertRecords(List<AlleleFootprintRecord> actual, int... expected) {
+        assertEquals(expected.length, actual.size());
+
+        for (int index = 0; index < expected.length; ++index)
+            assertEquals(records.get(expected[index]).format(), actual.get(index).format());
+    }
+
+    @Test public void testSelect() throws IOException {
+        FootprintQueryStore store = buildStore();
+
+        assertEquals(5, store.size());
+        assertEquals(List.of(barcode1, barcode2), store.listBarcodes());
+
+        assertRecords(store.select(Filter.ALL), 2, 3, 4, 0, 1);
+        assertRecords(store.select(Filter.ALL.barcode(barcode1)), 2, 3, 4);
+        assertRecords(store.select(Filter.ALL.barcode(barcode1).allele(A0201)), 3, 4);
+        assertRecords(store.select(Filter.ALL.gene(gene1)), 4, 0, 1);
+        assertRecords(store.select(Filter.ALL.type(STAB)), 2);
+        assertRecords(store.select(Filter.ALL.gene(gene2).type(STAB).allele(A0201)));
+        assertRecords(store.select(Filter.ALL.barcode(TumorBarcode.instance("Tumor3"))));
+
+        assertRecords(store.select(Filter.ALL, 2), 2, 3);
+        assertRecords(store.select(Filter.ALL.gene(gene1), 10), 4, 0, 1);
+        assertRecords(store.select(Filter.ALL, 0));
+    }
+
+    @Test public void testTop() throws IOException {
+        FootprintQueryStore store = buildStore();
+
+        assertRecords(store.top(2, Filter.ALL), 1, 4);
+        assertRecords(store.top(10, Filter.ALL), 1, 4, 2, 0);
+        assertRecords(store.top(2, Filter.ALL.gene(gene1)), 1, 4);
+        assertRecords(store.top(10, Filter.ALL.barcode(barcode1)), 4, 2);
+        assertRecords(store.top(0, Filter.ALL));
+    }
+
+    @Test public void testRange() throws IOException {
+        FootprintQueryStore store = buildStore();
+
+        assertRecords(store.range(0.0, 1.0, Filter.ALL), 4, 2);
+        assertRecords(store.range(0.396, 0.693, Filter.ALL), 4, 2);
+        assertRecords(store.range(-1.0, 0.5, Filter.ALL.type(AFF)), 0);
+        assertRecords(store.range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Filter.ALL), 1, 4, 2, 0);
+
+        assertRecords(store.range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Filter.ALL, 3), 1, 4, 2);
+        assertRecords(store.range(0.0, 1.0, Filter.ALL, 0));
+    }
+
+    @Test public void testBarcodesAbove() throws IOException {
+        FootprintQueryStore store = buildStore();
+
+        assertEquals(List.of(barcode1, barcode2), store.barcodesAbove(0.0, Filter.ALL));
+        assertEquals(List.of(barcode2), store.barcodesAbove(1.0, Filter.ALL));
+        assertEquals(List.of(barcode1), store.barcodesAbove(0.0, Filter.ALL.allele(A0101)));
+        assertEquals(List.of(), store.barcodesAbove(2.0, Filter.ALL));
+    }
+}
@@ -0,0 +1,229 @@
+package nfi.junit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jene.hla.Allele;
+import jene.neo.NeoPeptide;
+import jene.neo.PeptidePairRecord;
+import jene.neo.PeptidePairTable;
+import jene.neo.SelfPeptide;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintIndex;
+import nfi.model.FootprintScheduler;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintSchedulerTest {
+    private static final TumorBarcode BARCODE1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode BARCODE2 = TumorBarcode.instance("Tumor2");
+    private static final TumorBarcode BARCODE3 = TumorBarcode.instance("Tumor3");
+    private static final TumorBarcode UNTYPED = TumorBarcode.instance("Untyped");
+
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+
+    private static final List<AlleleFootprintIndex> FOOTPRINT_INDEXES =
+        List.of(AlleleFootprintIndex.LOG_AFFINITY, AlleleFootprintIndex.LOG_STABILITY);
+
+    private static final int THREAD_COUNT = 4;
+    private static final int CHUNK_SIZE = 2;
+
+    //
+    // Barcode 1 has seven pairs and two alleles, barcode 2 has three
+    // pairs and one allele, barcode 3 has pairs but no alleles...
+    //
+    private static final Map<TumorBarcode, Set<Allele>> GENOTYPES =
+        Map.of(BARCODE1, Set.of(A0101, A0201), BARCODE2, Set.of(A0201), BARCODE3, Set.of());
+
+    private static final PeptidePairTable PAIR_TABLE = pairTable();
+
+    private static PeptidePairTable pairTable() {
+        List<PeptidePairRecord> pairs = new ArrayList<PeptidePairRecord>();
+
+        pairs.addAll(pairs(BARCODE1, 7));
+        pairs.addAll(pairs(BARCODE2, 3));
+        pairs.addAll(pairs(BARCODE3, 2));
+        pairs.addAll(pairs(UNTYPED, 2));
+
+        return PeptidePairTable.create(pairs);
+    }
+
+    private static List<PeptidePairRecord> pairs(TumorBarcode barcode, int count) {
+        List<PeptidePairRecord> pairs = new ArrayList<PeptidePairRecord>();
+
+        for (int index = 0; index < count; ++index)
+            pairs.add(PeptidePairRecord.instance(barcode, GENE, RANGE,
+                                                 SelfPeptide.instance("FLASPMHA" + RESIDUES.charAt(index)),
+                                                 NeoPeptide.instance("FQASPMHA" + RESIDUES.charAt(index))));
+
+        return pairs;
+    }
+
+    private static Set<Allele> genotype(TumorBarcode barcode) {
+        Set<Allele> alleles = GENOTYPES.get(barcode);
+
+        if (alleles == null)
+            throw new IllegalStateException("No genotype.");
+
+        return alleles;
+    }
+
+    //
+    // One label per pair identifies the footprint index, allele and
+    // pair that produced it...
+    //
+    private static String label(AlleleFootprintIndex footprintIndex, Allele allele, PeptidePairRecord pair) {
+        return FOOTPRINT_INDEXES.indexOf(footprintIndex) + "/" + allele + "/" + pair.getNeoPeptide();
+    }
+
+    private static List<String> compute(AlleleFootprintIndex footprintIndex, Allele allele, List<PeptidePairRecord> pairs) {
+        List<String> labels = new ArrayList<String>();
+
+        for (PeptidePairRecord pair : pairs)
+            labels.add(label(footprintIndex, allele, pair));
+
+        return labels;
+    }
+
+    private static List<String> expected(TumorBarcode barcode) {
+        List<String> labels = new ArrayList<String>();
+
+        for (AlleleFootprintIndex footprintIndex : FOOTPRINT_INDEXES)
+            for (Allele allele : GENOTYPES.get(barcode))
+                labels.addAll(compute(footprintIndex, allele, PAIR_TABLE.lookup(barcode)));
+
+        return labels;
+    }
+
+    private static List<String> concat(List<List<String>> chunks) {
+        List<String> labels = new ArrayList<String>();
+
+        for (List<String> chunk : chunks)
+            labels.addAll(chunk);
+
+        return labels;
+    }
+
+    private static FootprintScheduler<List<String>> scheduler(FootprintScheduler.Kernel<List<String>> kernel) {
+        return new FootprintScheduler<List<String>>(THREAD_COUNT,
+                                                    CHUNK_SIZE,
+                                                    kernel,
+                                                    FootprintSchedulerTest::concat,
+                                                    PAIR_TABLE,
+                                                    FootprintSchedulerTest::genotype,
+                                                    FOOTPRINT_INDEXES);
+    }
+
+    private static final class Outcomes {
+        private final Map<TumorBarcode, List<String>> completed = new ConcurrentHashMap<TumorBarcode, List<String>>();
+        private final Map<TumorBarcode, AtomicInteger> completeCounts = new ConcurrentHashMap<TumorBarcode, AtomicInteger>();
+        private final Map<TumorBarcode, AtomicInteger> failureCounts = new ConcurrentHashMap<TumorBarcode, AtomicInteger>();
+
+        private void complete(TumorBarcode barcode, List<String> labels) {
+            completed.put(barcode, labels);
+            completeCounts.computeIfAbsent(barcode, key -> new AtomicInteger()).incrementAndGet();
+        }
+
+        private void fail(TumorBarcode barcode, RuntimeException ex) {
+            failureCounts.computeIfAbsent(barcode, key -> new AtomicInteger()).incrementAndGet();
+        }
+
+        private void run(FootprintScheduler<List<String>> scheduler, List<TumorBarcode> barcodes) {
+            scheduler.run(barcodes, this::complete, this::fail);
+        }
+
+        private int completeCount(TumorBarcode barcode) {
+            AtomicInteger count = completeCounts.get(barcode);
+            return count != null ? count.get() : 0;
+        }
+
+        private int failureCount(TumorBarcode barcode) {
+            AtomicInteger count = failureCounts.get(barcode);
+            return count != null ? count.get() : 0;
+        }
+    }
+
+    @Test public void testSlotOrder() {
+        AtomicInteger kernelCalls = new AtomicInteger();
+
+        //
+        // Earlier chunks take longer, so chunks finish out of order...
+        //
+        FootprintScheduler.Kernel<List<String>> kernel = (footprintIndex, allele, pairs) -> {
+            kernelCalls.incrementAndGet();
+
+            try {
+                Thread.sleep(10 - RESIDUES.indexOf(pairs.get(0).getNeoPeptide().formatString().charAt(8)));
+            }
+            catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+
+            return compute(footprintIndex, allele, pairs);
+        };
+
+        Outcomes outcomes = new Outcomes();
+        outcomes.run(scheduler(kernel), List.of(BARCODE1, BARCODE2));
+
+        assertEquals(1, outcomes.completeCount(BARCODE1));
+        assertEquals(1, outcomes.completeCount(BARCODE2));
+        assertTrue(outcomes.failureCounts.isEmpty());
+
+        assertEquals(2 * 7 * 2, outcomes.completed.get(BARCODE1).size());
+        assertEquals(expected(BARCODE1), outcomes.completed.get(BARCODE1));
+        assertEquals(expected(BARCODE2), outcomes.completed.get(BARCODE2));
+
+        // Chunks of two pairs: 2 x 2 x 4 for barcode 1, 2 x 1 x 2 for
+        // barcode 2...
+        assertEquals(16 + 4, kernelCalls.get());
+    }
+
+    @Test public void testFailure() {
+        //
+        // Every chunk of barcode 1 for the stability index fails...
+        //
+        FootprintScheduler.Kernel<List<String>> kernel = (footprintIndex, allele, pairs) -> {
+            if (pairs.get(0).getTumorBarcode().equals(BARCODE1) && footprintIndex == AlleleFootprintIndex.LOG_STABILITY)
+                throw new IllegalArgumentException("Chunk failed.");
+
+            return compute(footprintIndex, allele, pairs);
+        };
+
+        Outcomes outcomes = new Outcomes();
+        outcomes.run(scheduler(kernel), List.of(BARCODE1, BARCODE2, UNTYPED));
+
+        assertEquals(1, outcomes.failureCount(BARCODE1));
+        assertEquals(0, outcomes.completeCount(BARCODE1));
+
+        assertEquals(1, outcomes.failureCount(UNTYPED));
+        assertEquals(0, outcomes.completeCount(UNTYPED));
+
+        assertEquals(0, outcomes.failureCount(BARCODE2));
+        assertEquals(1, outcomes.completeCount(BARCODE2));
+        assertEquals(expected(BARCODE2), outcomes.completed.get(BARCODE2));
+    }
+
+    @Test public void testNoTasks() {
+        AtomicInteger kernelCalls = new AtomicInteger();
+
+        FootprintScheduler.Kernel<List<String>> kernel = (footprintIndex, allele, pairs) -> {
+            kernelCalls.incrementAndGet();
+            return compute(footprintIndex, allele, pairs);
+        };
+
+        Outcomes outcomes = new Outcomes();
+        outcomes.run(scheduler(kernel), List.of(BARCODE3));
+
+        assertEquals(1, outcomes.completeCount(BARCODE3));
+        assertEquals(0, outcomes.failureCount(BARCODE3));
+        assertTrue(outcomes.completed.get(BARCODE3).isEmpty());
+        assertEquals(0, kernelCalls.get());
+    }
+}
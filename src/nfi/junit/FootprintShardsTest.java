@@ -0,0 +1,198 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintFileLoader;
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintWriter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.model.FootprintShards;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintShardsTest {
+    private static final long PROCESS_TIMEOUT = 60L;
+    private static final List<TumorBarcode> barcodes = new ArrayList<TumorBarcode>();
+
+    static {
+        for (int index = 0; index < 20; ++index)
+            barcodes.add(TumorBarcode.instance(String.format("Tumor%02d", index)));
+    }
+
+    private static long weight(TumorBarcode barcode) {
+        return 1 + (barcodes.indexOf(barcode) * 7) % 11;
+    }
+
+    private static List<AlleleFootprintRecord> records(TumorBarcode barcode) {
+        PeptidePairRecord pair = pair1(barcode);
+
+        return List.of(AlleleFootprintRecord.create(pair, A0101, AlleleFootprintType.LOG_AFFINITY, 1.0, 2.0, 3.0, 4.0, 0.5),
+                       AlleleFootprintRecord.create(pair, A0201, AlleleFootprintType.LOG_AFFINITY, 1.0, 2.0, 3.0, 4.0, 0.25));
+    }
+
+    @Test public void testAssign() {
+        int shardCount = 3;
+        int[] shards = FootprintShards.assign(barcodes, FootprintShardsTest::weight, shardCount);
+
+        assertArrayEquals(shards, FootprintShards.assign(barcodes, FootprintShardsTest::weight, shardCount));
+
+        long[] loads = new long[shardCount];
+        long maxWeight = 0L;
+
+        for (int index = 0; index < barcodes.size(); ++index) {
+            loads[shards[index]] += weight(barcodes.get(index));
+            maxWeight = Math.max(maxWeight, weight(barcodes.get(index)));
+        }
+
+        for (long load1 : loads)
+            for (long load2 : loads)
+                assertTrue(Math.abs(load1 - load2) <= maxWeight);
+
+        Set<TumorBarcode> covered = new HashSet<TumorBarcode>();
+
+        for (int shard = 0; shard < shardCount; ++shard) {
+            List<TumorBarcode> selected = FootprintShards.select(barcodes, FootprintShardsTest::weight, shard, shardCount);
+
+            for (int index = 1; index < selected.size(); ++index)
+                assertTrue(selected.get(index - 1).compareTo(selected.get(index)) < 0);
+
+            for (TumorBarcode barcode : selected)
+                assertTrue(covered.add(barcode));
+        }
+
+        assertEquals(new HashSet<TumorBarcode>(barcodes), covered);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidShard() {
+        FootprintShards.validate(3, 3);
+    }
+
+    private static void writeShard(String fileName, int shard, int shardCount, FootprintFormat format, boolean manifest) {
+        List<TumorBarcode> selected = FootprintShards.select(barcodes, FootprintShardsTest::weight, shard, shardCount);
+        List<AlleleFootprintRecord> shardRecords = new ArrayList<AlleleFootprintRecord>();
+
+        for (TumorBarcode barcode : selected)
+            shardRecords.addAll(records(barcode));
+
+        String shardFile = FootprintShards.shardFile(fileName, shard, shardCount);
+
+        try (FootprintWriter writer = FootprintWriter.open(shardFile, format)) {
+            writer.write(shardRecords);
+        }
+
+        if (manifest)
+            FootprintShards.writeManifest(shardFile, shard, shardCount, barcodes.size(), selected, Set.of());
+    }
+
+    private static String shardPaths(File dir, int shardCount) {
+        String fileName = tempPath(dir, "footprint.txt");
+
+        for (int shard = 0; shard < shardCount; ++shard) {
+            String shardFile = FootprintShards.shardFile(fileName, shard, shardCount);
+
+            tempPath(dir, new File(shardFile).getName());
+            tempPath(dir, new File(FootprintShards.manifestFile(shardFile)).getName());
+        }
+
+        return fileName;
+    }
+
+    private static String writeShards(int shardCount, FootprintFormat format, int skipped) throws IOException {
+        String fileName = shardPaths(tempDir("shards"), shardCount);
+
+        for (int shard = 0; shard < shardCount; ++shard)
+            writeShard(fileName, shard, shardCount, format, shard != skipped);
+
+        return fileName;
+    }
+
+    private static List<AlleleFootprintRecord> cohortRecords() {
+        List<AlleleFootprintRecord> expected = new ArrayList<AlleleFootprintRecord>();
+
+        for (TumorBarcode barcode : barcodes)
+            expected.addAll(records(barcode));
+
+        expected.sort(AlleleFootprintRecord.COMPARATOR);
+        return expected;
+    }
+
+    @Test public void testMerge() throws IOException {
+        String fileName = writeShards(3, FootprintFormat.BINARY, -1);
+        FootprintShards.merge(fileName, 3, FootprintFormat.TSV);
+
+        assertSameRecords(cohortRecords(), FootprintFileLoader.load(fileName));
+    }
+
+    @Test public void testProcesses() throws IOException, InterruptedException {
+        //
+        // Each shard is computed by a separate JVM (running the main
+        // method below), as in a cluster deployment, so the shards
+        // share nothing but the barcode list and the file system...
+        //
+        int shardCount = 4;
+        String fileName = shardPaths(tempDir("shards"), shardCount);
+        String javaExec = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        List<Process> processes = new ArrayList<Process>();
+
+        for (int shard = 0; shard < shardCount; ++shard)
+            processes.add(new ProcessBuilder(javaExec,
+                                             "-cp", System.getProperty("java.class.path"),
+                                             FootprintShardsTest.class.getName(),
+                                             fileName,
+                                             String.valueOf(shard),
+                                             String.valueOf(shardCount))
+                          .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                          .redirectError(ProcessBuilder.Redirect.INHERIT)
+                          .start());
+
+        for (Process process : processes) {
+            assertTrue(process.waitFor(PROCESS_TIMEOUT, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue());
+        }
+
+        FootprintShards.merge(fileName, shardCount, FootprintFormat.TSV);
+        assertSameRecords(cohortRecords(), FootprintFileLoader.load(fileName));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingShard() throws IOException {
+        String fileName = writeShards(3, FootprintFormat.TSV, 1);
+        FootprintShards.merge(fileName, 3, FootprintFormat.TSV);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailedBarcode() throws IOException {
+        String fileName = writeShards(2, FootprintFormat.TSV, -1);
+        String shardFile = FootprintShards.shardFile(fileName, 0, 2);
+        List<TumorBarcode> selected = FootprintShards.select(barcodes, FootprintShardsTest::weight, 0, 2);
+
+        FootprintShards.writeManifest(shardFile, 0, 2, barcodes.size(), selected, Set.of(selected.get(0)));
+        FootprintShards.merge(fileName, 2, FootprintFormat.TSV);
+    }
+
+    /**
+     * Computes one shard in a separate process for
+     * {@link FootprintShardsTest#testProcesses}.
+     *
+     * @param args the name of the complete file, the shard index and
+     * the number of shards.
+     */
+    public static void main(String[] args) {
+        writeShard(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]), FootprintFormat.BINARY, true);
+    }
+}
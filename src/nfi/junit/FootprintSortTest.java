@@ -0,0 +1,174 @@
+package nfi.junit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jene.hla.Allele;
+import jene.hugo.HugoSymbol;
+import jene.neo.NeoPeptide;
+import jene.neo.PeptidePairRecord;
+import jene.neo.SelfPeptide;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.model.FootprintSort;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintSortTest {
+    private static final int RECORD_COUNT = 500;
+    private static final int TRIAL_COUNT = 20;
+
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+
+    private static final List<Allele> ALLELES = List.of(A0101, A0201, Allele.instance("B0702"));
+    private static final List<HugoSymbol> GENES = List.of(GENE, HugoSymbol.instance("OTHER"));
+    private static final AlleleFootprintType[] TYPES = AlleleFootprintType.values();
+
+    //
+    // Draws from small pools of barcodes, genes and peptides, so that
+    // many records tie in pair, allele and type.  New (but equal) pair
+    // instances are created for each record, and every record has a
+    // distinct footprint index, so the expected order of ties is
+    // visible in the formatted records...
+    //
+    private static List<AlleleFootprintRecord> randomRecords(Random random, int count) {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(count);
+
+        for (int index = 0; index < count; ++index)
+            records.add(AlleleFootprintRecord.create(randomPair(random),
+                                                     ALLELES.get(random.nextInt(ALLELES.size())),
+                                                     TYPES[random.nextInt(TYPES.length)],
+                                                     1.0, 2.0, 3.0, 4.0, index));
+
+        return records;
+    }
+
+    private static PeptidePairRecord randomPair(Random random) {
+        TumorBarcode barcode = TumorBarcode.instance("Tumor" + random.nextInt(4));
+        HugoSymbol gene = GENES.get(random.nextInt(GENES.size()));
+        char residue = RESIDUES.charAt(random.nextInt(3));
+
+        return PeptidePairRecord.instance(barcode, gene, RANGE,
+                                          SelfPeptide.instance("FLASPMHA" + residue),
+                                          NeoPeptide.instance("FQASPMHA" + residue));
+    }
+
+    private static List<AlleleFootprintRecord> stableSort(List<AlleleFootprintRecord> records) {
+        List<AlleleFootprintRecord> sorted = new ArrayList<AlleleFootprintRecord>(records);
+        sorted.sort(AlleleFootprintRecord.COMPARATOR);
+        return sorted;
+    }
+
+    private static List<List<AlleleFootprintRecord>> randomPartitions(Random random,
+                                                                      List<AlleleFootprintRecord> records,
+                                                                      int partitionCount) {
+        List<List<AlleleFootprintRecord>> partitions = new ArrayList<List<AlleleFootprintRecord>>();
+
+        for (int index = 0; index < partitionCount; ++index)
+            partitions.add(new ArrayList<AlleleFootprintRecord>());
+
+        for (AlleleFootprintRecord record : records)
+            partitions.get(random.nextInt(partitionCount)).add(record);
+
+        return partitions;
+    }
+
+    private static List<AlleleFootprintRecord> concat(List<List<AlleleFootprintRecord>> partitions) {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (List<AlleleFootprintRecord> partition : partitions)
+            records.addAll(partition);
+
+        return records;
+    }
+
+    private static boolean overlaps(List<List<AlleleFootprintRecord>> partitions) {
+        for (int index = 1; index < partitions.size(); ++index) {
+            List<AlleleFootprintRecord> previous = partitions.get(index - 1);
+            List<AlleleFootprintRecord> current = partitions.get(index);
+
+            if (!previous.isEmpty() && !current.isEmpty()
+                && AlleleFootprintRecord.COMPARATOR.compare(previous.get(previous.size() - 1), current.get(0)) > 0)
+                return true;
+        }
+
+        return false;
+    }
+
+    @Test public void testSort() {
+        Random random = new Random(20201015L);
+
+        for (int trial = 0; trial < TRIAL_COUNT; ++trial) {
+            List<AlleleFootprintRecord> records = randomRecords(random, 1 + random.nextInt(RECORD_COUNT));
+            List<AlleleFootprintRecord> expected = stableSort(records);
+
+            FootprintSort.sort(records);
+            assertSameRecords(expected, records);
+        }
+    }
+
+    @Test public void testTypes() {
+        //
+        // One pair and allele with every footprint type, in reverse
+        // type order and repeated...
+        //
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>();
+
+        for (int copy = 0; copy < 2; ++copy)
+            for (int index = TYPES.length - 1; index >= 0; --index)
+                records.add(AlleleFootprintRecord.create(pair1(TumorBarcode.instance("Tumor")), A0101, TYPES[index],
+                                                         1.0, 2.0, 3.0, 4.0, records.size()));
+
+        List<AlleleFootprintRecord> expected = stableSort(records);
+
+        FootprintSort.sort(records);
+        assertSameRecords(expected, records);
+    }
+
+    @Test public void testMergeOverlapping() {
+        Random random = new Random(20201016L);
+
+        for (int trial = 0; trial < TRIAL_COUNT; ++trial) {
+            List<AlleleFootprintRecord> records = randomRecords(random, RECORD_COUNT);
+            List<List<AlleleFootprintRecord>> partitions = randomPartitions(random, records, 2 + random.nextInt(6));
+
+            for (List<AlleleFootprintRecord> partition : partitions)
+                partition.sort(AlleleFootprintRecord.COMPARATOR);
+
+            // The partitions overlap, so the k-way merge must run...
+            assertTrue(overlaps(partitions));
+            assertSameRecords(stableSort(concat(partitions)), FootprintSort.merge(partitions));
+        }
+    }
+
+    @Test public void testMergeOrdered() {
+        Random random = new Random(20201017L);
+        List<AlleleFootprintRecord> records = stableSort(randomRecords(random, RECORD_COUNT));
+
+        //
+        // Consecutive slices of a sorted list (with an empty partition)
+        // are concatenated...
+        //
+        List<List<AlleleFootprintRecord>> partitions =
+            List.of(records.subList(0, 100), List.of(), records.subList(100, 350), records.subList(350, RECORD_COUNT));
+
+        assertFalse(overlaps(partitions));
+        assertSameRecords(records, FootprintSort.merge(partitions));
+    }
+
+    @Test public void testSortPartitions() {
+        Random random = new Random(20201018L);
+        List<AlleleFootprintRecord> records = randomRecords(random, RECORD_COUNT);
+        List<List<AlleleFootprintRecord>> partitions = randomPartitions(random, records, 5);
+
+        List<AlleleFootprintRecord> expected = stableSort(concat(partitions));
+
+        FootprintSort.sortPartitions(partitions);
+        assertSameRecords(expected, FootprintSort.merge(partitions));
+    }
+}
@@ -0,0 +1,72 @@
+package nfi.junit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.model.FootprintTable;
+import nfi.util.IndexSort;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class FootprintTableTest {
+    private static final TumorBarcode barcode1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode barcode2 = TumorBarcode.instance("Tumor2");
+
+    private static final PeptidePairRecord pair1 = pair1(barcode2);
+    private static final PeptidePairRecord pair2 = pair2(barcode1);
+    private static final PeptidePairRecord pair3 = pair1(barcode1);
+
+    private static final List<AlleleFootprintRecord> records =
+        List.of(AlleleFootprintRecord.create(pair1, A0201, AlleleFootprintType.LOG_STABILITY, 1.5, 3.0, 2.0, 4.0, -0.396),
+                AlleleFootprintRecord.create(pair1, A0101, AlleleFootprintType.LOG_AFFINITY, 123.4, 1.25, 456.7, 2.5, -0.622),
+                AlleleFootprintRecord.create(pair2, A0201, AlleleFootprintType.LOG_AFFINITY, 23.4, 0.25, 56.7, 0.5, -1.528),
+                AlleleFootprintRecord.create(pair3, A0201, AlleleFootprintType.LOG_AFFINITY, 3.4, 0.75, 6.7, 1.5, -0.978),
+                AlleleFootprintRecord.create(pair2, A0101, AlleleFootprintType.LOG_STABILITY, 2.5, 1.0, 1.0, 2.0, 1.322),
+                AlleleFootprintRecord.create(pair1, A0101, AlleleFootprintType.LOG_STABILITY, 0.5, 5.0, 1.0, 6.0, -1.0));
+
+    private static void assertRecords(List<AlleleFootprintRecord> expected, FootprintTable table) {
+        assertEquals(expected.size(), table.size());
+
+        for (int row = 0; row < expected.size(); ++row)
+            assertEquals(expected.get(row).format(), table.record(row).format());
+    }
+
+    @Test public void testAppend() {
+        assertRecords(records, FootprintTable.of(records));
+    }
+
+    @Test public void testConcat() {
+        FootprintTable table1 = FootprintTable.of(records.subList(0, 2));
+        FootprintTable table2 = FootprintTable.of(records.subList(2, records.size()));
+
+        assertRecords(records, FootprintTable.concat(List.of(table1, table2)));
+    }
+
+    @Test public void testSort() {
+        List<AlleleFootprintRecord> sorted = new ArrayList<AlleleFootprintRecord>(records);
+        sorted.sort(AlleleFootprintRecord.COMPARATOR);
+
+        FootprintTable table = FootprintTable.of(records);
+        table.sort();
+
+        assertRecords(sorted, table);
+    }
+
+    @Test public void testIndexSort() {
+        long[] keys = new long[] { 5L, 3L, 5L, 1L, 3L, 0L, 5L };
+        int[] order = IndexSort.order(keys);
+
+        assertArrayEquals(new int[] { 5, 3, 1, 4, 0, 2, 6 }, order);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("nfi.junit.FootprintTableTest");
+    }
+}
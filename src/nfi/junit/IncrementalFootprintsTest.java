@@ -0,0 +1,221 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintFileLoader;
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintWriter;
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+import nfi.model.BindingScreen;
+import nfi.model.IncrementalFootprints;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class IncrementalFootprintsTest {
+    private static final TumorBarcode barcode1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode barcode2 = TumorBarcode.instance("Tumor2");
+    private static final TumorBarcode barcode3 = TumorBarcode.instance("Tumor3");
+    private static final TumorBarcode barcode4 = TumorBarcode.instance("Tumor4");
+
+    private static final List<AlleleFootprintType> types = List.of(AlleleFootprintType.LOG_AFFINITY);
+
+    private static PeptidePairRecord pair(TumorBarcode barcode, int index) {
+        return index == 1
+            ? pair1(barcode)
+            : pair2(barcode);
+    }
+
+    private static List<AlleleFootprintRecord> records(TumorBarcode barcode, double index) {
+        PeptidePairRecord pair = pair(barcode, 1);
+
+        return List.of(AlleleFootprintRecord.create(pair, A0101, AlleleFootprintType.LOG_AFFINITY, 1.0, 2.0, 3.0, 4.0, index),
+                       AlleleFootprintRecord.create(pair, A0201, AlleleFootprintType.LOG_AFFINITY, 1.0, 2.0, 3.0, 4.0, index));
+    }
+
+    @Test public void testFingerprint() {
+        String base = IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1), pair(barcode1, 2)), List.of(A0101, A0201), types, "", "");
+
+        assertEquals(base, IncrementalFootprints.fingerprint(List.of(pair(barcode1, 2), pair(barcode1, 1)), List.of(A0201, A0101), types, "", ""));
+        assertFalse(base.equals(IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1)), List.of(A0101, A0201), types, "", "")));
+        assertFalse(base.equals(IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1), pair(barcode1, 2)), List.of(A0101), types, "", "")));
+        assertFalse(base.equals(IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1), pair(barcode1, 2)), List.of(A0101, A0201), types, "2", "")));
+        assertFalse(base.equals(IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1), pair(barcode1, 2)), List.of(A0101, A0201),
+                                                                  List.of(AlleleFootprintType.LOG_STABILITY), "", "")));
+
+        // Settings that change the records change the fingerprint...
+        String screened = IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1), pair(barcode1, 2)), List.of(A0101, A0201), types, "",
+                                                            BindingScreen.create(2.0, true).describe());
+
+        assertFalse(base.equals(screened));
+        assertFalse(screened.equals(IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1), pair(barcode1, 2)), List.of(A0101, A0201), types, "",
+                                                                      BindingScreen.create(2.0, false).describe())));
+        assertFalse(screened.equals(IncrementalFootprints.fingerprint(List.of(pair(barcode1, 1), pair(barcode1, 2)), List.of(A0101, A0201), types, "",
+                                                                      BindingScreen.create(5.0, true).describe())));
+    }
+
+    @Test public void testChanged() {
+        Map<TumorBarcode, String> previous = Map.of(barcode1, "a", barcode2, "b", barcode3, "c");
+        Map<TumorBarcode, String> current = Map.of(barcode1, "a", barcode2, "x", barcode4, "d");
+
+        assertEquals(List.of(barcode2, barcode4), IncrementalFootprints.changed(current, previous));
+    }
+
+    @Test public void testSplice() throws IOException {
+        File dir = tempDir("incremental");
+
+        String existingFile = tempPath(dir, "footprint.txt");
+        String outputFile = tempPath(dir, "footprint.txt.tmp");
+
+        tempPath(dir, new File(IncrementalFootprints.manifestFile(existingFile)).getName());
+
+        try (FootprintWriter writer = FootprintWriter.open(existingFile, FootprintFormat.BINARY)) {
+            writer.write(records(barcode1, 1.0));
+            writer.write(records(barcode2, 1.0));
+            writer.write(records(barcode3, 1.0));
+        }
+
+        SortedMap<TumorBarcode, String> manifest = new TreeMap<TumorBarcode, String>(Map.of(barcode1, "a", barcode2, "b"));
+        IncrementalFootprints.writeManifest(existingFile, manifest);
+        assertEquals(manifest, new TreeMap<TumorBarcode, String>(IncrementalFootprints.readManifest(existingFile)));
+
+        // Barcode 2 changed, barcode 3 was removed, barcode 4 is new...
+        SortedMap<TumorBarcode, List<AlleleFootprintRecord>> computed = new TreeMap<TumorBarcode, List<AlleleFootprintRecord>>();
+        computed.put(barcode2, records(barcode2, 2.0));
+        computed.put(barcode4, records(barcode4, 2.0));
+
+        Map<TumorBarcode, Integer> consumed = new HashMap<TumorBarcode, Integer>();
+
+        IncrementalFootprints.splice(existingFile, Set.of(barcode1), computed, outputFile, FootprintFormat.TSV,
+                                     (barcode, records) -> consumed.put(barcode, records.size()));
+
+        List<AlleleFootprintRecord> expected = new ArrayList<AlleleFootprintRecord>();
+        expected.addAll(records(barcode1, 1.0));
+        expected.addAll(records(barcode2, 2.0));
+        expected.addAll(records(barcode4, 2.0));
+
+        assertSameRecords(expected, FootprintFileLoader.load(outputFile));
+
+        assertEquals(Map.of(barcode1, 2), consumed);
+    }
+
+    @Test public void testSubset() throws IOException {
+        File dir = tempDir("incremental");
+
+        String footprintFile = tempPath(dir, "footprint.txt");
+        String outputFile = tempPath(dir, "footprint.txt.tmp");
+
+        tempPath(dir, new File(IncrementalFootprints.manifestFile(footprintFile)).getName());
+        tempPath(dir, new File(IncrementalFootprints.manifestFile(footprintFile)).getName() + ".tmp");
+
+        try (FootprintWriter writer = FootprintWriter.open(footprintFile)) {
+            writer.write(records(barcode1, 1.0));
+            writer.write(records(barcode2, 1.0));
+            writer.write(records(barcode3, 1.0));
+        }
+
+        IncrementalFootprints.writeManifest(footprintFile, new TreeMap<TumorBarcode, String>(Map.of(barcode1, "a", barcode2, "b", barcode3, "c")));
+        Map<TumorBarcode, String> previous = IncrementalFootprints.readManifest(footprintFile);
+
+        //
+        // The run is restricted to barcodes 2 (changed) and 4 (new), as
+        // in the driver: barcodes 1 and 3 are carried forward...
+        //
+        Set<TumorBarcode> subset = Set.of(barcode2, barcode4);
+        Map<TumorBarcode, String> current = Map.of(barcode2, "x", barcode4, "d");
+
+        SortedMap<TumorBarcode, String> carried = IncrementalFootprints.carried(previous, subset);
+        assertEquals(Map.of(barcode1, "a", barcode3, "c"), carried);
+
+        List<TumorBarcode> changed = IncrementalFootprints.changed(current, previous);
+        assertEquals(List.of(barcode2, barcode4), changed);
+
+        SortedMap<TumorBarcode, List<AlleleFootprintRecord>> computed = new TreeMap<TumorBarcode, List<AlleleFootprintRecord>>();
+        computed.put(barcode2, records(barcode2, 2.0));
+        computed.put(barcode4, records(barcode4, 2.0));
+
+        IncrementalFootprints.splice(footprintFile, carried.keySet(), computed, outputFile, FootprintFormat.TSV, null);
+        FootprintFormat.TSV.move(outputFile, footprintFile);
+
+        SortedMap<TumorBarcode, String> manifest = new TreeMap<TumorBarcode, String>(current);
+        manifest.putAll(carried);
+        IncrementalFootprints.writeManifest(footprintFile, manifest);
+
+        List<AlleleFootprintRecord> expected = new ArrayList<AlleleFootprintRecord>();
+        expected.addAll(records(barcode1, 1.0));
+        expected.addAll(records(barcode2, 2.0));
+        expected.addAll(records(barcode3, 1.0));
+        expected.addAll(records(barcode4, 2.0));
+
+        assertSameRecords(expected, FootprintFileLoader.load(footprintFile));
+        assertEquals(Map.of(barcode1, "a", barcode2, "x", barcode3, "c", barcode4, "d"),
+                     IncrementalFootprints.readManifest(footprintFile));
+
+        // A subset that covers every barcode carries nothing forward...
+        assertTrue(IncrementalFootprints.carried(previous, previous.keySet()).isEmpty());
+    }
+
+    @Test public void testStaleManifest() throws IOException {
+        File dir = tempDir("incremental");
+        String footprintFile = tempPath(dir, "footprint.txt");
+
+        tempPath(dir, new File(IncrementalFootprints.manifestFile(footprintFile)).getName());
+        tempPath(dir, new File(IncrementalFootprints.manifestFile(footprintFile)).getName() + ".tmp");
+
+        try (FootprintWriter writer = FootprintWriter.open(footprintFile)) {
+            writer.write(records(barcode1, 1.0));
+        }
+
+        IncrementalFootprints.writeManifest(footprintFile, new TreeMap<TumorBarcode, String>(Map.of(barcode1, "a")));
+        assertEquals(Map.of(barcode1, "a"), IncrementalFootprints.readManifest(footprintFile));
+
+        // The file is rewritten without its manifest...
+        try (FootprintWriter writer = FootprintWriter.open(footprintFile)) {
+            writer.write(records(barcode1, 1.0));
+            writer.write(records(barcode2, 1.0));
+        }
+
+        assertNull(IncrementalFootprints.readManifest(footprintFile));
+
+        // The same contents with a different modification time...
+        IncrementalFootprints.writeManifest(footprintFile, new TreeMap<TumorBarcode, String>(Map.of(barcode1, "a", barcode2, "b")));
+        assertNotNull(IncrementalFootprints.readManifest(footprintFile));
+
+        Path path = Paths.get(footprintFile);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - 60000L));
+
+        assertNull(IncrementalFootprints.readManifest(footprintFile));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRetainedAndComputed() throws IOException {
+        File file = tempFile("footprint", ".txt");
+        File output = tempFile("footprint", ".tmp");
+
+        try (FootprintWriter writer = FootprintWriter.open(file.getPath())) {
+            writer.write(records(barcode1, 1.0));
+        }
+
+        SortedMap<TumorBarcode, List<AlleleFootprintRecord>> computed = new TreeMap<TumorBarcode, List<AlleleFootprintRecord>>();
+        computed.put(barcode1, records(barcode1, 2.0));
+
+        IncrementalFootprints.splice(file.getPath(), Set.of(barcode1), computed, output.getPath(), FootprintFormat.TSV, null);
+    }
+}
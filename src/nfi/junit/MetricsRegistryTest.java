@@ -0,0 +1,60 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import nfi.metrics.Counter;
+import nfi.metrics.MetricsRegistry;
+import nfi.metrics.Timer;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class MetricsRegistryTest {
+    @Test public void testCounter() {
+        MetricsRegistry registry = MetricsRegistry.enable();
+        Counter counter = registry.counter("test", "counter");
+
+        counter.increment();
+        counter.add(4);
+
+        assertEquals(5L, counter.count());
+        assertSame(counter, registry.counter("test.counter"));
+    }
+
+    @Test public void testTimer() {
+        Timer timer = MetricsRegistry.enable().timer("test.timer");
+
+        for (long nanos = 1000L; nanos <= 100000L; nanos += 1000L)
+            timer.record(nanos);
+
+        assertEquals(100L, timer.count());
+        assertEquals(5050000L, timer.totalNanos());
+        assertEquals(1000L, timer.minNanos());
+        assertEquals(100000L, timer.maxNanos());
+
+        assertEquals(50000.0, timer.percentileNanos(50.0), 0.125 * 50000.0);
+        assertEquals(90000.0, timer.percentileNanos(90.0), 0.125 * 90000.0);
+        assertEquals(100000.0, timer.percentileNanos(100.0), 0.125 * 100000.0);
+    }
+
+    @Test public void testReport() throws IOException {
+        MetricsRegistry registry = MetricsRegistry.enable();
+        registry.counter("test.report").add(3);
+        registry.timer("test.report").record(2000000L);
+
+        File file = tempFile("metrics", ".json");
+
+        registry.writeReport(file.getPath(), Map.of("threadCount", 4, "label", "a \"quoted\" label"));
+        String report = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+        assertTrue(report.contains("\"threadCount\": 4"));
+        assertTrue(report.contains("\"label\": \"a \\\"quoted\\\" label\""));
+        assertTrue(report.contains("\"test.report\": 3"));
+        assertTrue(report.contains("\"test.report\": {\"count\": 1, \"totalMillis\": 2.000"));
+    }
+}
@@ -0,0 +1,177 @@
+package nfi.junit;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nfi.util.OrderedStream;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class OrderedStreamTest {
+    private static final int ITEM_COUNT = 200;
+    private static final int THREAD_COUNT = 4;
+    private static final int WINDOW_SIZE = 8;
+
+    private static List<Integer> items(int count) {
+        List<Integer> items = new ArrayList<Integer>(count);
+
+        for (int index = 0; index < count; ++index)
+            items.add(index);
+
+        return items;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Test public void testOrder() {
+        Thread caller = Thread.currentThread();
+        List<Integer> results = new ArrayList<Integer>();
+
+        //
+        // Within each window the earlier items take longer, so they
+        // complete after the later ones...
+        //
+        OrderedStream.apply(items(ITEM_COUNT),
+                            item -> { sleep(WINDOW_SIZE - item % WINDOW_SIZE); return 2 * item; },
+                            result -> { assertSame(caller, Thread.currentThread()); results.add(result); },
+                            THREAD_COUNT, WINDOW_SIZE);
+
+        assertEquals(ITEM_COUNT, results.size());
+
+        for (int index = 0; index < ITEM_COUNT; ++index)
+            assertEquals(2 * index, results.get(index).intValue());
+    }
+
+    @Test public void testWindow() {
+        AtomicInteger drawn = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        //
+        // A lazy sequence that records how far it has been read ahead
+        // of the consumer...
+        //
+        Iterable<Integer> items = () -> new Iterator<Integer>() {
+            @Override public boolean hasNext() {
+                return drawn.get() < ITEM_COUNT;
+            }
+
+            @Override public Integer next() {
+                int item = drawn.getAndIncrement();
+                maxInFlight.accumulateAndGet(item + 1 - consumed.get(), Math::max);
+                return item;
+            }
+        };
+
+        OrderedStream.apply(items,
+                            item -> {
+                                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                                sleep(1);
+                                running.decrementAndGet();
+                                return item;
+                            },
+                            result -> assertEquals(consumed.getAndIncrement(), result.intValue()),
+                            THREAD_COUNT, WINDOW_SIZE);
+
+        //
+        // A full window of submitted items plus the one item drawn (but
+        // not yet submitted) while the oldest result is awaited...
+        //
+        assertEquals(ITEM_COUNT, consumed.get());
+        assertEquals(WINDOW_SIZE + 1, maxInFlight.get());
+        assertTrue(maxRunning.get() <= THREAD_COUNT);
+    }
+
+    @Test public void testException() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        List<Integer> results = new ArrayList<Integer>();
+
+        //
+        // The first item fails while the rest of the window blocks
+        // indefinitely; the failure must still reach the caller...
+        //
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<?> future = caller.submit(() ->
+                OrderedStream.apply(items(ITEM_COUNT),
+                                    item -> {
+                                        if (item == 0)
+                                            throw new IllegalArgumentException("Item zero.");
+
+                                        try {
+                                            never.await();
+                                        }
+                                        catch (InterruptedException ex) {
+                                            throw new IllegalStateException(ex);
+                                        }
+
+                                        return item;
+                                    },
+                                    results::add,
+                                    THREAD_COUNT, WINDOW_SIZE));
+
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Expected the worker exception.");
+            }
+            catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof IllegalArgumentException);
+                assertEquals("Item zero.", ex.getCause().getMessage());
+            }
+
+            assertTrue(results.isEmpty());
+        }
+        finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test public void testLaterException() {
+        List<Integer> results = new ArrayList<Integer>();
+
+        try {
+            OrderedStream.apply(items(ITEM_COUNT),
+                                item -> {
+                                    if (item == 50)
+                                        throw new IllegalArgumentException("Item fifty.");
+
+                                    return item;
+                                },
+                                results::add,
+                                THREAD_COUNT, WINDOW_SIZE);
+
+            fail("Expected the worker exception.");
+        }
+        catch (IllegalArgumentException ex) {
+            assertEquals("Item fifty.", ex.getMessage());
+        }
+
+        // Every result before the failing item was delivered in order...
+        assertEquals(items(50), results);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSmallWindow() {
+        OrderedStream.apply(items(1), item -> item, result -> {}, THREAD_COUNT, THREAD_COUNT - 1);
+    }
+}
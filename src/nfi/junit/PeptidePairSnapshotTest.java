@@ -0,0 +1,114 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import jam.io.IOUtil;
+
+import jene.neo.PeptidePairRecord;
+import jene.neo.PeptidePairTable;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.PeptidePairSnapshot;
+import nfi.model.AlleleFootprintRecord;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class PeptidePairSnapshotTest {
+    private static final TumorBarcode barcode1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode barcode2 = TumorBarcode.instance("Tumor2");
+
+    private static final List<PeptidePairRecord> pairs =
+        List.of(pair1(barcode2), pair1(barcode1), pair2(barcode2), pair2(barcode1));
+
+    private static File writePairs(List<PeptidePairRecord> records) throws IOException {
+        File file = tempFile("pairs", ".txt");
+
+        List<String> lines = new ArrayList<String>();
+        lines.add(PeptidePairRecord.header(AlleleFootprintRecord.DELIM));
+
+        for (PeptidePairRecord pair : records)
+            lines.add(pair.format(AlleleFootprintRecord.DELIM));
+
+        IOUtil.writeLines(file.getPath(), false, lines);
+        return file;
+    }
+
+    private static File snapshotDir() throws IOException {
+        return tempDir("snapshot");
+    }
+
+    private static List<String> format(PeptidePairTable table, TumorBarcode barcode) {
+        List<String> lines = new ArrayList<String>();
+
+        for (PeptidePairRecord record : table.lookup(barcode))
+            lines.add(record.format(AlleleFootprintRecord.DELIM));
+
+        return lines;
+    }
+
+    private static void assertTablesEqual(PeptidePairTable expected, PeptidePairTable actual) {
+        assertEquals(expected.viewBarcodes(), actual.viewBarcodes());
+
+        for (TumorBarcode barcode : expected.viewBarcodes())
+            assertEquals(format(expected, barcode), format(actual, barcode));
+    }
+
+    @Test public void testRoundTrip() throws IOException {
+        File file = writePairs(pairs);
+        File dir = snapshotDir();
+
+        PeptidePairTable parsed = PeptidePairSnapshot.load(file.getPath(), dir.getPath());
+        File[] snapshots = dir.listFiles();
+
+        assertEquals(1, snapshots.length);
+        snapshots[0].deleteOnExit();
+
+        // Remove the source timestamp match to force the digest check...
+        assertTrue(file.setLastModified(file.lastModified() - 10000L));
+
+        PeptidePairTable mapped = PeptidePairSnapshot.load(file.getPath(), dir.getPath());
+        assertTablesEqual(parsed, mapped);
+        assertEquals(2, mapped.lookup(barcode1).size());
+    }
+
+    @Test public void testStale() throws IOException {
+        File file = writePairs(pairs);
+        File dir = snapshotDir();
+
+        PeptidePairSnapshot.load(file.getPath(), dir.getPath());
+        dir.listFiles()[0].deleteOnExit();
+
+        // Rewrite the source with different (but same-length) content...
+        List<PeptidePairRecord> changed = new ArrayList<PeptidePairRecord>(pairs);
+        changed.set(0, PeptidePairRecord.instance(barcode2, GENE, RANGE, SELF2, NEO1));
+        writePairs(changed).renameTo(file);
+
+        PeptidePairTable table = PeptidePairSnapshot.load(file.getPath(), dir.getPath());
+        assertTablesEqual(PeptidePairTable.load(file.getPath()), table);
+    }
+
+    @Test public void testCorrupt() throws IOException {
+        File file = writePairs(pairs);
+        File dir = snapshotDir();
+
+        PeptidePairTable parsed = PeptidePairSnapshot.load(file.getPath(), dir.getPath());
+        File snapshot = dir.listFiles()[0];
+        snapshot.deleteOnExit();
+
+        try (RandomAccessFile access = new RandomAccessFile(snapshot, "rw")) {
+            access.setLength(access.length() - 3);
+        }
+
+        assertTablesEqual(parsed, PeptidePairSnapshot.load(file.getPath(), dir.getPath()));
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("nfi.junit.PeptidePairSnapshotTest");
+    }
+}
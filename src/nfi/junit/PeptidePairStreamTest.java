@@ -0,0 +1,85 @@
+package nfi.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jam.io.IOUtil;
+
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.PeptidePairIndex;
+import nfi.io.PeptidePairStream;
+import nfi.model.AlleleFootprintRecord;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static nfi.junit.FootprintFixture.*;
+
+public class PeptidePairStreamTest {
+    private static final TumorBarcode barcode1 = TumorBarcode.instance("Tumor1");
+    private static final TumorBarcode barcode2 = TumorBarcode.instance("Tumor2");
+
+    // Records for the two barcodes are interleaved...
+    private static final List<PeptidePairRecord> pairs =
+        List.of(pair1(barcode1),
+                pair1(barcode2),
+                pair2(barcode1),
+                pair2(barcode2),
+                PeptidePairRecord.instance(barcode2, GENE, RANGE, SELF1, NEO2));
+
+    private static File writePairs() throws IOException {
+        File file = tempFile("pairs", ".txt");
+
+        List<String> lines = new ArrayList<String>();
+        lines.add(PeptidePairRecord.header(AlleleFootprintRecord.DELIM));
+
+        for (PeptidePairRecord pair : pairs)
+            lines.add(pair.format(AlleleFootprintRecord.DELIM));
+
+        IOUtil.writeLines(file.getPath(), false, lines);
+        return file;
+    }
+
+    @Test public void testIndexed() throws IOException {
+        File file = writePairs();
+        PeptidePairIndex index = PeptidePairIndex.build(file.getPath());
+
+        assertEquals(2, index.count(barcode1));
+        assertEquals(3, index.count(barcode2));
+        assertEquals(List.of(barcode1, barcode2), index.listBarcodes());
+
+        List<PeptidePairStream.Group> groups = new ArrayList<PeptidePairStream.Group>();
+
+        try (PeptidePairStream stream = PeptidePairStream.indexed(file.getPath(), index)) {
+            for (PeptidePairStream.Group group : stream)
+                groups.add(group);
+        }
+
+        assertEquals(2, groups.size());
+
+        assertEquals(barcode1, groups.get(0).getBarcode());
+        assertEquals(2, groups.get(0).getRecords().size());
+        assertEquals(pairs.get(2).format(AlleleFootprintRecord.DELIM),
+                     groups.get(0).getRecords().get(1).format(AlleleFootprintRecord.DELIM));
+
+        assertEquals(barcode2, groups.get(1).getBarcode());
+        assertEquals(3, groups.get(1).getRecords().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUngrouped() throws IOException {
+        File file = writePairs();
+
+        try (PeptidePairStream stream = PeptidePairStream.grouped(file.getPath())) {
+            for (PeptidePairStream.Group group : stream)
+                assertNotNull(group.getBarcode());
+        }
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("nfi.junit.PeptidePairStreamTest");
+    }
+}
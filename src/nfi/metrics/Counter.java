@@ -0,0 +1,45 @@
+package nfi.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events across threads.  Counters obtained from a disabled
+ * registry ignore all updates.
+ */
+public final class Counter {
+    private final boolean enabled;
+    private final LongAdder count = new LongAdder();
+
+    static final Counter DISABLED = new Counter(false);
+
+    Counter(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Adds one to this counter.
+     */
+    public void increment() {
+        if (enabled)
+            count.increment();
+    }
+
+    /**
+     * Adds a value to this counter.
+     *
+     * @param value the value to add.
+     */
+    public void add(long value) {
+        if (enabled)
+            count.add(value);
+    }
+
+    /**
+     * Returns the current count.
+     *
+     * @return the current count.
+     */
+    public long count() {
+        return count.sum();
+    }
+}
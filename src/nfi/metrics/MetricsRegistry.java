@@ -0,0 +1,264 @@
+package nfi.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maintains the named counters and timers for one application run and
+ * writes them to a machine-readable (JSON) report.
+ *
+ * <p>The global registry is disabled until {@link #enable()} is
+ * called.  A disabled registry hands out shared no-op counters and
+ * timers, so instrumented code pays one branch per update; callers
+ * that build metric names dynamically should use the qualified lookup
+ * methods (or check {@link #isEnabled()}) to avoid building names
+ * that will never be used.
+ */
+public final class MetricsRegistry {
+    private final Instant startTime = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+    private static volatile MetricsRegistry global = null;
+
+    private static final MetricsRegistry DISABLED = new MetricsRegistry();
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Returns the global registry.
+     *
+     * @return the global registry, or a disabled registry if metrics
+     * have not been enabled.
+     */
+    public static MetricsRegistry global() {
+        MetricsRegistry registry = global;
+        return registry != null ? registry : DISABLED;
+    }
+
+    /**
+     * Enables the global registry (if it is not already enabled).
+     *
+     * @return the global registry.
+     */
+    public static synchronized MetricsRegistry enable() {
+        if (global == null)
+            global = new MetricsRegistry();
+
+        return global;
+    }
+
+    /**
+     * Identifies enabled registries.
+     *
+     * @return {@code true} iff this registry records metrics.
+     */
+    public boolean isEnabled() {
+        return this != DISABLED;
+    }
+
+    /**
+     * Returns a named counter, creating it if necessary.
+     *
+     * @param name the counter name.
+     *
+     * @return the counter with the specified name.
+     */
+    public Counter counter(String name) {
+        if (isEnabled())
+            return counters.computeIfAbsent(name, key -> new Counter(true));
+        else
+            return Counter.DISABLED;
+    }
+
+    /**
+     * Returns a counter named by a prefix and qualifier (separated by
+     * a period), creating it if necessary; the name is only built if
+     * this registry is enabled.
+     *
+     * @param prefix the name prefix.
+     *
+     * @param qualifier the name qualifier.
+     *
+     * @return the counter with the specified name.
+     */
+    public Counter counter(String prefix, Object qualifier) {
+        if (isEnabled())
+            return counter(prefix + "." + qualifier);
+        else
+            return Counter.DISABLED;
+    }
+
+    /**
+     * Returns a named timer, creating it if necessary.
+     *
+     * @param name the timer name.
+     *
+     * @return the timer with the specified name.
+     */
+    public Timer timer(String name) {
+        if (isEnabled())
+            return timers.computeIfAbsent(name, key -> new Timer(true));
+        else
+            return Timer.DISABLED;
+    }
+
+    /**
+     * Returns a timer named by a prefix and qualifier (separated by a
+     * period), creating it if necessary; the name is only built if
+     * this registry is enabled.
+     *
+     * @param prefix the name prefix.
+     *
+     * @param qualifier the name qualifier.
+     *
+     * @return the timer with the specified name.
+     */
+    public Timer timer(String prefix, Object qualifier) {
+        if (isEnabled())
+            return timer(prefix + "." + qualifier);
+        else
+            return Timer.DISABLED;
+    }
+
+    /**
+     * Writes the run report: the run attributes, the elapsed time, and
+     * the current value of every counter and timer (with latencies in
+     * milliseconds).
+     *
+     * @param fileName the name of the report file.
+     *
+     * @param attributes descriptive attributes of the run (numbers and
+     * booleans are written as JSON values, everything else as
+     * strings).
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void writeReport(String fileName, Map<String, Object> attributes) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("{\n");
+        builder.append("  \"startTime\": ").append(quote(startTime.toString())).append(",\n");
+        builder.append("  \"elapsedSeconds\": ").append(format(1.0E-9 * (System.nanoTime() - startNanos))).append(",\n");
+
+        builder.append("  \"attributes\": {");
+        appendAttributes(builder, attributes);
+        builder.append("},\n");
+
+        builder.append("  \"counters\": {");
+        appendCounters(builder);
+        builder.append("},\n");
+
+        builder.append("  \"timers\": {");
+        appendTimers(builder);
+        builder.append("}\n");
+        builder.append("}\n");
+
+        Path path = Paths.get(fileName);
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            Files.write(tempPath, builder.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void appendAttributes(StringBuilder builder, Map<String, Object> attributes) {
+        String separator = "\n";
+
+        for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(attributes).entrySet()) {
+            Object value = entry.getValue();
+
+            builder.append(separator).append("    ").append(quote(entry.getKey())).append(": ");
+
+            if (value instanceof Number || value instanceof Boolean)
+                builder.append(value);
+            else
+                builder.append(quote(String.valueOf(value)));
+
+            separator = ",\n";
+        }
+
+        if (!attributes.isEmpty())
+            builder.append("\n  ");
+    }
+
+    private void appendCounters(StringBuilder builder) {
+        String separator = "\n";
+
+        for (Map.Entry<String, Counter> entry : new TreeMap<String, Counter>(counters).entrySet()) {
+            builder.append(separator).append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue().count());
+            separator = ",\n";
+        }
+
+        if (!counters.isEmpty())
+            builder.append("\n  ");
+    }
+
+    private void appendTimers(StringBuilder builder) {
+        String separator = "\n";
+
+        for (Map.Entry<String, Timer> entry : new TreeMap<String, Timer>(timers).entrySet()) {
+            Timer timer = entry.getValue();
+            long count = timer.count();
+
+            builder.append(separator).append("    ").append(quote(entry.getKey())).append(": {");
+            builder.append("\"count\": ").append(count);
+            builder.append(", \"totalMillis\": ").append(millis(timer.totalNanos()));
+            builder.append(", \"meanMillis\": ").append(millis(count > 0 ? (double) timer.totalNanos() / count : 0.0));
+            builder.append(", \"minMillis\": ").append(millis(timer.minNanos()));
+            builder.append(", \"p50Millis\": ").append(millis(timer.percentileNanos(50.0)));
+            builder.append(", \"p90Millis\": ").append(millis(timer.percentileNanos(90.0)));
+            builder.append(", \"p99Millis\": ").append(millis(timer.percentileNanos(99.0)));
+            builder.append(", \"maxMillis\": ").append(millis(timer.maxNanos()));
+            builder.append("}");
+
+            separator = ",\n";
+        }
+
+        if (!timers.isEmpty())
+            builder.append("\n  ");
+    }
+
+    private static String millis(double nanos) {
+        return format(1.0E-6 * nanos);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String text) {
+        StringBuilder builder = new StringBuilder(text.length() + 2);
+        builder.append('"');
+
+        for (int index = 0; index < text.length(); ++index) {
+            char c = text.charAt(index);
+
+            if (c == '"' || c == '\\')
+                builder.append('\\').append(c);
+            else if (c < 0x20)
+                builder.append(String.format("\\u%04x", (int) c));
+            else
+                builder.append(c);
+        }
+
+        return builder.append('"').toString();
+    }
+}
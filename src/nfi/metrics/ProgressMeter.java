@@ -0,0 +1,103 @@
+package nfi.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jam.app.JamLogger;
+
+/**
+ * Logs the progress of a long-running loop at fixed intervals, with
+ * the throughput so far and (when the total is known) the estimated
+ * time remaining.
+ */
+public final class ProgressMeter implements AutoCloseable {
+    private final String label;
+    private final long total;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder completed = new LongAdder();
+    private final ScheduledExecutorService timer;
+
+    private ProgressMeter(String label, long total, long intervalSeconds) {
+        this.label = label;
+        this.total = total;
+
+        if (intervalSeconds > 0) {
+            this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ProgressMeter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+            this.timer.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+        else {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Starts a new progress meter.
+     *
+     * @param label the name of the items being processed (used in the
+     * progress messages).
+     *
+     * @param total the total number of items to process (zero if
+     * unknown).
+     *
+     * @param intervalSeconds the time between progress messages (no
+     * messages are logged unless this value is positive).
+     *
+     * @return the new progress meter.
+     */
+    public static ProgressMeter start(String label, long total, long intervalSeconds) {
+        return new ProgressMeter(label, total, intervalSeconds);
+    }
+
+    /**
+     * Records the completion of one item.
+     */
+    public void advance() {
+        completed.increment();
+    }
+
+    /**
+     * Returns the number of items completed.
+     *
+     * @return the number of items completed.
+     */
+    public long completed() {
+        return completed.sum();
+    }
+
+    /**
+     * Logs the current progress.
+     */
+    public void report() {
+        long done = completed.sum();
+        double elapsed = 1.0E-9 * (System.nanoTime() - startNanos);
+        double rate = elapsed > 0.0 ? done / elapsed : 0.0;
+
+        if (total > 0 && rate > 0.0)
+            JamLogger.info("Completed [%d] of [%d] %s (%.1f%%) in %s; %.2f per second; ETA %s.",
+                           done, total, label, 100.0 * done / total,
+                           formatSeconds(elapsed), rate, formatSeconds((total - done) / rate));
+        else
+            JamLogger.info("Completed [%d] %s in %s; %.2f per second.",
+                           done, label, formatSeconds(elapsed), rate);
+    }
+
+    private static String formatSeconds(double seconds) {
+        long rounded = Math.max(0L, Math.round(seconds));
+        return String.format("%d:%02d:%02d", rounded / 3600, (rounded / 60) % 60, rounded % 60);
+    }
+
+    /**
+     * Stops the periodic progress messages.
+     */
+    @Override public void close() {
+        if (timer != null)
+            timer.shutdownNow();
+    }
+}
@@ -0,0 +1,201 @@
+package nfi.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Records the latency distribution of a timed operation in a
+ * lock-free histogram.
+ *
+ * <p>Latencies are counted in logarithmic buckets with four
+ * sub-buckets per power of two, so the reported percentiles are
+ * within about 12 percent of the exact values.  Timers obtained from
+ * a disabled registry do not read the clock or record anything.
+ */
+public final class Timer {
+    private final boolean enabled;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxNanos = new AtomicLong(0L);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = SUB_COUNT * (64 - SUB_BITS + 1);
+
+    static final Timer DISABLED = new Timer(false);
+
+    Timer(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing one operation.
+     *
+     * @return the start time to pass to {@link #stop(long)} (zero if
+     * this timer is disabled).
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Stops timing one operation and records its latency.
+     *
+     * @param start the value returned by {@link #start()}.
+     */
+    public void stop(long start) {
+        if (enabled)
+            record(System.nanoTime() - start);
+    }
+
+    /**
+     * Times the execution of an operation.
+     *
+     * @param operation the operation to execute.
+     */
+    public void time(Runnable operation) {
+        long start = start();
+
+        try {
+            operation.run();
+        }
+        finally {
+            stop(start);
+        }
+    }
+
+    /**
+     * Times the execution of an operation that returns a result.
+     *
+     * @param <T> the runtime result type.
+     *
+     * @param operation the operation to execute.
+     *
+     * @return the result of the operation.
+     */
+    public <T> T time(Supplier<T> operation) {
+        long start = start();
+
+        try {
+            return operation.get();
+        }
+        finally {
+            stop(start);
+        }
+    }
+
+    /**
+     * Records the latency of one operation.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (!enabled)
+            return;
+
+        nanos = Math.max(0L, nanos);
+
+        count.increment();
+        totalNanos.add(nanos);
+        buckets.incrementAndGet(bucket(nanos));
+
+        minNanos.accumulateAndGet(nanos, Math::min);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_COUNT)
+            return (int) nanos;
+
+        int msb = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) ((nanos >>> (msb - SUB_BITS)) & (SUB_COUNT - 1));
+
+        return SUB_COUNT * (msb - SUB_BITS + 1) + sub;
+    }
+
+    private static double bucketMidpoint(int bucket) {
+        if (bucket < SUB_COUNT)
+            return bucket;
+
+        int shift = bucket / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+
+        return lower + 0.5 * (1L << shift);
+    }
+
+    /**
+     * Returns the number of operations recorded.
+     *
+     * @return the number of operations recorded.
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the total latency of all operations in nanoseconds.
+     *
+     * @return the total latency of all operations in nanoseconds.
+     */
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Returns the minimum latency in nanoseconds.
+     *
+     * @return the minimum latency in nanoseconds (zero if no
+     * operations have been recorded).
+     */
+    public long minNanos() {
+        return count() > 0 ? minNanos.get() : 0L;
+    }
+
+    /**
+     * Returns the maximum latency in nanoseconds.
+     *
+     * @return the maximum latency in nanoseconds.
+     */
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Estimates a latency percentile.
+     *
+     * @param percentile the percentile of interest, in the range
+     * {@code [0, 100]}.
+     *
+     * @return the estimated latency percentile in nanoseconds (zero
+     * if no operations have been recorded).
+     */
+    public double percentileNanos(double percentile) {
+        long total = 0L;
+        long[] snapshot = new long[BUCKET_COUNT];
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; ++bucket) {
+            snapshot[bucket] = buckets.get(bucket);
+            total += snapshot[bucket];
+        }
+
+        if (total == 0)
+            return 0.0;
+
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+        long cumulative = 0L;
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; ++bucket) {
+            cumulative += snapshot[bucket];
+
+            if (cumulative >= rank)
+                return Math.min(maxNanos(), Math.max(minNanos(), bucketMidpoint(bucket)));
+        }
+
+        return maxNanos();
+    }
+}
@@ -0,0 +1,268 @@
+package nfi.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import jam.app.JamLogger;
+import jam.util.StreamUtil;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+import jene.neo.PeptidePairTable;
+import jene.peptide.Peptide;
+import jene.tcga.TumorBarcode;
+import jene.tcga.TumorGenotypeTable;
+
+import nfi.bind.PeptideBindingMap;
+
+/**
+ * Inverts a cohort workload into the unique neo-peptides and
+ * self-peptides that must be presented to each HLA allele, so that
+ * the binding predictor is invoked exactly once per allele rather
+ * than once per tumor barcode and allele.
+ */
+public final class AlleleBindingPlan {
+    private final Map<Allele, Set<Peptide>> allelePeptides;
+    private final Map<Allele, List<List<PeptidePairRecord>>> allelePairs;
+
+    private AlleleBindingPlan(Map<Allele, Set<Peptide>> allelePeptides,
+                              Map<Allele, List<List<PeptidePairRecord>>> allelePairs) {
+        this.allelePeptides = allelePeptides;
+        this.allelePairs = allelePairs;
+    }
+
+    /**
+     * Creates the binding plan for a patient cohort.
+     *
+     * @param barcodes the tumor barcodes in the cohort.
+     *
+     * @param peptidePairTable the neo/self peptide pairs for each
+     * tumor barcode.
+     *
+     * @param tumorGenotypeTable the HLA genotype for each tumor
+     * barcode.
+     *
+     * @return the binding plan for the specified cohort.
+     */
+    public static AlleleBindingPlan create(Collection<TumorBarcode> barcodes,
+                                           PeptidePairTable peptidePairTable,
+                                           TumorGenotypeTable tumorGenotypeTable) {
+        return create(barcodes, peptidePairTable, barcode -> tumorGenotypeTable.require(barcode).viewUniqueAlleles());
+    }
+
+    /**
+     * Creates the binding plan for a patient cohort with genotypes
+     * from an arbitrary source.
+     *
+     * @param barcodes the tumor barcodes in the cohort.
+     *
+     * @param peptidePairTable the neo/self peptide pairs for each
+     * tumor barcode.
+     *
+     * @param genotypes a function that returns the unique alleles in
+     * the genotype for each tumor barcode (and throws an exception
+     * for barcodes without a genotype).
+     *
+     * @return the binding plan for the specified cohort.
+     */
+    public static AlleleBindingPlan create(Collection<TumorBarcode> barcodes,
+                                           PeptidePairTable peptidePairTable,
+                                           Function<TumorBarcode, Set<Allele>> genotypes) {
+        Map<Allele, Set<Peptide>> allelePeptides = new TreeMap<Allele, Set<Peptide>>();
+        Map<Allele, List<List<PeptidePairRecord>>> allelePairs = new HashMap<Allele, List<List<PeptidePairRecord>>>();
+
+        for (TumorBarcode barcode : barcodes) {
+            Set<Allele> alleles;
+
+            try {
+                alleles = genotypes.apply(barcode);
+            }
+            catch (RuntimeException ex) {
+                //
+                // Barcodes without a genotype are reported (and
+                // skipped) when their footprints are computed...
+                //
+                continue;
+            }
+
+            List<PeptidePairRecord> pairRecords = peptidePairTable.lookup(barcode);
+
+            for (Allele allele : alleles) {
+                Set<Peptide> peptides =
+                    allelePeptides.computeIfAbsent(allele, key -> new HashSet<Peptide>());
+
+                for (PeptidePairRecord pairRecord : pairRecords) {
+                    peptides.add(pairRecord.getNeoPeptide());
+                    peptides.add(pairRecord.getSelfPeptide());
+                }
+
+                // The pair lists are shared with the table, not copied...
+                allelePairs.computeIfAbsent(allele, key -> new ArrayList<List<PeptidePairRecord>>()).add(pairRecords);
+            }
+        }
+
+        return new AlleleBindingPlan(allelePeptides, allelePairs);
+    }
+
+    /**
+     * Predicts the binding records required by this plan, with a
+     * single call to the binding predictor for each allele.
+     *
+     * @param footprintIndex the footprint index whose binding
+     * predictor will be used.
+     *
+     * @return the binding records indexed by HLA allele.
+     */
+    public Map<Allele, PeptideBindingMap> execute(AlleleFootprintIndex footprintIndex) {
+        return execute(footprintIndex, footprintIndex::mapBinding);
+    }
+
+    /**
+     * Predicts the binding records required by this plan with a
+     * specific source of predictions, which is invoked once for each
+     * allele.
+     *
+     * @param footprintIndex the footprint index whose affinity screen
+     * (if any) will be applied.
+     *
+     * @param predictor the function that predicts the binding of
+     * peptides for an allele.
+     *
+     * @return the binding records indexed by HLA allele.
+     */
+    public Map<Allele, PeptideBindingMap> execute(AlleleFootprintIndex footprintIndex,
+                                                  BiFunction<Allele, Collection<? extends Peptide>, PeptideBindingMap> predictor) {
+        JamLogger.info("Predicting binding for [%d] alleles and [%d] allele-peptide pairs...",
+                       countAlleles(), countAllelePeptides());
+
+        List<Map.Entry<Allele, PeptideBindingMap>> entries =
+            StreamUtil.applyParallel(allelePeptides.keySet(), allele -> execute(footprintIndex, predictor, allele));
+
+        Map<Allele, PeptideBindingMap> bindingMaps = new HashMap<Allele, PeptideBindingMap>(entries.size());
+
+        for (Map.Entry<Allele, PeptideBindingMap> entry : entries)
+            bindingMaps.put(entry.getKey(), entry.getValue());
+
+        return bindingMaps;
+    }
+
+    /**
+     * Predicts the binding records required by this plan for several
+     * footprint indexes, with a single call to each binding predictor
+     * for each allele.  The predictions for all footprint indexes and
+     * alleles are executed concurrently.
+     *
+     * @param footprintIndexes the footprint indexes whose binding
+     * predictors will be used.
+     *
+     * @return the binding records indexed by footprint index and HLA
+     * allele.
+     */
+    public Map<AlleleFootprintIndex, Map<Allele, PeptideBindingMap>> execute(Collection<AlleleFootprintIndex> footprintIndexes) {
+        JamLogger.info("Predicting binding for [%d] footprint types, [%d] alleles and [%d] allele-peptide pairs...",
+                       footprintIndexes.size(), countAlleles(), countAllelePeptides());
+
+        List<Map.Entry<AlleleFootprintIndex, Allele>> tasks =
+            new ArrayList<Map.Entry<AlleleFootprintIndex, Allele>>();
+
+        for (AlleleFootprintIndex footprintIndex : footprintIndexes)
+            for (Allele allele : allelePeptides.keySet())
+                tasks.add(Map.entry(footprintIndex, allele));
+
+        List<Map.Entry<Allele, PeptideBindingMap>> entries =
+            StreamUtil.applyParallel(tasks, task -> execute(task.getKey(), task.getKey()::mapBinding, task.getValue()));
+
+        Map<AlleleFootprintIndex, Map<Allele, PeptideBindingMap>> bindingMaps =
+            new HashMap<AlleleFootprintIndex, Map<Allele, PeptideBindingMap>>();
+
+        for (int index = 0; index < tasks.size(); ++index)
+            bindingMaps.computeIfAbsent(tasks.get(index).getKey(), key -> new HashMap<Allele, PeptideBindingMap>())
+                .put(entries.get(index).getKey(), entries.get(index).getValue());
+
+        return bindingMaps;
+    }
+
+    private Map.Entry<Allele, PeptideBindingMap> execute(AlleleFootprintIndex footprintIndex,
+                                                         BiFunction<Allele, Collection<? extends Peptide>, PeptideBindingMap> predictor,
+                                                         Allele allele) {
+        Set<Peptide> peptides = allelePeptides.get(allele);
+        BindingScreen screen = footprintIndex.getScreen();
+
+        if (screen != null) {
+            //
+            // Only the peptides in pairs that pass the affinity screen
+            // are presented to the expensive predictor...
+            //
+            int peptideCount = peptides.size();
+            peptides = screen.requiredPeptides(allele, peptides, allelePairs.get(allele));
+
+            JamLogger.info("Affinity screen retained [%d] of [%d] peptides for [%s].",
+                           peptides.size(), peptideCount, allele);
+        }
+
+        JamLogger.info("Predicting %s binding for [%s]...", footprintIndex.getFootprintType(), allele);
+        return Map.entry(allele, predictor.apply(allele, peptides));
+    }
+
+    /**
+     * Returns the number of distinct alleles in this plan.
+     *
+     * @return the number of distinct alleles in this plan.
+     */
+    public int countAlleles() {
+        return allelePeptides.size();
+    }
+
+    /**
+     * Returns the total number of distinct allele-peptide pairs in
+     * this plan (the number of binding predictions required).
+     *
+     * @return the total number of distinct allele-peptide pairs in
+     * this plan.
+     */
+    public long countAllelePeptides() {
+        long count = 0;
+
+        for (Set<Peptide> peptides : allelePeptides.values())
+            count += peptides.size();
+
+        return count;
+    }
+
+    /**
+     * Returns a read-only view of the distinct alleles in this plan.
+     *
+     * @return a read-only view of the distinct alleles in this plan.
+     */
+    public Set<Allele> viewAlleles() {
+        return Collections.unmodifiableSet(allelePeptides.keySet());
+    }
+
+    /**
+     * Returns a read-only view of the distinct peptides that must be
+     * presented to a given allele.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @return a read-only view of the distinct peptides that must be
+     * presented to the specified allele (an empty set if the allele
+     * is not present in this plan).
+     */
+    public Set<Peptide> viewPeptides(Allele allele) {
+        Set<Peptide> peptides = allelePeptides.get(allele);
+
+        if (peptides != null)
+            return Collections.unmodifiableSet(peptides);
+        else
+            return Set.of();
+    }
+}
@@ -2,14 +2,20 @@
 package nfi.model;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jam.app.JamApp;
 import jam.app.JamLogger;
 import jam.app.JamProperties;
-import jam.io.IOUtil;
 import jam.util.ListUtil;
 import jam.util.StreamUtil;
 
@@ -20,6 +26,18 @@ import jene.neo.PeptidePairTable;
 import jene.tcga.TumorBarcode;
 import jene.tcga.TumorGenotypeTable;
 
+import nfi.bind.PeptideBindingMap;
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintWriter;
+import nfi.io.PeptidePairIndex;
+import nfi.io.PeptidePairSnapshot;
+import nfi.io.PeptidePairStream;
+import nfi.metrics.MetricsRegistry;
+import nfi.metrics.ProgressMeter;
+import nfi.score.FootprintAggregator;
+import nfi.score.FootprintSummary;
+import nfi.util.OrderedStream;
+
 /**
  * Computes allele footprint index scores for a patient cohort.
  */
@@ -28,33 +46,235 @@ public final class AlleleFootprintDriver extends JamApp {
     private final String peptidePairFile;
     private final String tumorPatientFile;
     private final String patientGenotypeFile;
+    private final Set<TumorBarcode> barcodeSubset;
+    private final CohortTables cohortTables;
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final Set<TumorBarcode> failedBarcodes = ConcurrentHashMap.newKeySet();
+    private int cohortSize;
+
+    private final boolean incremental;
+    private final String predictorVersion;
+    private final String screenSettings;
+
+    private final boolean cohortPlan;
+    private final boolean streamOutput;
+    private final FootprintFormat outputFormat;
+    private final String checkpointDir;
+    private final String snapshotDir;
+    private final boolean columnarTable;
+    private final boolean streamPairs;
+    private final boolean pairsGrouped;
+
+    private final boolean writePairFile;
+    private final String summaryFile;
+    private final FootprintSummary summary;
+
+    private final int threadCount;
+    private final int chunkSize;
 
-    private final AlleleFootprintType footprintType;
-    private final AlleleFootprintIndex footprintIndex;
+    private final String metricsFile;
+    private final long progressInterval;
+    private final MetricsRegistry metrics;
+
+    private final List<AlleleFootprintType> footprintTypes;
+    private final List<AlleleFootprintIndex> footprintIndexes;
 
     private PeptidePairTable peptidePairTable;
     private TumorGenotypeTable tumorGenotypeTable;
     private List<TumorBarcode> tumorBarcodes;
+    private Map<AlleleFootprintIndex, Map<Allele, PeptideBindingMap>> bindingMaps;
     private List<AlleleFootprintRecord> footprintRecords;
+    private FootprintTable footprintTable;
+    private ProgressMeter progress;
 
     private AlleleFootprintDriver(String... propFiles) {
+        this(null, propFiles);
+    }
+
+    private AlleleFootprintDriver(CohortTables cohortTables, String... propFiles) {
         super(propFiles);
 
-        this.footprintFile = resolveFootprintFile();
+        this.cohortTables = cohortTables;
+        this.barcodeSubset = resolveBarcodeSubset();
+
+        this.shardCount = resolveShardCount();
+        this.shardIndex = resolveShardIndex(shardCount);
+
+        this.writePairFile = resolveWritePairFile();
+        this.footprintFile = shardFile(resolveFootprintFile(writePairFile));
         this.peptidePairFile = resolvePeptidePairFile();
         this.tumorPatientFile = resolveTumorPatientFile();
         this.patientGenotypeFile = resolvePatientGenotypeFile();
 
-        this.footprintType = resolveFootprintType();
-        this.footprintIndex = footprintType.getAlleleFootprintIndex();
+        this.incremental = resolveIncremental();
+        this.predictorVersion = resolvePredictorVersion();
+        this.screenSettings = BindingScreen.describeGlobal();
+
+        this.cohortPlan = resolveCohortPlan();
+        this.streamOutput = resolveStreamOutput();
+        this.outputFormat = resolveOutputFormat();
+        this.checkpointDir = resolveCheckpointDir();
+        this.snapshotDir = resolveSnapshotDir();
+        this.columnarTable = resolveColumnarTable();
+        this.streamPairs = resolveStreamPairs();
+        this.pairsGrouped = resolvePairsGrouped();
+        this.summaryFile = shardFile(resolveSummaryFile(writePairFile));
+        this.summary = resolveSummary(summaryFile);
+
+        this.threadCount = resolveThreadCount();
+        this.chunkSize = resolveChunkSize();
+        this.footprintTypes = resolveFootprintTypes();
+        this.footprintIndexes = resolveFootprintIndexes(footprintTypes);
+
+        this.metricsFile = shardFile(resolveMetricsFile());
+        this.progressInterval = resolveProgressInterval();
+        this.metrics = metricsFile != null ? MetricsRegistry.enable() : MetricsRegistry.global();
+        this.progress = ProgressMeter.start(PROGRESS_LABEL, 0, 0);
+    }
+
+    private static int resolveShardCount() {
+        return JamProperties.getOptionalInt(SHARD_COUNT_PROPERTY, 1);
+    }
+
+    private static int resolveShardIndex(int shardCount) {
+        int shardIndex = JamProperties.getOptionalInt(SHARD_INDEX_PROPERTY, 0);
+        FootprintShards.validate(shardIndex, shardCount);
+
+        return shardIndex;
+    }
+
+    private String shardFile(String fileName) {
+        if (fileName != null && shardCount > 1)
+            return FootprintShards.shardFile(fileName, shardIndex, shardCount);
+        else
+            return fileName;
+    }
+
+    private static Set<TumorBarcode> resolveBarcodeSubset() {
+        String barcodes = JamProperties.getOptional(BARCODES_PROPERTY, null);
+
+        if (barcodes == null)
+            return null;
+
+        Set<TumorBarcode> subset = new HashSet<TumorBarcode>();
+
+        for (String barcode : barcodes.split(","))
+            if (!barcode.isBlank())
+                subset.add(TumorBarcode.instance(barcode.trim()));
+
+        return subset;
+    }
+
+    private static String resolveMetricsFile() {
+        return JamProperties.getOptional(METRICS_FILE_PROPERTY, null);
+    }
+
+    private static long resolveProgressInterval() {
+        return JamProperties.getOptionalLong(PROGRESS_INTERVAL_PROPERTY, DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    private static boolean resolveIncremental() {
+        return JamProperties.getOptionalBoolean(INCREMENTAL_PROPERTY, false);
     }
 
-    private static String resolveFootprintFile() {
-        return JamProperties.getRequired(FOOTPRINT_FILE_PROPERTY);
+    private static String resolvePredictorVersion() {
+        return JamProperties.getOptional(PREDICTOR_VERSION_PROPERTY, "");
     }
 
-    private static AlleleFootprintType resolveFootprintType() {
-        return JamProperties.getRequiredEnum(FOOTPRINT_TYPE_PROPERTY, AlleleFootprintType.class);
+    private static boolean resolveCohortPlan() {
+        return JamProperties.getOptionalBoolean(COHORT_PLAN_PROPERTY, false);
+    }
+
+    private static boolean resolveStreamOutput() {
+        return JamProperties.getOptionalBoolean(STREAM_OUTPUT_PROPERTY, false);
+    }
+
+    private static FootprintFormat resolveOutputFormat() {
+        return JamProperties.getOptionalEnum(OUTPUT_FORMAT_PROPERTY, FootprintFormat.class, FootprintFormat.TSV);
+    }
+
+    private static String resolveCheckpointDir() {
+        return JamProperties.getOptional(CHECKPOINT_DIR_PROPERTY, null);
+    }
+
+    private static String resolveSnapshotDir() {
+        return JamProperties.getOptional(SNAPSHOT_DIR_PROPERTY, null);
+    }
+
+    private static boolean resolveStreamPairs() {
+        return JamProperties.getOptionalBoolean(STREAM_PAIRS_PROPERTY, false);
+    }
+
+    private static boolean resolvePairsGrouped() {
+        return JamProperties.getOptionalBoolean(PAIRS_GROUPED_PROPERTY, false);
+    }
+
+    private static boolean resolveColumnarTable() {
+        return JamProperties.getOptionalBoolean(COLUMNAR_TABLE_PROPERTY, false);
+    }
+
+    private static boolean resolveWritePairFile() {
+        return JamProperties.getOptionalBoolean(WRITE_PAIR_FILE_PROPERTY, true);
+    }
+
+    private static String resolveSummaryFile(boolean writePairFile) {
+        if (writePairFile)
+            return JamProperties.getOptional(SUMMARY_FILE_PROPERTY, null);
+        else
+            return JamProperties.getRequired(SUMMARY_FILE_PROPERTY);
+    }
+
+    private static FootprintSummary resolveSummary(String summaryFile) {
+        if (summaryFile == null)
+            return null;
+
+        List<FootprintAggregator> aggregators =
+            FootprintAggregator.parseList(JamProperties.getOptional(AGGREGATORS_PROPERTY, DEFAULT_AGGREGATORS));
+
+        boolean alleleBreakdown =
+            JamProperties.getOptionalBoolean(ALLELE_BREAKDOWN_PROPERTY, true);
+
+        return FootprintSummary.create(aggregators, alleleBreakdown);
+    }
+
+    private static int resolveThreadCount() {
+        return JamProperties.getOptionalInt(THREAD_COUNT_PROPERTY, Runtime.getRuntime().availableProcessors());
+    }
+
+    private static int resolveChunkSize() {
+        return JamProperties.getOptionalInt(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
+    }
+
+    private static String resolveFootprintFile(boolean writePairFile) {
+        if (writePairFile)
+            return JamProperties.getRequired(FOOTPRINT_FILE_PROPERTY);
+        else
+            return JamProperties.getOptional(FOOTPRINT_FILE_PROPERTY, null);
+    }
+
+    private static List<AlleleFootprintType> resolveFootprintTypes() {
+        String[] typeNames = JamProperties.getRequired(FOOTPRINT_TYPE_PROPERTY).split(",");
+        List<AlleleFootprintType> footprintTypes = new ArrayList<AlleleFootprintType>(typeNames.length);
+
+        for (String typeName : typeNames) {
+            AlleleFootprintType footprintType = AlleleFootprintType.valueOf(typeName.trim());
+
+            if (!footprintTypes.contains(footprintType))
+                footprintTypes.add(footprintType);
+        }
+
+        return footprintTypes;
+    }
+
+    private static List<AlleleFootprintIndex> resolveFootprintIndexes(List<AlleleFootprintType> footprintTypes) {
+        List<AlleleFootprintIndex> footprintIndexes = new ArrayList<AlleleFootprintIndex>(footprintTypes.size());
+
+        for (AlleleFootprintType footprintType : footprintTypes)
+            footprintIndexes.add(footprintType.getAlleleFootprintIndex());
+
+        return footprintIndexes;
     }
 
     private static String resolvePeptidePairFile() {
@@ -69,6 +289,201 @@ public final class AlleleFootprintDriver extends JamApp {
         return JamProperties.getRequired(TUMOR_PATIENT_FILE_PROPERTY);
     }
 
+    /**
+     * Name of the system property that enables streaming input: when
+     * {@code true}, the peptide pair file is read one tumor barcode at
+     * a time while earlier barcodes are being computed, and the pairs
+     * for each barcode are released as soon as its records have been
+     * written (or checkpointed, or summarized).  Streamed footprint
+     * output requires the barcodes to appear in sorted order; files
+     * in any other order must be processed with a checkpoint directory
+     * or with the per-pair file disabled.  Cohort binding plans are
+     * not available with streaming input.
+     */
+    public static final String STREAM_PAIRS_PROPERTY = "AlleleFootprintDriver.streamPairs";
+
+    /**
+     * Name of the system property that declares the peptide pair file
+     * to be grouped by tumor barcode (all records for each barcode on
+     * consecutive lines).  Streaming input from a grouped file needs
+     * no index; otherwise, a record-count index is built on the first
+     * read and stored beside the peptide pair file.
+     */
+    public static final String PAIRS_GROUPED_PROPERTY = "AlleleFootprintDriver.pairsGrouped";
+
+    /**
+     * Name of the system property that enables columnar storage: when
+     * {@code true} (and neither streaming nor checkpointing is
+     * enabled), footprint results are computed directly into a
+     * {@link FootprintTable} and sorted by primitive keys, instead of
+     * being held as individual record objects.
+     */
+    public static final String COLUMNAR_TABLE_PROPERTY = "AlleleFootprintDriver.columnarTable";
+
+    /**
+     * Name of the system property that specifies the full path name
+     * of the summary file; when set, the footprint records for each
+     * tumor barcode are reduced to summary scores (one set of rows
+     * per tumor barcode) as soon as the barcode is complete.
+     */
+    public static final String SUMMARY_FILE_PROPERTY = "AlleleFootprintDriver.summaryFile";
+
+    /**
+     * Name of the system property that specifies the summary
+     * aggregators as a comma-separated list of specifications (see
+     * {@link FootprintAggregator#parse(String)}).
+     */
+    public static final String AGGREGATORS_PROPERTY = "AlleleFootprintDriver.aggregators";
+
+    /**
+     * Default value for the aggregators property.
+     */
+    public static final String DEFAULT_AGGREGATORS = "COUNT_ABOVE:1.0, MEAN, MAX, TOP_K:5";
+
+    /**
+     * Name of the system property that specifies whether the summary
+     * file contains a row for each allele in addition to the row for
+     * the full genotype ({@code true} by default).
+     */
+    public static final String ALLELE_BREAKDOWN_PROPERTY = "AlleleFootprintDriver.alleleBreakdown";
+
+    /**
+     * Name of the system property that specifies whether to write the
+     * per-pair footprint file ({@code true} by default).  When this is
+     * {@code false}, the summary file is required and the records for
+     * each barcode are discarded as soon as they are aggregated.
+     */
+    public static final String WRITE_PAIR_FILE_PROPERTY = "AlleleFootprintDriver.writePairFile";
+
+    /**
+     * Name of the system property that specifies the maximum number
+     * of neo/self peptide pairs in one unit of scheduled work (one
+     * footprint type, tumor barcode and allele).
+     */
+    public static final String CHUNK_SIZE_PROPERTY = "AlleleFootprintDriver.chunkSize";
+
+    /**
+     * Default value for the chunk size property.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    /**
+     * Name of the system property that specifies the number of worker
+     * threads used to compute footprint records; the default is the
+     * number of available processors.  (The number of concurrent
+     * binding predictions is limited separately by the property
+     * {@code nfi.bind.predictorConcurrency}.)
+     */
+    public static final String THREAD_COUNT_PROPERTY = "AlleleFootprintDriver.threadCount";
+
+    /**
+     * Name of the system property that specifies a checkpoint
+     * directory: when set, the footprint records for each tumor
+     * barcode are persisted in the directory as soon as they are
+     * complete, a restarted run skips barcodes that already have a
+     * checkpoint computed from the same inputs (as identified by the
+     * incremental fingerprints), and the final footprint file is
+     * merged from the checkpoints.  Barcodes whose computation failed are recorded
+     * in the directory and retried on the next run.
+     */
+    public static final String CHECKPOINT_DIR_PROPERTY = "AlleleFootprintDriver.checkpointDir";
+
+    /**
+     * Name of the system property that specifies the snapshot
+     * directory: when set, the parsed peptide pair table is stored in
+     * the directory as a binary snapshot, and later runs on the same
+     * (unchanged) peptide pair file map the snapshot instead of
+     * parsing the file again.
+     */
+    public static final String SNAPSHOT_DIR_PROPERTY = "AlleleFootprintDriver.snapshotDir";
+
+    /**
+     * Name of the system property that restricts the run to a subset
+     * of the tumor barcodes in the peptide pair file, given as a
+     * comma-separated list; barcodes that do not appear in the file
+     * are ignored.  Not available with streaming input.  In incremental
+     * mode, the existing records for all other barcodes are kept.
+     */
+    public static final String BARCODES_PROPERTY = "AlleleFootprintDriver.barcodes";
+
+    /**
+     * Name of the system property that specifies the number of shards
+     * (independent driver processes) that compute the cohort; the
+     * default is one.  When there is more than one shard, the tumor
+     * barcodes are partitioned by {@link FootprintShards} (weighted by
+     * their peptide pair counts), and each output file name is given
+     * the suffix {@code .shardI-of-N}.  Shards that write per-pair
+     * files also write a manifest of their barcodes, and the partial
+     * files are combined by {@link FootprintShards#merge}.  Not
+     * available with streaming input.
+     */
+    public static final String SHARD_COUNT_PROPERTY = "AlleleFootprintDriver.shardCount";
+
+    /**
+     * Name of the system property that specifies the (zero-based)
+     * index of the shard computed by this process.
+     */
+    public static final String SHARD_INDEX_PROPERTY = "AlleleFootprintDriver.shardIndex";
+
+    /**
+     * Name of the system property that enables incremental mode: when
+     * {@code true}, the inputs for each tumor barcode are fingerprinted
+     * by {@link IncrementalFootprints} and compared with the manifest
+     * written beside the existing footprint file by the previous
+     * incremental run.  Only new barcodes and barcodes whose peptide
+     * pairs, genotype, footprint types, predictor version or binding
+     * screen settings have changed are computed; the records for
+     * unchanged barcodes are copied from the existing file, and
+     * barcodes that are no longer in the cohort are dropped.  When the
+     * run is restricted to a barcode subset, the records for barcodes
+     * outside the subset are carried forward unchanged.  Without
+     * a manifest, or if the footprint file has been rewritten since
+     * the manifest, every barcode is computed.  Requires the per-pair footprint file and is not
+     * available with streaming input or a checkpoint directory.
+     */
+    public static final String INCREMENTAL_PROPERTY = "AlleleFootprintDriver.incremental";
+
+    /**
+     * Name of the system property that declares the version of the
+     * binding predictors (an arbitrary string, empty by default).  The
+     * version is part of the incremental and checkpoint fingerprints,
+     * so changing it forces every barcode to be computed again, and it
+     * is the default namespace of the binding cache, so cached
+     * predictions from other versions are not reused.
+     */
+    public static final String PREDICTOR_VERSION_PROPERTY = "AlleleFootprintDriver.predictorVersion";
+
+    /**
+     * Name of the system property that specifies the run report file:
+     * when set, counters and latency histograms are collected for the
+     * driver stages, binding predictions and record assembly, and are
+     * written to the file (as JSON) at the end of the run.
+     */
+    public static final String METRICS_FILE_PROPERTY = "AlleleFootprintDriver.metricsFile";
+
+    /**
+     * Name of the system property that specifies the interval (in
+     * seconds) between progress messages; progress is not reported
+     * unless the interval is positive.
+     */
+    public static final String PROGRESS_INTERVAL_PROPERTY = "AlleleFootprintDriver.progressInterval";
+
+    /**
+     * Default value for the progress interval property.
+     */
+    public static final long DEFAULT_PROGRESS_INTERVAL = 60L;
+
+    private static final String PROGRESS_LABEL = "barcodes";
+
+    /**
+     * Name of the system property that enables cohort-level binding
+     * plans: when {@code true}, the driver collects the unique
+     * peptides presented to each allele across all tumor barcodes and
+     * calls the binding predictor once per allele before computing
+     * any footprints.
+     */
+    public static final String COHORT_PLAN_PROPERTY = "AlleleFootprintDriver.cohortPlan";
+
     /**
      * Name of the system property that specifies the full path name
      * of the output footprint file.
@@ -77,7 +492,9 @@ public final class AlleleFootprintDriver extends JamApp {
 
     /**
      * Name of the system property that specifies the allele footprint
-     * calculation type to employ.
+     * calculation types to employ, as a comma-separated list (e.g.,
+     * {@code LOG_AFFINITY, LOG_STABILITY}).  All types are computed
+     * in the same pass over the cohort and written to the same file.
      */
     public static final String FOOTPRINT_TYPE_PROPERTY = "AlleleFootprintDriver.footprintType";
 
@@ -87,12 +504,28 @@ public final class AlleleFootprintDriver extends JamApp {
      */
     public static final String PATIENT_GENOTYPE_FILE_PROPERTY = "AlleleFootprintDriver.patientGenotypeFile";
 
+    /**
+     * Name of the system property that specifies the format of the
+     * output footprint file ({@code TSV}, {@code TSV_GZIP} or
+     * {@code BINARY}, with {@code TSV} the default).
+     */
+    public static final String OUTPUT_FORMAT_PROPERTY = "AlleleFootprintDriver.outputFormat";
+
     /**
      * Name of the system property that specifies the full path name
      * of the input file containing neo/self-peptide pairs.
      */
     public static final String PEPTIDE_PAIR_FILE_PROPERTY = "AlleleFootprintDriver.peptidePairFile";
 
+    /**
+     * Name of the system property that enables streaming output: when
+     * {@code true}, the footprint records for each tumor barcode are
+     * written as soon as they (and the records for all preceding
+     * barcodes) are complete, so that the full cohort is never held
+     * in memory.
+     */
+    public static final String STREAM_OUTPUT_PROPERTY = "AlleleFootprintDriver.streamOutput";
+
     /**
      * Name of the system property that specifies the full path name
      * of the input file mapping tumor barcodes to patient idenifiers.
@@ -112,56 +545,683 @@ public final class AlleleFootprintDriver extends JamApp {
         driver.run();
     }
 
+    /**
+     * Creates a driver from the current system properties that loads
+     * its input tables through a shared table cache.  (The properties
+     * are resolved here, so they may be changed as soon as this method
+     * returns.)
+     *
+     * @param cohortTables the shared table cache.
+     *
+     * @return a runnable driver.
+     *
+     * @throws RuntimeException if any required properties are missing
+     * or invalid.
+     */
+    static Runnable create(CohortTables cohortTables) {
+        return new AlleleFootprintDriver(cohortTables)::run;
+    }
+
     private void run() {
-        loadTables();
-        sortBarcodes();
-        processBarcodes();
-        writeFootprints();
+        try {
+            if (streamPairs) {
+                stage("loadGenotypes", this::loadGenotypes);
+                streamPairFile();
+            }
+            else {
+                stage("loadTables", this::loadTables);
+                sortBarcodes();
+                selectShard();
+
+                if (incremental)
+                    processIncremental();
+                else
+                    processCohort();
+            }
+        }
+        finally {
+            progress.close();
+        }
+
+        writeManifest();
+
+        logScreen();
+        stage("writeSummary", this::writeSummary);
+        writeMetrics();
 
         JamLogger.info("DONE!");
     }
 
+    private void selectShard() {
+        cohortSize = tumorBarcodes.size();
+
+        if (shardCount < 2)
+            return;
+
+        tumorBarcodes = FootprintShards.select(tumorBarcodes,
+                                               barcode -> peptidePairTable.lookup(barcode).size(),
+                                               shardIndex,
+                                               shardCount);
+
+        JamLogger.info("Computing shard [%d] of [%d] with [%d] of [%d] barcodes...",
+                       shardIndex, shardCount, tumorBarcodes.size(), cohortSize);
+    }
+
+    private void writeManifest() {
+        if (shardCount < 2)
+            return;
+
+        FootprintShards.writeManifest(writePairFile ? footprintFile : summaryFile,
+                                      shardIndex,
+                                      shardCount,
+                                      cohortSize,
+                                      tumorBarcodes,
+                                      failedBarcodes);
+    }
+
+    private void stage(String name, Runnable stage) {
+        metrics.timer("stage", name).time(stage);
+    }
+
+    private void startProgress(long barcodeCount) {
+        progress.close();
+        progress = ProgressMeter.start(PROGRESS_LABEL, barcodeCount, progressInterval);
+    }
+
+    private void writeMetrics() {
+        if (metricsFile == null)
+            return;
+
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+        attributes.put("driver", getClass().getName());
+        attributes.put("peptidePairFile", peptidePairFile);
+        attributes.put("footprintTypes", footprintTypes.toString());
+        attributes.put("threadCount", threadCount);
+        attributes.put("barcodeCount", tumorBarcodes != null ? tumorBarcodes.size() : 0);
+        attributes.put("barcodesCompleted", progress.completed());
+
+        JamLogger.info("Writing [%s]...", metricsFile);
+        metrics.writeReport(metricsFile, attributes);
+    }
+
+    private void processCohort() {
+        if (checkpointDir != null) {
+            checkpointFootprints();
+        }
+        else if (!writePairFile) {
+            planBinding(tumorBarcodes);
+            startProgress(tumorBarcodes.size());
+            stage("compute", this::summarizeFootprints);
+        }
+        else if (streamOutput) {
+            planBinding(tumorBarcodes);
+            startProgress(tumorBarcodes.size());
+            stage("compute", this::streamFootprints);
+        }
+        else if (columnarTable) {
+            planBinding(tumorBarcodes);
+            startProgress(tumorBarcodes.size());
+            processTable();
+            stage("write", this::writeTable);
+        }
+        else {
+            planBinding(tumorBarcodes);
+            startProgress(tumorBarcodes.size());
+            processBarcodes();
+            stage("write", this::writeFootprints);
+        }
+    }
+
     private void loadTables() {
-        peptidePairTable = PeptidePairTable.load(peptidePairFile);
-        tumorGenotypeTable = TumorGenotypeTable.load(tumorPatientFile, patientGenotypeFile);
+        if (cohortTables != null)
+            peptidePairTable = cohortTables.peptidePairs(peptidePairFile, snapshotDir);
+        else if (snapshotDir != null)
+            peptidePairTable = PeptidePairSnapshot.load(peptidePairFile, snapshotDir);
+        else
+            peptidePairTable = PeptidePairTable.load(peptidePairFile);
+
+        loadGenotypes();
+    }
+
+    private void loadGenotypes() {
+        if (cohortTables != null)
+            tumorGenotypeTable = cohortTables.genotypes(tumorPatientFile, patientGenotypeFile);
+        else
+            tumorGenotypeTable = TumorGenotypeTable.load(tumorPatientFile, patientGenotypeFile);
     }
 
     private void sortBarcodes() {
         tumorBarcodes = new ArrayList<TumorBarcode>(peptidePairTable.viewBarcodes());
+
+        if (barcodeSubset != null)
+            tumorBarcodes.retainAll(barcodeSubset);
+
         Collections.sort(tumorBarcodes);
     }
 
+    private void planBinding(List<TumorBarcode> barcodes) {
+        if (!cohortPlan)
+            return;
+
+        JamLogger.info("Planning cohort binding predictions...");
+        AlleleBindingPlan plan = AlleleBindingPlan.create(barcodes, peptidePairTable, tumorGenotypeTable);
+
+        bindingMaps = metrics.timer("stage", "planBinding").time(() -> plan.execute(footprintIndexes));
+    }
+
+    private FootprintScheduler<List<AlleleFootprintRecord>> createScheduler() {
+        return new FootprintScheduler<List<AlleleFootprintRecord>>(threadCount,
+                                                                   chunkSize,
+                                                                   this::processChunk,
+                                                                   ListUtil::cat,
+                                                                   peptidePairTable,
+                                                                   tumorGenotypeTable,
+                                                                   footprintIndexes);
+    }
+
+    private FootprintScheduler<FootprintTable> createTableScheduler() {
+        return new FootprintScheduler<FootprintTable>(threadCount,
+                                                      chunkSize,
+                                                      this::processTableChunk,
+                                                      FootprintTable::concat,
+                                                      peptidePairTable,
+                                                      tumorGenotypeTable,
+                                                      footprintIndexes);
+    }
+
     private void processBarcodes() {
+        Map<TumorBarcode, List<AlleleFootprintRecord>> barcodeRecords = computeSorted(tumorBarcodes);
+
         List<List<AlleleFootprintRecord>> barcodeLists =
-            StreamUtil.applyParallel(tumorBarcodes, barcode -> processBarcode(barcode));
+            new ArrayList<List<AlleleFootprintRecord>>(barcodeRecords.size());
 
-        JamLogger.info("Concatenating footprint records...");
-        footprintRecords = ListUtil.cat(barcodeLists);
+        for (TumorBarcode barcode : tumorBarcodes)
+            if (barcodeRecords.containsKey(barcode))
+                barcodeLists.add(barcodeRecords.get(barcode));
 
-        JamLogger.info("Sorting footprint records...");
-        footprintRecords.sort(AlleleFootprintRecord.COMPARATOR);
+        //
+        // The records for each barcode were sorted on the worker
+        // thread that completed it, so only a merge remains...
+        //
+        JamLogger.info("Merging footprint records...");
+        footprintRecords = metrics.timer("stage", "merge").time(() -> FootprintSort.merge(barcodeLists));
     }
 
-    private List<AlleleFootprintRecord> processBarcode(TumorBarcode barcode) {
+    private Map<TumorBarcode, List<AlleleFootprintRecord>> computeSorted(List<TumorBarcode> barcodes) {
+        Map<TumorBarcode, List<AlleleFootprintRecord>> barcodeRecords =
+            new ConcurrentHashMap<TumorBarcode, List<AlleleFootprintRecord>>();
+
+        stage("compute",
+              () -> createScheduler().run(barcodes,
+                                          (barcode, records) -> {
+                                              summarize(barcode, records);
+                                              FootprintSort.sort(records);
+                                              barcodeRecords.put(barcode, records);
+                                              progress.advance();
+                                          },
+                                          this::failBarcode));
+
+        return barcodeRecords;
+    }
+
+    private void processIncremental() {
+        if (!writePairFile)
+            throw new IllegalStateException(String.format("Incremental mode requires the per-pair footprint file; unset [%s].",
+                                                          WRITE_PAIR_FILE_PROPERTY));
+
+        if (checkpointDir != null)
+            throw new IllegalStateException(String.format("Incremental mode is not available with checkpoints; unset [%s].",
+                                                          CHECKPOINT_DIR_PROPERTY));
+
+        Map<TumorBarcode, String> fingerprints = metrics.timer("stage", "fingerprint").time(this::computeFingerprints);
+        Map<TumorBarcode, String> previous = IncrementalFootprints.readManifest(footprintFile);
+
+        //
+        // A run restricted to a barcode subset updates only that subset;
+        // the records and manifest entries for all other barcodes are
+        // carried forward from the previous run...
+        //
+        SortedMap<TumorBarcode, String> carried =
+            previous != null && barcodeSubset != null
+            ? IncrementalFootprints.carried(previous, barcodeSubset)
+            : new TreeMap<TumorBarcode, String>();
+
+        List<TumorBarcode> changed;
+        Set<TumorBarcode> retained = new HashSet<TumorBarcode>(tumorBarcodes);
+
+        if (previous != null) {
+            changed = IncrementalFootprints.changed(fingerprints, previous);
+            retained.removeAll(changed);
+            retained.addAll(carried.keySet());
+
+            int removed = 0;
+
+            for (TumorBarcode barcode : previous.keySet())
+                if (!fingerprints.containsKey(barcode) && !carried.containsKey(barcode))
+                    ++removed;
+
+            JamLogger.info("Computing [%d] new or changed barcodes, retaining [%d] (including [%d] outside the subset) and dropping [%d]...",
+                           changed.size(), retained.size(), carried.size(), removed);
+        }
+        else {
+            JamLogger.info("No valid fingerprint manifest for [%s]; computing all barcodes...", footprintFile);
+
+            if (barcodeSubset != null)
+                JamLogger.warn("Without a manifest, [%s] will contain only the barcode subset.", footprintFile);
+
+            changed = tumorBarcodes;
+            retained.clear();
+        }
+
+        metrics.counter("barcodes.retained").add(retained.size());
+
+        planBinding(changed);
+        startProgress(changed.size());
+
+        SortedMap<TumorBarcode, List<AlleleFootprintRecord>> computed =
+            new TreeMap<TumorBarcode, List<AlleleFootprintRecord>>(computeSorted(changed));
+
+        //
+        // The new file is written beside the existing file and renamed
+        // over it before the manifest is replaced, so an interrupted
+        // run never leaves a manifest that vouches for missing records...
+        //
+        String tempFile = footprintFile + ".tmp";
+
+        stage("splice",
+              () -> IncrementalFootprints.splice(previous != null ? footprintFile : null,
+                                                 retained,
+                                                 computed,
+                                                 tempFile,
+                                                 outputFormat,
+                                                 summary != null ? this::summarize : null));
+
+        outputFormat.move(tempFile, footprintFile);
+
+        SortedMap<TumorBarcode, String> manifest = new TreeMap<TumorBarcode, String>(fingerprints);
+        manifest.keySet().removeAll(failedBarcodes);
+        manifest.putAll(carried);
+
+        IncrementalFootprints.writeManifest(footprintFile, manifest);
+    }
+
+    private Map<TumorBarcode, String> computeFingerprints() {
+        Map<TumorBarcode, String> fingerprints = new ConcurrentHashMap<TumorBarcode, String>();
+
+        tumorBarcodes.parallelStream().forEach(barcode -> fingerprints.put(barcode, computeFingerprint(barcode)));
+        return fingerprints;
+    }
+
+    private String computeFingerprint(TumorBarcode barcode) {
+        return computeFingerprint(barcode, peptidePairTable.lookup(barcode));
+    }
+
+    private String computeFingerprint(TumorBarcode barcode, Collection<PeptidePairRecord> pairs) {
+        //
+        // A barcode without a genotype fails to compute, so it never
+        // enters the manifest and is attempted again on every run...
+        //
+        Genotype genotype = tumorGenotypeTable.lookup(barcode);
+        Set<Allele> alleles = genotype != null ? genotype.viewUniqueAlleles() : Set.of();
+
+        return IncrementalFootprints.fingerprint(pairs, alleles, footprintTypes, predictorVersion, screenSettings);
+    }
+
+    private void processTable() {
+        Map<TumorBarcode, FootprintTable> barcodeTables =
+            new ConcurrentHashMap<TumorBarcode, FootprintTable>();
+
+        stage("compute",
+              () -> createTableScheduler().run(tumorBarcodes,
+                                               (barcode, table) -> {
+                                                   if (summary != null)
+                                                       summary.add(barcode, table.view());
+
+                                                   table.sort();
+                                                   barcodeTables.put(barcode, table);
+                                                   progress.advance();
+                                               },
+                                               this::failBarcode));
+
+        List<FootprintTable> tables = new ArrayList<FootprintTable>(barcodeTables.size());
+
+        for (TumorBarcode barcode : tumorBarcodes)
+            if (barcodeTables.containsKey(barcode))
+                tables.add(barcodeTables.remove(barcode));
+
+        JamLogger.info("Merging footprint tables...");
+        footprintTable = metrics.timer("stage", "merge").time(() -> FootprintTable.merge(tables));
+    }
+
+    private void streamFootprints() {
+        //
+        // The peptide pair comparator orders records by tumor barcode
+        // first, so sorting the records for each barcode locally and
+        // writing the barcodes in sorted order reproduces the global
+        // sort order.  Keeping twice as many barcodes in flight as
+        // worker threads allows fast barcodes to proceed while a slow
+        // barcode holds up the head of the window...
+        //
+        int windowSize = 2 * threadCount;
+
+        JamLogger.info("Streaming [%s]...", footprintFile);
+
+        try (FootprintWriter writer = FootprintWriter.open(footprintFile, outputFormat)) {
+            OrderedStream.apply(tumorBarcodes,
+                                barcode -> summarize(barcode, processSorted(barcode)),
+                                records -> writer.write(records),
+                                threadCount,
+                                windowSize);
+        }
+    }
+
+    private void checkpointFootprints() {
+        BarcodeCheckpoint checkpoint = BarcodeCheckpoint.open(checkpointDir);
+
+        Map<TumorBarcode, String> fingerprints = metrics.timer("stage", "fingerprint").time(this::computeFingerprints);
+        List<TumorBarcode> pending = checkpoint.pending(tumorBarcodes, fingerprints);
+
+        JamLogger.info("Found checkpoints for [%d] of [%d] barcodes in [%s]...",
+                       tumorBarcodes.size() - pending.size(), tumorBarcodes.size(), checkpointDir);
+
+        planBinding(pending);
+        startProgress(pending.size());
+
+        stage("compute",
+              () -> createScheduler().run(pending,
+                                          (barcode, records) -> checkpointBarcode(checkpoint, barcode, fingerprints.get(barcode), records),
+                                          (barcode, ex) -> failBarcode(checkpoint, barcode, ex)));
+
+        finishCheckpoints(checkpoint);
+    }
+
+    private void finishCheckpoints(BarcodeCheckpoint checkpoint) {
+        List<TumorBarcode> failed = checkpoint.failed(tumorBarcodes);
+
+        if (!failed.isEmpty())
+            JamLogger.warn("Computation failed for [%d] barcodes: %s", failed.size(), failed);
+
+        if (writePairFile) {
+            JamLogger.info("Merging checkpoints into [%s]...", footprintFile);
+            stage("merge", () -> checkpoint.merge(tumorBarcodes, footprintFile, outputFormat, summary != null ? this::summarize : null));
+        }
+        else {
+            JamLogger.info("Summarizing checkpoints...");
+            stage("merge", () -> checkpoint.scan(tumorBarcodes, this::summarize));
+        }
+    }
+
+    private void streamPairFile() {
+        if (shardCount > 1)
+            throw new IllegalStateException(String.format("Sharding is not available with streaming input; unset [%s].",
+                                                          SHARD_COUNT_PROPERTY));
+
+        if (barcodeSubset != null)
+            throw new IllegalStateException(String.format("Barcode subsets are not available with streaming input; unset [%s].",
+                                                          BARCODES_PROPERTY));
+
+        if (incremental)
+            throw new IllegalStateException(String.format("Incremental mode is not available with streaming input; unset [%s].",
+                                                          INCREMENTAL_PROPERTY));
+
+        if (cohortPlan)
+            JamLogger.warn("Cohort binding plans are not available with streaming input; ignoring [%s].", COHORT_PLAN_PROPERTY);
+
+        tumorBarcodes = Collections.synchronizedList(new ArrayList<TumorBarcode>());
+
+        try (PeptidePairStream pairStream = openPairStream()) {
+            if (checkpointDir != null)
+                streamCheckpoints(pairStream);
+            else if (!writePairFile)
+                streamSummary(pairStream);
+            else
+                streamPairFootprints(pairStream);
+        }
+    }
+
+    private PeptidePairStream openPairStream() {
+        //
+        // The barcode count is known in advance only when the pair
+        // file is indexed...
+        //
+        if (pairsGrouped) {
+            startProgress(0);
+            return PeptidePairStream.grouped(peptidePairFile);
+        }
+        else {
+            PeptidePairIndex index = PeptidePairIndex.load(peptidePairFile);
+            startProgress(index.listBarcodes().size());
+            return PeptidePairStream.indexed(peptidePairFile, index);
+        }
+    }
+
+    private List<AlleleFootprintRecord> processGroup(PeptidePairStream.Group group) {
+        TumorBarcode barcode = group.getBarcode();
+        tumorBarcodes.add(barcode);
+
         JamLogger.info("Processing [%s]...", barcode);
 
         try {
-            Genotype patientGenotype = tumorGenotypeTable.require(barcode);
-            Set<Allele> patientAlleles = patientGenotype.viewUniqueAlleles();
-            List<PeptidePairRecord> peptidePairRecords = peptidePairTable.lookup(barcode);
+            List<AlleleFootprintRecord> records = computeBarcode(barcode, group.getRecords());
+            FootprintSort.sort(records);
+            progress.advance();
+            return records;
+        }
+        catch (RuntimeException ex) {
+            failBarcode(barcode, ex);
+            return new ArrayList<AlleleFootprintRecord>();
+        }
+    }
 
-            return footprintIndex.compute(patientAlleles, peptidePairRecords);
+    private void streamSummary(PeptidePairStream pairStream) {
+        OrderedStream.apply(pairStream,
+                            group -> summarize(group.getBarcode(), processGroup(group)),
+                            records -> {},
+                            threadCount,
+                            2 * threadCount);
+    }
+
+    private void streamPairFootprints(PeptidePairStream pairStream) {
+        JamLogger.info("Streaming [%s]...", footprintFile);
+
+        try (FootprintWriter writer = FootprintWriter.open(footprintFile, outputFormat)) {
+            TumorBarcode[] previous = new TumorBarcode[1];
+
+            OrderedStream.apply(pairStream,
+                                group -> Map.entry(group.getBarcode(), summarize(group.getBarcode(), processGroup(group))),
+                                entry -> {
+                                    //
+                                    // The output is sorted only if the barcodes
+                                    // arrive in sorted order...
+                                    //
+                                    if (previous[0] != null && previous[0].compareTo(entry.getKey()) >= 0)
+                                        throw new IllegalStateException(String.format("Peptide pair file is not sorted by barcode at [%s]; "
+                                                                                      + "use [%s] or disable [%s].",
+                                                                                      entry.getKey(),
+                                                                                      CHECKPOINT_DIR_PROPERTY,
+                                                                                      WRITE_PAIR_FILE_PROPERTY));
+
+                                    previous[0] = entry.getKey();
+                                    writer.write(entry.getValue());
+                                },
+                                threadCount,
+                                2 * threadCount);
+        }
+    }
+
+    private void streamCheckpoints(PeptidePairStream pairStream) {
+        BarcodeCheckpoint checkpoint = BarcodeCheckpoint.open(checkpointDir);
+
+        OrderedStream.apply(pairStream,
+                            group -> checkpointGroup(checkpoint, group),
+                            barcode -> {},
+                            threadCount,
+                            2 * threadCount);
+
+        Collections.sort(tumorBarcodes);
+        finishCheckpoints(checkpoint);
+    }
+
+    private TumorBarcode checkpointGroup(BarcodeCheckpoint checkpoint, PeptidePairStream.Group group) {
+        TumorBarcode barcode = group.getBarcode();
+        tumorBarcodes.add(barcode);
+
+        String fingerprint = computeFingerprint(barcode, group.getRecords());
+
+        if (checkpoint.isComplete(barcode, fingerprint)) {
+            progress.advance();
+            return barcode;
+        }
+
+        JamLogger.info("Processing [%s]...", barcode);
+
+        try {
+            checkpointBarcode(checkpoint, barcode, fingerprint, computeBarcode(barcode, group.getRecords()));
+        }
+        catch (RuntimeException ex) {
+            failBarcode(checkpoint, barcode, ex);
+        }
+
+        return barcode;
+    }
+
+    private void checkpointBarcode(BarcodeCheckpoint checkpoint,
+                                   TumorBarcode barcode,
+                                   String fingerprint,
+                                   List<AlleleFootprintRecord> records) {
+        JamLogger.info("Completed [%s]...", barcode);
+        FootprintSort.sort(records);
+        checkpoint.complete(barcode, fingerprint, records);
+        progress.advance();
+    }
+
+    private void failBarcode(BarcodeCheckpoint checkpoint, TumorBarcode barcode, RuntimeException ex) {
+        failBarcode(barcode, ex);
+        checkpoint.fail(barcode, ex);
+    }
+
+    private void failBarcode(TumorBarcode barcode, RuntimeException ex) {
+        JamLogger.warn(ex);
+        failedBarcodes.add(barcode);
+        metrics.counter("barcodes.failed").increment();
+        progress.advance();
+    }
+
+    private void summarizeFootprints() {
+        //
+        // The records for each barcode are reduced and discarded as
+        // soon as the barcode completes, so only the summary rows are
+        // held in memory...
+        //
+        createScheduler().run(tumorBarcodes,
+                              (barcode, records) -> {
+                                  summarize(barcode, records);
+                                  progress.advance();
+                              },
+                              this::failBarcode);
+    }
+
+    private List<AlleleFootprintRecord> summarize(TumorBarcode barcode, List<AlleleFootprintRecord> records) {
+        if (summary != null)
+            summary.add(barcode, records);
+
+        return records;
+    }
+
+    private void logScreen() {
+        BindingScreen screen = BindingScreen.global();
+
+        if (screen != null)
+            screen.logCounts();
+    }
+
+    private void writeSummary() {
+        if (summary != null)
+            summary.write(summaryFile);
+    }
+
+    private List<AlleleFootprintRecord> processSorted(TumorBarcode barcode) {
+        List<AlleleFootprintRecord> records = processBarcode(barcode);
+        FootprintSort.sort(records);
+        return records;
+    }
+
+    private List<AlleleFootprintRecord> processBarcode(TumorBarcode barcode) {
+        JamLogger.info("Processing [%s]...", barcode);
+
+        try {
+            List<AlleleFootprintRecord> records = computeBarcode(barcode);
+            progress.advance();
+            return records;
         }
         catch (RuntimeException ex) {
-            JamLogger.warn(ex);
-            return List.of();
+            failBarcode(barcode, ex);
+            return new ArrayList<AlleleFootprintRecord>();
         }
     }
 
+    private List<AlleleFootprintRecord> computeBarcode(TumorBarcode barcode) {
+        return computeBarcode(barcode, peptidePairTable.lookup(barcode));
+    }
+
+    private List<AlleleFootprintRecord> computeBarcode(TumorBarcode barcode, List<PeptidePairRecord> peptidePairRecords) {
+        Genotype patientGenotype = tumorGenotypeTable.require(barcode);
+        Set<Allele> patientAlleles = patientGenotype.viewUniqueAlleles();
+
+        //
+        // Each footprint type uses a different prediction engine, so
+        // the types are computed concurrently...
+        //
+        List<List<AlleleFootprintRecord>> typeRecords =
+            StreamUtil.applyParallel(footprintIndexes,
+                                     footprintIndex -> processBarcode(footprintIndex, patientAlleles, peptidePairRecords));
+
+        return ListUtil.cat(typeRecords);
+    }
+
+    private List<AlleleFootprintRecord> processBarcode(AlleleFootprintIndex footprintIndex,
+                                                       Set<Allele> patientAlleles,
+                                                       List<PeptidePairRecord> peptidePairRecords) {
+        if (bindingMaps != null)
+            return footprintIndex.compute(patientAlleles, peptidePairRecords, bindingMaps.get(footprintIndex));
+        else
+            return footprintIndex.compute(patientAlleles, peptidePairRecords);
+    }
+
+    private List<AlleleFootprintRecord> processChunk(AlleleFootprintIndex footprintIndex,
+                                                     Allele patientAllele,
+                                                     List<PeptidePairRecord> peptidePairRecords) {
+        return processBarcode(footprintIndex, Set.of(patientAllele), peptidePairRecords);
+    }
+
+    private FootprintTable processTableChunk(AlleleFootprintIndex footprintIndex,
+                                             Allele patientAllele,
+                                             List<PeptidePairRecord> peptidePairRecords) {
+        FootprintTable table = FootprintTable.create(peptidePairRecords.size());
+
+        if (bindingMaps != null)
+            footprintIndex.compute(Set.of(patientAllele), peptidePairRecords, bindingMaps.get(footprintIndex), table);
+        else
+            footprintIndex.compute(patientAllele, peptidePairRecords, table);
+
+        return table;
+    }
+
     private void writeFootprints() {
         JamLogger.info("Writing [%s]...", footprintFile);
-        IOUtil.writeLines(footprintFile, false, AlleleFootprintRecord.header());
-        IOUtil.writeObjects(footprintFile, true, footprintRecords, record -> record.format());
+
+        try (FootprintWriter writer = FootprintWriter.open(footprintFile, outputFormat)) {
+            writer.write(footprintRecords);
+        }
+    }
+
+    private void writeTable() {
+        JamLogger.info("Writing [%s]...", footprintFile);
+
+        try (FootprintWriter writer = FootprintWriter.open(footprintFile, outputFormat)) {
+            footprintTable.write(writer);
+        }
     }
 
     private static void usage() {
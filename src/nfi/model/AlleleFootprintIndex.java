@@ -3,7 +3,11 @@ package nfi.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import jam.app.JamProperties;
 import jam.math.DoubleUtil;
@@ -20,6 +24,15 @@ import pepmhc.bind.BindRecordMap;
 import pepmhc.affy.net.NetMHCPanPredictor;
 import pepmhc.stab.net.NetStabPredictor;
 
+import nfi.bind.BindingBatcher;
+import nfi.bind.BindingCache;
+import nfi.bind.BindingStore;
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
+import nfi.bind.PredictorThrottle;
+import nfi.metrics.MetricsRegistry;
+import nfi.metrics.Timer;
+
 /**
  * Defines an interface to calculate the neo-peptide footprint index
  * for single HLA alleles.
@@ -27,12 +40,24 @@ import pepmhc.stab.net.NetStabPredictor;
 public abstract class AlleleFootprintIndex {
     private static AlleleFootprintIndex global;
 
+    private BindingBatcher batcher = null;
+    private boolean batcherResolved = false;
+
     /**
      * Name of the system property that defines the global allele
      * footprint index type.
      */
     public static final String TYPE_PROPERTY = "nfi.model.alleleFootprintType";
 
+    /**
+     * Name of the system property that enables canonicalization of
+     * duplicate peptide pairs: when {@code true} (the default), the
+     * binding quantities and footprint index for each distinct
+     * neo/self peptide pair are computed once per allele and shared
+     * by all pair records with the same peptides.
+     */
+    public static final String DEDUP_PAIRS_PROPERTY = "nfi.model.dedupPairs";
+
     /**
      * Returns the log-affinity footprint index.
      */
@@ -78,10 +103,18 @@ public abstract class AlleleFootprintIndex {
      * @param pairRecord the neo/self peptide pair of interest.
      *
      * @return the footprint index record for the given allele and
-     * neo/self peptide pair.
+     * neo/self peptide pair; if the pair is pruned by an affinity
+     * screen, the record has {@code NaN} binding quantities and
+     * footprint index (whether or not the screen omits pruned pairs
+     * from collections).
      */
     public AlleleFootprintRecord compute(Allele allele, PeptidePairRecord pairRecord) {
-        return compute(allele, List.of(pairRecord)).get(0);
+        List<AlleleFootprintRecord> footprintRecords = compute(allele, List.of(pairRecord));
+
+        if (footprintRecords.isEmpty())
+            return prunedRecord(allele, pairRecord);
+        else
+            return footprintRecords.get(0);
     }
 
     /**
@@ -98,41 +131,389 @@ public abstract class AlleleFootprintIndex {
     public List<AlleleFootprintRecord> compute(Allele allele, Collection<PeptidePairRecord> pairRecords) {
         //
         // It is more efficient to compute all binding records in a
-        // single call to the underlying engine...
+        // single call to the underlying engine (and to skip the pairs
+        // pruned by the affinity screen, if one is active)...
         //
-        BindRecordMap bindingMap = mapBinding(allele, pairRecords);
+        BindingScreen screen = getScreen();
+        boolean[] passed = screen(screen, allele, pairRecords);
+        PeptideBindingMap bindingMap = mapBinding(allele, screenedPeptides(pairRecords, passed));
+        return compute(allele, pairRecords, screen, passed, bindingMap);
+    }
+
+    /**
+     * Computes neo-peptide footprint indexes for a single HLA allele
+     * and a collection of neo/self peptide pairs using binding records
+     * that have already been predicted.
+     *
+     * @param allele the HLA allele of interest
+     *
+     * @param pairRecords the neo/self peptide pairs of interest.
+     *
+     * @param bindingMap binding records for the given allele and
+     * every neo-peptide and self-peptide in the peptide pairs.
+     *
+     * @return a list containing the footprint index records for the
+     * given allele and all neo/self peptide pairs.
+     *
+     * @throws RuntimeException unless the binding map contains a
+     * record for every peptide (in a pair that passes the affinity
+     * screen, if one is active).
+     */
+    public List<AlleleFootprintRecord> compute(Allele allele,
+                                               Collection<PeptidePairRecord> pairRecords,
+                                               PeptideBindingMap bindingMap) {
+        return compute(allele, pairRecords, bindingMap, BindingScreen.global());
+    }
 
+    /**
+     * Computes neo-peptide footprint indexes for a single HLA allele
+     * and a collection of neo/self peptide pairs using binding records
+     * that have already been predicted and a specific affinity screen
+     * (in place of the global screen).
+     *
+     * @param allele the HLA allele of interest
+     *
+     * @param pairRecords the neo/self peptide pairs of interest.
+     *
+     * @param bindingMap binding records for the given allele and
+     * every neo-peptide and self-peptide in the pairs that pass the
+     * screen.
+     *
+     * @param screen the affinity screen ({@code null} for none); it is
+     * ignored if it does not apply to this footprint index.
+     *
+     * @return a list containing the footprint index records for the
+     * given allele and all neo/self peptide pairs.
+     *
+     * @throws RuntimeException unless the binding map contains a
+     * record for every peptide in a pair that passes the screen.
+     */
+    public List<AlleleFootprintRecord> compute(Allele allele,
+                                               Collection<PeptidePairRecord> pairRecords,
+                                               PeptideBindingMap bindingMap,
+                                               BindingScreen screen) {
+        if (screen != null && !screen.appliesTo(this))
+            screen = null;
+
+        return compute(allele, pairRecords, screen, screen(screen, allele, pairRecords), bindingMap);
+    }
+
+    private List<AlleleFootprintRecord> compute(Allele allele,
+                                                Collection<PeptidePairRecord> pairRecords,
+                                                BindingScreen screen,
+                                                boolean[] passed,
+                                                PeptideBindingMap bindingMap) {
         List<AlleleFootprintRecord> footprintRecords =
             new ArrayList<AlleleFootprintRecord>(pairRecords.size());
 
-        for (PeptidePairRecord pairRecord : pairRecords)
-            footprintRecords.add(compute(allele, pairRecord, bindingMap));
+        int index = 0;
+        boolean emitPruned = passed != null && screen.isEmitPruned();
+        AlleleFootprintType footprintType = getFootprintType();
+
+        Timer timer = MetricsRegistry.global().timer("assemble", footprintType);
+        long start = timer.start();
+
+        PairBatch batch = gather(pairRecords, passed, bindingMap);
+
+        for (PeptidePairRecord pairRecord : pairRecords) {
+            int slot = batch.slots[index];
+
+            if (slot >= 0)
+                footprintRecords.add(AlleleFootprintRecord.create(pairRecord,
+                                                                  allele,
+                                                                  footprintType,
+                                                                  batch.neoBindings[slot],
+                                                                  batch.selfBindings[slot],
+                                                                  batch.footprintIndexes[slot]));
+            else if (emitPruned)
+                footprintRecords.add(prunedRecord(allele, pairRecord));
+
+            ++index;
+        }
+
+        timer.stop(start);
+        MetricsRegistry.global().counter("records", footprintType).add(footprintRecords.size());
 
         return footprintRecords;
     }
 
-    @SuppressWarnings("unchecked")
-    private BindRecordMap mapBinding(Allele allele, Collection<PeptidePairRecord> pairRecords) {
-        return getBindPredictor().map(allele, PeptidePairRecord.peptides(pairRecords));
+    /**
+     * Computes neo-peptide footprint indexes for a single HLA allele
+     * and a collection of neo/self peptide pairs and appends them to
+     * a footprint table.
+     *
+     * @param allele the HLA allele of interest
+     *
+     * @param pairRecords the neo/self peptide pairs of interest.
+     *
+     * @param table the table to receive the footprint rows.
+     */
+    public void compute(Allele allele, Collection<PeptidePairRecord> pairRecords, FootprintTable table) {
+        BindingScreen screen = getScreen();
+        boolean[] passed = screen(screen, allele, pairRecords);
+        PeptideBindingMap bindingMap = mapBinding(allele, screenedPeptides(pairRecords, passed));
+        compute(allele, pairRecords, screen, passed, bindingMap, table);
     }
 
-    private AlleleFootprintRecord compute(Allele patientAllele, PeptidePairRecord pairRecord, BindRecordMap bindingMap) {
+    /**
+     * Computes neo-peptide footprint indexes for a single HLA allele
+     * and a collection of neo/self peptide pairs using binding records
+     * that have already been predicted, and appends them to a
+     * footprint table without creating any record objects.
+     *
+     * @param allele the HLA allele of interest
+     *
+     * @param pairRecords the neo/self peptide pairs of interest.
+     *
+     * @param bindingMap binding records for the given allele and
+     * every neo-peptide and self-peptide in the peptide pairs.
+     *
+     * @param table the table to receive the footprint rows.
+     *
+     * @throws RuntimeException unless the binding map contains a
+     * record for every peptide (in a pair that passes the affinity
+     * screen, if one is active).
+     */
+    public void compute(Allele allele,
+                        Collection<PeptidePairRecord> pairRecords,
+                        PeptideBindingMap bindingMap,
+                        FootprintTable table) {
+        BindingScreen screen = getScreen();
+        compute(allele, pairRecords, screen, screen(screen, allele, pairRecords), bindingMap, table);
+    }
+
+    private void compute(Allele allele,
+                         Collection<PeptidePairRecord> pairRecords,
+                         BindingScreen screen,
+                         boolean[] passed,
+                         PeptideBindingMap bindingMap,
+                         FootprintTable table) {
+        int index = 0;
+        int rowCount = table.size();
+        boolean emitPruned = passed != null && screen.isEmitPruned();
         AlleleFootprintType footprintType = getFootprintType();
 
-        Peptide neoPeptide = pairRecord.getNeoPeptide();
-        Peptide selfPeptide = pairRecord.getSelfPeptide();
+        Timer timer = MetricsRegistry.global().timer("assemble", footprintType);
+        long start = timer.start();
+
+        PairBatch batch = gather(pairRecords, passed, bindingMap);
+
+        for (PeptidePairRecord pairRecord : pairRecords) {
+            int slot = batch.slots[index];
+
+            if (slot >= 0) {
+                table.append(pairRecord,
+                             allele,
+                             footprintType,
+                             batch.neoBindings[slot],
+                             batch.selfBindings[slot],
+                             batch.footprintIndexes[slot]);
+            }
+            else if (emitPruned) {
+                table.append(pairRecord,
+                             allele,
+                             footprintType,
+                             BindingScreen.PRUNED_BINDING,
+                             BindingScreen.PRUNED_BINDING,
+                             Double.NaN);
+            }
+
+            ++index;
+        }
+
+        timer.stop(start);
+        MetricsRegistry.global().counter("records", footprintType).add(table.size() - rowCount);
+    }
 
-        BindRecord neoBindRecord = bindingMap.require(neoPeptide);
-        BindRecord selfBindRecord = bindingMap.require(selfPeptide);
+    /**
+     * Returns the affinity screen that applies to this footprint
+     * index.
+     *
+     * @return the active affinity screen, or {@code null} if no screen
+     * is configured or this footprint index is computed with the
+     * screening predictor.
+     */
+    public BindingScreen getScreen() {
+        BindingScreen screen = BindingScreen.global();
 
-        double footprintIndex = compute(neoBindRecord, selfBindRecord);
+        if (screen != null && screen.appliesTo(this))
+            return screen;
+        else
+            return null;
+    }
 
+    private AlleleFootprintRecord prunedRecord(Allele allele, PeptidePairRecord pairRecord) {
         return AlleleFootprintRecord.create(pairRecord,
-                                            patientAllele,
-                                            footprintType,
-                                            neoBindRecord,
-                                            selfBindRecord,
-                                            footprintIndex);
+                                            allele,
+                                            getFootprintType(),
+                                            BindingScreen.PRUNED_BINDING,
+                                            BindingScreen.PRUNED_BINDING,
+                                            Double.NaN);
+    }
+
+    private static boolean[] screen(BindingScreen screen, Allele allele, Collection<PeptidePairRecord> pairRecords) {
+        if (screen != null)
+            return screen.screen(allele, pairRecords);
+        else
+            return null;
+    }
+
+    private static Set<Peptide> screenedPeptides(Collection<PeptidePairRecord> pairRecords, boolean[] passed) {
+        if (passed != null)
+            return BindingScreen.passedPeptides(pairRecords, passed);
+        else
+            return PeptidePairRecord.peptides(pairRecords);
+    }
+
+    /**
+     * Predicts the binding of a collection of peptides to a single
+     * HLA allele.  Peptides found in the global binding cache (if one
+     * is configured) are not predicted again; all other peptides are
+     * predicted in one call to the underlying prediction engine and
+     * then written back to the cache.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @param peptides the peptides of interest.
+     *
+     * @return the binding quantities for the given allele and
+     * peptides.
+     */
+    public PeptideBindingMap mapBinding(Allele allele, Collection<? extends Peptide> peptides) {
+        BindingCache cache = BindingCache.global();
+
+        if (cache == null)
+            return requestBinding(allele, peptides);
+
+        BindingStore store = cache.store(getBindPredictor(), allele);
+        PeptideBindingMap bindingMap = PeptideBindingMap.create(peptides.size());
+        Set<Peptide> missing = new HashSet<Peptide>();
+
+        for (Peptide peptide : peptides) {
+            PeptideBinding binding = store.lookup(peptide);
+
+            if (binding != null)
+                bindingMap.put(peptide, binding);
+            else
+                missing.add(peptide);
+        }
+
+        MetricsRegistry metrics = MetricsRegistry.global();
+
+        metrics.counter("cache.hits", getFootprintType()).add(peptides.size() - missing.size());
+        metrics.counter("cache.misses", getFootprintType()).add(missing.size());
+
+        if (!missing.isEmpty()) {
+            PeptideBindingMap predicted = requestBinding(allele, missing);
+
+            store.append(predicted);
+            bindingMap.putAll(predicted);
+        }
+
+        return bindingMap;
+    }
+
+    private PeptideBindingMap requestBinding(Allele allele, Collection<? extends Peptide> peptides) {
+        //
+        // Small requests from concurrent callers are coalesced into
+        // larger predictor calls when batching is enabled...
+        //
+        BindingBatcher batcher = getBatcher();
+
+        if (batcher != null)
+            return batcher.predict(allele, peptides);
+        else
+            return predictBinding(allele, peptides);
+    }
+
+    private synchronized BindingBatcher getBatcher() {
+        if (!batcherResolved) {
+            batcher = BindingBatcher.resolve(this::predictBinding);
+            batcherResolved = true;
+        }
+
+        return batcher;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PeptideBindingMap predictBinding(Allele allele, Collection<? extends Peptide> peptides) {
+        BindRecordMap recordMap =
+            PredictorThrottle.global().execute(() -> timePrediction(allele, peptides));
+
+        return PeptideBindingMap.of(recordMap, peptides);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BindRecordMap timePrediction(Allele allele, Collection<? extends Peptide> peptides) {
+        //
+        // Latency is recorded for each allele, excluding any time spent
+        // waiting for a predictor slot...
+        //
+        MetricsRegistry metrics = MetricsRegistry.global();
+        AlleleFootprintType footprintType = getFootprintType();
+
+        Timer typeTimer = metrics.timer("predict", footprintType);
+        Timer alleleTimer = metrics.timer("predict." + footprintType, allele);
+
+        long start = typeTimer.start();
+        BindRecordMap recordMap = getBindPredictor().map(allele, peptides);
+
+        typeTimer.stop(start);
+        alleleTimer.stop(start);
+
+        metrics.counter("predict.peptides", footprintType).add(peptides.size());
+        return recordMap;
+    }
+
+    private PairBatch gather(Collection<PeptidePairRecord> pairRecords, boolean[] passed, PeptideBindingMap bindingMap) {
+        int index = 0;
+        int pairCount = pairRecords.size();
+
+        PairBatch batch = new PairBatch(pairCount);
+        Map<PairKey, Integer> slotMap = null;
+
+        //
+        // A single record cannot have duplicates...
+        //
+        if (pairCount > 1 && JamProperties.getOptionalBoolean(DEDUP_PAIRS_PROPERTY, true))
+            slotMap = new HashMap<PairKey, Integer>(2 * pairCount);
+
+        for (PeptidePairRecord pairRecord : pairRecords) {
+            if (passed != null && !passed[index]) {
+                batch.slots[index++] = -1;
+                continue;
+            }
+
+            Peptide neoPeptide = pairRecord.getNeoPeptide();
+            Peptide selfPeptide = pairRecord.getSelfPeptide();
+
+            if (slotMap != null) {
+                PairKey pairKey = new PairKey(neoPeptide, selfPeptide);
+                Integer slot = slotMap.putIfAbsent(pairKey, batch.slotCount);
+
+                if (slot != null) {
+                    batch.slots[index++] = slot;
+                    continue;
+                }
+            }
+
+            batch.neoBindings[batch.slotCount] = bindingMap.require(neoPeptide);
+            batch.selfBindings[batch.slotCount] = bindingMap.require(selfPeptide);
+            batch.slots[index++] = batch.slotCount++;
+        }
+
+        double[] neoQty = new double[batch.slotCount];
+        double[] selfQty = new double[batch.slotCount];
+
+        for (int slot = 0; slot < batch.slotCount; ++slot) {
+            neoQty[slot] = quantity(batch.neoBindings[slot]);
+            selfQty[slot] = quantity(batch.selfBindings[slot]);
+        }
+
+        batch.footprintIndexes = new double[batch.slotCount];
+        compute(neoQty, selfQty, batch.footprintIndexes);
+
+        return batch;
     }
 
     /**
@@ -158,6 +539,72 @@ public abstract class AlleleFootprintIndex {
         return footprintRecords;
     }
 
+    /**
+     * Computes neo-peptide footprint indexes for collections of HLA
+     * alleles and neo/self peptide pairs using binding records that
+     * have already been predicted (for example, by an allele binding
+     * plan covering an entire cohort).
+     *
+     * @param alleles the HLA alleles of interest.
+     *
+     * @param pairRecords the neo/self peptide pairs of interest.
+     *
+     * @param bindingMaps binding records indexed by HLA allele.
+     *
+     * @return a list containing the footprint index records for all
+     * allele-pair combinations.
+     *
+     * @throws RuntimeException unless the binding maps contain a
+     * record for every allele and peptide.
+     */
+    public List<AlleleFootprintRecord> compute(Collection<Allele> alleles,
+                                               Collection<PeptidePairRecord> pairRecords,
+                                               Map<Allele, PeptideBindingMap> bindingMaps) {
+        int recordCount = alleles.size() * pairRecords.size();
+
+        List<AlleleFootprintRecord> footprintRecords =
+            new ArrayList<AlleleFootprintRecord>(recordCount);
+
+        for (Allele allele : alleles)
+            footprintRecords.addAll(compute(allele, pairRecords, requireBindingMap(bindingMaps, allele)));
+
+        return footprintRecords;
+    }
+
+    /**
+     * Computes neo-peptide footprint indexes for collections of HLA
+     * alleles and neo/self peptide pairs using binding records that
+     * have already been predicted, and appends them to a footprint
+     * table.
+     *
+     * @param alleles the HLA alleles of interest.
+     *
+     * @param pairRecords the neo/self peptide pairs of interest.
+     *
+     * @param bindingMaps binding records indexed by HLA allele.
+     *
+     * @param table the table to receive the footprint rows.
+     *
+     * @throws RuntimeException unless the binding maps contain a
+     * record for every allele and peptide.
+     */
+    public void compute(Collection<Allele> alleles,
+                        Collection<PeptidePairRecord> pairRecords,
+                        Map<Allele, PeptideBindingMap> bindingMaps,
+                        FootprintTable table) {
+        for (Allele allele : alleles)
+            compute(allele, pairRecords, requireBindingMap(bindingMaps, allele), table);
+    }
+
+    private static PeptideBindingMap requireBindingMap(Map<Allele, PeptideBindingMap> bindingMaps, Allele allele) {
+        PeptideBindingMap bindingMap = bindingMaps.get(allele);
+
+        if (bindingMap != null)
+            return bindingMap;
+        else
+            throw new IllegalStateException(String.format("No binding records for allele [%s].", allele));
+    }
+
     /**
      * Computes the footprint index for a neo/self peptide pair.
      *
@@ -169,6 +616,63 @@ public abstract class AlleleFootprintIndex {
      */
     public abstract double compute(BindRecord neoBindRecord, BindRecord selfBindRecord);
 
+    /**
+     * Computes the footprint index for a neo/self peptide pair.
+     *
+     * @param neoBinding the neo-antigen binding quantities.
+     *
+     * @param selfBinding the self-antigen binding quantities.
+     *
+     * @return the footprint index for the given binding quantities.
+     */
+    public abstract double compute(PeptideBinding neoBinding, PeptideBinding selfBinding);
+
+    /**
+     * Computes the footprint indexes for arrays of neo/self binding
+     * quantities in one pass.
+     *
+     * @param neoQty the neo-antigen binding quantities (as returned
+     * by {@link #quantity(PeptideBinding)}).
+     *
+     * @param selfQty the self-antigen binding quantities.
+     *
+     * @param footprintIndexes the array to receive the footprint
+     * index for each element of the quantity arrays.
+     *
+     * @throws IllegalArgumentException unless the arrays have equal
+     * lengths.
+     */
+    public void compute(double[] neoQty, double[] selfQty, double[] footprintIndexes) {
+        if (neoQty.length != selfQty.length || neoQty.length != footprintIndexes.length)
+            throw new IllegalArgumentException("Binding quantity and footprint index arrays must have equal length.");
+
+        computeBulk(neoQty, selfQty, footprintIndexes);
+    }
+
+    /**
+     * Computes the footprint indexes for arrays of neo/self binding
+     * quantities with equal lengths; implementations should use a
+     * simple indexed loop that the JIT compiler can unroll.
+     *
+     * @param neoQty the neo-antigen binding quantities.
+     *
+     * @param selfQty the self-antigen binding quantities.
+     *
+     * @param footprintIndexes the array to receive the footprint
+     * indexes.
+     */
+    protected abstract void computeBulk(double[] neoQty, double[] selfQty, double[] footprintIndexes);
+
+    /**
+     * Returns the binding quantity used by this footprint (affinity
+     * or half-life).
+     *
+     * @param binding the binding quantities for a peptide.
+     *
+     * @return the binding quantity used by this footprint.
+     */
+    public abstract double quantity(PeptideBinding binding);
+
     /**
      * Returns the enumerated calculation type for this footprint.
      *
@@ -187,6 +691,51 @@ public abstract class AlleleFootprintIndex {
 
     // -----------------------------------------------------------------
 
+    /**
+     * The binding quantities and footprint indexes for the distinct
+     * neo/self peptide pairs in one calculation (a single allele and
+     * collection of pair records), with the slot assigned to each pair
+     * record ({@code -1} for pairs pruned by the affinity screen).
+     */
+    private static final class PairBatch {
+        private final int[] slots;
+        private final PeptideBinding[] neoBindings;
+        private final PeptideBinding[] selfBindings;
+
+        private int slotCount = 0;
+        private double[] footprintIndexes;
+
+        private PairBatch(int pairCount) {
+            this.slots = new int[pairCount];
+            this.neoBindings = new PeptideBinding[pairCount];
+            this.selfBindings = new PeptideBinding[pairCount];
+        }
+    }
+
+    private static final class PairKey {
+        private final Peptide neoPeptide;
+        private final Peptide selfPeptide;
+
+        private PairKey(Peptide neoPeptide, Peptide selfPeptide) {
+            this.neoPeptide = neoPeptide;
+            this.selfPeptide = selfPeptide;
+        }
+
+        @Override public boolean equals(Object obj) {
+            if (!(obj instanceof PairKey))
+                return false;
+
+            PairKey that = (PairKey) obj;
+            return this.neoPeptide.equals(that.neoPeptide) && this.selfPeptide.equals(that.selfPeptide);
+        }
+
+        @Override public int hashCode() {
+            return 31 * neoPeptide.hashCode() + selfPeptide.hashCode();
+        }
+    }
+
+    // -----------------------------------------------------------------
+
     private static final class LogAffinity extends AlleleFootprintIndex {
         @Override public double compute(BindRecord neoBindRecord, BindRecord selfBindRecord) {
             //
@@ -200,6 +749,19 @@ public abstract class AlleleFootprintIndex {
             return DoubleUtil.log2(selfAffinity / neoAffinity);
         }
 
+        @Override public double compute(PeptideBinding neoBinding, PeptideBinding selfBinding) {
+            return DoubleUtil.log2(selfBinding.getAffinity() / neoBinding.getAffinity());
+        }
+
+        @Override protected void computeBulk(double[] neoQty, double[] selfQty, double[] footprintIndexes) {
+            for (int index = 0; index < footprintIndexes.length; ++index)
+                footprintIndexes[index] = DoubleUtil.log2(selfQty[index] / neoQty[index]);
+        }
+
+        @Override public double quantity(PeptideBinding binding) {
+            return binding.getAffinity();
+        }
+
         @Override public AlleleFootprintType getFootprintType() {
             return AlleleFootprintType.LOG_AFFINITY;
         }
@@ -219,6 +781,19 @@ public abstract class AlleleFootprintIndex {
             return DoubleUtil.log2(neoHalfLife / selfHalfLife);
         }
 
+        @Override public double compute(PeptideBinding neoBinding, PeptideBinding selfBinding) {
+            return DoubleUtil.log2(neoBinding.getHalfLife() / selfBinding.getHalfLife());
+        }
+
+        @Override protected void computeBulk(double[] neoQty, double[] selfQty, double[] footprintIndexes) {
+            for (int index = 0; index < footprintIndexes.length; ++index)
+                footprintIndexes[index] = DoubleUtil.log2(neoQty[index] / selfQty[index]);
+        }
+
+        @Override public double quantity(PeptideBinding binding) {
+            return binding.getHalfLife();
+        }
+
         @Override public AlleleFootprintType getFootprintType() {
             return AlleleFootprintType.LOG_STABILITY;
         }
@@ -11,6 +11,8 @@ import jene.neo.PeptidePairRecord;
 
 import pepmhc.bind.BindRecord;
 
+import nfi.bind.PeptideBinding;
+
 /**
  * Encapsulates the results of a footprint index calculation for an
  * HLA allele and peptide pair.
@@ -70,6 +72,18 @@ public final class AlleleFootprintRecord {
      */
     public static final Delimiter DELIM = Delimiter.TAB;
 
+    /**
+     * The number of columns in flat files containing allele footprint
+     * records.
+     */
+    public static final int COLUMN_COUNT = 13;
+
+    /**
+     * The number of leading columns in flat files that contain the
+     * peptide pair record.
+     */
+    public static final int PAIR_COLUMN_COUNT = 6;
+
     /**
      * Creates a new footprint record with fixed attributes.
      *
@@ -103,6 +117,39 @@ public final class AlleleFootprintRecord {
                       footprintIndex);
     }
 
+    /**
+     * Creates a new footprint record with fixed attributes.
+     *
+     * @param pairRecord the target of the calculation.
+     *
+     * @param patientAllele the HLA allele in the calculation.
+     *
+     * @param footprintType the enumerated footprint calculation type.
+     *
+     * @param neoBinding the neo-antigen binding quantities.
+     *
+     * @param selfBinding the self-antigen binding quantities.
+     *
+     * @param footprintIndex the calculated neo-antigen footprint index.
+     *
+     * @return a new footprint record with the specified attributes.
+     */
+    public static AlleleFootprintRecord create(PeptidePairRecord   pairRecord,
+                                               Allele              patientAllele,
+                                               AlleleFootprintType footprintType,
+                                               PeptideBinding      neoBinding,
+                                               PeptideBinding      selfBinding,
+                                               double              footprintIndex) {
+        return create(pairRecord,
+                      patientAllele,
+                      footprintType,
+                      neoBinding.getStrength(),
+                      neoBinding.getPercentile(),
+                      selfBinding.getStrength(),
+                      selfBinding.getPercentile(),
+                      footprintIndex);
+    }
+
     /**
      * Creates a new footprint record with fixed attributes.
      *
@@ -181,7 +228,7 @@ public final class AlleleFootprintRecord {
      * formatted allele footprint record.
      */
     public static AlleleFootprintRecord parse(String line) {
-        String[] fields = DELIM.split(line, 13);
+        String[] fields = DELIM.split(line, COLUMN_COUNT);
 
         PeptidePairRecord pairRecord =
             PeptidePairRecord.parse(fields, 0);
@@ -0,0 +1,389 @@
+package nfi.model;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import jam.app.JamLogger;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.io.BinaryFootprintReader;
+import nfi.io.BinaryFootprintWriter;
+import nfi.io.FootprintBlock;
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintWriter;
+
+/**
+ * Persists the footprint records for individual tumor barcodes as
+ * they are completed, so that an interrupted cohort run may resume
+ * where it stopped.
+ *
+ * <p>The records for each completed barcode are sorted and written to
+ * the binary file {@code DIR/BARCODE.nfb}, and the fingerprint of the
+ * inputs from which they were computed (see {@link
+ * IncrementalFootprints#fingerprint}) is written to the file {@code
+ * DIR/BARCODE.fingerprint}.  A checkpoint is valid only while its
+ * fingerprint matches the current inputs, so barcodes whose inputs
+ * have changed since the checkpoint was written are computed again.
+ * Barcodes whose computation failed are recorded in the file {@code
+ * DIR/BARCODE.failed}, which contains the stack trace of the failure.
+ * All files are written to a temporary file, flushed to the storage
+ * device and then moved into place atomically, so a file that exists
+ * is always complete.
+ */
+public final class BarcodeCheckpoint {
+    private final Path directory;
+
+    private static final String COMPLETE_SUFFIX = ".nfb";
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private BarcodeCheckpoint(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens a checkpoint directory (creating it if necessary).
+     *
+     * @param directory the name of the checkpoint directory.
+     *
+     * @return the checkpoint in the specified directory.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static BarcodeCheckpoint open(String directory) {
+        Path path = Paths.get(directory);
+
+        try {
+            Files.createDirectories(path);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return new BarcodeCheckpoint(path);
+    }
+
+    /**
+     * Determines whether a barcode has a valid checkpoint.
+     *
+     * @param barcode the tumor barcode of interest.
+     *
+     * @param fingerprint the fingerprint of the current inputs for the
+     * barcode.
+     *
+     * @return {@code true} iff the footprint records for the specified
+     * barcode have been persisted and were computed from inputs with
+     * the specified fingerprint.
+     */
+    public boolean isComplete(TumorBarcode barcode, String fingerprint) {
+        return isComplete(barcode) && fingerprint.equals(readFingerprint(barcode));
+    }
+
+    private boolean isComplete(TumorBarcode barcode) {
+        Path path = completePath(barcode);
+        return Files.isRegularFile(path) && BinaryFootprintReader.isBinary(path.toString());
+    }
+
+    private String readFingerprint(TumorBarcode barcode) {
+        Path path = fingerprintPath(barcode);
+
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try {
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Determines whether the computation for a barcode has failed.
+     *
+     * @param barcode the tumor barcode of interest.
+     *
+     * @return {@code true} iff the most recent computation for the
+     * specified barcode failed.
+     */
+    public boolean isFailed(TumorBarcode barcode) {
+        return Files.isRegularFile(failedPath(barcode));
+    }
+
+    /**
+     * Identifies barcodes that do not yet have a valid checkpoint.
+     *
+     * @param barcodes the tumor barcodes of interest.
+     *
+     * @param fingerprints the fingerprint of the current inputs for
+     * each barcode.
+     *
+     * @return the barcodes (in their original order) that have not
+     * been completed or whose inputs have changed.
+     */
+    public List<TumorBarcode> pending(Collection<TumorBarcode> barcodes, Map<TumorBarcode, String> fingerprints) {
+        List<TumorBarcode> pending = new ArrayList<TumorBarcode>();
+
+        for (TumorBarcode barcode : barcodes)
+            if (!isComplete(barcode, fingerprints.get(barcode)))
+                pending.add(barcode);
+
+        return pending;
+    }
+
+    /**
+     * Identifies barcodes whose most recent computation failed.
+     *
+     * @param barcodes the tumor barcodes of interest.
+     *
+     * @return the barcodes (in their original order) that have failed.
+     */
+    public List<TumorBarcode> failed(Collection<TumorBarcode> barcodes) {
+        List<TumorBarcode> failed = new ArrayList<TumorBarcode>();
+
+        for (TumorBarcode barcode : barcodes)
+            if (isFailed(barcode))
+                failed.add(barcode);
+
+        return failed;
+    }
+
+    /**
+     * Persists the footprint records for a completed barcode.
+     *
+     * @param barcode the completed tumor barcode.
+     *
+     * @param fingerprint the fingerprint of the inputs from which the
+     * records were computed.
+     *
+     * @param records the footprint records for the barcode, sorted by
+     * {@link AlleleFootprintRecord#COMPARATOR}.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void complete(TumorBarcode barcode, String fingerprint, List<AlleleFootprintRecord> records) {
+        //
+        // The old fingerprint is removed first and the new one written
+        // last, so an interruption in between leaves a checkpoint that
+        // is computed again rather than one that vouches for records
+        // computed from other inputs...
+        //
+        delete(fingerprintPath(barcode));
+
+        Path tempPath = tempPath(completePath(barcode));
+
+        try (FootprintWriter writer = BinaryFootprintWriter.open(tempPath.toString())) {
+            writer.write(records);
+        }
+
+        commit(tempPath, completePath(barcode));
+        writeCommitted(fingerprintPath(barcode), fingerprint + "\n");
+        delete(failedPath(barcode));
+    }
+
+    /**
+     * Records the failure of the computation for a barcode.
+     *
+     * @param barcode the failed tumor barcode.
+     *
+     * @param cause the exception that caused the failure.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void fail(TumorBarcode barcode, RuntimeException cause) {
+        StringWriter stackTrace = new StringWriter();
+        cause.printStackTrace(new PrintWriter(stackTrace));
+
+        writeCommitted(failedPath(barcode), stackTrace.toString());
+
+        // Any checkpoint was computed from earlier inputs and must not
+        // be merged in place of the failed computation...
+        delete(fingerprintPath(barcode));
+        delete(completePath(barcode));
+    }
+
+    /**
+     * Merges the checkpoints for a sorted list of barcodes into a
+     * single footprint file.  Barcodes without a valid checkpoint are
+     * omitted (and reported in the log).
+     *
+     * @param barcodes the tumor barcodes to merge, in sorted order.
+     *
+     * @param fileName the name of the merged footprint file.
+     *
+     * @param format the format of the merged footprint file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void merge(List<TumorBarcode> barcodes, String fileName, FootprintFormat format) {
+        merge(barcodes, fileName, format, null);
+    }
+
+    /**
+     * Merges the checkpoints for a sorted list of barcodes into a
+     * single footprint file and passes the records for each merged
+     * barcode to an observer.  Barcodes without a valid checkpoint
+     * are omitted (and reported in the log).
+     *
+     * @param barcodes the tumor barcodes to merge, in sorted order.
+     *
+     * @param fileName the name of the merged footprint file.
+     *
+     * @param format the format of the merged footprint file.
+     *
+     * @param observer the callback invoked with the records for each
+     * merged barcode ({@code null} for none).
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void merge(List<TumorBarcode> barcodes,
+                      String fileName,
+                      FootprintFormat format,
+                      BiConsumer<TumorBarcode, List<AlleleFootprintRecord>> observer) {
+        try (FootprintWriter writer = format.openWriter(fileName)) {
+            for (TumorBarcode barcode : barcodes) {
+                if (isComplete(barcode))
+                    copy(barcode, writer, observer);
+                else
+                    JamLogger.warn("No checkpoint for [%s]; omitting it from [%s].", barcode, fileName);
+            }
+        }
+    }
+
+    /**
+     * Passes the checkpointed records for each barcode in a list to
+     * an observer, without writing a merged file.  Barcodes without a
+     * valid checkpoint are skipped (and reported in the log).
+     *
+     * @param barcodes the tumor barcodes to scan.
+     *
+     * @param observer the callback invoked with the records for each
+     * checkpointed barcode.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void scan(List<TumorBarcode> barcodes, BiConsumer<TumorBarcode, List<AlleleFootprintRecord>> observer) {
+        for (TumorBarcode barcode : barcodes) {
+            if (isComplete(barcode))
+                observer.accept(barcode, load(barcode));
+            else
+                JamLogger.warn("No checkpoint for [%s]; skipping it.", barcode);
+        }
+    }
+
+    /**
+     * Loads the checkpointed records for a completed barcode.
+     *
+     * @param barcode the completed tumor barcode.
+     *
+     * @return the footprint records for the specified barcode, in
+     * sorted order.
+     *
+     * @throws RuntimeException if the barcode does not have a valid
+     * checkpoint or if any I/O errors occur.
+     */
+    public List<AlleleFootprintRecord> load(TumorBarcode barcode) {
+        if (!isComplete(barcode))
+            throw new IllegalStateException(String.format("No checkpoint for [%s].", barcode));
+
+        return BinaryFootprintReader.load(completePath(barcode).toString());
+    }
+
+    private void copy(TumorBarcode barcode,
+                      FootprintWriter writer,
+                      BiConsumer<TumorBarcode, List<AlleleFootprintRecord>> observer) {
+        List<AlleleFootprintRecord> barcodeRecords = new ArrayList<AlleleFootprintRecord>();
+
+        try (BinaryFootprintReader reader = BinaryFootprintReader.open(completePath(barcode).toString())) {
+            FootprintBlock block = reader.next();
+
+            while (block != null) {
+                List<AlleleFootprintRecord> blockRecords = BinaryFootprintReader.toRecords(block);
+                writer.write(blockRecords);
+
+                if (observer != null)
+                    barcodeRecords.addAll(blockRecords);
+
+                block = reader.next();
+            }
+        }
+
+        if (observer != null)
+            observer.accept(barcode, barcodeRecords);
+    }
+
+    private Path completePath(TumorBarcode barcode) {
+        return directory.resolve(fileStem(barcode) + COMPLETE_SUFFIX);
+    }
+
+    private Path fingerprintPath(TumorBarcode barcode) {
+        return directory.resolve(fileStem(barcode) + FINGERPRINT_SUFFIX);
+    }
+
+    private Path failedPath(TumorBarcode barcode) {
+        return directory.resolve(fileStem(barcode) + FAILED_SUFFIX);
+    }
+
+    private static Path tempPath(Path path) {
+        return path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    }
+
+    private static String fileStem(TumorBarcode barcode) {
+        return barcode.toString().replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static void writeCommitted(Path path, String text) {
+        Path tempPath = tempPath(path);
+
+        try {
+            Files.write(tempPath, text.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        commit(tempPath, path);
+    }
+
+    private static void commit(Path tempPath, Path path) {
+        try {
+            //
+            // The rename must not reach the disk before the contents,
+            // or a crash could leave a complete-looking empty file...
+            //
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
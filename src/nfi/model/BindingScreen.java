@@ -0,0 +1,347 @@
+package nfi.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import jam.app.JamLogger;
+import jam.app.JamProperties;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+import jene.peptide.Peptide;
+
+import nfi.bind.PeptideBinding;
+import nfi.bind.PeptideBindingMap;
+
+/**
+ * Screens neo/self peptide pairs with the inexpensive affinity
+ * predictor before footprints that require a more expensive predictor
+ * (stability) are computed.
+ *
+ * <p>A peptide passes the screen when the percentile rank of its
+ * predicted affinity does not exceed the cutoff; a peptide pair passes
+ * when its neo-peptide or its self-peptide passes.  The expensive
+ * predictor is only invoked for the peptides in passing pairs.  Pruned
+ * pairs are either omitted from the footprint output or emitted with
+ * {@code NaN} binding quantities and footprint index, as specified by
+ * the {@code nfi.model.emitPruned} system property.
+ *
+ * <p>The screening decision for each allele and peptide is retained
+ * for the life of the screen, so cohort binding plans and per-barcode
+ * calculations share one affinity prediction per allele and peptide.
+ */
+public final class BindingScreen {
+    private final double cutoff;
+    private final boolean emitPruned;
+    private final BiFunction<Allele, Collection<? extends Peptide>, PeptideBindingMap> predictor;
+
+    private final Map<Allele, Map<Peptide, Boolean>> decisions =
+        new ConcurrentHashMap<Allele, Map<Peptide, Boolean>>();
+
+    private final LongAdder screenedPairs = new LongAdder();
+    private final LongAdder prunedPairs = new LongAdder();
+
+    private static BindingScreen global = null;
+    private static boolean globalResolved = false;
+
+    /**
+     * The footprint index whose predictor screens the peptide pairs.
+     */
+    public static final AlleleFootprintIndex SCREEN_INDEX = AlleleFootprintIndex.LOG_AFFINITY;
+
+    /**
+     * The binding quantities assigned to both peptides of a pruned
+     * pair when pruned pairs are emitted.
+     */
+    public static final PeptideBinding PRUNED_BINDING =
+        PeptideBinding.create(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+
+    /**
+     * Name of the system property that specifies the affinity
+     * percentile cutoff for the screen; the screen is disabled unless
+     * this property is set.
+     */
+    public static final String PERCENTILE_CUTOFF_PROPERTY = "nfi.model.screenPercentile";
+
+    /**
+     * Name of the system property that specifies whether pruned pairs
+     * are emitted (with {@code NaN} quantities) or omitted.
+     */
+    public static final String EMIT_PRUNED_PROPERTY = "nfi.model.emitPruned";
+
+    private BindingScreen(double cutoff,
+                          boolean emitPruned,
+                          BiFunction<Allele, Collection<? extends Peptide>, PeptideBindingMap> predictor) {
+        if (cutoff <= 0.0 || cutoff > 100.0)
+            throw new IllegalArgumentException("Percentile cutoff must be in the range (0, 100].");
+
+        this.cutoff = cutoff;
+        this.emitPruned = emitPruned;
+        this.predictor = predictor;
+    }
+
+    /**
+     * Creates a new screen with fixed parameters.
+     *
+     * @param cutoff the affinity percentile cutoff.
+     *
+     * @param emitPruned whether pruned pairs are emitted with
+     * {@code NaN} quantities ({@code true}) or omitted ({@code false}).
+     *
+     * @return a new screen with the specified parameters.
+     */
+    public static BindingScreen create(double cutoff, boolean emitPruned) {
+        return create(cutoff, emitPruned, SCREEN_INDEX::mapBinding);
+    }
+
+    /**
+     * Creates a new screen with fixed parameters and a specific
+     * source of affinity predictions.
+     *
+     * @param cutoff the affinity percentile cutoff.
+     *
+     * @param emitPruned whether pruned pairs are emitted with
+     * {@code NaN} quantities ({@code true}) or omitted ({@code false}).
+     *
+     * @param predictor the function that predicts the binding (and
+     * affinity percentile) of peptides for an allele.
+     *
+     * @return a new screen with the specified parameters.
+     */
+    public static BindingScreen create(double cutoff,
+                                       boolean emitPruned,
+                                       BiFunction<Allele, Collection<? extends Peptide>, PeptideBindingMap> predictor) {
+        return new BindingScreen(cutoff, emitPruned, predictor);
+    }
+
+    /**
+     * Returns the global screen specified by system properties.
+     *
+     * @return the global screen, or {@code null} if screening is
+     * disabled.
+     */
+    public static synchronized BindingScreen global() {
+        if (!globalResolved) {
+            global = resolveGlobal();
+            globalResolved = true;
+        }
+
+        return global;
+    }
+
+    /**
+     * Describes the settings of the global screen that change the
+     * footprint records, for the fingerprints of barcode inputs.
+     *
+     * @return the cutoff and pruned-pair handling of the global
+     * screen, or an empty string if screening is disabled.
+     */
+    public static String describeGlobal() {
+        BindingScreen screen = global();
+
+        if (screen != null)
+            return screen.describe();
+        else
+            return "";
+    }
+
+    /**
+     * Describes the settings of this screen that change the footprint
+     * records.
+     *
+     * @return the cutoff and pruned-pair handling of this screen.
+     */
+    public String describe() {
+        return String.format("%s=%s;%s=%s", PERCENTILE_CUTOFF_PROPERTY, cutoff, EMIT_PRUNED_PROPERTY, emitPruned);
+    }
+
+    private static BindingScreen resolveGlobal() {
+        double cutoff = JamProperties.getOptionalDouble(PERCENTILE_CUTOFF_PROPERTY, 0.0);
+        boolean emitPruned = JamProperties.getOptionalBoolean(EMIT_PRUNED_PROPERTY, true);
+
+        if (cutoff > 0.0)
+            return create(cutoff, emitPruned);
+        else
+            return null;
+    }
+
+    /**
+     * Determines whether this screen applies to a footprint index:
+     * footprints computed with the screening predictor itself are
+     * never screened.
+     *
+     * @param footprintIndex the footprint index of interest.
+     *
+     * @return {@code true} iff this screen applies to the specified
+     * footprint index.
+     */
+    public boolean appliesTo(AlleleFootprintIndex footprintIndex) {
+        return footprintIndex.getBindPredictor() != SCREEN_INDEX.getBindPredictor();
+    }
+
+    /**
+     * Screens a collection of peptide pairs for a single allele and
+     * records the outcome in the pruning counts.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @param pairRecords the neo/self peptide pairs to screen.
+     *
+     * @return an array whose elements indicate whether the peptide
+     * pair at the same position (in iteration order) passed the
+     * screen.
+     */
+    public boolean[] screen(Allele allele, Collection<PeptidePairRecord> pairRecords) {
+        Map<Peptide, Boolean> alleleDecisions = decide(allele, PeptidePairRecord.peptides(pairRecords));
+
+        int index = 0;
+        int pruned = 0;
+        boolean[] passed = new boolean[pairRecords.size()];
+
+        for (PeptidePairRecord pairRecord : pairRecords) {
+            passed[index] = passes(alleleDecisions, pairRecord);
+
+            if (!passed[index])
+                ++pruned;
+
+            ++index;
+        }
+
+        screenedPairs.add(passed.length);
+        prunedPairs.add(pruned);
+
+        return passed;
+    }
+
+    /**
+     * Identifies the peptides that must be presented to the expensive
+     * predictor for a single allele: those in peptide pairs that pass
+     * the screen.  The pruning counts are not affected.
+     *
+     * @param allele the HLA allele of interest.
+     *
+     * @param peptides all peptides in the peptide pairs.
+     *
+     * @param pairLists the neo/self peptide pairs presented to the
+     * allele.
+     *
+     * @return the peptides in passing pairs.
+     */
+    public Set<Peptide> requiredPeptides(Allele allele,
+                                         Collection<? extends Peptide> peptides,
+                                         Collection<? extends Collection<PeptidePairRecord>> pairLists) {
+        Map<Peptide, Boolean> alleleDecisions = decide(allele, peptides);
+        Set<Peptide> required = new HashSet<Peptide>();
+
+        for (Collection<PeptidePairRecord> pairRecords : pairLists) {
+            for (PeptidePairRecord pairRecord : pairRecords) {
+                if (passes(alleleDecisions, pairRecord)) {
+                    required.add(pairRecord.getNeoPeptide());
+                    required.add(pairRecord.getSelfPeptide());
+                }
+            }
+        }
+
+        return required;
+    }
+
+    /**
+     * Returns the peptides in the passing pairs of a screened
+     * collection.
+     *
+     * @param pairRecords the screened peptide pairs.
+     *
+     * @param passed the screening outcome for each pair.
+     *
+     * @return the peptides in the passing pairs.
+     */
+    public static Set<Peptide> passedPeptides(Collection<PeptidePairRecord> pairRecords, boolean[] passed) {
+        int index = 0;
+        List<PeptidePairRecord> passedPairs = new ArrayList<PeptidePairRecord>();
+
+        for (PeptidePairRecord pairRecord : pairRecords)
+            if (passed[index++])
+                passedPairs.add(pairRecord);
+
+        return PeptidePairRecord.peptides(passedPairs);
+    }
+
+    private Map<Peptide, Boolean> decide(Allele allele, Collection<? extends Peptide> peptides) {
+        Map<Peptide, Boolean> alleleDecisions =
+            decisions.computeIfAbsent(allele, key -> new ConcurrentHashMap<Peptide, Boolean>());
+
+        List<Peptide> missing = new ArrayList<Peptide>();
+
+        for (Peptide peptide : peptides)
+            if (!alleleDecisions.containsKey(peptide))
+                missing.add(peptide);
+
+        if (!missing.isEmpty()) {
+            PeptideBindingMap bindingMap = predictor.apply(allele, missing);
+
+            for (Peptide peptide : missing)
+                alleleDecisions.put(peptide, bindingMap.require(peptide).getPercentile() <= cutoff);
+        }
+
+        return alleleDecisions;
+    }
+
+    private static boolean passes(Map<Peptide, Boolean> alleleDecisions, PeptidePairRecord pairRecord) {
+        return alleleDecisions.get(pairRecord.getNeoPeptide()) || alleleDecisions.get(pairRecord.getSelfPeptide());
+    }
+
+    /**
+     * Logs the number of peptide pairs screened and pruned so far.
+     */
+    public void logCounts() {
+        long screened = screenedPairs.sum();
+        long pruned = prunedPairs.sum();
+
+        JamLogger.info("Affinity screen (percentile <= %.2f) pruned [%d] of [%d] allele-pair combinations (%.1f%%).",
+                       cutoff, pruned, screened, screened > 0 ? 100.0 * pruned / screened : 0.0);
+    }
+
+    /**
+     * Returns the number of allele-pair combinations screened so far.
+     *
+     * @return the number of allele-pair combinations screened so far.
+     */
+    public long countScreened() {
+        return screenedPairs.sum();
+    }
+
+    /**
+     * Returns the number of allele-pair combinations pruned so far.
+     *
+     * @return the number of allele-pair combinations pruned so far.
+     */
+    public long countPruned() {
+        return prunedPairs.sum();
+    }
+
+    /**
+     * Returns the affinity percentile cutoff for this screen.
+     *
+     * @return the affinity percentile cutoff for this screen.
+     */
+    public double getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Identifies whether pruned pairs are emitted or omitted.
+     *
+     * @return {@code true} if pruned pairs are emitted with
+     * {@code NaN} quantities, {@code false} if they are omitted.
+     */
+    public boolean isEmitPruned() {
+        return emitPruned;
+    }
+}
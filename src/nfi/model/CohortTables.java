@@ -0,0 +1,141 @@
+package nfi.model;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import jam.app.JamLogger;
+
+import jene.neo.PeptidePairTable;
+import jene.tcga.TumorGenotypeTable;
+
+import nfi.io.PeptidePairSnapshot;
+
+/**
+ * Keeps parsed cohort tables in memory so that successive driver runs
+ * on the same input files share one copy of each table.
+ *
+ * <p>Each table is stamped with the size and modification time of its
+ * source files and is reloaded (by the first caller to request it)
+ * as soon as any source file changes.  Concurrent requests for the
+ * same table wait for a single load; requests for different tables
+ * load in parallel.  Loads run outside of the map update, so a slow
+ * load never blocks the map itself, and a failed load is removed so
+ * that the next request tries again.
+ */
+final class CohortTables {
+    private final Map<String, Entry<PeptidePairTable>> pairTables =
+        new ConcurrentHashMap<String, Entry<PeptidePairTable>>();
+
+    private final Map<String, Entry<TumorGenotypeTable>> genotypeTables =
+        new ConcurrentHashMap<String, Entry<TumorGenotypeTable>>();
+
+    private static final class Entry<T> {
+        private final String stamp;
+        private final CompletableFuture<T> table = new CompletableFuture<T>();
+
+        private Entry(String stamp) {
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Returns the peptide pair table for an input file, loading it if
+     * it is not resident or if the file has changed.
+     *
+     * @param fileName the name of the peptide pair file.
+     *
+     * @param snapshotDir the directory of binary table snapshots
+     * ({@code null} to parse the file directly).
+     *
+     * @return the peptide pair table for the specified file.
+     *
+     * @throws RuntimeException if any errors occur.
+     */
+    PeptidePairTable peptidePairs(String fileName, String snapshotDir) {
+        return lookup(pairTables, key(fileName), stamp(fileName), () -> {
+                if (snapshotDir != null)
+                    return PeptidePairSnapshot.load(fileName, snapshotDir);
+                else
+                    return PeptidePairTable.load(fileName);
+            });
+    }
+
+    /**
+     * Returns the tumor genotype table for a pair of input files,
+     * loading it if it is not resident or if either file has changed.
+     *
+     * @param tumorPatientFile the name of the file mapping tumor
+     * barcodes to patients.
+     *
+     * @param patientGenotypeFile the name of the file mapping patients
+     * to their HLA genotypes.
+     *
+     * @return the tumor genotype table for the specified files.
+     *
+     * @throws RuntimeException if any errors occur.
+     */
+    TumorGenotypeTable genotypes(String tumorPatientFile, String patientGenotypeFile) {
+        return lookup(genotypeTables,
+                      key(tumorPatientFile) + File.pathSeparator + key(patientGenotypeFile),
+                      stamp(tumorPatientFile) + File.pathSeparator + stamp(patientGenotypeFile),
+                      () -> TumorGenotypeTable.load(tumorPatientFile, patientGenotypeFile));
+    }
+
+    private static <T> T lookup(Map<String, Entry<T>> entries, String key, String stamp, Supplier<T> loader) {
+        //
+        // The map update only installs a placeholder; the caller that
+        // installed it performs the load, and concurrent callers wait
+        // on its future...
+        //
+        Entry<T> created = new Entry<T>(stamp);
+        Entry<T> entry = entries.compute(key, (k, current) -> {
+                if (current != null && current.stamp.equals(stamp))
+                    return current;
+
+                if (current != null)
+                    JamLogger.info("Source files for [%s] have changed; reloading...", k);
+
+                return created;
+            });
+
+        if (entry == created)
+            load(entries, key, entry, loader);
+        else
+            JamLogger.info("Using resident table [%s]...", key);
+
+        try {
+            return entry.table.join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            else if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            else
+                throw ex;
+        }
+    }
+
+    private static <T> void load(Map<String, Entry<T>> entries, String key, Entry<T> entry, Supplier<T> loader) {
+        try {
+            entry.table.complete(loader.get());
+        }
+        catch (Throwable ex) {
+            entries.remove(key, entry);
+            entry.table.completeExceptionally(ex);
+        }
+    }
+
+    private static String key(String fileName) {
+        return new File(fileName).getAbsolutePath();
+    }
+
+    private static String stamp(String fileName) {
+        File file = new File(fileName);
+        return file.length() + "@" + file.lastModified();
+    }
+}
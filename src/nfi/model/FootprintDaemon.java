@@ -0,0 +1,390 @@
+package nfi.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jam.app.JamApp;
+import jam.app.JamLogger;
+import jam.app.JamProperties;
+
+import nfi.bind.BindingCache;
+
+/**
+ * Runs allele footprint jobs in a long-lived process, so that the
+ * cohort tables, binding stores and compiled code from earlier jobs
+ * are reused by later jobs.
+ *
+ * <p>Jobs are submitted through a spool directory.  A job is a
+ * properties file named {@code ID.job} (written under another name and
+ * then renamed, so that the daemon never reads a partial file) whose
+ * entries override the {@code AlleleFootprintDriver} properties given
+ * to the daemon at startup; for example, a job may name its own
+ * {@code AlleleFootprintDriver.footprintFile} and restrict the run with
+ * {@code AlleleFootprintDriver.barcodes}.  Properties outside the
+ * driver namespace (such as the predictor and binding cache settings)
+ * and the run report file ({@code AlleleFootprintDriver.metricsFile})
+ * are fixed for the lifetime of the daemon, and jobs that try to
+ * override them are rejected.
+ *
+ * <p>The daemon claims each job by renaming it {@code ID.running},
+ * reports its state in the properties file {@code ID.status}, and
+ * renames it {@code ID.done} or {@code ID.failed} when it finishes.
+ * Up to {@code FootprintDaemon.jobCount} jobs run at once.  Creating
+ * the file {@code STOP} in the spool directory stops the daemon after
+ * the running jobs have finished; jobs left running by a daemon that
+ * was killed are queued again on the next start.
+ *
+ * <p>Peptide pair and genotype tables stay resident as long as their
+ * source files are unchanged.  Binding predictions stay resident in
+ * the stores of the global binding cache, so the daemon refuses to
+ * start unless the cache directory ({@code nfi.bind.cacheDirectory})
+ * is configured.  The metrics registry is shared by all jobs, so the
+ * run report (when the daemon is started with a metrics file) covers
+ * all jobs completed since the daemon started.
+ */
+public final class FootprintDaemon extends JamApp {
+    private final Path spoolDir;
+    private final int jobCount;
+    private final long pollInterval;
+
+    private final CohortTables cohortTables = new CohortTables();
+    private final ExecutorService jobExecutor;
+    private final AtomicInteger activeJobs = new AtomicInteger();
+
+    private static final Object DRIVER_LOCK = new Object();
+
+    private static final String JOB_SUFFIX = ".job";
+    private static final String RUNNING_SUFFIX = ".running";
+    private static final String DONE_SUFFIX = ".done";
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final String STATUS_SUFFIX = ".status";
+    private static final String STOP_FILE = "STOP";
+
+    private static final String DRIVER_PREFIX = "AlleleFootprintDriver.";
+
+    /**
+     * The states reported in the job status files.
+     */
+    public enum JobState { RUNNING, SUCCEEDED, FAILED }
+
+    /**
+     * Name of the system property that specifies the spool directory.
+     */
+    public static final String SPOOL_DIR_PROPERTY = "FootprintDaemon.spoolDir";
+
+    /**
+     * Name of the system property that specifies the maximum number
+     * of jobs to run concurrently.  (Each job uses its own pool of
+     * {@code AlleleFootprintDriver.threadCount} worker threads.)
+     */
+    public static final String JOB_COUNT_PROPERTY = "FootprintDaemon.jobCount";
+
+    /**
+     * Default value for the job count property.
+     */
+    public static final int DEFAULT_JOB_COUNT = 2;
+
+    /**
+     * Name of the system property that specifies the interval (in
+     * milliseconds) between scans of the spool directory.
+     */
+    public static final String POLL_INTERVAL_PROPERTY = "FootprintDaemon.pollInterval";
+
+    /**
+     * Default value for the poll interval property.
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 1000L;
+
+    private FootprintDaemon(String... propFiles) {
+        super(propFiles);
+
+        requireBindingCache();
+
+        this.spoolDir = resolveSpoolDir();
+        this.jobCount = resolveJobCount();
+        this.pollInterval = resolvePollInterval();
+        this.jobExecutor = Executors.newFixedThreadPool(jobCount);
+    }
+
+    private static void requireBindingCache() {
+        //
+        // Without the cache, every job would predict the binding of
+        // every peptide again...
+        //
+        if (JamProperties.getOptional(BindingCache.DIRECTORY_PROPERTY, null) == null)
+            throw new IllegalStateException(String.format("The daemon requires the binding cache directory [%s].",
+                                                          BindingCache.DIRECTORY_PROPERTY));
+    }
+
+    private static Path resolveSpoolDir() {
+        return Paths.get(JamProperties.getRequired(SPOOL_DIR_PROPERTY));
+    }
+
+    private static int resolveJobCount() {
+        int jobCount = JamProperties.getOptionalInt(JOB_COUNT_PROPERTY, DEFAULT_JOB_COUNT);
+
+        if (jobCount < 1)
+            throw new IllegalArgumentException(String.format("Invalid job count: [%d].", jobCount));
+
+        return jobCount;
+    }
+
+    private static long resolvePollInterval() {
+        return JamProperties.getOptionalLong(POLL_INTERVAL_PROPERTY, DEFAULT_POLL_INTERVAL);
+    }
+
+    /**
+     * Runs allele footprint jobs from a spool directory until the
+     * daemon is stopped.
+     *
+     * @param propFiles files containing the system properties that
+     * define the runtime environment and the default job properties.
+     *
+     * @throws RuntimeException if any errors occur.
+     */
+    public static void run(String... propFiles) {
+        FootprintDaemon daemon = new FootprintDaemon(propFiles);
+        daemon.run();
+    }
+
+    private void run() {
+        JamLogger.info("Watching spool directory [%s]...", spoolDir);
+
+        try {
+            Files.createDirectories(spoolDir);
+            requeueJobs();
+
+            while (!Files.exists(spoolDir.resolve(STOP_FILE))) {
+                //
+                // Jobs are claimed only when they can start, so that
+                // waiting jobs remain visible (and may be withdrawn)...
+                //
+                for (Path jobFile : listJobs(JOB_SUFFIX)) {
+                    if (activeJobs.get() >= jobCount)
+                        break;
+
+                    claimJob(jobFile);
+                }
+
+                Thread.sleep(pollInterval);
+            }
+
+            JamLogger.info("Stopping; waiting for running jobs...");
+            jobExecutor.shutdown();
+            jobExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+            Files.deleteIfExists(spoolDir.resolve(STOP_FILE));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        finally {
+            jobExecutor.shutdownNow();
+        }
+
+        JamLogger.info("DONE!");
+    }
+
+    private List<Path> listJobs(String suffix) throws IOException {
+        List<Path> jobFiles = new ArrayList<Path>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spoolDir, "*" + suffix)) {
+            for (Path path : stream)
+                jobFiles.add(path);
+        }
+
+        //
+        // Jobs start in the order of their identifiers...
+        //
+        Collections.sort(jobFiles);
+        return jobFiles;
+    }
+
+    private void requeueJobs() throws IOException {
+        for (Path runningFile : listJobs(RUNNING_SUFFIX)) {
+            JamLogger.warn("Requeueing interrupted job [%s]...", jobId(runningFile, RUNNING_SUFFIX));
+            Files.move(runningFile, jobPath(jobId(runningFile, RUNNING_SUFFIX), JOB_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void claimJob(Path jobFile) throws IOException {
+        String jobId = jobId(jobFile, JOB_SUFFIX);
+        Path runningFile = jobPath(jobId, RUNNING_SUFFIX);
+
+        try {
+            Files.move(jobFile, runningFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (NoSuchFileException ex) {
+            //
+            // Withdrawn by the submitter...
+            //
+            return;
+        }
+
+        activeJobs.incrementAndGet();
+        jobExecutor.execute(() -> runJob(jobId, runningFile));
+    }
+
+    private void runJob(String jobId, Path runningFile) {
+        Instant started = Instant.now();
+        writeStatus(jobId, JobState.RUNNING, started, null, null);
+
+        try {
+            JamLogger.info("Starting job [%s]...", jobId);
+            createDriver(readJob(runningFile)).run();
+
+            writeStatus(jobId, JobState.SUCCEEDED, started, Instant.now(), null);
+            finishJob(runningFile, jobId, DONE_SUFFIX);
+            JamLogger.info("Completed job [%s].", jobId);
+        }
+        catch (Throwable ex) {
+            //
+            // Errors (out of memory, for example) must still mark the
+            // job as failed, or it would be left running until the
+            // daemon restarts; they are then propagated...
+            //
+            JamLogger.warn("Job [%s] failed.", jobId);
+            JamLogger.warn(ex);
+
+            writeStatus(jobId, JobState.FAILED, started, Instant.now(), ex);
+            finishJob(runningFile, jobId, FAILED_SUFFIX);
+
+            if (ex instanceof Error)
+                throw (Error) ex;
+        }
+        finally {
+            activeJobs.decrementAndGet();
+        }
+    }
+
+    private static Properties readJob(Path jobFile) {
+        Properties properties = new Properties();
+
+        try (Reader reader = Files.newBufferedReader(jobFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        //
+        // The metrics registry is process-wide, so a report for one job
+        // would include the counters of every other job...
+        //
+        for (String name : properties.stringPropertyNames())
+            if (!name.startsWith(DRIVER_PREFIX) || name.equals(AlleleFootprintDriver.METRICS_FILE_PROPERTY))
+                throw new IllegalArgumentException(String.format("Job property [%s] is fixed for the lifetime of the daemon.", name));
+
+        return properties;
+    }
+
+    private Runnable createDriver(Properties overrides) {
+        //
+        // The driver resolves all of its properties on construction,
+        // so the overrides need to be in place only while it is
+        // created; jobs that were created earlier are not affected...
+        //
+        synchronized (DRIVER_LOCK) {
+            Map<String, String> saved = new HashMap<String, String>();
+
+            for (String name : overrides.stringPropertyNames())
+                saved.put(name, System.setProperty(name, overrides.getProperty(name)));
+
+            try {
+                return AlleleFootprintDriver.create(cohortTables);
+            }
+            finally {
+                for (Map.Entry<String, String> entry : saved.entrySet()) {
+                    if (entry.getValue() != null)
+                        System.setProperty(entry.getKey(), entry.getValue());
+                    else
+                        System.clearProperty(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private void writeStatus(String jobId, JobState state, Instant started, Instant finished, Throwable error) {
+        Properties status = new Properties();
+
+        status.setProperty("jobId", jobId);
+        status.setProperty("state", state.name());
+        status.setProperty("started", started.toString());
+
+        if (finished != null) {
+            status.setProperty("finished", finished.toString());
+            status.setProperty("elapsedSeconds", String.valueOf(0.001 * (finished.toEpochMilli() - started.toEpochMilli())));
+        }
+
+        if (error != null)
+            status.setProperty("error", String.valueOf(error));
+
+        Path statusFile = jobPath(jobId, STATUS_SUFFIX);
+        Path tempFile = jobPath(jobId, STATUS_SUFFIX + ".tmp");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                status.store(writer, null);
+            }
+
+            Files.move(tempFile, statusFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            JamLogger.warn("Could not write the status of job [%s]: %s", jobId, ex);
+        }
+    }
+
+    private void finishJob(Path runningFile, String jobId, String suffix) {
+        try {
+            Files.move(runningFile, jobPath(jobId, suffix), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            JamLogger.warn("Could not finish job [%s]: %s", jobId, ex);
+        }
+    }
+
+    private Path jobPath(String jobId, String suffix) {
+        return spoolDir.resolve(jobId + suffix);
+    }
+
+    private static String jobId(Path jobFile, String suffix) {
+        String fileName = jobFile.getFileName().toString();
+        return fileName.substring(0, fileName.length() - suffix.length());
+    }
+
+    private static void usage() {
+        System.err.println("Usage: nfi.model.FootprintDaemon PROP_FILE1 [PROP_FILE2 ...]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1)
+            usage();
+
+        run(args);
+    }
+}
@@ -0,0 +1,326 @@
+package nfi.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import jam.app.JamLogger;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+import jene.neo.PeptidePairTable;
+import jene.tcga.TumorBarcode;
+import jene.tcga.TumorGenotypeTable;
+
+/**
+ * Balances footprint calculations across worker threads when tumor
+ * mutation burden is highly skewed.
+ *
+ * <p>The work for each tumor barcode is split into tasks covering one
+ * footprint index, one allele and a chunk of at most {@code chunkSize}
+ * peptide pairs.  The tasks are dispatched largest-first to a
+ * work-stealing pool, so a few hypermutated barcodes are spread across
+ * all threads instead of occupying one thread each at the end of the
+ * run.  When the last task for a barcode finishes, its task results (in
+ * footprint index, allele and chunk order) are combined and passed to
+ * a completion callback on the worker thread that finished it.
+ *
+ * @param <T> the result type for each task and barcode (a list of
+ * footprint records or a {@link FootprintTable}).
+ */
+public final class FootprintScheduler<T> {
+    private final int threadCount;
+    private final int chunkSize;
+    private final Kernel<T> kernel;
+    private final Function<List<T>, T> combiner;
+
+    private final PeptidePairTable peptidePairTable;
+    private final Function<TumorBarcode, Set<Allele>> genotypes;
+    private final List<AlleleFootprintIndex> footprintIndexes;
+
+    /**
+     * Computes the footprint results for one task.
+     *
+     * @param <T> the result type.
+     */
+    @FunctionalInterface
+    public interface Kernel<T> {
+        /**
+         * Computes footprint records for one footprint index, allele
+         * and chunk of peptide pairs.
+         *
+         * @param footprintIndex the footprint index to compute.
+         *
+         * @param allele the HLA allele of interest.
+         *
+         * @param pairRecords the neo/self peptide pairs of interest.
+         *
+         * @return the footprint results for the specified task.
+         */
+        T compute(AlleleFootprintIndex footprintIndex,
+                  Allele allele,
+                  List<PeptidePairRecord> pairRecords);
+    }
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param threadCount the number of worker threads.
+     *
+     * @param chunkSize the maximum number of peptide pairs in a task.
+     *
+     * @param kernel the function that computes each task.
+     *
+     * @param combiner the function that combines the task results
+     * for one barcode (in task order) into the barcode result.
+     *
+     * @param peptidePairTable the neo/self peptide pairs for each
+     * tumor barcode.
+     *
+     * @param tumorGenotypeTable the HLA genotype for each tumor
+     * barcode.
+     *
+     * @param footprintIndexes the footprint indexes to compute.
+     */
+    public FootprintScheduler(int threadCount,
+                              int chunkSize,
+                              Kernel<T> kernel,
+                              Function<List<T>, T> combiner,
+                              PeptidePairTable peptidePairTable,
+                              TumorGenotypeTable tumorGenotypeTable,
+                              List<AlleleFootprintIndex> footprintIndexes) {
+        this(threadCount,
+             chunkSize,
+             kernel,
+             combiner,
+             peptidePairTable,
+             barcode -> tumorGenotypeTable.require(barcode).viewUniqueAlleles(),
+             footprintIndexes);
+    }
+
+    /**
+     * Creates a new scheduler with genotypes from an arbitrary source.
+     *
+     * @param threadCount the number of worker threads.
+     *
+     * @param chunkSize the maximum number of peptide pairs in a task.
+     *
+     * @param kernel the function that computes each task.
+     *
+     * @param combiner the function that combines the task results
+     * for one barcode (in task order) into the barcode result.
+     *
+     * @param peptidePairTable the neo/self peptide pairs for each
+     * tumor barcode.
+     *
+     * @param genotypes a function that returns the unique alleles in
+     * the genotype for each tumor barcode (and throws an exception
+     * for barcodes without a genotype).
+     *
+     * @param footprintIndexes the footprint indexes to compute.
+     */
+    public FootprintScheduler(int threadCount,
+                              int chunkSize,
+                              Kernel<T> kernel,
+                              Function<List<T>, T> combiner,
+                              PeptidePairTable peptidePairTable,
+                              Function<TumorBarcode, Set<Allele>> genotypes,
+                              List<AlleleFootprintIndex> footprintIndexes) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive.");
+
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive.");
+
+        this.threadCount = threadCount;
+        this.chunkSize = chunkSize;
+        this.kernel = kernel;
+        this.combiner = combiner;
+        this.peptidePairTable = peptidePairTable;
+        this.genotypes = genotypes;
+        this.footprintIndexes = footprintIndexes;
+    }
+
+    /**
+     * Computes the footprint results for a collection of barcodes.
+     * This method returns when every barcode has been passed to
+     * exactly one of the callbacks.
+     *
+     * @param barcodes the tumor barcodes to process.
+     *
+     * @param onComplete the callback invoked with the combined results
+     * for each completed barcode (possibly from several threads at once).
+     *
+     * @param onFailure the callback invoked for each barcode whose
+     * computation failed (possibly from several threads at once).
+     */
+    public void run(List<TumorBarcode> barcodes,
+                    BiConsumer<TumorBarcode, T> onComplete,
+                    BiConsumer<TumorBarcode, RuntimeException> onFailure) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (TumorBarcode barcode : barcodes)
+            plan(barcode, tasks, onComplete, onFailure);
+
+        tasks.sort(Comparator.comparingInt((Task task) -> task.pairRecords.size()).reversed());
+
+        JamLogger.info("Scheduling [%d] tasks for [%d] barcodes on [%d] threads...",
+                       tasks.size(), barcodes.size(), threadCount);
+
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+
+            for (Task task : tasks)
+                futures.add(pool.submit(task));
+
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void plan(TumorBarcode barcode,
+                      List<Task> tasks,
+                      BiConsumer<TumorBarcode, T> onComplete,
+                      BiConsumer<TumorBarcode, RuntimeException> onFailure) {
+        Set<Allele> alleles;
+        List<PeptidePairRecord> pairRecords;
+
+        try {
+            alleles = genotypes.apply(barcode);
+            pairRecords = peptidePairTable.lookup(barcode);
+        }
+        catch (RuntimeException ex) {
+            onFailure.accept(barcode, ex);
+            return;
+        }
+
+        List<Task> barcodeTasks = new ArrayList<Task>();
+        BarcodeState state = new BarcodeState(barcode, onComplete, onFailure);
+
+        for (AlleleFootprintIndex footprintIndex : footprintIndexes)
+            for (Allele allele : alleles)
+                for (int start = 0; start < pairRecords.size(); start += chunkSize)
+                    barcodeTasks.add(new Task(state,
+                                              barcodeTasks.size(),
+                                              footprintIndex,
+                                              allele,
+                                              pairRecords.subList(start, Math.min(start + chunkSize, pairRecords.size()))));
+
+        if (barcodeTasks.isEmpty()) {
+            onComplete.accept(barcode, combiner.apply(new ArrayList<T>()));
+            return;
+        }
+
+        state.start(barcodeTasks.size());
+        tasks.addAll(barcodeTasks);
+    }
+
+    private final class Task implements Runnable {
+        private final BarcodeState state;
+        private final int slot;
+        private final AlleleFootprintIndex footprintIndex;
+        private final Allele allele;
+        private final List<PeptidePairRecord> pairRecords;
+
+        private Task(BarcodeState state,
+                     int slot,
+                     AlleleFootprintIndex footprintIndex,
+                     Allele allele,
+                     List<PeptidePairRecord> pairRecords) {
+            this.state = state;
+            this.slot = slot;
+            this.footprintIndex = footprintIndex;
+            this.allele = allele;
+            this.pairRecords = pairRecords;
+        }
+
+        @Override public void run() {
+            try {
+                if (!state.isFailed())
+                    state.record(slot, kernel.compute(footprintIndex, allele, pairRecords));
+            }
+            catch (RuntimeException ex) {
+                state.fail(ex);
+            }
+
+            state.finish();
+        }
+    }
+
+    private final class BarcodeState {
+        private final TumorBarcode barcode;
+        private final BiConsumer<TumorBarcode, T> onComplete;
+        private final BiConsumer<TumorBarcode, RuntimeException> onFailure;
+
+        private final AtomicInteger remaining = new AtomicInteger();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+        private List<T> results;
+
+        private BarcodeState(TumorBarcode barcode,
+                             BiConsumer<TumorBarcode, T> onComplete,
+                             BiConsumer<TumorBarcode, RuntimeException> onFailure) {
+            this.barcode = barcode;
+            this.onComplete = onComplete;
+            this.onFailure = onFailure;
+        }
+
+        private void start(int taskCount) {
+            results = new ArrayList<T>(taskCount);
+
+            for (int slot = 0; slot < taskCount; ++slot)
+                results.add(null);
+
+            remaining.set(taskCount);
+        }
+
+        private boolean isFailed() {
+            return failure.get() != null;
+        }
+
+        private void record(int slot, T result) {
+            // Each slot is written by exactly one task, and the atomic
+            // decrement in finish() publishes it to the final task...
+            results.set(slot, result);
+        }
+
+        private void fail(RuntimeException ex) {
+            failure.compareAndSet(null, ex);
+        }
+
+        private void finish() {
+            if (remaining.decrementAndGet() > 0)
+                return;
+
+            if (isFailed()) {
+                onFailure.accept(barcode, failure.get());
+                return;
+            }
+
+            T barcodeResult = combiner.apply(results);
+
+            results = null;
+            onComplete.accept(barcode, barcodeResult);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package nfi.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+import jam.app.JamLogger;
+
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintRecordReader;
+import nfi.io.FootprintWriter;
+
+/**
+ * Partitions a cohort into shards that may be computed by independent
+ * processes, and merges the partial footprint files written by the
+ * shards into a single file in canonical order.
+ *
+ * <p>Barcodes are assigned to shards by the longest-processing-time
+ * rule: in descending order of weight (the number of peptide pairs,
+ * with ties broken by barcode order), each barcode goes to the shard
+ * with the smallest total weight so far (with ties broken by shard
+ * index).  The assignment depends only on the sorted barcode list and
+ * the weights, so every shard process computes the same partition.
+ *
+ * <p>Shard {@code I} of {@code N} writes its records to the file
+ * {@code FILE.shardI-of-N} (where {@code FILE} is the name of the
+ * complete footprint file) and lists its barcodes, each marked
+ * {@code COMPLETE} or {@code FAILED}, in the manifest
+ * {@code FILE.shardI-of-N.manifest}.  The merge verifies from the
+ * manifests that every shard finished, that the shards partition the
+ * whole cohort, and that no barcode failed.
+ */
+public final class FootprintShards {
+    private FootprintShards() {}
+
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String SHARD_INDEX_KEY = "#shardIndex=";
+    private static final String SHARD_COUNT_KEY = "#shardCount=";
+    private static final String COHORT_SIZE_KEY = "#cohortSize=";
+
+    /**
+     * Status of one barcode in a shard manifest.
+     */
+    public enum Status { COMPLETE, FAILED }
+
+    /**
+     * Assigns barcodes to shards.
+     *
+     * @param barcodes the tumor barcodes in the cohort, in sorted
+     * order.
+     *
+     * @param weight the weight (expected computational cost) of each
+     * barcode.
+     *
+     * @param shardCount the number of shards.
+     *
+     * @return the shard index assigned to each barcode (in the order
+     * of the barcode list).
+     */
+    public static int[] assign(List<TumorBarcode> barcodes, ToLongFunction<TumorBarcode> weight, int shardCount) {
+        validate(0, shardCount);
+
+        int barcodeCount = barcodes.size();
+        long[] weights = new long[barcodeCount];
+        List<Integer> order = new ArrayList<Integer>(barcodeCount);
+
+        for (int index = 0; index < barcodeCount; ++index) {
+            weights[index] = weight.applyAsLong(barcodes.get(index));
+            order.add(index);
+        }
+
+        order.sort(Comparator.<Integer>comparingLong(index -> -weights[index]).thenComparingInt(index -> index));
+
+        //
+        // Each heap entry holds the total weight and index of a
+        // shard...
+        //
+        PriorityQueue<long[]> loads =
+            new PriorityQueue<long[]>(shardCount, Comparator.<long[]>comparingLong(load -> load[0]).thenComparingLong(load -> load[1]));
+
+        for (int shard = 0; shard < shardCount; ++shard)
+            loads.add(new long[] { 0L, shard });
+
+        int[] shards = new int[barcodeCount];
+
+        for (int index : order) {
+            long[] load = loads.poll();
+
+            shards[index] = (int) load[1];
+            load[0] += weights[index];
+
+            loads.add(load);
+        }
+
+        return shards;
+    }
+
+    /**
+     * Selects the barcodes assigned to one shard.
+     *
+     * @param barcodes the tumor barcodes in the cohort, in sorted
+     * order.
+     *
+     * @param weight the weight (expected computational cost) of each
+     * barcode.
+     *
+     * @param shardIndex the index of the shard to select.
+     *
+     * @param shardCount the number of shards.
+     *
+     * @return the barcodes assigned to the specified shard, in sorted
+     * order.
+     */
+    public static List<TumorBarcode> select(List<TumorBarcode> barcodes,
+                                            ToLongFunction<TumorBarcode> weight,
+                                            int shardIndex,
+                                            int shardCount) {
+        validate(shardIndex, shardCount);
+
+        int[] shards = assign(barcodes, weight, shardCount);
+        List<TumorBarcode> selected = new ArrayList<TumorBarcode>();
+
+        for (int index = 0; index < shards.length; ++index)
+            if (shards[index] == shardIndex)
+                selected.add(barcodes.get(index));
+
+        return selected;
+    }
+
+    /**
+     * Validates a shard index and count.
+     *
+     * @param shardIndex the shard index.
+     *
+     * @param shardCount the number of shards.
+     *
+     * @throws RuntimeException unless the shard count is positive and
+     * the index is between zero and the shard count (exclusive).
+     */
+    public static void validate(int shardIndex, int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount)
+            throw new IllegalArgumentException(String.format("Invalid shard [%d] of [%d].", shardIndex, shardCount));
+    }
+
+    /**
+     * Returns the name of the partial file written by one shard.
+     *
+     * @param fileName the name of the complete file.
+     *
+     * @param shardIndex the index of the shard.
+     *
+     * @param shardCount the number of shards.
+     *
+     * @return the name of the partial file for the specified shard.
+     */
+    public static String shardFile(String fileName, int shardIndex, int shardCount) {
+        return String.format("%s.shard%d-of-%d", fileName, shardIndex, shardCount);
+    }
+
+    /**
+     * Returns the name of the manifest for a partial file.
+     *
+     * @param shardFile the name of the partial file.
+     *
+     * @return the name of the manifest for the specified file.
+     */
+    public static String manifestFile(String shardFile) {
+        return shardFile + MANIFEST_SUFFIX;
+    }
+
+    /**
+     * Writes the manifest for a partial file.
+     *
+     * @param shardFile the name of the partial file.
+     *
+     * @param shardIndex the index of the shard.
+     *
+     * @param shardCount the number of shards.
+     *
+     * @param cohortSize the number of barcodes in the full cohort.
+     *
+     * @param barcodes the barcodes assigned to the shard.
+     *
+     * @param failed the barcodes whose computation failed.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static void writeManifest(String shardFile,
+                                     int shardIndex,
+                                     int shardCount,
+                                     int cohortSize,
+                                     Collection<TumorBarcode> barcodes,
+                                     Set<TumorBarcode> failed) {
+        List<String> lines = new ArrayList<String>(barcodes.size() + 3);
+
+        lines.add(SHARD_INDEX_KEY + shardIndex);
+        lines.add(SHARD_COUNT_KEY + shardCount);
+        lines.add(COHORT_SIZE_KEY + cohortSize);
+
+        for (TumorBarcode barcode : barcodes)
+            lines.add(barcode.getKey() + "\t" + (failed.contains(barcode) ? Status.FAILED : Status.COMPLETE));
+
+        Path path = Paths.get(manifestFile(shardFile));
+        Path tempPath = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+
+        try {
+            Files.write(tempPath, lines, StandardCharsets.UTF_8);
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Merges the partial files written by all shards into a single
+     * footprint file, after verifying that the shards cover the whole
+     * cohort.  Each partial file must be sorted by the canonical
+     * record comparator; the merged file is then sorted as well.
+     *
+     * @param fileName the name of the complete file.
+     *
+     * @param shardCount the number of shards.
+     *
+     * @param format the format of the merged file (the partial files
+     * may be in either format).
+     *
+     * @throws RuntimeException if any partial files or manifests are
+     * missing, if any barcodes are missing or failed, or if any I/O
+     * errors occur.
+     */
+    public static void merge(String fileName, int shardCount, FootprintFormat format) {
+        validate(0, shardCount);
+        verify(fileName, shardCount);
+
+        List<Cursor> cursors = new ArrayList<Cursor>(shardCount);
+        PriorityQueue<Cursor> heap = new PriorityQueue<Cursor>(shardCount);
+
+        JamLogger.info("Merging [%d] shards into [%s]...", shardCount, fileName);
+
+        try (FootprintWriter writer = format.openWriter(fileName)) {
+            for (int shard = 0; shard < shardCount; ++shard) {
+                Cursor cursor = new Cursor(shard, FootprintRecordReader.open(shardFile(fileName, shard, shardCount)));
+                cursors.add(cursor);
+
+                if (cursor.advance())
+                    heap.add(cursor);
+            }
+
+            List<AlleleFootprintRecord> buffer = new ArrayList<AlleleFootprintRecord>(FootprintRecordReader.CHUNK_SIZE);
+
+            while (!heap.isEmpty()) {
+                Cursor cursor = heap.poll();
+                buffer.add(cursor.current);
+
+                if (buffer.size() == FootprintRecordReader.CHUNK_SIZE) {
+                    writer.write(buffer);
+                    buffer.clear();
+                }
+
+                if (cursor.advance())
+                    heap.add(cursor);
+            }
+
+            writer.write(buffer);
+        }
+        finally {
+            for (Cursor cursor : cursors)
+                cursor.reader.close();
+        }
+    }
+
+    private static void verify(String fileName, int shardCount) {
+        Map<TumorBarcode, Integer> owners = new HashMap<TumorBarcode, Integer>();
+        Set<String> problems = new TreeSet<String>();
+        Set<Integer> cohortSizes = new TreeSet<Integer>();
+
+        for (int shard = 0; shard < shardCount; ++shard) {
+            String shardFile = shardFile(fileName, shard, shardCount);
+            Path manifest = Paths.get(manifestFile(shardFile));
+
+            if (!Files.exists(manifest) || !Files.exists(Paths.get(shardFile))) {
+                problems.add(String.format("shard [%d] has not finished", shard));
+                continue;
+            }
+
+            for (String line : readLines(manifest)) {
+                if (line.startsWith(SHARD_INDEX_KEY))
+                    checkHeader(problems, shard, line, SHARD_INDEX_KEY, shard);
+                else if (line.startsWith(SHARD_COUNT_KEY))
+                    checkHeader(problems, shard, line, SHARD_COUNT_KEY, shardCount);
+                else if (line.startsWith(COHORT_SIZE_KEY))
+                    cohortSizes.add(Integer.parseInt(line.substring(COHORT_SIZE_KEY.length())));
+                else if (!line.isEmpty())
+                    checkBarcode(problems, owners, shard, line);
+            }
+        }
+
+        if (cohortSizes.size() > 1)
+            problems.add(String.format("shards disagree on the cohort size %s", cohortSizes));
+        else if (cohortSizes.size() == 1 && owners.size() != cohortSizes.iterator().next())
+            problems.add(String.format("shards cover [%d] of [%d] barcodes", owners.size(), cohortSizes.iterator().next()));
+
+        if (!problems.isEmpty())
+            throw new IllegalStateException(String.format("Cannot merge [%s]: %s.", fileName, String.join("; ", problems)));
+    }
+
+    private static void checkHeader(Set<String> problems, int shard, String line, String key, int expected) {
+        int actual = Integer.parseInt(line.substring(key.length()));
+
+        if (actual != expected)
+            problems.add(String.format("shard [%d] manifest has %s%d", shard, key.substring(1), actual));
+    }
+
+    private static void checkBarcode(Set<String> problems, Map<TumorBarcode, Integer> owners, int shard, String line) {
+        String[] fields = line.split("\t");
+        TumorBarcode barcode = TumorBarcode.instance(fields[0]);
+        Integer owner = owners.put(barcode, shard);
+
+        if (owner != null)
+            problems.add(String.format("barcode [%s] appears in shards [%d] and [%d]", fields[0], owner, shard));
+
+        if (Status.valueOf(fields[1]) == Status.FAILED)
+            problems.add(String.format("barcode [%s] failed in shard [%d]", fields[0], shard));
+    }
+
+    private static List<String> readLines(Path path) {
+        try {
+            return Files.readAllLines(path, StandardCharsets.UTF_8);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static final class Cursor implements Comparable<Cursor> {
+        private final int shard;
+        private final FootprintRecordReader reader;
+
+        private List<AlleleFootprintRecord> chunk = null;
+        private int position = 0;
+        private AlleleFootprintRecord current = null;
+
+        private Cursor(int shard, FootprintRecordReader reader) {
+            this.shard = shard;
+            this.reader = reader;
+        }
+
+        private boolean advance() {
+            AlleleFootprintRecord previous = current;
+
+            if (chunk == null || position == chunk.size()) {
+                chunk = reader.next();
+                position = 0;
+            }
+
+            if (chunk == null) {
+                current = null;
+                return false;
+            }
+
+            current = chunk.get(position++);
+
+            if (previous != null && AlleleFootprintRecord.COMPARATOR.compare(previous, current) > 0)
+                throw new IllegalStateException(String.format("Shard [%d] is not sorted.", shard));
+
+            return true;
+        }
+
+        @Override public int compareTo(Cursor that) {
+            int cmp = AlleleFootprintRecord.COMPARATOR.compare(this.current, that.current);
+
+            if (cmp != 0)
+                return cmp;
+            else
+                return Integer.compare(this.shard, that.shard);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: nfi.model.FootprintShards FOOTPRINT_FILE SHARD_COUNT [TSV|TSV_GZIP|BINARY]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3)
+            usage();
+
+        String fileName = args[0];
+        int shardCount = Integer.parseInt(args[1]);
+
+        FootprintFormat format =
+            args.length == 3 ? FootprintFormat.valueOf(args[2]) : FootprintFormat.detect(shardFile(fileName, 0, shardCount));
+
+        merge(fileName, shardCount, format);
+    }
+}
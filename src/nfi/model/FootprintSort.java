@@ -0,0 +1,221 @@
+package nfi.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+
+import nfi.util.IndexSort;
+
+/**
+ * Orders allele footprint records without a full comparator sort of
+ * the entire cohort.
+ *
+ * <p>Records are sorted one partition (typically one tumor barcode) at
+ * a time: the distinct peptide pairs and alleles in the partition are
+ * ranked once, each record is reduced to a packed {@code long} key
+ * (pair rank, allele rank, type ordinal), and the keys are sorted as
+ * primitives.  Sorted partitions are then concatenated when their
+ * boundaries are already in order (the usual case, since the pair
+ * comparator orders by tumor barcode first) or combined by a k-way
+ * merge otherwise.  The result is identical to a stable sort with
+ * {@link AlleleFootprintRecord#COMPARATOR}.
+ */
+public final class FootprintSort {
+    private FootprintSort() {}
+
+    private static final int TYPE_BITS = IndexSort.bitWidth(AlleleFootprintType.values().length);
+
+    /**
+     * Sorts a list of footprint records in place into the order
+     * defined by {@link AlleleFootprintRecord#COMPARATOR}.
+     *
+     * @param records the records to sort.
+     */
+    public static void sort(List<AlleleFootprintRecord> records) {
+        if (records.size() < 2)
+            return;
+
+        int[] order = IndexSort.order(sortKeys(records));
+        List<AlleleFootprintRecord> sorted = new ArrayList<AlleleFootprintRecord>(records.size());
+
+        for (int index : order)
+            sorted.add(records.get(index));
+
+        for (int index = 0; index < sorted.size(); ++index)
+            records.set(index, sorted.get(index));
+    }
+
+    /**
+     * Computes packed primitive sort keys for a list of footprint
+     * records.  The keys are consistent with {@link
+     * AlleleFootprintRecord#COMPARATOR} within the list only.
+     *
+     * @param records the records of interest.
+     *
+     * @return the sort key for each record.
+     */
+    public static long[] sortKeys(List<AlleleFootprintRecord> records) {
+        Map<PeptidePairRecord, Integer> pairRanks = new IdentityHashMap<PeptidePairRecord, Integer>();
+        Map<Allele, Integer> alleleRanks = new IdentityHashMap<Allele, Integer>();
+
+        for (AlleleFootprintRecord record : records) {
+            pairRanks.put(record.getPeptidePairRecord(), 0);
+            alleleRanks.put(record.getPatientAllele(), 0);
+        }
+
+        //
+        // Ranks are bounded by the number of distinct items, so the
+        // key fields need only as many bits as the partition requires
+        // (at most 31 + 31 + TYPE_BITS in total)...
+        //
+        int alleleBits = IndexSort.bitWidth(alleleRanks.size());
+
+        rank(pairRanks, PeptidePairRecord.COMPARATOR);
+        rank(alleleRanks, (allele1, allele2) -> allele1.compareTo(allele2));
+
+        long[] keys = new long[records.size()];
+
+        for (int index = 0; index < keys.length; ++index) {
+            AlleleFootprintRecord record = records.get(index);
+
+            keys[index] =
+                ((long) pairRanks.get(record.getPeptidePairRecord()) << (alleleBits + TYPE_BITS))
+                | ((long) alleleRanks.get(record.getPatientAllele()) << TYPE_BITS)
+                | record.getFootprintType().ordinal();
+        }
+
+        return keys;
+    }
+
+    private static <T> void rank(Map<T, Integer> ranks, Comparator<? super T> comparator) {
+        List<T> items = new ArrayList<T>(ranks.keySet());
+        items.sort(comparator);
+
+        //
+        // Items that compare equal share a rank, so that their records
+        // remain in their original relative order...
+        //
+        int rank = 0;
+
+        for (int index = 0; index < items.size(); ++index) {
+            if (index > 0 && comparator.compare(items.get(index - 1), items.get(index)) != 0)
+                rank = index;
+
+            ranks.put(items.get(index), rank);
+        }
+    }
+
+    /**
+     * Sorts each partition of footprint records in place, in parallel.
+     *
+     * @param partitions the partitions to sort.
+     */
+    public static void sortPartitions(Collection<List<AlleleFootprintRecord>> partitions) {
+        partitions.parallelStream().forEach(FootprintSort::sort);
+    }
+
+    /**
+     * Combines sorted partitions of footprint records into a single
+     * sorted list.
+     *
+     * @param partitions the partitions to combine, each sorted by
+     * {@link AlleleFootprintRecord#COMPARATOR}.
+     *
+     * @return a new list containing all records in sorted order
+     * (records that compare equal remain in partition order).
+     */
+    public static List<AlleleFootprintRecord> merge(List<List<AlleleFootprintRecord>> partitions) {
+        if (isOrdered(partitions))
+            return concat(partitions);
+        else
+            return kwayMerge(partitions);
+    }
+
+    private static boolean isOrdered(List<List<AlleleFootprintRecord>> partitions) {
+        AlleleFootprintRecord previous = null;
+
+        for (List<AlleleFootprintRecord> partition : partitions) {
+            if (partition.isEmpty())
+                continue;
+
+            if (previous != null && AlleleFootprintRecord.COMPARATOR.compare(previous, partition.get(0)) > 0)
+                return false;
+
+            previous = partition.get(partition.size() - 1);
+        }
+
+        return true;
+    }
+
+    private static List<AlleleFootprintRecord> concat(List<List<AlleleFootprintRecord>> partitions) {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(countRecords(partitions));
+
+        for (List<AlleleFootprintRecord> partition : partitions)
+            records.addAll(partition);
+
+        return records;
+    }
+
+    private static List<AlleleFootprintRecord> kwayMerge(List<List<AlleleFootprintRecord>> partitions) {
+        List<AlleleFootprintRecord> records = new ArrayList<AlleleFootprintRecord>(countRecords(partitions));
+        PriorityQueue<Cursor> heap = new PriorityQueue<Cursor>(Math.max(1, partitions.size()));
+
+        for (int index = 0; index < partitions.size(); ++index)
+            if (!partitions.get(index).isEmpty())
+                heap.add(new Cursor(partitions.get(index), index));
+
+        while (!heap.isEmpty()) {
+            Cursor cursor = heap.poll();
+            records.add(cursor.current());
+
+            if (cursor.advance())
+                heap.add(cursor);
+        }
+
+        return records;
+    }
+
+    private static int countRecords(List<List<AlleleFootprintRecord>> partitions) {
+        int count = 0;
+
+        for (List<AlleleFootprintRecord> partition : partitions)
+            count += partition.size();
+
+        return count;
+    }
+
+    private static final class Cursor implements Comparable<Cursor> {
+        private final List<AlleleFootprintRecord> partition;
+        private final int partitionIndex;
+        private int position = 0;
+
+        private Cursor(List<AlleleFootprintRecord> partition, int partitionIndex) {
+            this.partition = partition;
+            this.partitionIndex = partitionIndex;
+        }
+
+        private AlleleFootprintRecord current() {
+            return partition.get(position);
+        }
+
+        private boolean advance() {
+            return ++position < partition.size();
+        }
+
+        @Override public int compareTo(Cursor that) {
+            int cmp = AlleleFootprintRecord.COMPARATOR.compare(this.current(), that.current());
+
+            if (cmp != 0)
+                return cmp;
+            else
+                return Integer.compare(this.partitionIndex, that.partitionIndex);
+        }
+    }
+}
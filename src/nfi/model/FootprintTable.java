@@ -0,0 +1,607 @@
+package nfi.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+
+import nfi.bind.PeptideBinding;
+import nfi.io.FootprintWriter;
+import nfi.util.IndexSort;
+
+/**
+ * Stores allele footprint results in primitive, column-oriented form.
+ *
+ * <p>Each row holds the same attributes as an {@link
+ * AlleleFootprintRecord}, but the peptide pair and allele are stored
+ * as integer codes into per-table dictionaries, the footprint type is
+ * stored as a byte and the binding quantities are stored in parallel
+ * {@code double[]} columns.  The peptide pair dictionary holds the
+ * pair records shared with the input peptide pair table, so the tumor
+ * barcode, gene and peptides for each row are reached through a
+ * single code without any per-row objects.
+ *
+ * <p>Tables are not thread-safe: concurrent computations should
+ * append to separate tables and {@link #concat(List) concatenate}
+ * them afterward.
+ */
+public final class FootprintTable {
+    private int rowCount = 0;
+
+    private int[] pairCodes;
+    private int[] alleleCodes;
+    private byte[] typeCodes;
+
+    private double[] neoBindingQty;
+    private double[] neoBindingPct;
+    private double[] selfBindingQty;
+    private double[] selfBindingPct;
+    private double[] footprintIndex;
+
+    private final List<PeptidePairRecord> pairDictionary = new ArrayList<PeptidePairRecord>();
+    private final Map<PeptidePairRecord, Integer> pairCodeMap = new HashMap<PeptidePairRecord, Integer>();
+
+    private final List<Allele> alleleDictionary = new ArrayList<Allele>();
+    private final Map<Allele, Integer> alleleCodeMap = new HashMap<Allele, Integer>();
+
+    private static final AlleleFootprintType[] TYPES = AlleleFootprintType.values();
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int TYPE_BITS = IndexSort.bitWidth(TYPES.length);
+
+    /**
+     * The maximum number of rows passed to a footprint writer at one
+     * time by {@link #write(FootprintWriter)}.
+     */
+    public static final int WRITE_ROWS = 262144;
+
+    private FootprintTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+
+        this.pairCodes = new int[capacity];
+        this.alleleCodes = new int[capacity];
+        this.typeCodes = new byte[capacity];
+
+        this.neoBindingQty = new double[capacity];
+        this.neoBindingPct = new double[capacity];
+        this.selfBindingQty = new double[capacity];
+        this.selfBindingPct = new double[capacity];
+        this.footprintIndex = new double[capacity];
+    }
+
+    /**
+     * Creates a new, empty table.
+     *
+     * @return a new, empty table.
+     */
+    public static FootprintTable create() {
+        return create(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty table with an initial row capacity.
+     *
+     * @param capacity the expected number of rows.
+     *
+     * @return a new, empty table with the specified capacity.
+     */
+    public static FootprintTable create(int capacity) {
+        return new FootprintTable(capacity);
+    }
+
+    /**
+     * Creates a new table containing the rows from a collection of
+     * footprint records.
+     *
+     * @param records the footprint records to store.
+     *
+     * @return a new table containing the specified records (in their
+     * iteration order).
+     */
+    public static FootprintTable of(Collection<AlleleFootprintRecord> records) {
+        FootprintTable table = create(records.size());
+        table.appendAll(records);
+        return table;
+    }
+
+    /**
+     * Concatenates a list of tables.
+     *
+     * @param tables the tables to concatenate.
+     *
+     * @return a new table containing the rows of each table in order.
+     */
+    public static FootprintTable concat(List<FootprintTable> tables) {
+        int rowCount = 0;
+
+        for (FootprintTable table : tables)
+            rowCount += table.rowCount;
+
+        FootprintTable result = create(rowCount);
+
+        for (FootprintTable table : tables)
+            result.append(table);
+
+        return result;
+    }
+
+    /**
+     * Combines sorted tables into a single sorted table.  The tables
+     * are simply concatenated when their boundaries are already in
+     * order (the usual case for per-barcode tables listed in barcode
+     * order); otherwise the concatenated table is sorted.
+     *
+     * @param tables the tables to combine, each sorted by {@link
+     * AlleleFootprintRecord#COMPARATOR}.
+     *
+     * @return a new table containing all rows in sorted order.
+     */
+    public static FootprintTable merge(List<FootprintTable> tables) {
+        FootprintTable result = concat(tables);
+
+        if (!isOrdered(tables))
+            result.sort();
+
+        return result;
+    }
+
+    private static boolean isOrdered(List<FootprintTable> tables) {
+        AlleleFootprintRecord previous = null;
+
+        for (FootprintTable table : tables) {
+            if (table.rowCount == 0)
+                continue;
+
+            if (previous != null && AlleleFootprintRecord.COMPARATOR.compare(previous, table.record(0)) > 0)
+                return false;
+
+            previous = table.record(table.rowCount - 1);
+        }
+
+        return true;
+    }
+
+    /**
+     * Appends a row to this table.
+     *
+     * @param pairRecord the target of the calculation.
+     *
+     * @param patientAllele the HLA allele in the calculation.
+     *
+     * @param footprintType the enumerated footprint calculation type.
+     *
+     * @param neoBindingQty the neo-antigen binding strength.
+     *
+     * @param neoBindingPct the percentile ranking of the neo-antigen
+     * binding strength.
+     *
+     * @param selfBindingQty the self-antigen binding strength.
+     *
+     * @param selfBindingPct the percentile ranking of the self-antigen
+     * binding strength.
+     *
+     * @param footprintIndex the calculated neo-antigen footprint index.
+     */
+    public void append(PeptidePairRecord   pairRecord,
+                       Allele              patientAllele,
+                       AlleleFootprintType footprintType,
+                       double              neoBindingQty,
+                       double              neoBindingPct,
+                       double              selfBindingQty,
+                       double              selfBindingPct,
+                       double              footprintIndex) {
+        ensureCapacity(rowCount + 1);
+
+        this.pairCodes[rowCount] = pairCode(pairRecord);
+        this.alleleCodes[rowCount] = alleleCode(patientAllele);
+        this.typeCodes[rowCount] = (byte) footprintType.ordinal();
+
+        this.neoBindingQty[rowCount] = neoBindingQty;
+        this.neoBindingPct[rowCount] = neoBindingPct;
+        this.selfBindingQty[rowCount] = selfBindingQty;
+        this.selfBindingPct[rowCount] = selfBindingPct;
+        this.footprintIndex[rowCount] = footprintIndex;
+
+        ++rowCount;
+    }
+
+    /**
+     * Appends a row to this table.
+     *
+     * @param pairRecord the target of the calculation.
+     *
+     * @param patientAllele the HLA allele in the calculation.
+     *
+     * @param footprintType the enumerated footprint calculation type.
+     *
+     * @param neoBinding the neo-antigen binding quantities.
+     *
+     * @param selfBinding the self-antigen binding quantities.
+     *
+     * @param footprintIndex the calculated neo-antigen footprint index.
+     */
+    public void append(PeptidePairRecord   pairRecord,
+                       Allele              patientAllele,
+                       AlleleFootprintType footprintType,
+                       PeptideBinding      neoBinding,
+                       PeptideBinding      selfBinding,
+                       double              footprintIndex) {
+        append(pairRecord,
+               patientAllele,
+               footprintType,
+               neoBinding.getStrength(),
+               neoBinding.getPercentile(),
+               selfBinding.getStrength(),
+               selfBinding.getPercentile(),
+               footprintIndex);
+    }
+
+    /**
+     * Appends a footprint record to this table.
+     *
+     * @param record the record to append.
+     */
+    public void append(AlleleFootprintRecord record) {
+        append(record.getPeptidePairRecord(),
+               record.getPatientAllele(),
+               record.getFootprintType(),
+               record.getNeoBindingQty(),
+               record.getNeoBindingPct(),
+               record.getSelfBindingQty(),
+               record.getSelfBindingPct(),
+               record.getFootprintIndex());
+    }
+
+    /**
+     * Appends a collection of footprint records to this table.
+     *
+     * @param records the records to append.
+     */
+    public void appendAll(Collection<AlleleFootprintRecord> records) {
+        ensureCapacity(rowCount + records.size());
+
+        for (AlleleFootprintRecord record : records)
+            append(record);
+    }
+
+    /**
+     * Appends the rows of another table to this table.
+     *
+     * @param that the table to append.
+     */
+    public void append(FootprintTable that) {
+        ensureCapacity(rowCount + that.rowCount);
+
+        int[] pairMap = new int[that.pairDictionary.size()];
+        int[] alleleMap = new int[that.alleleDictionary.size()];
+
+        for (int code = 0; code < pairMap.length; ++code)
+            pairMap[code] = pairCode(that.pairDictionary.get(code));
+
+        for (int code = 0; code < alleleMap.length; ++code)
+            alleleMap[code] = alleleCode(that.alleleDictionary.get(code));
+
+        for (int row = 0; row < that.rowCount; ++row) {
+            this.pairCodes[rowCount + row] = pairMap[that.pairCodes[row]];
+            this.alleleCodes[rowCount + row] = alleleMap[that.alleleCodes[row]];
+        }
+
+        System.arraycopy(that.typeCodes, 0, this.typeCodes, rowCount, that.rowCount);
+        System.arraycopy(that.neoBindingQty, 0, this.neoBindingQty, rowCount, that.rowCount);
+        System.arraycopy(that.neoBindingPct, 0, this.neoBindingPct, rowCount, that.rowCount);
+        System.arraycopy(that.selfBindingQty, 0, this.selfBindingQty, rowCount, that.rowCount);
+        System.arraycopy(that.selfBindingPct, 0, this.selfBindingPct, rowCount, that.rowCount);
+        System.arraycopy(that.footprintIndex, 0, this.footprintIndex, rowCount, that.rowCount);
+
+        rowCount += that.rowCount;
+    }
+
+    private int pairCode(PeptidePairRecord pairRecord) {
+        //
+        // Footprints are computed for all alleles and types of one
+        // pair in sequence, so checking the previous row first avoids
+        // most hash lookups...
+        //
+        if (rowCount > 0 && pairDictionary.get(pairCodes[rowCount - 1]) == pairRecord)
+            return pairCodes[rowCount - 1];
+
+        Integer code = pairCodeMap.get(pairRecord);
+
+        if (code == null) {
+            code = pairDictionary.size();
+            pairDictionary.add(pairRecord);
+            pairCodeMap.put(pairRecord, code);
+        }
+
+        return code;
+    }
+
+    private int alleleCode(Allele allele) {
+        Integer code = alleleCodeMap.get(allele);
+
+        if (code == null) {
+            code = alleleDictionary.size();
+            alleleDictionary.add(allele);
+            alleleCodeMap.put(allele, code);
+        }
+
+        return code;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= pairCodes.length)
+            return;
+
+        int newCapacity = Math.max(capacity, 2 * pairCodes.length);
+
+        pairCodes = Arrays.copyOf(pairCodes, newCapacity);
+        alleleCodes = Arrays.copyOf(alleleCodes, newCapacity);
+        typeCodes = Arrays.copyOf(typeCodes, newCapacity);
+
+        neoBindingQty = Arrays.copyOf(neoBindingQty, newCapacity);
+        neoBindingPct = Arrays.copyOf(neoBindingPct, newCapacity);
+        selfBindingQty = Arrays.copyOf(selfBindingQty, newCapacity);
+        selfBindingPct = Arrays.copyOf(selfBindingPct, newCapacity);
+        footprintIndex = Arrays.copyOf(footprintIndex, newCapacity);
+    }
+
+    /**
+     * Sorts the rows of this table into the order defined by {@link
+     * AlleleFootprintRecord#COMPARATOR}.
+     *
+     * <p>The pair and allele dictionaries are ranked once, and each
+     * row is then reduced to a packed {@code long} key (pair rank,
+     * allele rank, type ordinal), so the row sort never compares
+     * objects.  The sort is stable, like {@link List#sort}.
+     */
+    public void sort() {
+        int[] order = IndexSort.order(sortKeys());
+
+        pairCodes = permute(pairCodes, order);
+        alleleCodes = permute(alleleCodes, order);
+        typeCodes = permute(typeCodes, order);
+
+        neoBindingQty = permute(neoBindingQty, order);
+        neoBindingPct = permute(neoBindingPct, order);
+        selfBindingQty = permute(selfBindingQty, order);
+        selfBindingPct = permute(selfBindingPct, order);
+        footprintIndex = permute(footprintIndex, order);
+    }
+
+    private long[] sortKeys() {
+        int alleleBits = IndexSort.bitWidth(alleleDictionary.size());
+
+        int[] pairRanks = rank(pairDictionary, PeptidePairRecord.COMPARATOR);
+        int[] alleleRanks = rank(alleleDictionary, (allele1, allele2) -> allele1.compareTo(allele2));
+
+        long[] keys = new long[rowCount];
+
+        for (int row = 0; row < rowCount; ++row)
+            keys[row] =
+                ((long) pairRanks[pairCodes[row]] << (alleleBits + TYPE_BITS))
+                | ((long) alleleRanks[alleleCodes[row]] << TYPE_BITS)
+                | typeCodes[row];
+
+        return keys;
+    }
+
+    private static <T> int[] rank(List<T> dictionary, Comparator<? super T> comparator) {
+        Integer[] codes = new Integer[dictionary.size()];
+
+        for (int code = 0; code < codes.length; ++code)
+            codes[code] = code;
+
+        Arrays.sort(codes, (code1, code2) -> comparator.compare(dictionary.get(code1), dictionary.get(code2)));
+
+        //
+        // Entries that compare equal must share a rank, so that their
+        // rows remain in their original relative order...
+        //
+        int[] ranks = new int[codes.length];
+
+        for (int index = 0; index < codes.length; ++index) {
+            if (index > 0 && comparator.compare(dictionary.get(codes[index - 1]), dictionary.get(codes[index])) == 0)
+                ranks[codes[index]] = ranks[codes[index - 1]];
+            else
+                ranks[codes[index]] = index;
+        }
+
+        return ranks;
+    }
+
+    private int[] permute(int[] column, int[] order) {
+        int[] result = new int[Math.max(column.length, 1)];
+
+        for (int row = 0; row < rowCount; ++row)
+            result[row] = column[order[row]];
+
+        return result;
+    }
+
+    private byte[] permute(byte[] column, int[] order) {
+        byte[] result = new byte[Math.max(column.length, 1)];
+
+        for (int row = 0; row < rowCount; ++row)
+            result[row] = column[order[row]];
+
+        return result;
+    }
+
+    private double[] permute(double[] column, int[] order) {
+        double[] result = new double[Math.max(column.length, 1)];
+
+        for (int row = 0; row < rowCount; ++row)
+            result[row] = column[order[row]];
+
+        return result;
+    }
+
+    /**
+     * Writes the rows of this table in the layout defined by {@link
+     * AlleleFootprintRecord#format()}.  Records are materialized for
+     * at most {@link #WRITE_ROWS} rows at a time.
+     *
+     * @param writer the destination for the rows.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void write(FootprintWriter writer) {
+        List<AlleleFootprintRecord> view = view();
+
+        for (int start = 0; start < rowCount; start += WRITE_ROWS)
+            writer.write(new ArrayList<AlleleFootprintRecord>(view.subList(start, Math.min(start + WRITE_ROWS, rowCount))));
+    }
+
+    /**
+     * Returns the number of rows in this table.
+     *
+     * @return the number of rows in this table.
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * Creates a footprint record for one row in this table.
+     *
+     * @param row the index of the row.
+     *
+     * @return a footprint record with the attributes of the specified
+     * row.
+     *
+     * @throws IndexOutOfBoundsException unless the row index is valid.
+     */
+    public AlleleFootprintRecord record(int row) {
+        return AlleleFootprintRecord.create(getPeptidePairRecord(row),
+                                            getPatientAllele(row),
+                                            getFootprintType(row),
+                                            getNeoBindingQty(row),
+                                            getNeoBindingPct(row),
+                                            getSelfBindingQty(row),
+                                            getSelfBindingPct(row),
+                                            getFootprintIndex(row));
+    }
+
+    /**
+     * Returns a read-only list view of this table that creates a
+     * footprint record for each row on demand.
+     *
+     * @return a read-only list view of this table.
+     */
+    public List<AlleleFootprintRecord> view() {
+        return new RecordView();
+    }
+
+    private final class RecordView extends AbstractList<AlleleFootprintRecord> implements RandomAccess {
+        @Override public AlleleFootprintRecord get(int row) {
+            return record(row);
+        }
+
+        @Override public int size() {
+            return rowCount;
+        }
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= rowCount)
+            throw new IndexOutOfBoundsException(String.format("Invalid row index: [%d].", row));
+
+        return row;
+    }
+
+    /**
+     * Returns the peptide pair for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the peptide pair for the specified row.
+     */
+    public PeptidePairRecord getPeptidePairRecord(int row) {
+        return pairDictionary.get(pairCodes[checkRow(row)]);
+    }
+
+    /**
+     * Returns the patient allele for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the patient allele for the specified row.
+     */
+    public Allele getPatientAllele(int row) {
+        return alleleDictionary.get(alleleCodes[checkRow(row)]);
+    }
+
+    /**
+     * Returns the footprint type for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the footprint type for the specified row.
+     */
+    public AlleleFootprintType getFootprintType(int row) {
+        return TYPES[typeCodes[checkRow(row)]];
+    }
+
+    /**
+     * Returns the neo-antigen binding strength for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the neo-antigen binding strength for the specified row.
+     */
+    public double getNeoBindingQty(int row) {
+        return neoBindingQty[checkRow(row)];
+    }
+
+    /**
+     * Returns the neo-antigen binding percentile for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the neo-antigen binding percentile for the specified row.
+     */
+    public double getNeoBindingPct(int row) {
+        return neoBindingPct[checkRow(row)];
+    }
+
+    /**
+     * Returns the self-antigen binding strength for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the self-antigen binding strength for the specified row.
+     */
+    public double getSelfBindingQty(int row) {
+        return selfBindingQty[checkRow(row)];
+    }
+
+    /**
+     * Returns the self-antigen binding percentile for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the self-antigen binding percentile for the specified row.
+     */
+    public double getSelfBindingPct(int row) {
+        return selfBindingPct[checkRow(row)];
+    }
+
+    /**
+     * Returns the footprint index for a row.
+     *
+     * @param row the index of the row.
+     *
+     * @return the footprint index for the specified row.
+     */
+    public double getFootprintIndex(int row) {
+        return footprintIndex[checkRow(row)];
+    }
+}
@@ -0,0 +1,399 @@
+package nfi.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+import jam.app.JamLogger;
+
+import jene.hla.Allele;
+import jene.neo.PeptidePairRecord;
+import jene.tcga.TumorBarcode;
+
+import nfi.io.FootprintFormat;
+import nfi.io.FootprintRecordReader;
+import nfi.io.FootprintWriter;
+
+/**
+ * Supports incremental recomputation of a footprint file after some
+ * of the cohort inputs have changed.
+ *
+ * <p>The inputs for each tumor barcode are summarized by a fingerprint:
+ * a SHA-256 digest of its peptide pairs (in canonical order, so that
+ * the order of the input file does not matter), the unique alleles in
+ * its genotype, the footprint types with their binding predictors and
+ * the declared predictor version, and the run settings that change the
+ * footprint records (the binding screen).  The fingerprints of the
+ * barcodes in a footprint file {@code FILE} are stored in the manifest
+ * {@code FILE.fingerprints}, along with the size and modification time
+ * of the file when the manifest was written; a manifest that does not
+ * match the current file is ignored.
+ *
+ * <p>Comparing the current fingerprints with the manifest identifies
+ * the barcodes that must be computed (new or changed) and those whose
+ * records may be copied from the existing file (unchanged).  Barcodes
+ * that are no longer in the cohort are dropped.  The copied and newly
+ * computed records are spliced into a new file in canonical order.
+ */
+public final class IncrementalFootprints {
+    private IncrementalFootprints() {}
+
+    private static final String MANIFEST_SUFFIX = ".fingerprints";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String FILE_SIZE_KEY = "#fileSize=";
+    private static final String LAST_MODIFIED_KEY = "#lastModified=";
+
+    /**
+     * Computes the fingerprint of the inputs for one tumor barcode.
+     *
+     * @param pairs the peptide pairs for the barcode.
+     *
+     * @param alleles the unique alleles in the patient genotype.
+     *
+     * @param footprintTypes the footprint types computed for the
+     * barcode.
+     *
+     * @param predictorVersion the declared version of the binding
+     * predictors.
+     *
+     * @param settings a description of the run settings that change
+     * the footprint records.
+     *
+     * @return the fingerprint (a hexadecimal digest) of the inputs.
+     */
+    public static String fingerprint(Collection<PeptidePairRecord> pairs,
+                                     Collection<Allele> alleles,
+                                     List<AlleleFootprintType> footprintTypes,
+                                     String predictorVersion,
+                                     String settings) {
+        List<String> pairKeys = new ArrayList<String>(pairs.size());
+
+        for (PeptidePairRecord pair : pairs)
+            pairKeys.add(pair.format(AlleleFootprintRecord.DELIM));
+
+        List<String> alleleKeys = new ArrayList<String>(alleles.size());
+
+        for (Allele allele : alleles)
+            alleleKeys.add(allele.shortKey());
+
+        Collections.sort(pairKeys);
+        Collections.sort(alleleKeys);
+
+        MessageDigest digest = createDigest();
+
+        for (String pairKey : pairKeys)
+            update(digest, "P", pairKey);
+
+        for (String alleleKey : alleleKeys)
+            update(digest, "A", alleleKey);
+
+        for (AlleleFootprintType footprintType : footprintTypes)
+            update(digest, "T", footprintType.name() + "/"
+                   + footprintType.getAlleleFootprintIndex().getBindPredictor().getClass().getName());
+
+        update(digest, "V", predictorVersion);
+        update(digest, "S", settings);
+
+        StringBuilder builder = new StringBuilder();
+
+        for (byte b : digest.digest())
+            builder.append(String.format("%02x", b));
+
+        return builder.toString();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void update(MessageDigest digest, String tag, String value) {
+        //
+        // Each field is tagged and terminated, so that no two
+        // different input sets produce the same byte sequence...
+        //
+        digest.update((tag + value + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the name of the fingerprint manifest for a footprint
+     * file.
+     *
+     * @param footprintFile the name of the footprint file.
+     *
+     * @return the name of the manifest for the specified file.
+     */
+    public static String manifestFile(String footprintFile) {
+        return footprintFile + MANIFEST_SUFFIX;
+    }
+
+    /**
+     * Reads the fingerprint manifest for a footprint file.
+     *
+     * @param footprintFile the name of the footprint file.
+     *
+     * @return the fingerprint of each barcode in the file, or
+     * {@code null} unless both the file and its manifest exist and the
+     * size and modification time of the file match those recorded in
+     * the manifest.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static Map<TumorBarcode, String> readManifest(String footprintFile) {
+        Path path = Paths.get(manifestFile(footprintFile));
+        Path filePath = Paths.get(footprintFile);
+
+        if (!Files.exists(path) || !Files.exists(filePath))
+            return null;
+
+        String fileSize = null;
+        String lastModified = null;
+        Map<TumorBarcode, String> fingerprints = new HashMap<TumorBarcode, String>();
+
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isEmpty())
+                    continue;
+
+                if (line.startsWith(FILE_SIZE_KEY)) {
+                    fileSize = line.substring(FILE_SIZE_KEY.length());
+                    continue;
+                }
+
+                if (line.startsWith(LAST_MODIFIED_KEY)) {
+                    lastModified = line.substring(LAST_MODIFIED_KEY.length());
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
+
+                if (fields.length != 2)
+                    throw new IllegalStateException(String.format("Invalid fingerprint manifest line: [%s].", line));
+
+                fingerprints.put(TumorBarcode.instance(fields[0]), fields[1]);
+            }
+
+            //
+            // A file rewritten after its manifest (by a run that was not
+            // incremental, or by hand) no longer holds the records that
+            // the fingerprints vouch for...
+            //
+            if (!String.valueOf(Files.size(filePath)).equals(fileSize)
+                || !String.valueOf(Files.getLastModifiedTime(filePath).toMillis()).equals(lastModified)) {
+                JamLogger.warn("Fingerprint manifest [%s] does not match the footprint file; ignoring it.", path);
+                return null;
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return fingerprints;
+    }
+
+    /**
+     * Writes the fingerprint manifest for a footprint file (replacing
+     * any existing manifest atomically).  The manifest records the
+     * current size and modification time of the footprint file, so it
+     * must be written after the file is complete.
+     *
+     * @param footprintFile the name of the footprint file.
+     *
+     * @param fingerprints the fingerprint of each barcode in the file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public static void writeManifest(String footprintFile, SortedMap<TumorBarcode, String> fingerprints) {
+        Path path = Paths.get(manifestFile(footprintFile));
+        Path filePath = Paths.get(footprintFile);
+        Path tempPath = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+
+        try {
+            List<String> lines = new ArrayList<String>(fingerprints.size() + 2);
+
+            lines.add(FILE_SIZE_KEY + Files.size(filePath));
+            lines.add(LAST_MODIFIED_KEY + Files.getLastModifiedTime(filePath).toMillis());
+
+            for (Map.Entry<TumorBarcode, String> entry : fingerprints.entrySet())
+                lines.add(entry.getKey().getKey() + "\t" + entry.getValue());
+
+            Files.write(tempPath, lines, StandardCharsets.UTF_8);
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Identifies the barcodes that must be computed.
+     *
+     * @param current the current fingerprint of each barcode in the
+     * cohort.
+     *
+     * @param previous the fingerprints from the manifest of the
+     * existing footprint file.
+     *
+     * @return the barcodes that are new or whose fingerprints have
+     * changed, in sorted order.
+     */
+    public static List<TumorBarcode> changed(Map<TumorBarcode, String> current, Map<TumorBarcode, String> previous) {
+        List<TumorBarcode> changed = new ArrayList<TumorBarcode>();
+
+        for (Map.Entry<TumorBarcode, String> entry : current.entrySet())
+            if (!entry.getValue().equals(previous.get(entry.getKey())))
+                changed.add(entry.getKey());
+
+        Collections.sort(changed);
+        return changed;
+    }
+
+    /**
+     * Identifies the barcodes carried forward by a run restricted to a
+     * subset of the cohort: barcodes outside the subset keep their
+     * records and manifest entries from the previous run.
+     *
+     * @param previous the fingerprints from the manifest of the
+     * existing footprint file.
+     *
+     * @param subset the barcodes processed by the current run.
+     *
+     * @return the previous fingerprints of the barcodes outside the
+     * subset, in sorted order.
+     */
+    public static SortedMap<TumorBarcode, String> carried(Map<TumorBarcode, String> previous, Set<TumorBarcode> subset) {
+        SortedMap<TumorBarcode, String> carried = new TreeMap<TumorBarcode, String>();
+
+        for (Map.Entry<TumorBarcode, String> entry : previous.entrySet())
+            if (!subset.contains(entry.getKey()))
+                carried.put(entry.getKey(), entry.getValue());
+
+        return carried;
+    }
+
+    /**
+     * Writes a new footprint file by splicing newly computed records
+     * into the retained records from an existing file.  The existing
+     * file must be sorted by the canonical record comparator, which
+     * orders records by tumor barcode first; the new file is then
+     * sorted as well.
+     *
+     * @param existingFile the name of the existing footprint file (in
+     * any format).
+     *
+     * @param retained the barcodes whose records are copied from the
+     * existing file; records for all other barcodes are dropped.
+     *
+     * @param computed the newly computed records for each barcode,
+     * sorted within each barcode.
+     *
+     * @param outputFile the name of the new footprint file.
+     *
+     * @param format the format of the new footprint file.
+     *
+     * @param consumer an optional consumer of the records for each
+     * retained barcode (for example, to add them to a summary).
+     *
+     * @throws RuntimeException if the existing file is not sorted by
+     * barcode, if a barcode is both retained and computed, or if any
+     * I/O errors occur.
+     */
+    public static void splice(String existingFile,
+                              Set<TumorBarcode> retained,
+                              SortedMap<TumorBarcode, List<AlleleFootprintRecord>> computed,
+                              String outputFile,
+                              FootprintFormat format,
+                              BiConsumer<TumorBarcode, List<AlleleFootprintRecord>> consumer) {
+        JamLogger.info("Splicing [%d] retained and [%d] computed barcodes into [%s]...",
+                       retained.size(), computed.size(), outputFile);
+
+        Iterator<Map.Entry<TumorBarcode, List<AlleleFootprintRecord>>> computedIter = computed.entrySet().iterator();
+        Map.Entry<TumorBarcode, List<AlleleFootprintRecord>> nextComputed = next(computedIter);
+
+        TumorBarcode current = null;
+        List<AlleleFootprintRecord> currentRecords = new ArrayList<AlleleFootprintRecord>();
+
+        try (FootprintWriter writer = format.openWriter(outputFile)) {
+            if (existingFile != null) {
+                try (FootprintRecordReader reader = FootprintRecordReader.open(existingFile)) {
+                    for (List<AlleleFootprintRecord> chunk = reader.next(); chunk != null; chunk = reader.next()) {
+                        for (AlleleFootprintRecord record : chunk) {
+                            TumorBarcode barcode = record.getPeptidePairRecord().getTumorBarcode();
+
+                            if (!retained.contains(barcode))
+                                continue;
+
+                            if (!barcode.equals(current)) {
+                                if (current != null && current.compareTo(barcode) > 0)
+                                    throw new IllegalStateException(String.format("[%s] is not sorted by barcode at [%s].",
+                                                                                  existingFile, barcode));
+
+                                flushRetained(writer, current, currentRecords, consumer);
+                                current = barcode;
+
+                                while (nextComputed != null && nextComputed.getKey().compareTo(barcode) <= 0) {
+                                    if (nextComputed.getKey().equals(barcode))
+                                        throw new IllegalStateException(String.format("Barcode [%s] is both retained and computed.",
+                                                                                      barcode));
+
+                                    writer.write(nextComputed.getValue());
+                                    nextComputed = next(computedIter);
+                                }
+                            }
+
+                            currentRecords.add(record);
+                        }
+                    }
+                }
+            }
+
+            flushRetained(writer, current, currentRecords, consumer);
+
+            while (nextComputed != null) {
+                writer.write(nextComputed.getValue());
+                nextComputed = next(computedIter);
+            }
+        }
+    }
+
+    private static void flushRetained(FootprintWriter writer,
+                                      TumorBarcode barcode,
+                                      List<AlleleFootprintRecord> records,
+                                      BiConsumer<TumorBarcode, List<AlleleFootprintRecord>> consumer) {
+        if (records.isEmpty())
+            return;
+
+        writer.write(records);
+
+        if (consumer != null)
+            consumer.accept(barcode, new ArrayList<AlleleFootprintRecord>(records));
+
+        records.clear();
+    }
+
+    private static <K, V> Map.Entry<K, V> next(Iterator<Map.Entry<K, V>> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
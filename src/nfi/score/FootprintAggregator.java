@@ -0,0 +1,362 @@
+package nfi.score;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import nfi.model.AlleleFootprintRecord;
+
+/**
+ * Reduces the footprint records for one tumor barcode (and footprint
+ * type, and optionally one allele) to a single summary value, using
+ * memory that does not grow with the number of records.
+ *
+ * <p>Aggregators are specified by strings of the form {@code NAME} or
+ * {@code NAME:PARAMETER}: the built-in names are {@code COUNT_ABOVE}
+ * (the number of records with a footprint index above a threshold),
+ * {@code MEAN}, {@code MAX}, {@code SUM} and {@code TOP_K} (the mean
+ * of the {@code k} largest footprint indexes).  Any other name is
+ * taken as the fully-qualified name of a subclass with a public
+ * no-argument constructor (or a public constructor taking the
+ * parameter string).
+ */
+public abstract class FootprintAggregator {
+    /**
+     * Accumulates the footprint records for one summary group.
+     */
+    public abstract static class Accumulator {
+        /**
+         * Adds a footprint record to this accumulator.
+         *
+         * @param record the record to add.
+         */
+        public abstract void add(AlleleFootprintRecord record);
+
+        /**
+         * Returns the aggregate value for all records added so far.
+         *
+         * @return the aggregate value for all records added so far
+         * ({@code Double.NaN} if the value is undefined).
+         */
+        public abstract double value();
+
+        /**
+         * Formats the aggregate value for the summary table.
+         *
+         * @return the aggregate value with four decimal places (or in
+         * the natural format of the aggregator, such as an integer
+         * count).
+         */
+        public String format() {
+            return String.format("%.4f", value());
+        }
+    }
+
+    /**
+     * Returns the name of the summary table column for this aggregator.
+     *
+     * @return the name of the summary table column for this aggregator.
+     */
+    public abstract String columnName();
+
+    /**
+     * Creates a new, empty accumulator.
+     *
+     * @return a new, empty accumulator.
+     */
+    public abstract Accumulator newAccumulator();
+
+    /**
+     * Creates an aggregator from its specification string.
+     *
+     * @param spec the specification string ({@code NAME} or
+     * {@code NAME:PARAMETER}).
+     *
+     * @return the aggregator with the specified name and parameter.
+     *
+     * @throws RuntimeException unless the specification is valid.
+     */
+    public static FootprintAggregator parse(String spec) {
+        String[] fields = spec.trim().split(":", 2);
+
+        String name = fields[0].trim();
+        String param = fields.length > 1 ? fields[1].trim() : null;
+
+        switch (name) {
+        case "COUNT_ABOVE":
+            return countAbove(Double.parseDouble(require(name, param)));
+
+        case "MEAN":
+            return mean();
+
+        case "MAX":
+            return max();
+
+        case "SUM":
+            return sum();
+
+        case "TOP_K":
+            return topK(Integer.parseInt(require(name, param)));
+
+        default:
+            return instantiate(name, param);
+        }
+    }
+
+    /**
+     * Creates aggregators from a comma-separated list of specification
+     * strings.
+     *
+     * @param specs the comma-separated specification strings.
+     *
+     * @return the specified aggregators, in the order listed.
+     *
+     * @throws RuntimeException unless all specifications are valid.
+     */
+    public static List<FootprintAggregator> parseList(String specs) {
+        List<FootprintAggregator> aggregators = new ArrayList<FootprintAggregator>();
+
+        for (String spec : specs.split(","))
+            if (!spec.isBlank())
+                aggregators.add(parse(spec));
+
+        return aggregators;
+    }
+
+    private static String require(String name, String param) {
+        if (param != null)
+            return param;
+        else
+            throw new IllegalArgumentException(String.format("Aggregator [%s] requires a parameter.", name));
+    }
+
+    private static FootprintAggregator instantiate(String className, String param) {
+        try {
+            Class<? extends FootprintAggregator> aggClass =
+                Class.forName(className).asSubclass(FootprintAggregator.class);
+
+            if (param == null)
+                return aggClass.getConstructor().newInstance();
+            else
+                return aggClass.getConstructor(String.class).newInstance(param);
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new IllegalArgumentException(String.format("Invalid aggregator [%s].", className), ex);
+        }
+    }
+
+    /**
+     * Returns an aggregator that counts the records with a footprint
+     * index above a threshold.
+     *
+     * @param threshold the footprint index threshold.
+     *
+     * @return an aggregator that counts the records with a footprint
+     * index above the specified threshold.
+     */
+    public static FootprintAggregator countAbove(double threshold) {
+        return new CountAbove(threshold);
+    }
+
+    /**
+     * Returns an aggregator that computes the mean footprint index.
+     *
+     * @return an aggregator that computes the mean footprint index.
+     */
+    public static FootprintAggregator mean() {
+        return new Mean();
+    }
+
+    /**
+     * Returns an aggregator that computes the maximum footprint index.
+     *
+     * @return an aggregator that computes the maximum footprint index.
+     */
+    public static FootprintAggregator max() {
+        return new Max();
+    }
+
+    /**
+     * Returns an aggregator that computes the sum of footprint indexes.
+     *
+     * @return an aggregator that computes the sum of footprint indexes.
+     */
+    public static FootprintAggregator sum() {
+        return new Sum();
+    }
+
+    /**
+     * Returns an aggregator that computes the mean of the largest
+     * footprint indexes.
+     *
+     * @param k the number of largest footprint indexes to average.
+     *
+     * @return an aggregator that computes the mean of the {@code k}
+     * largest footprint indexes.
+     */
+    public static FootprintAggregator topK(int k) {
+        return new TopK(k);
+    }
+
+    // -----------------------------------------------------------------
+
+    private static final class CountAbove extends FootprintAggregator {
+        private final double threshold;
+
+        private CountAbove(double threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override public String columnName() {
+            return "Count_Above_" + threshold;
+        }
+
+        @Override public Accumulator newAccumulator() {
+            return new Accumulator() {
+                private long count = 0;
+
+                @Override public void add(AlleleFootprintRecord record) {
+                    if (record.getFootprintIndex() > threshold)
+                        ++count;
+                }
+
+                @Override public double value() {
+                    return count;
+                }
+
+                @Override public String format() {
+                    return Long.toString(count);
+                }
+            };
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    private static final class Mean extends FootprintAggregator {
+        @Override public String columnName() {
+            return "Mean";
+        }
+
+        @Override public Accumulator newAccumulator() {
+            return new Accumulator() {
+                private long count = 0;
+                private double sum = 0.0;
+
+                @Override public void add(AlleleFootprintRecord record) {
+                    double index = record.getFootprintIndex();
+
+                    if (!Double.isNaN(index)) {
+                        ++count;
+                        sum += index;
+                    }
+                }
+
+                @Override public double value() {
+                    return count > 0 ? sum / count : Double.NaN;
+                }
+            };
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    private static final class Max extends FootprintAggregator {
+        @Override public String columnName() {
+            return "Max";
+        }
+
+        @Override public Accumulator newAccumulator() {
+            return new Accumulator() {
+                private double max = Double.NaN;
+
+                @Override public void add(AlleleFootprintRecord record) {
+                    double index = record.getFootprintIndex();
+
+                    if (Double.isNaN(max) || index > max)
+                        max = index;
+                }
+
+                @Override public double value() {
+                    return max;
+                }
+            };
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    private static final class Sum extends FootprintAggregator {
+        @Override public String columnName() {
+            return "Sum";
+        }
+
+        @Override public Accumulator newAccumulator() {
+            return new Accumulator() {
+                private double sum = 0.0;
+
+                @Override public void add(AlleleFootprintRecord record) {
+                    double index = record.getFootprintIndex();
+
+                    if (!Double.isNaN(index))
+                        sum += index;
+                }
+
+                @Override public double value() {
+                    return sum;
+                }
+            };
+        }
+    }
+
+    // -----------------------------------------------------------------
+
+    private static final class TopK extends FootprintAggregator {
+        private final int k;
+
+        private TopK(int k) {
+            if (k < 1)
+                throw new IllegalArgumentException("Top-k count must be positive.");
+
+            this.k = k;
+        }
+
+        @Override public String columnName() {
+            return "Top_" + k + "_Mean";
+        }
+
+        @Override public Accumulator newAccumulator() {
+            return new Accumulator() {
+                // A min-heap holding the k largest values seen so far...
+                private final PriorityQueue<Double> heap = new PriorityQueue<Double>(k + 1);
+
+                @Override public void add(AlleleFootprintRecord record) {
+                    double index = record.getFootprintIndex();
+
+                    if (Double.isNaN(index))
+                        return;
+
+                    if (heap.size() < k) {
+                        heap.add(index);
+                    }
+                    else if (index > heap.peek()) {
+                        heap.poll();
+                        heap.add(index);
+                    }
+                }
+
+                @Override public double value() {
+                    if (heap.isEmpty())
+                        return Double.NaN;
+
+                    double sum = 0.0;
+
+                    for (double value : heap)
+                        sum += value;
+
+                    return sum / heap.size();
+                }
+            };
+        }
+    }
+}
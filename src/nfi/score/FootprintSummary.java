@@ -0,0 +1,203 @@
+package nfi.score;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jam.app.JamLogger;
+import jam.io.IOUtil;
+
+import jene.hla.Allele;
+import jene.tcga.TumorBarcode;
+
+import nfi.model.AlleleFootprintRecord;
+import nfi.model.AlleleFootprintType;
+
+/**
+ * Reduces the footprint records for each tumor barcode to a set of
+ * summary scores as soon as the barcode is complete, so that the
+ * per-pair records need not be retained or reloaded.
+ *
+ * <p>Summary rows are keyed by tumor barcode, not by patient: the
+ * tumor-to-patient mapping is held inside the genotype table, and
+ * aggregates such as the mean or top-k cannot be combined across
+ * barcodes after the fact.  A patient with a single tumor sample (the
+ * usual case) therefore has one set of rows, but a patient with
+ * several samples has one set for each sample.
+ *
+ * <p>The summary table contains one row for each barcode and
+ * footprint type with the allele column set to {@code GENOTYPE},
+ * which aggregates the records for all alleles in the genotype, and
+ * (when the per-allele breakdown is enabled) one additional row for
+ * each allele.  Each row contains the number of records in the group
+ * followed by one column for each aggregator; counts are written as
+ * integers and all other values with four decimal places.
+ *
+ * <p>Only the summary rows are retained, so the memory required for
+ * each barcode is independent of its mutation burden.  Barcodes may
+ * be added from several threads at once and in any order; the table
+ * is written in barcode order.
+ */
+public final class FootprintSummary {
+    private final boolean alleleBreakdown;
+    private final List<FootprintAggregator> aggregators;
+
+    private final Map<TumorBarcode, List<String>> barcodeRows =
+        new TreeMap<TumorBarcode, List<String>>();
+
+    /**
+     * The allele column value for rows that aggregate all alleles in
+     * the genotype of a tumor barcode.
+     */
+    public static final String GENOTYPE_LABEL = "GENOTYPE";
+
+    private FootprintSummary(List<FootprintAggregator> aggregators, boolean alleleBreakdown) {
+        this.aggregators = List.copyOf(aggregators);
+        this.alleleBreakdown = alleleBreakdown;
+    }
+
+    /**
+     * Creates a new, empty summary.
+     *
+     * @param aggregators the aggregators that define the summary
+     * columns.
+     *
+     * @param alleleBreakdown whether to add a summary row for each
+     * allele in addition to the genotype-level row.
+     *
+     * @return a new, empty summary.
+     */
+    public static FootprintSummary create(List<FootprintAggregator> aggregators, boolean alleleBreakdown) {
+        return new FootprintSummary(aggregators, alleleBreakdown);
+    }
+
+    /**
+     * Returns the header line for the summary table.
+     *
+     * @return the header line for the summary table.
+     */
+    public String header() {
+        StringBuilder builder = new StringBuilder("Tumor_Barcode\tFootprint_Type\tPatient_Allele\tPair_Count");
+
+        for (FootprintAggregator aggregator : aggregators) {
+            builder.append('\t');
+            builder.append(aggregator.columnName());
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Aggregates the footprint records for a completed tumor barcode.
+     * This method is thread-safe.
+     *
+     * @param barcode the completed tumor barcode.
+     *
+     * @param records the footprint records for the barcode (in any
+     * order).
+     */
+    public void add(TumorBarcode barcode, Collection<AlleleFootprintRecord> records) {
+        Map<AlleleFootprintType, Group> genotypeGroups =
+            new EnumMap<AlleleFootprintType, Group>(AlleleFootprintType.class);
+
+        Map<AlleleFootprintType, Map<Allele, Group>> alleleGroups =
+            new EnumMap<AlleleFootprintType, Map<Allele, Group>>(AlleleFootprintType.class);
+
+        for (AlleleFootprintRecord record : records) {
+            AlleleFootprintType type = record.getFootprintType();
+            genotypeGroups.computeIfAbsent(type, key -> new Group()).add(record);
+
+            if (alleleBreakdown)
+                alleleGroups.computeIfAbsent(type, key -> new TreeMap<Allele, Group>())
+                    .computeIfAbsent(record.getPatientAllele(), key -> new Group())
+                    .add(record);
+        }
+
+        List<String> rows = new ArrayList<String>();
+
+        for (Map.Entry<AlleleFootprintType, Group> entry : genotypeGroups.entrySet()) {
+            AlleleFootprintType type = entry.getKey();
+            rows.add(entry.getValue().format(barcode, type, GENOTYPE_LABEL));
+
+            if (alleleBreakdown)
+                for (Map.Entry<Allele, Group> alleleEntry : alleleGroups.get(type).entrySet())
+                    rows.add(alleleEntry.getValue().format(barcode, type, alleleEntry.getKey().shortKey()));
+        }
+
+        synchronized (barcodeRows) {
+            barcodeRows.put(barcode, rows);
+        }
+    }
+
+    /**
+     * Returns the number of barcodes aggregated so far.
+     *
+     * @return the number of barcodes aggregated so far.
+     */
+    public int countBarcodes() {
+        synchronized (barcodeRows) {
+            return barcodeRows.size();
+        }
+    }
+
+    /**
+     * Writes the summary table.
+     *
+     * @param fileName the name of the output file.
+     *
+     * @throws RuntimeException if any I/O errors occur.
+     */
+    public void write(String fileName) {
+        JamLogger.info("Writing [%s]...", fileName);
+
+        List<String> lines = new ArrayList<String>();
+
+        synchronized (barcodeRows) {
+            for (List<String> rows : barcodeRows.values())
+                lines.addAll(rows);
+        }
+
+        IOUtil.writeLines(fileName, false, header());
+        IOUtil.writeObjects(fileName, true, lines, line -> line);
+    }
+
+    private final class Group {
+        private long pairCount = 0;
+        private final List<FootprintAggregator.Accumulator> accumulators =
+            new ArrayList<FootprintAggregator.Accumulator>(aggregators.size());
+
+        private Group() {
+            for (FootprintAggregator aggregator : aggregators)
+                accumulators.add(aggregator.newAccumulator());
+        }
+
+        private void add(AlleleFootprintRecord record) {
+            ++pairCount;
+
+            for (FootprintAggregator.Accumulator accumulator : accumulators)
+                accumulator.add(record);
+        }
+
+        private String format(TumorBarcode barcode, AlleleFootprintType type, String alleleLabel) {
+            StringBuilder builder = new StringBuilder();
+
+            builder.append(barcode);
+            builder.append('\t');
+            builder.append(type);
+            builder.append('\t');
+            builder.append(alleleLabel);
+            builder.append('\t');
+            builder.append(pairCount);
+
+            for (FootprintAggregator.Accumulator accumulator : accumulators) {
+                builder.append('\t');
+                builder.append(accumulator.format());
+            }
+
+            return builder.toString();
+        }
+    }
+}
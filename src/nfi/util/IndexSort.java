@@ -0,0 +1,179 @@
+package nfi.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes sort permutations from primitive sort keys, so that large
+ * column-oriented tables may be ordered without comparing objects.
+ */
+public final class IndexSort {
+    private IndexSort() {}
+
+    /**
+     * Ranges at or below this length are sorted on a single thread.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Returns the number of bits required to represent the integers
+     * {@code 0, 1, ..., count - 1}.
+     *
+     * @param count the number of distinct values.
+     *
+     * @return the number of bits required to represent {@code count}
+     * distinct non-negative values.
+     */
+    public static int bitWidth(int count) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(count - 1, 0));
+    }
+
+    /**
+     * Computes the stable ascending sort permutation for an array of
+     * sort keys.
+     *
+     * <p>When the largest key and the row index fit together in 63
+     * bits, each row index is packed below its key and the packed
+     * values are sorted as primitives (in parallel for large arrays);
+     * the row index breaks ties, so the result is stable.  Otherwise
+     * the permutation is computed by a merge sort over parallel
+     * partitions.
+     *
+     * @param keys the sort keys (not modified).
+     *
+     * @return an array {@code order} such that {@code keys[order[0]],
+     * keys[order[1]], ...} is in ascending order, with equal keys in
+     * their original relative order.
+     */
+    public static int[] order(long[] keys) {
+        long maxKey = 0L;
+
+        for (long key : keys) {
+            if (key < 0L)
+                return mergeOrder(keys);
+
+            maxKey = Math.max(maxKey, key);
+        }
+
+        int keyBits = 64 - Long.numberOfLeadingZeros(maxKey);
+        int rowBits = bitWidth(keys.length);
+
+        if (keyBits + rowBits <= 63)
+            return packedOrder(keys, rowBits);
+        else
+            return mergeOrder(keys);
+    }
+
+    private static int[] packedOrder(long[] keys, int rowBits) {
+        long[] packed = new long[keys.length];
+
+        for (int row = 0; row < keys.length; ++row)
+            packed[row] = (keys[row] << rowBits) | row;
+
+        Arrays.parallelSort(packed);
+
+        long rowMask = (1L << rowBits) - 1L;
+        int[] order = new int[keys.length];
+
+        for (int index = 0; index < keys.length; ++index)
+            order[index] = (int) (packed[index] & rowMask);
+
+        return order;
+    }
+
+    private static int[] mergeOrder(long[] keys) {
+        int length = keys.length;
+
+        int[] order = new int[length];
+        int[] buffer = new int[length];
+
+        for (int index = 0; index < length; ++index)
+            order[index] = index;
+
+        if (length <= PARALLEL_THRESHOLD)
+            sortRange(keys, order, buffer, 0, length);
+        else
+            ForkJoinPool.commonPool().invoke(new SortTask(keys, order, buffer, 0, length));
+
+        return order;
+    }
+
+    /**
+     * Sorts {@code order[lo, hi)} by key, leaving the result in place;
+     * {@code buffer[lo, hi)} is used as work space.
+     */
+    private static void sortRange(long[] keys, int[] order, int[] buffer, int lo, int hi) {
+        //
+        // Bottom-up merge sort, which is stable and allocates nothing
+        // beyond the work buffer...
+        //
+        int[] source = order;
+        int[] target = buffer;
+
+        for (int width = 1; width < hi - lo; width *= 2) {
+            for (int start = lo; start < hi; start += 2 * width) {
+                int mid = Math.min(start + width, hi);
+                int end = Math.min(start + 2 * width, hi);
+
+                merge(keys, source, target, start, mid, end);
+            }
+
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+
+        if (source != order)
+            System.arraycopy(source, lo, order, lo, hi - lo);
+    }
+
+    private static void merge(long[] keys, int[] source, int[] target, int lo, int mid, int hi) {
+        int left = lo;
+        int right = mid;
+
+        for (int index = lo; index < hi; ++index) {
+            if (left < mid && (right >= hi || keys[source[left]] <= keys[source[right]]))
+                target[index] = source[left++];
+            else
+                target[index] = source[right++];
+        }
+    }
+
+    private static final class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] keys;
+        private final int[] order;
+        private final int[] buffer;
+        private final int lo;
+        private final int hi;
+
+        private SortTask(long[] keys, int[] order, int[] buffer, int lo, int hi) {
+            this.keys = keys;
+            this.order = order;
+            this.buffer = buffer;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override protected void compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                sortRange(keys, order, buffer, lo, hi);
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+
+            invokeAll(new SortTask(keys, order, buffer, lo, mid),
+                      new SortTask(keys, order, buffer, mid, hi));
+
+            // Halves that are already in order need no merge...
+            if (keys[order[mid - 1]] <= keys[order[mid]])
+                return;
+
+            merge(keys, order, buffer, lo, mid, hi);
+            System.arraycopy(buffer, lo, order, lo, hi - lo);
+        }
+    }
+}
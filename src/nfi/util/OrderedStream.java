@@ -0,0 +1,98 @@
+package nfi.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Applies a function to a sequence of items in parallel and delivers
+ * the results to a consumer in the original order of the items, with
+ * a bounded number of results held in memory at any time.
+ */
+public final class OrderedStream {
+    private OrderedStream() {}
+
+    /**
+     * Applies a function to each item in a sequence using a fixed
+     * number of threads and passes the results to a consumer in the
+     * iteration order of the sequence.  Items are drawn from the
+     * sequence on the calling thread only as window space becomes
+     * available, so a lazily produced sequence is never read far
+     * ahead of the computation.
+     *
+     * <p>At most {@code windowSize} items are in flight (computing or
+     * completed but not yet consumed), so peak memory grows with the
+     * window size rather than the number of items.  The consumer is
+     * always invoked on the calling thread.
+     *
+     * @param <T> the runtime item type.
+     *
+     * @param <R> the runtime result type.
+     *
+     * @param items the items to process.
+     *
+     * @param function the function to apply to each item.
+     *
+     * @param consumer the consumer of the results.
+     *
+     * @param threadCount the number of worker threads.
+     *
+     * @param windowSize the maximum number of items in flight.
+     *
+     * @throws RuntimeException if the function throws an exception
+     * for any item or if the calling thread is interrupted.
+     */
+    public static <T, R> void apply(Iterable<T> items,
+                                    Function<T, R> function,
+                                    Consumer<R> consumer,
+                                    int threadCount,
+                                    int windowSize) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive.");
+
+        if (windowSize < threadCount)
+            throw new IllegalArgumentException("Window size must be at least the thread count.");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try {
+            Deque<Future<R>> window = new ArrayDeque<Future<R>>(windowSize);
+
+            for (T item : items) {
+                if (window.size() >= windowSize)
+                    consumer.accept(await(window.removeFirst()));
+
+                window.addLast(executor.submit(() -> function.apply(item)));
+            }
+
+            while (!window.isEmpty())
+                consumer.accept(await(window.removeFirst()));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else
+                throw new IllegalStateException(cause);
+        }
+    }
+}